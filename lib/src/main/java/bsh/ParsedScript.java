@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package bsh;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BeanShell script parsed once into its syntax tree, so that it can be
+ * evaluated many times without tokenizing and parsing the source again.
+ *
+ * This class lives in the bsh package because BeanShell does not expose its
+ * syntax tree publicly. The evaluation loop mirrors
+ * <code>Interpreter.eval(Reader, NameSpace, String)</code>, including the way
+ * errors are reported.
+ *
+ * Evaluation caches in the parsed nodes the types it resolves, therefore an
+ * instance must always be evaluated by the same interpreter, one evaluation at
+ * a time: evaluating it concurrently would race on those caches and sharing it
+ * with other interpreters would pin the classes resolved by the first one (see
+ * ScriptCache, which keeps a parse for each interpreter).
+ *
+ * @author ste
+ */
+public final class ParsedScript {
+
+    private final SimpleNode[] nodes;
+    private final String sourceFile;
+
+    private ParsedScript(final SimpleNode[] nodes, final String sourceFile) {
+        this.nodes = nodes;
+        this.sourceFile = sourceFile;
+    }
+
+    /**
+     * Parses the script read by the given reader.
+     *
+     * @param in the script source - NOT NULL
+     * @param sourceFile the name of the script used in error messages - NOT NULL
+     *
+     * @return the parsed script
+     *
+     * @throws EvalError in case of syntax errors
+     * @throws IllegalArgumentException if any of the parameters is null
+     */
+    public static ParsedScript parse(final Reader in, final String sourceFile)
+    throws EvalError {
+        if (in == null) {
+            throw new IllegalArgumentException("in can not be null");
+        }
+        if (sourceFile == null) {
+            throw new IllegalArgumentException("sourceFile can not be null");
+        }
+
+        List<SimpleNode> nodes = new ArrayList<>();
+        Parser parser = new Parser(in);
+
+        try {
+            boolean eof = false;
+            while (!eof) {
+                eof = parser.Line();
+                if (parser.jjtree.nodeArity() > 0) {
+                    SimpleNode node = (SimpleNode)parser.jjtree.rootNode();
+                    node.setSourceFile(sourceFile);
+                    nodes.add(node);
+                }
+                parser.jjtree.reset();
+            }
+        } catch (ParseException x) {
+            x.setErrorSourceFile(sourceFile);
+            throw x;
+        } catch (TokenMgrError x) {
+            throw new EvalError(
+                "Sourced file: " + sourceFile + " Token Parsing Error: " + x.getMessage(),
+                null, null
+            );
+        }
+
+        return new ParsedScript(nodes.toArray(new SimpleNode[nodes.size()]), sourceFile);
+    }
+
+    /**
+     * Evaluates this script in the global namespace of the given interpreter.
+     *
+     * @param interpreter the interpreter - NOT NULL
+     *
+     * @return the value of the last evaluated statement or the returned value
+     *
+     * @throws EvalError in case of evaluation errors
+     */
+    public Object eval(final Interpreter interpreter) throws EvalError {
+        if (interpreter == null) {
+            throw new IllegalArgumentException("interpreter can not be null");
+        }
+        return eval(interpreter, interpreter.getNameSpace());
+    }
+
+    /**
+     * Evaluates this script in the given namespace.
+     *
+     * @param interpreter the interpreter - NOT NULL
+     * @param namespace the namespace to evaluate the script in - NOT NULL
+     *
+     * @return the value of the last evaluated statement or the returned value
+     *
+     * @throws EvalError in case of evaluation errors
+     */
+    public Object eval(final Interpreter interpreter, final NameSpace namespace)
+    throws EvalError {
+        if (interpreter == null) {
+            throw new IllegalArgumentException("interpreter can not be null");
+        }
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace can not be null");
+        }
+
+        CallStack callstack = new CallStack(namespace);
+        Object ret = null;
+
+        for (SimpleNode node: nodes) {
+            try {
+                ret = node.eval(callstack, interpreter);
+
+                if (callstack.depth() > 1) {
+                    throw new InterpreterError("Callstack growing: " + callstack);
+                }
+
+                if (ret instanceof ReturnControl) {
+                    ret = ((ReturnControl)ret).value;
+                    break;
+                }
+            } catch (InterpreterError x) {
+                throw new EvalError(
+                    "Sourced file: " + sourceFile + " internal Error: " + x.getMessage(),
+                    node, callstack
+                );
+            } catch (TargetError x) {
+                if (x.getNode() == null) {
+                    x.setNode(node);
+                }
+                x.reThrow("Sourced file: " + sourceFile);
+            } catch (EvalError x) {
+                if (x.getNode() == null) {
+                    x.setNode(node);
+                }
+                x.reThrow("Sourced file: " + sourceFile);
+            } catch (Exception x) {
+                throw new EvalError(
+                    "Sourced file: " + sourceFile + " unknown error: " + x.getMessage(),
+                    node, callstack
+                );
+            } finally {
+                if (callstack.depth() > 1) {
+                    callstack.clear();
+                    callstack.push(namespace);
+                }
+            }
+        }
+
+        return Primitive.unwrap(ret);
+    }
+
+    /**
+     * @return the name of the script used in error messages
+     */
+    public String getSourceFile() {
+        return sourceFile;
+    }
+}
@@ -16,26 +16,58 @@
 package ste.web.acl;
 
 import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 /**
- *
- * Not thread safe
+ * A list of permissions (regular expressions) a set of given permissions must
+ * all satisfy: each permission in the list must be matched by at least one
+ * of the given permissions.
+ * 
+ * Permissions are compiled when added. Permissions that are plain names (dots
+ * are allowed) are first looked up as they are in the given set, so that the
+ * common case costs a hash lookup. Decisions are remembered per content of
+ * the permission set (on a copy of it, so that changing a set after a check
+ * can not reuse a decision taken for different permissions), so that checking
+ * again the same permissions costs a set lookup.
  * 
+ * check() is thread safe; permissions are supposed to be added before the
+ * list is used, but adding a permission drops all remembered decisions.
  */
 public class AccessControlList {
     
+    public static final int DEFAULT_MAX_DECISIONS = 1024;
+    
+    private static final String META_CHARACTERS = "\\[]{}()<>*+-=!?^$|";
+    
     Set<String> permissions = new HashSet<>();
     
-    public AccessControlList add(final String permission) {
-        permissions.add(permission);
+    private volatile List<Permission> compiled = Collections.emptyList();
+    private final ConcurrentMap<Set<String>, Boolean> decisions = new ConcurrentHashMap<>();
+    
+    public synchronized AccessControlList add(final String permission) {
+        if (permissions.add(permission)) {
+            List<Permission> list = new ArrayList<>(compiled);
+            list.add(new Permission(permission));
+            compiled = list;
+            decisions.clear();
+        }
         
         return this;
     }
     
+    /**
+     * @return the permissions in this list (read only)
+     */
     public Set<String> getPermissions() {
-        return permissions;
+        return Collections.unmodifiableSet(permissions);
     }
     
     public void check(final Set<String> permissions)
@@ -44,20 +76,39 @@ public class AccessControlList {
             throw new AccessControlException("no permissions given");
         }
         
-        if (this.permissions.isEmpty()) {
+        final List<Permission> compiled = this.compiled;
+        if (compiled.isEmpty()) {
             throw new AccessControlException("no allowed permissions");
         }
         
-        if (permissions.isEmpty() || !containsAll(permissions)) {
+        if (permissions.isEmpty() || !isGranted(compiled, permissions)) {
             throw new AccessControlException("given permissions " + permissions + " miss some of " + this.permissions);
         }
     }
     
     // --------------------------------------------------------- private methods
     
-    private boolean containsAll(final Set<String> permissions) {
-        for(String p: this.permissions) {
-            if (!contains(permissions, p)) {
+    private boolean isGranted(final List<Permission> compiled, final Set<String> permissions) {
+        Boolean decision = decisions.get(permissions);
+        if (decision != null) {
+            return decision;
+        }
+        
+        final Set<String> snapshot = Collections.unmodifiableSet(new HashSet<>(permissions));
+        decision = containsAll(compiled, snapshot);
+        if (compiled == this.compiled) {
+            if (decisions.size() >= DEFAULT_MAX_DECISIONS) {
+                purge();
+            }
+            decisions.put(snapshot, decision);
+        }
+        
+        return decision;
+    }
+    
+    private boolean containsAll(final List<Permission> compiled, final Set<String> permissions) {
+        for (Permission p: compiled) {
+            if (!p.isSatisfiedBy(permissions)) {
                 return false;
             }
         }
@@ -65,13 +116,48 @@ public class AccessControlList {
         return true;
     }
     
-    private boolean contains(final Set<String> permissions, final String toCheck) {
-        for(String p: permissions) {
-            if (p.matches(toCheck)) {
-                return true;
+    /**
+     * Drops some arbitrary decisions to make room for a new one
+     */
+    private void purge() {
+        final Iterator<Set<String>> i = decisions.keySet().iterator();
+        while ((decisions.size() >= DEFAULT_MAX_DECISIONS) && i.hasNext()) {
+            i.next(); i.remove();
+        }
+    }
+    
+    // --------------------------------------------------------- Permission
+    
+    private static final class Permission {
+        final String name;
+        final Pattern pattern;
+        final boolean plain;
+        
+        Permission(final String name) {
+            this.name = name;
+            this.pattern = Pattern.compile(name);
+            
+            boolean plain = true;
+            for (int i=0; plain && (i<name.length()); ++i) {
+                plain = (META_CHARACTERS.indexOf(name.charAt(i)) < 0);
             }
+            this.plain = plain;
         }
         
-        return false;
+        boolean isSatisfiedBy(final Set<String> permissions) {
+            //
+            // a plain name matches itself, no need to scan
+            //
+            if (plain && permissions.contains(name)) {
+                return true;
+            }
+            for (String p: permissions) {
+                if (pattern.matcher(p).matches()) {
+                    return true;
+                }
+            }
+            
+            return false;
+        }
     }
 }
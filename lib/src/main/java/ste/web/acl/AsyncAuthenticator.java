@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.acl;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An authenticator that does not block the calling thread: the check is
+ * carried out in the background (e.g. by a non blocking client of the
+ * credentials backend) and its outcome is given by the returned stage.
+ *
+ * @author ste
+ */
+public interface AsyncAuthenticator {
+    /**
+     * Starts the authentication of the given user
+     *
+     * @param user the user to authenticate - MAY BE NULL
+     *
+     * @return a stage completed normally if the authentication succeeds or
+     *         exceptionally with InvalidCredentialsException if it fails or
+     *         MissingCredentialsException if user does not contain
+     *         credentials or is null
+     */
+    public CompletionStage<Void> checkAsync(User user);
+
+    /**
+     * The authenticator can provide a message to describe the authentication
+     * mechanism. This can be used to set the WWW-Authenticate header
+     *
+     * @return the authentication message
+     */
+    public String getMessage();
+}
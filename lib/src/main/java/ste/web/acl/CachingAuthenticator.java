@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.acl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An Authenticator that remembers the outcome of the checks of another
+ * authenticator, so that users presenting the same credentials at each
+ * request (e.g. with basic authentication) are verified once every ttl
+ * milliseconds instead of at every request.
+ *
+ * Successful checks are remembered with the permissions the authenticator
+ * gave to the user, a copy of which is given back to the user at each cache
+ * hit. Failed checks are remembered for a shorter time, so that repeated
+ * attempts with wrong credentials do not cost a full check each.
+ *
+ * Entries are keyed by a salted SHA-256 digest of name and secret: secrets
+ * are never kept in memory and the salt is random for each instance.
+ * Successful checks are kept in a LRU of maxSize entries; failed checks in a
+ * separate one of maxSize/4 entries (at least one), so that a client guessing
+ * passwords can not push legitimate users out of the cache.
+ *
+ * This class is thread safe if the given authenticator is.
+ *
+ * @author ste
+ */
+public class CachingAuthenticator implements Authenticator {
+
+    public static final long DEFAULT_TTL = 5*60*1000;
+    public static final long DEFAULT_FAILURE_TTL = 2*1000;
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final Authenticator authenticator;
+    private final long ttl, failureTtl;
+    private final int maxSize;
+
+    private final byte[] salt;
+    private final Map<String, Entry> successes, failed;
+
+    private final AtomicLong hits, misses, failures;
+
+    /**
+     * @param authenticator the authenticator to cache - NOT NULL
+     * @param ttl how long a successful check is remembered in milliseconds -
+     *            GREATER THAN 0
+     * @param failureTtl how long a failed check is remembered in milliseconds;
+     *                   0 not to remember failures - NOT NEGATIVE
+     * @param maxSize the maximum number of remembered checks - GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if any of the parameter has an illegal
+     *         value
+     */
+    public CachingAuthenticator(
+        final Authenticator authenticator,
+        final long ttl, final long failureTtl, final int maxSize
+    ) {
+        if (authenticator == null) {
+            throw new IllegalArgumentException("authenticator can not be null");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be greater than 0");
+        }
+        if (failureTtl < 0) {
+            throw new IllegalArgumentException("failureTtl can not be negative");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        this.authenticator = authenticator;
+        this.ttl = ttl;
+        this.failureTtl = failureTtl;
+        this.maxSize = maxSize;
+
+        this.salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        this.successes = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingAuthenticator.this.maxSize;
+            }
+        };
+        this.failed = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > Math.max(1, CachingAuthenticator.this.maxSize / 4);
+            }
+        };
+
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Shortcut for new CachingAuthenticator(authenticator, DEFAULT_TTL,
+     * DEFAULT_FAILURE_TTL, DEFAULT_MAX_SIZE)
+     */
+    public CachingAuthenticator(final Authenticator authenticator) {
+        this(authenticator, DEFAULT_TTL, DEFAULT_FAILURE_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    @Override
+    public void check(final User user)
+    throws MissingCredentialsException, InvalidCredentialsException {
+        if ((user == null) || (user.getName() == null)) {
+            authenticator.check(user); // let it decide what to do
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final String key = key(user);
+
+        Entry entry = get(successes, key, now);
+        if (entry != null) {
+            hits.incrementAndGet();
+            user.setPermissions(copy(entry.permissions));
+            return;
+        }
+        if (get(failed, key, now) != null) {
+            failures.incrementAndGet();
+            throw new InvalidCredentialsException();
+        }
+        misses.incrementAndGet();
+
+        try {
+            authenticator.check(user);
+        } catch (InvalidCredentialsException x) {
+            if (failureTtl > 0) {
+                put(failed, key, new Entry(user.getName(), null, now + failureTtl));
+            }
+            throw x;
+        }
+        put(successes, key, new Entry(user.getName(), copy(user.getPermissions()), now + ttl));
+    }
+
+    @Override
+    public String getMessage() {
+        return authenticator.getMessage();
+    }
+
+    /**
+     * Forgets all checks of the user with the given name (e.g. after a
+     * change of password or permissions)
+     *
+     * @param name the user name - MAY BE NULL
+     */
+    public void invalidate(final String name) {
+        invalidate(successes, name); invalidate(failed, name);
+    }
+
+    /**
+     * Forgets all checks; counters are not reset.
+     */
+    public void clear() {
+        synchronized (successes) {
+            successes.clear();
+        }
+        synchronized (failed) {
+            failed.clear();
+        }
+    }
+
+    /**
+     * @return the number of remembered checks, possibly expired
+     */
+    public int size() {
+        synchronized (successes) {
+            synchronized (failed) {
+                return successes.size() + failed.size();
+            }
+        }
+    }
+
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getFailureTtl() {
+        return failureTtl;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return how many successful checks were served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times the authenticator had to be called
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many failed checks were served from the cache
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String key(final User user) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            md.update(user.getName().getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+            if (user.getSecret() != null) {
+                md.update((byte)1);
+                md.update(user.getSecret().getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getEncoder().encodeToString(md.digest());
+        } catch (NoSuchAlgorithmException x) {
+            //
+            // SHA-256 is available in every Java platform
+            //
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /**
+     * @return the entry with the given key if not expired, null otherwise
+     */
+    private Entry get(final Map<String, Entry> entries, final String key, final long now) {
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now >= entry.expiration) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void put(final Map<String, Entry> entries, final String key, final Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private void invalidate(final Map<String, Entry> entries, final String name) {
+        synchronized (entries) {
+            Iterator<Entry> i = entries.values().iterator();
+            while (i.hasNext()) {
+                if (i.next().name.equals(name)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Users are given their own permissions, so that changing them does not
+     * affect other requests
+     */
+    private Set<String> copy(final Set<String> permissions) {
+        return (permissions == null) ? null : new HashSet<>(permissions);
+    }
+
+    // --------------------------------------------------------- Entry
+
+    private static final class Entry {
+        final String name;
+        final Set<String> permissions;
+        final long expiration;
+
+        Entry(final String name, final Set<String> permissions, final long expiration) {
+            this.name = name;
+            this.permissions = permissions;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.acl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Turns a blocking Authenticator into an AsyncAuthenticator by running its
+ * checks with the given executor, so that a slow credentials backend blocks
+ * the executor threads instead of the caller.
+ *
+ * @author ste
+ */
+public class ExecutorAuthenticator implements AsyncAuthenticator {
+
+    private final Authenticator authenticator;
+    private final Executor executor;
+
+    /**
+     * @param authenticator the blocking authenticator - NOT NULL
+     * @param executor the executor running the checks - NOT NULL
+     */
+    public ExecutorAuthenticator(final Authenticator authenticator, final Executor executor) {
+        if (authenticator == null) {
+            throw new IllegalArgumentException("authenticator can not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor can not be null");
+        }
+        this.authenticator = authenticator;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletionStage<Void> checkAsync(final User user) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        authenticator.check(user);
+                        result.complete(null);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException x) {
+            result.completeExceptionally(x);
+        }
+
+        return result;
+    }
+
+    @Override
+    public String getMessage() {
+        return authenticator.getMessage();
+    }
+
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+}
@@ -15,19 +15,24 @@
  */
 package ste.web.acl;
 
+import java.io.Serializable;
 import java.security.Principal;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 
 /**
+ * A user. Users are serializable so that they can be stored with the session
+ * they are authenticated in; the secret is not serialized.
  *
  * @author ste
  */
-public class User implements Principal {
+public class User implements Principal, Serializable {
+    
+    private static final long serialVersionUID = 1L;
     
     final private String name;
     
-    private String secret;
+    private transient String secret;
     private Set<String> permissions;
     
     /**
@@ -21,6 +21,8 @@
  */
 package ste.web.beanshell;
 
+import bsh.EvalError;
+import bsh.Interpreter;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -50,6 +52,8 @@ public class BeanShellUtils {
     public static final String PARAM_VIEWS = "views-prefix";
     public static final String CONTENT_TYPE_JSON = "application/json";
 
+    private static final String VAR_BSH = "bsh";
+
     public static final Logger log = Logger.getLogger(LOG_NAME);
 
     // ---------------------------------------------------------- Public methods
@@ -100,6 +104,24 @@ public class BeanShellUtils {
         return name.replaceAll("\\.", "_");
     }
     
+    /**
+     * Resets the global namespace of the given interpreter, so that no
+     * variables, methods or imports are left from previous evaluations. The
+     * <i>bsh</i> system object is kept.
+     *
+     * @param interpreter the interpreter to reset - NOT NULL
+     *
+     * @throws EvalError if the interpreter can not be reset
+     */
+    public static void reset(final Interpreter interpreter) throws EvalError {
+        if (interpreter == null) {
+            throw new IllegalArgumentException("interpreter cannot be null");
+        }
+        Object root = interpreter.get(VAR_BSH);
+        interpreter.getNameSpace().clear();
+        interpreter.set(VAR_BSH, root);
+    }
+
     public static Object getJSONBody(final InputStream in) throws IOException {
         Object o = null;
         try {
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.beanshell;
+
+import bsh.EvalError;
+import bsh.Interpreter;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * A pool of BeanShell interpreters created upfront, so that requests do not
+ * pay the creation of the class manager and of the global namespace.
+ *
+ * Interpreters are reset to a clean global namespace when they are returned
+ * to the pool, therefore no variables, methods or imports leak from one
+ * request to the next one. Note that the <i>bsh</i> system object is kept.
+ *
+ * If all interpreters are checked out, checkout() does not block and creates
+ * a new interpreter instead; this is reported as a saturation. When returned,
+ * such an interpreter is kept only if the pool has room for it.
+ *
+ * The most recently returned interpreter is the first to be checked out
+ * again, so that a few interpreters serve most requests and keep warm what is
+ * cached for them (e.g. their parsed scripts, see ScriptCache).
+ *
+ * This class is thread safe.
+ *
+ * @author ste
+ */
+public class InterpreterPool {
+
+    public static final int DEFAULT_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final int size;
+    private final BlockingDeque<Interpreter> interpreters;
+    private final Logger log;
+
+    private final AtomicLong checkouts, saturations, checkoutTime;
+
+    /**
+     * Creates a new pool and warms it up with size interpreters.
+     *
+     * @param size the number of pooled interpreters - GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public InterpreterPool(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+        this.size = size;
+        this.interpreters = new LinkedBlockingDeque<>(size);
+        this.log = Logger.getLogger(LOG_NAME);
+        this.checkouts = new AtomicLong();
+        this.saturations = new AtomicLong();
+        this.checkoutTime = new AtomicLong();
+
+        for (int i=0; i<size; ++i) {
+            interpreters.offer(new Interpreter());
+        }
+    }
+
+    /**
+     * Shortcut for new InterpreterPool(DEFAULT_SIZE)
+     */
+    public InterpreterPool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Takes an interpreter from the pool; if none is available, a new one is
+     * created. The interpreter must be given back with checkin() once done.
+     *
+     * @return an interpreter with a clean namespace
+     */
+    public Interpreter checkout() {
+        final long start = System.nanoTime();
+
+        Interpreter interpreter = interpreters.pollFirst();
+        if (interpreter == null) {
+            saturations.incrementAndGet();
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("interpreter pool saturated (size: %d)", size));
+            }
+            interpreter = new Interpreter();
+        }
+
+        checkouts.incrementAndGet();
+        checkoutTime.addAndGet(System.nanoTime() - start);
+
+        return interpreter;
+    }
+
+    /**
+     * Resets the given interpreter and puts it back in the pool.
+     *
+     * @param interpreter the interpreter to give back - MAY BE NULL
+     */
+    public void checkin(final Interpreter interpreter) {
+        if (interpreter == null) {
+            return;
+        }
+
+        try {
+            BeanShellUtils.reset(interpreter);
+            interpreters.offerFirst(interpreter);
+        } catch (EvalError x) {
+            //
+            // the interpreter is discarded; a new one will be created if needed
+            //
+            if (log.isLoggable(Level.SEVERE)) {
+                log.severe(String.format("unable to reset interpreter: %s", x.getMessage()));
+                log.throwing(getClass().getName(), "checkin", x);
+            }
+        }
+    }
+
+    /**
+     * @return the number of pooled interpreters
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of interpreters currently available in the pool
+     */
+    public int getAvailable() {
+        return interpreters.size();
+    }
+
+    /**
+     * @return how many times an interpreter was checked out
+     */
+    public long getCheckouts() {
+        return checkouts.get();
+    }
+
+    /**
+     * @return how many times a checkout found the pool empty
+     */
+    public long getSaturations() {
+        return saturations.get();
+    }
+
+    /**
+     * @return the total time spent in checkout() in nanoseconds
+     */
+    public long getCheckoutTime() {
+        return checkoutTime.get();
+    }
+
+    /**
+     * @return the average time spent in checkout() in nanoseconds
+     */
+    public long getAverageCheckoutTime() {
+        long n = checkouts.get();
+
+        return (n == 0) ? 0 : checkoutTime.get() / n;
+    }
+}
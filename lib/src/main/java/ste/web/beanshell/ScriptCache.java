@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.beanshell;
+
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.ParsedScript;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed scripts keyed by the script absolute path. A cached
+ * script is reused until the file's last modification time or size changes;
+ * when the cache is full the least recently used script is evicted.
+ *
+ * BeanShell caches the types it resolves in the parsed nodes, therefore a
+ * parsed script can not be shared by different interpreters (see
+ * ParsedScript): each interpreter gets its own parse of a script, created from
+ * the cached source the first time the interpreter asks for it. Interpreters
+ * are meant to be reused (e.g. taken from an InterpreterPool of at most
+ * maxInterpreters interpreters): parses are kept for the first
+ * maxInterpreters interpreters asking for a script, any other interpreter
+ * (e.g. one created because the pool was saturated) gets a parse that is not
+ * cached. Parses are held by weak references to their interpreters, so that
+ * discarded interpreters do not stay reachable from the cache.
+ *
+ * Scripts are read with <code>BeanShellUtils.getScript()</code> so that they
+ * behave exactly as the ones evaluated from source.
+ *
+ * This class is thread safe.
+ *
+ * @author ste
+ */
+public class ScriptCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+    public static final int DEFAULT_MAX_INTERPRETERS = InterpreterPool.DEFAULT_SIZE;
+
+    private final int maxSize, maxInterpreters;
+    private final Map<String, Entry> scripts;
+
+    private final AtomicLong hits, misses, reloads;
+
+    /**
+     * Creates a new cache holding at most maxSize scripts, each parsed for at
+     * most maxInterpreters interpreters
+     *
+     * @param maxSize the maximum number of cached scripts - GREATER THAN 0
+     * @param maxInterpreters the maximum number of parses of each script -
+     *                        GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if maxSize or maxInterpreters are not
+     *         positive
+     */
+    public ScriptCache(final int maxSize, final int maxInterpreters) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        if (maxInterpreters <= 0) {
+            throw new IllegalArgumentException("maxInterpreters must be greater than 0");
+        }
+        this.maxSize = maxSize;
+        this.maxInterpreters = maxInterpreters;
+        this.scripts = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ScriptCache.this.maxSize;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.reloads = new AtomicLong();
+    }
+
+    /**
+     * Shortcut for new ScriptCache(maxSize, DEFAULT_MAX_INTERPRETERS)
+     */
+    public ScriptCache(final int maxSize) {
+        this(maxSize, DEFAULT_MAX_INTERPRETERS);
+    }
+
+    /**
+     * Shortcut for new ScriptCache(DEFAULT_MAX_SIZE)
+     */
+    public ScriptCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Returns the parse of the given script owned by the given interpreter,
+     * parsing it if not yet cached for the interpreter or if the file changed
+     * since it was read. The returned script must be evaluated only by the
+     * given interpreter.
+     *
+     * @param script the script file - NOT NULL
+     * @param interpreter the interpreter that will evaluate the script - NOT NULL
+     *
+     * @return the parsed script
+     *
+     * @throws FileNotFoundException if the script does not exist
+     * @throws IOException in case of IO errors
+     * @throws EvalError in case of syntax errors
+     */
+    public ParsedScript get(final File script, final Interpreter interpreter)
+    throws IOException, EvalError {
+        if (script == null) {
+            throw new IllegalArgumentException("script can not be null");
+        }
+        if (interpreter == null) {
+            throw new IllegalArgumentException("interpreter can not be null");
+        }
+
+        final String key = script.getAbsolutePath();
+        final long lastModified = script.lastModified();
+        final long length = script.length();
+
+        Entry entry;
+        synchronized (scripts) {
+            entry = scripts.get(key);
+            if ((entry != null) && entry.isCurrent(lastModified, length)) {
+                ParsedScript parsed = entry.parses.get(interpreter);
+                if (parsed != null) {
+                    hits.incrementAndGet();
+                    return parsed;
+                }
+            }
+        }
+
+        //
+        // reading and parsing are done outside the lock so that a big script
+        // does not hold the other ones; in the worst case the same script is
+        // parsed twice for the same interpreter
+        //
+        if ((entry != null) && entry.isCurrent(lastModified, length)) {
+            misses.incrementAndGet();
+        } else {
+            if (entry == null) {
+                misses.incrementAndGet();
+            } else {
+                reloads.incrementAndGet();
+            }
+            entry = new Entry(BeanShellUtils.getScript(script), lastModified, length);
+        }
+        final ParsedScript parsed = ParsedScript.parse(new StringReader(entry.source), key);
+
+        synchronized (scripts) {
+            Entry current = scripts.get(key);
+            if ((current != null) && current.isCurrent(lastModified, length)) {
+                entry = current;
+            } else {
+                scripts.put(key, entry);
+            }
+            if (entry.parses.size() < maxInterpreters) {
+                entry.parses.put(interpreter, parsed);
+            }
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Removes all cached scripts; counters are not reset.
+     */
+    public void clear() {
+        synchronized (scripts) {
+            scripts.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached scripts
+     */
+    public int size() {
+        synchronized (scripts) {
+            return scripts.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxInterpreters() {
+        return maxInterpreters;
+    }
+
+    /**
+     * @return how many times a parsed script was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times a script had to be parsed because not cached
+     *         (for the asking interpreter)
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many times a cached script had to be read and parsed again
+     *         because the file changed
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    // --------------------------------------------------------- Entry
+
+    private static final class Entry {
+        final String source;
+        final long lastModified;
+        final long length;
+
+        //
+        // interpreters do not override equals(), so parses are kept by
+        // interpreter identity; accessed holding the lock on scripts
+        //
+        final Map<Interpreter, ParsedScript> parses;
+
+        Entry(final String source, final long lastModified, final long length) {
+            this.source = source;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.parses = new WeakHashMap<>();
+        }
+
+        boolean isCurrent(final long lastModified, final long length) {
+            return (this.lastModified == lastModified) && (this.length == length);
+        }
+    }
+}
@@ -34,10 +34,23 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import ste.web.beanshell.InterpreterPool;
+import ste.web.beanshell.ScriptCache;
 
 import static ste.web.beanshell.Constants.*;
 
 /**
+ * Executes the requested controller script with an interpreter taken from a
+ * pool, so that requests served concurrently by different Jetty threads never
+ * share variables. The interpreter is reset when given back to the pool once
+ * the request has been handled, so that it does not keep alive the request,
+ * the response, the session or any other variable of the previous request;
+ * the variables set by the script are available as request attributes.
+ *
+ * Scripts are parsed once and reused until they change (see ScriptCache); the
+ * pool holds as many interpreters as the cache keeps parses of each script,
+ * so that pooled interpreters always find their parses. The pool is created
+ * when the handler starts and dropped, with its interpreters, when it stops.
  *
  * @author ste
  */
@@ -45,18 +58,34 @@ public class BeanShellHandler extends AbstractHandler {
 
     // ------------------------------------------------------------ Private data
 
-    private Interpreter bsh;
+    private volatile InterpreterPool interpreters;
+
+    private volatile String controllersFolder;
 
-    private String controllersFolder;
+    private final ScriptCache scripts;
 
     private final Logger log;
 
     // ------------------------------------------------------------ Constructors
 
     public BeanShellHandler() {
-        bsh = null;
-        controllersFolder = null;
-        log = Logger.getLogger(LOG_NAME);
+        this(new ScriptCache());
+    }
+
+    /**
+     * Creates a new BeanShellHandler that takes the parsed scripts from the
+     * given cache.
+     *
+     * @param scripts the script cache - NOT NULL
+     */
+    public BeanShellHandler(final ScriptCache scripts) {
+        if (scripts == null) {
+            throw new IllegalArgumentException("scripts can not be null");
+        }
+        this.interpreters = null;
+        this.controllersFolder = null;
+        this.scripts = scripts;
+        this.log = Logger.getLogger(LOG_NAME);
     }
 
     // ---------------------------------------------------------- Public methods
@@ -77,9 +106,30 @@ public class BeanShellHandler extends AbstractHandler {
     }
 
 
+    /**
+     * @return the cache of the parsed scripts
+     */
+    public ScriptCache getScriptCache() {
+        return scripts;
+    }
+
+    /**
+     * @return the pool of interpreters used to execute the scripts or null if
+     *         the handler is not started
+     */
+    public InterpreterPool getInterpreterPool() {
+        return interpreters;
+    }
+
     @Override
     protected void doStart() throws Exception {
-        bsh = new Interpreter();
+        interpreters = new InterpreterPool(scripts.getMaxInterpreters());
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        interpreters = null;
+        scripts.clear();
     }
 
 
@@ -100,29 +150,41 @@ public class BeanShellHandler extends AbstractHandler {
 
         String root = (String)getServer().getAttribute(ATTR_APP_ROOT);
 
-        if (controllersFolder == null) {
-            controllersFolder = DEFAULT_CONTROLLERS_PREFIX;
+        //
+        // the folder is fixed in a local copy so that concurrent requests do
+        // not need to synchronize on it
+        //
+        String folder = controllersFolder;
+        if (folder == null) {
+            folder = DEFAULT_CONTROLLERS_PREFIX;
         } else {
             //
             // let's fix a common mistake :)
             //
-            if (!controllersFolder.startsWith("/")) {
-                setControllersFolder('/' + getControllersFolder());
+            if (!folder.startsWith("/")) {
+                folder = '/' + folder;
             }
         }
 
         File scriptFile = new File(root, uri);
-        String controllerPath = scriptFile.getParent() + getControllersFolder();
+        String controllerPath = scriptFile.getParent() + folder;
         scriptFile = new File(controllerPath, scriptFile.getName());
 
         if (log.isLoggable(Level.FINE)) {
             log.fine(String.format("script path: %s", scriptFile.getAbsolutePath()));
         }
 
+        final InterpreterPool interpreters = this.interpreters;
+        if (interpreters == null) {
+            throw new ServletException("handler not started");
+        }
+
+        Interpreter bsh = interpreters.checkout();
+
         try {
             BeanShellUtils.setup(bsh, hrequest, hresponse);
             bsh.set(VAR_SOURCE, scriptFile.getAbsolutePath());
-            bsh.eval(BeanShellUtils.getScript(scriptFile));
+            scripts.get(scriptFile, bsh).eval(bsh);
 
             String view = (String)bsh.get(ATTR_VIEW);
             if (view == null) {
@@ -145,17 +207,14 @@ public class BeanShellHandler extends AbstractHandler {
                 log.throwing(getClass().getName(), "handleError", x);
             }
             throw new ServletException("error evaluating " + uri + ": " + msg, x);
+        } finally {
+            //
+            // reset while given back: nothing of the request (request,
+            // response, session, script variables) is kept alive
+            //
+            interpreters.checkin(bsh);
         }
     }
 
-    /**
-     * Returns the interpreter used by this handler
-     *
-     * @return the interpreter used by this handler
-     */
-    public Interpreter getInterpreter() {
-        return bsh;
-    }
-
     // --------------------------------------------------------- Private methods
 }
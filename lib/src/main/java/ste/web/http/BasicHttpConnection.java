@@ -16,32 +16,100 @@
 package ste.web.http;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.net.Socket;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.MessageConstraints;
 import org.apache.http.entity.ContentLengthStrategy;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.io.HttpMessageParserFactory;
 import org.apache.http.io.HttpMessageWriterFactory;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+import static ste.web.beanshell.Constants.LOG_NAME;
+import ste.web.http.entity.CommittableEntity;
+import ste.web.http.entity.ZeroCopyEntity;
+import ste.web.http.nio.NioHttpServer;
 
 /**
  * This is an extension of DefaultBHttpServerConnection which provides a
- * <code>getWriter()</code> around the socket output stream.
+ * <code>getWriter()</code> to write the content of the response (see
+ * ResponseWriter): the writer is buffered, encodes in UTF-8 and sends content
+ * that does not fit in its buffer chunked through the session buffer.
+ * 
+ * When the socket has a channel (i.e. it was accepted by a ServerSocketChannel)
+ * the content of ZeroCopyEntity entities with a known length is written
+ * straight to the channel, which lets the OS send files without copying them 
+ * in user space.
+ * 
+ * A response the writer commits before the handler returns is sent before
+ * HttpService processes it, therefore the connection runs its own response
+ * processor on it (see setResponseProcessor()).
+ * 
+ * The status line and the headers of a response with a CommittableEntity are
+ * sent only when the entity commits, so that if producing the first chunk of
+ * the content fails, a 500 response is sent instead.
  * 
  * @author ste
  */
 public class BasicHttpConnection extends org.apache.http.impl.DefaultBHttpServerConnection {
     
-    private Writer writer;
+    /**
+     * The response interceptors that add the headers HttpService would add
+     * to a response it processes
+     */
+    public static final HttpProcessor DEFAULT_RESPONSE_PROCESSOR = HttpProcessorBuilder.create()
+        .add(new ResponseDate())
+        .add(new ResponseServer(NioHttpServer.SERVER_NAME))
+        .add(new ResponseConnControl())
+        .build();
+    
+    private ResponseWriter writer;
+    private int writerBufferSize;
+    private ResponseWriter.FlushPolicy flushPolicy;
+    private HttpProcessor responseProcessor;
+    
+    /**
+     * The request being served, its method and its protocol version
+     */
+    private HttpRequest request;
+    private String method;
+    private ProtocolVersion version;
+    
+    /**
+     * The response already sent by the writer
+     */
+    private HttpResponse streamed;
+    
+    /**
+     * The response whose header is waiting for the commit of its entity
+     */
+    private HttpResponse uncommitted;
 
     public BasicHttpConnection() {
         super(ConnectionConfig.DEFAULT.getBufferSize());
         writer = null;
+        writerBufferSize = ResponseWriter.DEFAULT_BUFFER_SIZE;
+        flushPolicy = ResponseWriter.DEFAULT_FLUSH_POLICY;
+        responseProcessor = DEFAULT_RESPONSE_PROCESSOR;
     }
 
     BasicHttpConnection(int bufferSize, int fragmentSizeHint, CharsetDecoder createDecoder, CharsetEncoder createEncoder, MessageConstraints messageConstraints, ContentLengthStrategy incomingContentStrategy, ContentLengthStrategy outgoingContentStrategy, HttpMessageParserFactory<HttpRequest> requestParserFactory, HttpMessageWriterFactory<HttpResponse> responseWriterFactory) {
@@ -51,6 +119,9 @@ public class BasicHttpConnection extends org.apache.http.impl.DefaultBHttpServer
             requestParserFactory, responseWriterFactory
         );
         writer = null;
+        writerBufferSize = ResponseWriter.DEFAULT_BUFFER_SIZE;
+        flushPolicy = ResponseWriter.DEFAULT_FLUSH_POLICY;
+        responseProcessor = DEFAULT_RESPONSE_PROCESSOR;
     }
     
     @Override
@@ -67,11 +138,285 @@ public class BasicHttpConnection extends org.apache.http.impl.DefaultBHttpServer
         }
     }
     
-    public Writer getWriter() throws IOException {
+    @Override
+    public HttpRequest receiveRequestHeader() throws HttpException, IOException {
+        request = super.receiveRequestHeader();
+        method = request.getRequestLine().getMethod();
+        version = request.getRequestLine().getProtocolVersion();
+        streamed = null;
+        if (writer != null) {
+            writer.reset();
+        }
+        
+        return request;
+    }
+    
+    @Override
+    public void sendResponseHeader(final HttpResponse response)
+    throws HttpException, IOException {
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        
+        if ((writer != null) && writer.isUsed() && writer.finish(response)) {
+            if (response != streamed) {
+                throw new IOException("response already committed by the writer");
+            }
+            //
+            // let the connection reuse strategy see what was actually sent
+            //
+            response.removeHeaders(HTTP.CONTENT_LEN);
+            response.setHeader(HTTP.TRANSFER_ENCODING, HTTP.CHUNK_CODING);
+            return;
+        }
+        
+        if ((response.getEntity() instanceof CommittableEntity) && canHaveBody(response)) {
+            uncommitted = response;
+            return;
+        }
+        
+        uncommitted = null;
+        super.sendResponseHeader(response);
+    }
+    
+    @Override
+    public void sendResponseEntity(final HttpResponse response)
+    throws HttpException, IOException {
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        
+        if (response == streamed) {
+            streamed = null;
+            return;
+        }
+        
+        final HttpEntity entity = response.getEntity();
+        if ((response == uncommitted) && (entity instanceof CommittableEntity)) {
+            uncommitted = null;
+            sendCommittableEntity(response, (CommittableEntity)entity);
+            return;
+        }
+        
+        final Socket socket = getSocket();
+        if ((entity instanceof ZeroCopyEntity) && !entity.isChunked()
+        && (entity.getContentLength() >= 0) && !response.containsHeader(HTTP.TRANSFER_ENCODING)
+        && (socket != null) && (socket.getChannel() != null)) {
+            ensureOpen();
+            //
+            // status line and headers are still in the session buffer
+            //
+            doFlush();
+            ((ZeroCopyEntity)entity).writeTo(socket.getChannel());
+            return;
+        }
+        
+        super.sendResponseEntity(response);
+    }
+    
+    /**
+     * @return the writer of the content of the current response, created the
+     *         first time it is requested
+     */
+    public Writer getWriter() {
         if (writer == null) {
-            writer = new OutputStreamWriter(getSocketOutputStream(getSocket()));
+            writer = new ResponseWriter(this, writerBufferSize, flushPolicy);
         }
         return writer;
     }
     
+    /**
+     * Same as getWriter() but content that does not fit in the writer buffer
+     * is streamed as the content of the given response.
+     * 
+     * @param response the response being produced - NOT NULL
+     * 
+     * @return the writer
+     */
+    public Writer getWriter(final HttpResponse response) {
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        getWriter();
+        writer.bind(response);
+        
+        return writer;
+    }
+    
+    public int getWriterBufferSize() {
+        return writerBufferSize;
+    }
+    
+    /**
+     * Sets the size of the buffer of the writer; it takes effect if the writer
+     * has not been created yet.
+     * 
+     * @param size the buffer size in bytes - GREATER THAN 0
+     */
+    public void setWriterBufferSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+        this.writerBufferSize = size;
+    }
+    
+    public ResponseWriter.FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+    
+    /**
+     * Sets the flush policy of the writer; it takes effect if the writer has
+     * not been created yet.
+     * 
+     * @param policy the flush policy - NOT NULL
+     */
+    public void setFlushPolicy(final ResponseWriter.FlushPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy can not be null");
+        }
+        this.flushPolicy = policy;
+    }
+    
+    public HttpProcessor getResponseProcessor() {
+        return responseProcessor;
+    }
+    
+    /**
+     * Sets the processor of the responses the writer commits before the 
+     * handler returns; it should be the processor (or the response part of 
+     * the processor) of the HttpService serving the connection.
+     * 
+     * @param processor the response processor - NOT NULL
+     */
+    public void setResponseProcessor(final HttpProcessor processor) {
+        if (processor == null) {
+            throw new IllegalArgumentException("processor can not be null");
+        }
+        this.responseProcessor = processor;
+    }
+    
+    // ------------------------------------------------------- package methods
+    
+    /**
+     * @return true if the content of the given response can be sent chunked
+     *         before the response is complete
+     */
+    boolean canStream(final HttpResponse response) {
+        return (version != null) && version.greaterEquals(HttpVersion.HTTP_1_1)
+            && canHaveBody(response);
+    }
+    
+    /**
+     * Sends status line and headers of the given response for chunked content
+     * of the given type
+     * 
+     * @return the stream to write the content to
+     */
+    OutputStream commit(final HttpResponse response, final ContentType type) 
+    throws IOException {
+        response.removeHeaders(HTTP.CONTENT_LEN);
+        
+        final OutputStream out;
+        try {
+            //
+            // HttpService runs its interceptors only after the handler: add
+            // now the headers they would add (Date, Server, Connection...)
+            //
+            final HttpCoreContext context = HttpCoreContext.create();
+            context.setAttribute(HttpCoreContext.HTTP_CONNECTION, this);
+            context.setAttribute(HttpCoreContext.HTTP_REQUEST, request);
+            responseProcessor.process(response, context);
+            
+            response.setHeader(HTTP.TRANSFER_ENCODING, HTTP.CHUNK_CODING);
+            response.setHeader(HTTP.CONTENT_TYPE, type.toString());
+            super.sendResponseHeader(response);
+            out = prepareOutput(response);
+        } catch (HttpException x) {
+            throw new IOException(x);
+        }
+        streamed = response;
+        
+        //
+        // what was sent is not an entity anymore: interceptors that process 
+        // the response after the handler shall not complain about it
+        //
+        response.removeHeaders(HTTP.TRANSFER_ENCODING);
+        response.setEntity(null);
+        
+        return out;
+    }
+    
+    // --------------------------------------------------------- private methods
+    
+    private void sendCommittableEntity(final HttpResponse response, final CommittableEntity entity)
+    throws HttpException, IOException {
+        final OutputStream[] out = new OutputStream[1];
+        final boolean[] committed = new boolean[] {false};
+        try {
+            entity.writeTo(new CommittableEntity.Commit() {
+                @Override
+                public OutputStream commit(final long length) throws IOException {
+                    committed[0] = true;
+                    if (length >= 0) {
+                        response.removeHeaders(HTTP.TRANSFER_ENCODING);
+                        response.setHeader(HTTP.CONTENT_LEN, String.valueOf(length));
+                    }
+                    try {
+                        BasicHttpConnection.super.sendResponseHeader(response);
+                        out[0] = prepareOutput(response);
+                    } catch (HttpException x) {
+                        throw new IOException(x);
+                    }
+                    
+                    return out[0];
+                }
+            });
+        } catch (IOException | RuntimeException x) {
+            if (committed[0]) {
+                throw x; // too late, the connection can only be closed
+            }
+            
+            final Logger log = Logger.getLogger(LOG_NAME);
+            if (log.isLoggable(Level.SEVERE)) {
+                log.severe("error producing the response content: " + x);
+                log.throwing(getClass().getName(), "sendCommittableEntity", x);
+            }
+            
+            //
+            // We shall not expose to the client any details of a server error
+            //
+            StringEntity error = new StringEntity(
+                "server error producing the resource - see server log for details",
+                ContentType.TEXT_PLAIN
+            );
+            response.setStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            response.setEntity(error);
+            response.removeHeaders(HTTP.TRANSFER_ENCODING);
+            response.setHeader(HTTP.CONTENT_TYPE, error.getContentType().getValue());
+            response.setHeader(HTTP.CONTENT_LEN, String.valueOf(error.getContentLength()));
+            super.sendResponseHeader(response);
+            super.sendResponseEntity(response);
+            return;
+        }
+        if (out[0] == null) {
+            throw new IllegalStateException("the entity did not commit the response");
+        }
+        out[0].close();
+    }
+    
+    /**
+     * Same as HttpService.canResponseHaveBody()
+     */
+    private boolean canHaveBody(final HttpResponse response) {
+        if ("HEAD".equalsIgnoreCase(method)) {
+            return false;
+        }
+        final int status = response.getStatusLine().getStatusCode();
+        
+        return (status >= HttpStatus.SC_OK)
+            && (status != HttpStatus.SC_NO_CONTENT)
+            && (status != HttpStatus.SC_NOT_MODIFIED)
+            && (status != HttpStatus.SC_RESET_CONTENT);
+    }
+    
 }
@@ -25,6 +25,7 @@ import org.apache.http.entity.ContentLengthStrategy;
 import org.apache.http.impl.ConnSupport;
 import org.apache.http.io.HttpMessageParserFactory;
 import org.apache.http.io.HttpMessageWriterFactory;
+import org.apache.http.protocol.HttpProcessor;
 
 
 /**
@@ -42,6 +43,9 @@ implements HttpConnectionFactory<BasicHttpConnection> {
     private final ContentLengthStrategy outgoingContentStrategy;
     private final HttpMessageParserFactory<HttpRequest> requestParserFactory;
     private final HttpMessageWriterFactory<HttpResponse> responseWriterFactory;
+    private int writerBufferSize = ResponseWriter.DEFAULT_BUFFER_SIZE;
+    private ResponseWriter.FlushPolicy flushPolicy = ResponseWriter.DEFAULT_FLUSH_POLICY;
+    private HttpProcessor responseProcessor = BasicHttpConnection.DEFAULT_RESPONSE_PROCESSOR;
 
     public BasicHttpConnectionFactory(
             final ConnectionConfig cconfig,
@@ -83,7 +87,55 @@ implements HttpConnectionFactory<BasicHttpConnection> {
                 this.outgoingContentStrategy,
                 this.requestParserFactory,
                 this.responseWriterFactory);
+        conn.setWriterBufferSize(writerBufferSize);
+        conn.setFlushPolicy(flushPolicy);
+        conn.setResponseProcessor(responseProcessor);
         conn.bind(socket);
         return conn;
     }
+    
+    public int getWriterBufferSize() {
+        return writerBufferSize;
+    }
+    
+    /**
+     * @param size the buffer size of the writer of created connections - 
+     *             GREATER THAN 0
+     */
+    public void setWriterBufferSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+        this.writerBufferSize = size;
+    }
+    
+    public ResponseWriter.FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+    
+    /**
+     * @param policy the flush policy of the writer of created connections - 
+     *               NOT NULL
+     */
+    public void setFlushPolicy(final ResponseWriter.FlushPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy can not be null");
+        }
+        this.flushPolicy = policy;
+    }
+    
+    public HttpProcessor getResponseProcessor() {
+        return responseProcessor;
+    }
+    
+    /**
+     * @param processor the processor of the responses committed by the 
+     *                  writer of created connections - NOT NULL
+     */
+    public void setResponseProcessor(final HttpProcessor processor) {
+        if (processor == null) {
+            throw new IllegalArgumentException("processor can not be null");
+        }
+        this.responseProcessor = processor;
+    }
 }
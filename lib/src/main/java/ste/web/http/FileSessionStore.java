@@ -0,0 +1,718 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * A SessionStore that appends sessions to a local file.
+ * <p>
+ * Each save() or remove() appends a record to the file; only the offset of
+ * the latest record of each session is kept in memory, therefore opening a
+ * store scans the record headers only (using a memory mapped buffer) and
+ * sessions are deserialized lazily when loaded by id.
+ * <p>
+ * Sessions are serialized in the calling thread, but written by a background
+ * thread that appends queued records in batches, with a single write and sync
+ * per batch. Until written, the latest record of a session is kept in memory
+ * so that load() always returns the last saved state.
+ * <p>
+ * Superseded and removed records are garbage; the writer thread periodically
+ * compacts the file when garbage exceeds live data, rewriting live records to
+ * a new file that replaces the current one.
+ * <p>
+ * Record format: op (1 byte), id length (2 bytes), id (UTF-8), payload length
+ * (4 bytes), payload. The payload holds the session fields followed by the
+ * principal and the attributes, each value serialized on its own (length and
+ * java serialization) so that a value that can not be serialized is skipped
+ * without losing the rest of the session. Files are limited to 2GB; a record
+ * truncated by a crash is dropped when the store is opened.
+ *
+ * @author ste
+ */
+public class FileSessionStore implements SessionStore {
+
+    public static final long DEFAULT_COMPACTION_INTERVAL = 10*60*1000; // 10 minutes
+
+    private static final int MAGIC = 0x57545331; // WTS1
+    private static final int MAX_BATCH = 512;
+    private static final long POLL_INTERVAL = 100; // milliseconds
+    private static final long MIN_GARBAGE = 64*1024;
+
+    private static final byte OP_PUT = 1, OP_REMOVE = 2, OP_FLUSH = 3, OP_COMPACT = 4, OP_CLOSE = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final long compactionInterval;
+    private final ConcurrentMap<String, Location> index;
+    private final ConcurrentMap<String, Record> pending;
+    private final BlockingQueue<Record> queue;
+    private final ReadWriteLock channelLock;
+    private final Thread writer;
+    private final Logger log;
+
+    private volatile boolean closed;
+    private boolean closing;
+    private FileChannel channel;
+
+    //
+    // accessed by the writer thread only (and by the constructor)
+    //
+    private long end, garbage, lastCompaction;
+
+    /**
+     * Opens or creates the store in the given file.
+     *
+     * @param file the store file - NOT NULL
+     * @param compactionInterval minimum milliseconds between two automatic
+     *        compactions; 0 disables automatic compaction - NOT NEGATIVE
+     *
+     * @throws IOException if the file can not be opened or is not a store
+     */
+    public FileSessionStore(final File file, final long compactionInterval)
+    throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (compactionInterval < 0) {
+            throw new IllegalArgumentException("compactionInterval can not be negative");
+        }
+        this.file = file;
+        this.compactionInterval = compactionInterval;
+        this.index = new ConcurrentHashMap<>();
+        this.pending = new ConcurrentHashMap<>();
+        this.queue = new LinkedBlockingQueue<>();
+        this.channelLock = new ReentrantReadWriteLock();
+        this.log = Logger.getLogger(LOG_NAME);
+        this.closed = false;
+        this.lastCompaction = System.currentTimeMillis();
+
+        this.channel = FileChannel.open(
+            file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            scan();
+        } catch (IOException x) {
+            channel.close();
+            throw x;
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write();
+                } finally {
+                    closed = true;
+                }
+            }
+        }, "session-store-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Shortcut for new FileSessionStore(file, DEFAULT_COMPACTION_INTERVAL)
+     */
+    public FileSessionStore(final File file) throws IOException {
+        this(file, DEFAULT_COMPACTION_INTERVAL);
+    }
+
+    @Override
+    public void save(final HttpSession session) throws IOException {
+        if (session == null) {
+            throw new IllegalArgumentException("session can not be null");
+        }
+        checkClosed();
+
+        Record record = new Record(OP_PUT, session.getId(), encode(session));
+        pending.put(record.id, record);
+        queue.add(record);
+    }
+
+    @Override
+    public HttpSession load(final String id) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException("id can not be null");
+        }
+        checkClosed();
+
+        //
+        // the writer updates the index before removing the record from
+        // pending, so if not pending the index is up to date
+        //
+        Record record = pending.get(id);
+        if (record != null) {
+            return (record.op == OP_REMOVE) ? null : decode(record.bytes);
+        }
+
+        ByteBuffer buf;
+        channelLock.readLock().lock();
+        try {
+            checkClosed();
+            Location location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            buf = ByteBuffer.allocate(location.length);
+            long position = location.offset;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, position);
+                if (n < 0) {
+                    throw new IOException("unexpected end of " + file + " reading session " + id);
+                }
+                position += n;
+            }
+        } finally {
+            channelLock.readLock().unlock();
+        }
+
+        return decode(buf.array());
+    }
+
+    @Override
+    public void remove(final String id) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException("id can not be null");
+        }
+        checkClosed();
+
+        Record record = new Record(OP_REMOVE, id, encode(OP_REMOVE, id, new byte[0]));
+        pending.put(id, record);
+        queue.add(record);
+    }
+
+    /**
+     * Waits until all records queued so far are written to the file.
+     *
+     * @throws IOException if the store is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws IOException, InterruptedException {
+        checkClosed();
+        await(new Record(OP_FLUSH));
+    }
+
+    /**
+     * Compacts the file now, waiting for the compaction to complete.
+     *
+     * @throws IOException if the store is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void compact() throws IOException, InterruptedException {
+        checkClosed();
+        await(new Record(OP_COMPACT));
+    }
+
+    /**
+     * Writes all queued records, stops the writer thread and closes the file.
+     * Calling close() more than once has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closing) {
+                return;
+            }
+            closing = closed = true;
+        }
+
+        //
+        // the writer may have already stopped if the store became unusable
+        //
+        queue.add(new Record(OP_CLOSE));
+        try {
+            writer.join();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+
+        channelLock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            channelLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of sessions written in the file
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Queues the given marker and waits until the writer thread processed it
+     * or stopped.
+     */
+    private void await(final Record marker) throws IOException, InterruptedException {
+        queue.add(marker);
+        while (!marker.done.await(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                checkClosed();
+            }
+        }
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("session store " + file + " is closed");
+        }
+    }
+
+    /**
+     * Builds the index from the record headers.
+     */
+    private void scan() throws IOException {
+        final long size = channel.size();
+        if (size == 0) {
+            ByteBuffer buf = ByteBuffer.allocate(4);
+            buf.putInt(MAGIC).flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf, buf.position());
+            }
+            end = 4;
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too big, maximum size is 2GB");
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if ((size < 4) || (map.getInt() != MAGIC)) {
+            throw new IOException(file + " is not a session store");
+        }
+
+        int good = map.position();
+        while (map.remaining() >= 7) {
+            final byte op = map.get();
+            final int idLength = map.getShort() & 0xffff;
+            if (((op != OP_PUT) && (op != OP_REMOVE)) || (map.remaining() < idLength + 4)) {
+                break;
+            }
+            byte[] id = new byte[idLength];
+            map.get(id);
+            final int length = map.getInt();
+            if ((length < 0) || (map.remaining() < length)) {
+                break;
+            }
+            map.position(map.position() + length);
+
+            Location location = new Location(good, map.position() - good);
+            Location old = (op == OP_PUT)
+                         ? index.put(new String(id, UTF8), location)
+                         : index.remove(new String(id, UTF8));
+            if (op == OP_REMOVE) {
+                garbage += location.length;
+            }
+            if (old != null) {
+                garbage += old.length;
+            }
+            good = map.position();
+        }
+
+        end = good;
+        if (end < size) {
+            log.warning(String.format(
+                "session store %s: dropping %d bytes of incomplete or corrupted records",
+                file, size - end
+            ));
+            channel.truncate(end);
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("session store %s opened with %d sessions", file, index.size()));
+        }
+    }
+
+    /**
+     * The writer thread loop
+     */
+    private void write() {
+        List<Record> batch = new ArrayList<>();
+        while (true) {
+            Record record = null;
+            try {
+                record = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException x) {
+                //
+                // the writer stops only with OP_CLOSE
+                //
+            }
+
+            if (record != null) {
+                batch.add(record);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                if (!process(batch)) {
+                    return;
+                }
+                batch.clear();
+            }
+
+            if ((compactionInterval > 0)
+            && (System.currentTimeMillis() - lastCompaction >= compactionInterval)
+            && (garbage > MIN_GARBAGE) && (garbage > end - garbage)
+            && !compactFile()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the given records, handling markers in order
+     *
+     * @return false if the writer must stop, because of a close marker or
+     *         because the store can not be used any more
+     */
+    private boolean process(final List<Record> batch) {
+        int from = 0;
+        for (int i=0; i<batch.size(); ++i) {
+            Record record = batch.get(i);
+            if (record.done == null) {
+                continue;
+            }
+            append(batch.subList(from, i));
+            from = i+1;
+            final boolean usable = (record.op != OP_COMPACT) || compactFile();
+            record.done.countDown();
+            if ((record.op == OP_CLOSE) || !usable) {
+                return false;
+            }
+        }
+        append(batch.subList(from, batch.size()));
+
+        return true;
+    }
+
+    private void append(final List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        int size = 0;
+        for (Record record: records) {
+            size += record.bytes.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (Record record: records) {
+            buf.put(record.bytes);
+        }
+        buf.flip();
+
+        try {
+            long position = end;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            channel.force(false);
+        } catch (IOException x) {
+            //
+            // records stay pending so that this process still sees them
+            //
+            log.severe(String.format("unable to write sessions to %s: %s", file, x));
+            return;
+        }
+
+        long offset = end;
+        for (Record record: records) {
+            final int length = record.bytes.length;
+            Location old;
+            if (record.op == OP_PUT) {
+                old = index.put(record.id, new Location(offset, length));
+            } else {
+                old = index.remove(record.id);
+                garbage += length;
+            }
+            if (old != null) {
+                garbage += old.length;
+            }
+            pending.remove(record.id, record);
+            offset += length;
+        }
+        end = offset;
+    }
+
+    /**
+     * Rewrites the live records to a new file that replaces the current one;
+     * if the file can not be replaced, the store keeps using the current one.
+     *
+     * @return false if the store can not be used any more
+     */
+    private boolean compactFile() {
+        lastCompaction = System.currentTimeMillis();
+
+        final File compacted = new File(file.getPath() + ".compact");
+        final Map<String, Location> locations = new HashMap<>();
+
+        long position = 4;
+        try (FileChannel out = FileChannel.open(
+                compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+             )) {
+            ByteBuffer buf = ByteBuffer.allocate(4);
+            buf.putInt(MAGIC).flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            for (Map.Entry<String, Location> e: index.entrySet()) {
+                Location location = e.getValue();
+                long n = 0;
+                while (n < location.length) {
+                    n += channel.transferTo(location.offset + n, location.length - n, out);
+                }
+                locations.put(e.getKey(), new Location(position, location.length));
+                position += location.length;
+            }
+            out.force(true);
+        } catch (IOException x) {
+            log.severe(String.format("unable to compact %s: %s", file, x));
+            compacted.delete();
+            return true;
+        }
+
+        channelLock.writeLock().lock();
+        try {
+            channel.close();
+            try {
+                Files.move(
+                    compacted.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (IOException x) {
+                //
+                // the current file is untouched, go on with it
+                //
+                log.severe(String.format("unable to replace %s with its compacted version: %s", file, x));
+                compacted.delete();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                return true;
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear(); index.putAll(locations);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("session store %s compacted from %d to %d bytes", file, end, position));
+            }
+            end = position; garbage = 0;
+        } catch (IOException x) {
+            //
+            // this is bad, the store can not be used any more; the writer
+            // stops and queued records are lost
+            //
+            log.severe(String.format(
+                "unable to reopen %s after compaction, %d queued records are lost: %s",
+                file, queue.size(), x
+            ));
+            closed = true;
+            return false;
+        } finally {
+            channelLock.writeLock().unlock();
+        }
+
+        return true;
+    }
+
+    private byte[] encode(final HttpSession session) throws IOException {
+        final String id = session.getId();
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeUTF(session.getSessionIdName());
+            out.writeLong(session.getCreationTime());
+            out.writeLong(session.getLastAccessedTime());
+
+            writeValue(out, serialize(id, "principal", session.getPrincipal()));
+
+            Map<String, byte[]> attributes = new HashMap<>();
+            for (Map.Entry<String, Object> e: session.attributes().entrySet()) {
+                byte[] value = serialize(id, e.getKey(), e.getValue());
+                if (value != null) {
+                    attributes.put(e.getKey(), value);
+                }
+            }
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, byte[]> e: attributes.entrySet()) {
+                out.writeUTF(e.getKey());
+                writeValue(out, e.getValue());
+            }
+        }
+
+        return encode(OP_PUT, id, payload.toByteArray());
+    }
+
+    /**
+     * Serializes a session value on its own, so that a value that can not be
+     * serialized (possibly because of what it contains) is skipped alone.
+     *
+     * @return the serialized value or null if value is null or can not be
+     *         serialized
+     */
+    private byte[] serialize(final String id, final String name, final Object value) {
+        if (!(value instanceof Serializable)) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException x) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("session %s: %s not stored: %s", id, name, x));
+            }
+            return null;
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void writeValue(final DataOutputStream out, final byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private Object readValue(final DataInputStream in)
+    throws IOException, ClassNotFoundException {
+        byte[] value = new byte[in.readInt()];
+        if (value.length == 0) {
+            return null;
+        }
+        in.readFully(value);
+        try (ObjectInputStream object = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return object.readObject();
+        }
+    }
+
+    private byte[] encode(final byte op, final String id, final byte[] payload) {
+        byte[] idBytes = id.getBytes(UTF8);
+        if (idBytes.length > 0xffff) {
+            throw new IllegalArgumentException("session id too long");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(1 + 2 + idBytes.length + 4 + payload.length);
+        buf.put(op).putShort((short)idBytes.length).put(idBytes).putInt(payload.length).put(payload);
+
+        return buf.array();
+    }
+
+    private HttpSession decode(final byte[] record) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        buf.get();
+        byte[] id = new byte[buf.getShort() & 0xffff];
+        buf.get(id);
+        final int length = buf.getInt();
+
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(record, buf.position(), length)
+             )) {
+            HttpSession session = new HttpSession(
+                in.readUTF(), new String(id, UTF8), in.readLong(), in.readLong()
+            );
+            session.setPrincipal((Principal)readValue(in));
+            for (int n = in.readInt(); n > 0; --n) {
+                final String name = in.readUTF();
+                session.attributes().put(name, readValue(in));
+            }
+            return session;
+        } catch (ClassNotFoundException | ClassCastException x) {
+            throw new IOException("unable to restore session " + new String(id, UTF8), x);
+        }
+    }
+
+    // --------------------------------------------------------- Record
+
+    private static final class Record {
+        final byte op;
+        final String id;
+        final byte[] bytes;
+        final CountDownLatch done;
+
+        Record(final byte op, final String id, final byte[] bytes) {
+            this.op = op;
+            this.id = id;
+            this.bytes = bytes;
+            this.done = null;
+        }
+
+        /**
+         * A marker the writer thread counts down once processed
+         */
+        Record(final byte op) {
+            this.op = op;
+            this.id = null;
+            this.bytes = null;
+            this.done = new CountDownLatch(1);
+        }
+    }
+
+    // --------------------------------------------------------- Location
+
+    private static final class Location {
+        final long offset;
+        final int length;
+
+        Location(final long offset, final int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
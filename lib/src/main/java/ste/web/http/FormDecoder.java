@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.MessageConstraintException;
+
+/**
+ * Decodes an application/x-www-form-urlencoded body while reading it, a chunk
+ * at a time, without buffering the whole body first. The size of the body,
+ * the number of fields and the size of each name or value are limited, so
+ * that a large or malicious body is rejected as soon as a limit is crossed,
+ * before it can eat up memory. A limit violation is signalled with a
+ * MessageConstraintException, which handlers turn into 413.
+ *
+ * As in QueryString, malformed escape sequences are taken literally.
+ *
+ * Instances are immutable and can be shared.
+ *
+ * @author ste
+ */
+public class FormDecoder {
+
+    public static final long DEFAULT_MAX_BODY_SIZE = 2*1024*1024;
+    public static final int  DEFAULT_MAX_FIELDS = 1000;
+    public static final int  DEFAULT_MAX_FIELD_SIZE = 64*1024;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final long maxBodySize;
+    private final int maxFields;
+    private final int maxFieldSize;
+
+    /**
+     * @param maxBodySize the maximum size in bytes of the body - GREATER THAN 0
+     * @param maxFields the maximum number of fields - GREATER THAN 0
+     * @param maxFieldSize the maximum size in bytes of a decoded name or value
+     *                     - GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if any limit is not positive
+     */
+    public FormDecoder(final long maxBodySize, final int maxFields, final int maxFieldSize) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("maxBodySize must be greater than 0");
+        }
+        if (maxFields <= 0) {
+            throw new IllegalArgumentException("maxFields must be greater than 0");
+        }
+        if (maxFieldSize <= 0) {
+            throw new IllegalArgumentException("maxFieldSize must be greater than 0");
+        }
+        this.maxBodySize = maxBodySize;
+        this.maxFields = maxFields;
+        this.maxFieldSize = maxFieldSize;
+    }
+
+    /**
+     * Shortcut for new FormDecoder(DEFAULT_MAX_BODY_SIZE, DEFAULT_MAX_FIELDS, DEFAULT_MAX_FIELD_SIZE)
+     */
+    public FormDecoder() {
+        this(DEFAULT_MAX_BODY_SIZE, DEFAULT_MAX_FIELDS, DEFAULT_MAX_FIELD_SIZE);
+    }
+
+    /**
+     * Reads and decodes the given url-encoded body.
+     *
+     * @param in the body - NOT NULL
+     * @param charset the charset of the decoded bytes - MAY BE NULL (UTF-8)
+     * @param contentLength the declared length of the body, -1 if unknown; a
+     *                      body declared too big is rejected without reading it
+     *
+     * @return the decoded fields - NOT NULL
+     *
+     * @throws MessageConstraintException if the body violates a limit
+     * @throws IOException in case of read errors
+     */
+    public QueryString decode(final InputStream in, final Charset charset, final long contentLength)
+    throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("in can not be null");
+        }
+        if (contentLength > maxBodySize) {
+            throw new MessageConstraintException(
+                "form body of " + contentLength + " bytes exceeds the limit of " + maxBodySize + " bytes"
+            );
+        }
+
+        final Parser parser = new Parser((charset == null) ? StandardCharsets.UTF_8 : charset);
+        final byte[] buf = new byte[BUFFER_SIZE];
+
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            total += n;
+            if (total > maxBodySize) {
+                throw new MessageConstraintException(
+                    "form body exceeds the limit of " + maxBodySize + " bytes"
+                );
+            }
+            for (int i=0; i<n; ++i) {
+                parser.next(buf[i]);
+            }
+        }
+        parser.end();
+
+        return parser.form;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public int getMaxFields() {
+        return maxFields;
+    }
+
+    public int getMaxFieldSize() {
+        return maxFieldSize;
+    }
+
+    // ----------------------------------------------------------------- Parser
+
+    /**
+     * The state of the decoding of one body
+     */
+    private final class Parser {
+        private final Charset charset;
+        private final QueryString form = QueryString.create();
+
+        private byte[] field = new byte[Math.min(64, maxFieldSize)];
+        private int size = 0;
+        private String name = null;
+        private boolean empty = true;    // nothing seen since the last separator
+        private int escape = 0;          // digits seen after a '%'
+        private byte high;               // the first digit after a '%'
+        private int fields = 0;
+
+        Parser(final Charset charset) {
+            this.charset = charset;
+        }
+
+        void next(final byte b) throws IOException {
+            if (escape == 1) {
+                if (Character.digit(b, 16) >= 0) {
+                    high = b; escape = 2;
+                    return;
+                }
+                escape = 0; append((byte)'%');
+            } else if (escape == 2) {
+                escape = 0;
+                if (Character.digit(b, 16) >= 0) {
+                    append((byte)((Character.digit(high, 16) << 4) | Character.digit(b, 16)));
+                    return;
+                }
+                append((byte)'%'); append(high);
+            }
+
+            switch (b) {
+                case '&':
+                case ';':
+                    end(); return;
+                case '=':
+                    if (name == null) {
+                        name = new String(field, 0, size, charset); size = 0;
+                    } else {
+                        append(b);
+                    }
+                    break;
+                case '+':
+                    append((byte)' '); break;
+                case '%':
+                    escape = 1; break;
+                default:
+                    append(b);
+            }
+            empty = false;
+        }
+
+        /**
+         * Ends the current field, if any
+         */
+        void end() throws IOException {
+            if (escape > 0) {
+                append((byte)'%');
+                if (escape == 2) {
+                    append(high);
+                }
+                escape = 0;
+            }
+            if (empty) {
+                return;
+            }
+
+            if (++fields > maxFields) {
+                throw new MessageConstraintException(
+                    "form body exceeds the limit of " + maxFields + " fields"
+                );
+            }
+
+            String value = new String(field, 0, size, charset);
+            if (name == null) {
+                form.append(value, (String)null);
+            } else {
+                form.append(name, value);
+            }
+
+            name = null; size = 0; empty = true;
+        }
+
+        private void append(final byte b) throws IOException {
+            if (size == field.length) {
+                if (size >= maxFieldSize) {
+                    throw new MessageConstraintException(
+                        "form field exceeds the limit of " + maxFieldSize + " bytes"
+                    );
+                }
+                byte[] larger = new byte[(int)Math.min((long)size * 2, maxFieldSize)];
+                System.arraycopy(field, 0, larger, 0, size);
+                field = larger;
+            }
+            field[size++] = b;
+        }
+    }
+}
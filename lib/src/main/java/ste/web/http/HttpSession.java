@@ -17,30 +17,77 @@
 package ste.web.http;
 
 import java.security.Principal;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.protocol.HttpContext;
 
 /**
+ * A session holding attributes that can be accessed by concurrent requests
+ * without any external synchronization. Attributes are kept in a concurrent
+ * map, therefore reads do not lock; since the map can not hold null values,
+ * setting an attribute to null removes it.
  *
+ * computeAttributeIfAbsent() lets handlers lazily create per session objects
+ * so that the object is created only once even if requested by concurrent
+ * requests.
  */
 public class HttpSession
 implements HttpContext {
     
+    /**
+     * Creates the value of an attribute not yet in the session (see 
+     * computeAttributeIfAbsent())
+     */
+    public interface AttributeFactory {
+        /**
+         * @param name the name of the attribute to create
+         * 
+         * @return the value of the attribute or null if no value shall be set
+         */
+        Object create(String name);
+    }
+    
+    private static final int LOCK_STRIPES = 8;
+    
     private String sessionIdName;
-    private String id;
-    private Map<String, Object> data;
-    private boolean expired;
-    private Principal principal;
+    private volatile String id;
+    private final ConcurrentMap<String, Object> data;
+    private final Object[] locks;
+    private volatile boolean expired;
+    private volatile Principal principal;
+    private final long creationTime;
+    private volatile long lastAccessedTime;
 
     public HttpSession(String sessionIdName) {
+        this(
+            sessionIdName, UUID.randomUUID().toString().replace("-", ""),
+            System.currentTimeMillis(), 0
+        );
+    }
+    
+    /**
+     * Recreates a session previously stored (see SessionStore)
+     */
+    HttpSession(
+        final String sessionIdName, final String id, 
+        final long creationTime, final long lastAccessedTime
+    ) {
         this.sessionIdName = sessionIdName;
-        this.id = UUID.randomUUID().toString().replace("-", "");
+        this.id = id;
         this.expired = false;
-        this.data = new HashMap<>();
+        this.data = new ConcurrentHashMap<>(16, 0.75f, 4);
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i=0; i<LOCK_STRIPES; ++i) {
+            locks[i] = new Object();
+        }
         this.principal = null;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = Math.max(creationTime, lastAccessedTime);
     }
     
     public HttpSession() {
@@ -81,6 +128,13 @@ implements HttpContext {
         return id;
     }
     
+    /**
+     * @return the name of the session id cookie
+     */
+    public String getSessionIdName() {
+        return sessionIdName;
+    }
+    
     public Object getAttribute(final String name) {
         if (name == null) {
             throw new IllegalArgumentException("name can not be null");
@@ -89,13 +143,88 @@ implements HttpContext {
         return data.get(name);
     }
     
+    /**
+     * Sets the given attribute; setting it to null is the same as removing it.
+     * 
+     * @param name the attribute name - NOT NULL
+     * @param value the attribute value - MAY BE NULL
+     */
     @Override
     public void setAttribute(final String name, final Object value) {
         if (name == null) {
             throw new IllegalArgumentException("name can not be null");
         }
         checkExpired();
-        data.put(name, value);
+        if (value == null) {
+            data.remove(name);
+        } else {
+            data.put(name, value);
+        }
+    }
+    
+    /**
+     * Sets the given attribute only if not already set.
+     * 
+     * @param name the attribute name - NOT NULL
+     * @param value the attribute value - NOT NULL
+     * 
+     * @return the current value of the attribute, which is value if the 
+     *         attribute was not set
+     */
+    public Object setAttributeIfAbsent(final String name, final Object value) {
+        if (name == null) {
+            throw new IllegalArgumentException("name can not be null");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value can not be null");
+        }
+        checkExpired();
+        
+        Object current = data.putIfAbsent(name, value);
+        
+        return (current == null) ? value : current;
+    }
+    
+    /**
+     * Returns the given attribute creating it with factory if not set yet. The
+     * factory is called at most once for concurrent requests of the same
+     * attribute; while it runs, other attributes hashing to the same lock
+     * stripe wait for it to complete, therefore it should not be too slow.
+     * 
+     * @param name the attribute name - NOT NULL
+     * @param factory the factory that creates the value - NOT NULL
+     * 
+     * @return the current value of the attribute or null if not set and the
+     *         factory did not create any value
+     */
+    public Object computeAttributeIfAbsent(final String name, final AttributeFactory factory) {
+        if (name == null) {
+            throw new IllegalArgumentException("name can not be null");
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("factory can not be null");
+        }
+        checkExpired();
+        
+        Object value = data.get(name);
+        if (value != null) {
+            return value;
+        }
+        
+        synchronized (locks[(name.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+            value = data.get(name);
+            if (value == null) {
+                value = factory.create(name);
+                if (value != null) {
+                    Object current = data.putIfAbsent(name, value);
+                    if (current != null) {
+                        value = current; // set meanwhile by setAttribute()
+                    }
+                }
+            }
+        }
+        
+        return value;
     }
     
     @Override
@@ -107,10 +236,45 @@ implements HttpContext {
         return data.remove(name);
     }
     
+    /**
+     * @return a read-only live view of the names of the attributes
+     */
+    public Set<String> getAttributeNames() {
+        checkExpired();
+        return Collections.unmodifiableSet(data.keySet());
+    }
+    
     public void expire() {
         expired = true;
     }
     
+    public boolean isExpired() {
+        return expired;
+    }
+    
+    /**
+     * @return when this session was created in milliseconds since the epoch
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+    
+    /**
+     * @return when this session was last accessed in milliseconds since the 
+     *         epoch (see access())
+     */
+    public long getLastAccessedTime() {
+        return lastAccessedTime;
+    }
+    
+    /**
+     * Marks this session as accessed now; this is what idle timeouts are
+     * computed against.
+     */
+    public void access() {
+        lastAccessedTime = System.currentTimeMillis();
+    }
+    
     public Principal getPrincipal() {
         return principal;
     }
@@ -119,6 +283,15 @@ implements HttpContext {
         this.principal = principal;
     }
     
+    // ------------------------------------------------------- package methods
+    
+    /**
+     * @return a live view of the attributes, used to store the session
+     */
+    Map<String, Object> attributes() {
+        return data;
+    }
+    
     // --------------------------------------------------------- private methods
     
     private void checkExpired() throws IllegalStateException {
@@ -15,8 +15,12 @@
  */
 package ste.web.http;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.security.Principal;
 import java.util.HashMap;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.protocol.HttpContext;
 
 /**
@@ -29,6 +33,12 @@ public class HttpSessionContext
     
     private HttpSession session;
     private Principal principal;
+    private ParsedRequest parsedRequest;
+    private ResponseWriter writer;
+    
+    private SessionManager sessions;
+    private HttpRequest request;
+    private HttpResponse response;
 
     @Override
     public Object getAttribute(final String id) {
@@ -45,12 +55,66 @@ public class HttpSessionContext
         return remove(id);
     }
     
+    /**
+     * Same as getSession(true)
+     */
     public HttpSession getSession() {
+        return getSession(true);
+    }
+    
+    /**
+     * Returns the session of the request. If a session manager was given (see
+     * setSessionManager()), the session is looked up the first time it is
+     * asked for and, if create is true, created (with its cookie set in the
+     * response) if the request does not have one; so that requests that do
+     * not use the session (e.g. static files) do not create any.
+     * 
+     * @param create true to create the session if the request has none
+     * 
+     * @return the session or null if none
+     */
+    public HttpSession getSession(final boolean create) {
+        if ((session == null) && (sessions != null)) {
+            session = sessions.get(request, false);
+            if ((session == null) && create) {
+                session = sessions.create();
+                response.addHeader(session.getHeader());
+            }
+            if (session != null) {
+                session.access();
+                sessions = null; request = null; response = null;
+            }
+        }
         return session;
     }
     
     public void setSession(final HttpSession session) {
         this.session = session;
+        this.sessions = null; this.request = null; this.response = null;
+    }
+    
+    /**
+     * Makes the session of the given request be looked up or created by the
+     * given manager only when asked for (see getSession())
+     * 
+     * @param sessions the session manager - NOT NULL
+     * @param request the request - NOT NULL
+     * @param response the response, to set the cookie of new sessions - NOT NULL
+     */
+    public void setSessionManager(
+        final SessionManager sessions, final HttpRequest request, final HttpResponse response
+    ) {
+        if (sessions == null) {
+            throw new IllegalArgumentException("sessions can not be null");
+        }
+        if (request == null) {
+            throw new IllegalArgumentException("request can not be null");
+        }
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        this.session = null;
+        this.sessions = sessions; this.request = request; this.response = response;
     }
     
     public void setPrincipal(Principal principal) {
@@ -60,5 +124,67 @@ public class HttpSessionContext
     public Principal getPrincipal() {
         return principal;
     }
+
+    /**
+     * Returns the parsed form of the given request, parsing it only the first
+     * time it is asked for the same request. The parsed request is not an
+     * attribute, so that it does not show up as a script or template variable.
+     *
+     * @param request the request - NOT NULL
+     *
+     * @return the parsed request
+     */
+    public ParsedRequest getParsedRequest(final HttpRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("request can not be null");
+        }
+        if ((parsedRequest == null) || (parsedRequest.getRequest() != request)) {
+            parsedRequest = new ParsedRequest(request);
+        }
+
+        return parsedRequest;
+    }
+
+    /**
+     * Returns a writer for the content of the given response, for servers
+     * that do not provide one with the connection (see BasicHttpConnection).
+     * What is written is kept in memory and becomes the response entity when
+     * the server calls finishWriter(). Like the parsed request, the writer
+     * is not an attribute.
+     *
+     * @param response the response being produced - NOT NULL
+     *
+     * @return the writer
+     */
+    public Writer getWriter(final HttpResponse response) {
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        if (writer == null) {
+            writer = new ResponseWriter(
+                null, ResponseWriter.DEFAULT_BUFFER_SIZE, ResponseWriter.FlushPolicy.WHEN_FULL
+            );
+        }
+        writer.bind(response);
+
+        return writer;
+    }
+
+    /**
+     * Makes what was written with getWriter(), if anything, the entity of the
+     * given response, unless the handler set an entity with content itself.
+     *
+     * @param response the response - NOT NULL
+     *
+     * @throws IOException in case of encoding errors
+     */
+    public void finishWriter(final HttpResponse response) throws IOException {
+        if (response == null) {
+            throw new IllegalArgumentException("response can not be null");
+        }
+        if ((writer != null) && writer.isUsed()) {
+            writer.finish(response);
+        }
+    }
     
 }
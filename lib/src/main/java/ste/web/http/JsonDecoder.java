@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsonorg.JsonOrgModule;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.http.MessageConstraintException;
+import ste.web.beanshell.BeanShellUtils;
+
+/**
+ * Decodes a JSON request body within a configurable size limit, either as a
+ * whole tree (a JSONObject or a JSONArray, as scripts have always got it) or
+ * as a JsonStream, which hands the body to the script one element at a time
+ * so that large arrays can be processed without holding them in memory.
+ *
+ * A body over the limit is signalled with a MessageConstraintException; if
+ * the length of the body is declared in advance, it is checked before
+ * reading anything.
+ *
+ * Instances are immutable and can be shared.
+ *
+ * @author ste
+ */
+public class JsonDecoder {
+
+    public static final long DEFAULT_MAX_BODY_SIZE = 8*1024*1024;
+
+    /**
+     * ObjectMapper is thread safe once configured
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JsonOrgModule());
+
+    private final long maxBodySize;
+    private final boolean streaming;
+
+    /**
+     * @param maxBodySize the maximum size in bytes of the body - GREATER THAN 0
+     * @param streaming true to decode the body as a JsonStream, false to
+     *                  decode it as a JSONObject or JSONArray
+     *
+     * @throws IllegalArgumentException if maxBodySize is not positive
+     */
+    public JsonDecoder(final long maxBodySize, final boolean streaming) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("maxBodySize must be greater than 0");
+        }
+        this.maxBodySize = maxBodySize;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Shortcut for new JsonDecoder(DEFAULT_MAX_BODY_SIZE, false)
+     */
+    public JsonDecoder() {
+        this(DEFAULT_MAX_BODY_SIZE, false);
+    }
+
+    /**
+     * Decodes the given JSON body. In streaming mode the body is not read
+     * until the returned JsonStream is consumed; the limit is then enforced
+     * while reading.
+     *
+     * @param in the body - NOT NULL
+     * @param contentLength the declared length of the body, -1 if unknown
+     *
+     * @return a JSONObject or a JSONArray, or a JsonStream in streaming mode
+     *
+     * @throws MessageConstraintException if the body exceeds the limit
+     * @throws IOException if the body can not be read or is not valid JSON
+     */
+    public Object decode(final InputStream in, final long contentLength) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("in can not be null");
+        }
+        if (contentLength > maxBodySize) {
+            throw new MessageConstraintException(
+                "JSON body of " + contentLength + " bytes exceeds the limit of " + maxBodySize + " bytes"
+            );
+        }
+
+        final LimitedInputStream limited = new LimitedInputStream(in);
+        if (streaming) {
+            return new JsonStream(MAPPER.getFactory().createParser(limited), MAPPER);
+        }
+
+        try {
+            return BeanShellUtils.getJSONBody(limited);
+        } catch (IOException x) {
+            //
+            // the JSON tokenizer wraps read errors
+            //
+            if (limited.exceeded) {
+                throw limitExceeded();
+            }
+            throw x;
+        }
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private MessageConstraintException limitExceeded() {
+        return new MessageConstraintException(
+            "JSON body exceeds the limit of " + maxBodySize + " bytes"
+        );
+    }
+
+    // ----------------------------------------------------- LimitedInputStream
+
+    /**
+     * Fails reading past maxBodySize bytes
+     */
+    private final class LimitedInputStream extends FilterInputStream {
+        private long count = 0;
+        private boolean exceeded = false;
+
+        LimitedInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(final long n) throws MessageConstraintException {
+            count += n;
+            if (count > maxBodySize) {
+                exceeded = true;
+                throw limitExceeded();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A JSON request body read on demand. A script can:
+ *
+ * <ul>
+ * <li>iterate over the elements of a top level array (e.g.
+ *     <code>for (item: body.iterator())</code>, as BeanShell does not iterate
+ *     over an Iterable);
+ *     each element is materialized when reached, as a JSONObject, a JSONArray,
+ *     a String, a Number, a Boolean or JSONObject.NULL</li>
+ * <li>read the whole body with getValue()</li>
+ * <li>pull tokens itself from the underlying parser (getParser())</li>
+ * </ul>
+ *
+ * The body can be read only once. Read errors while iterating are thrown as
+ * UncheckedIOException. close() releases the parser and the body; handlers do
+ * it once the script is done.
+ *
+ * @author ste
+ */
+public class JsonStream implements Iterable<Object>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectMapper mapper;
+    private boolean consumed = false;
+
+    JsonStream(final JsonParser parser, final ObjectMapper mapper) {
+        this.parser = parser;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @return the underlying pull parser
+     */
+    public JsonParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Reads the whole body
+     *
+     * @return the body as a JSONObject, a JSONArray or a scalar; null if the
+     *         body is empty
+     *
+     * @throws IOException if the body can not be read or is not valid JSON
+     * @throws IllegalStateException if the body has been already read
+     */
+    public Object getValue() throws IOException {
+        consume();
+
+        JsonToken token = parser.nextToken();
+        return (token == null) ? null : read(token);
+    }
+
+    /**
+     * @return an iterator over the elements of the top level array
+     *
+     * @throws UncheckedIOException if the body can not be read or is not an array
+     * @throws IllegalStateException if the body has been already read
+     */
+    @Override
+    public Iterator<Object> iterator() {
+        consume();
+
+        try {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("the JSON body is not an array");
+            }
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+
+        return new Iterator<Object>() {
+            private JsonToken next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = parser.nextToken();
+                    } catch (IOException x) {
+                        throw new UncheckedIOException(x);
+                    }
+                    if (next == null) {
+                        throw new UncheckedIOException(new IOException("unexpected end of the JSON body"));
+                    }
+                }
+                return next != JsonToken.END_ARRAY;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return read(next);
+                } catch (IOException x) {
+                    throw new UncheckedIOException(x);
+                } finally {
+                    next = null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Closes the parser and the underlying body
+     *
+     * @throws IOException in case of errors closing the body
+     */
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void consume() {
+        if (consumed) {
+            throw new IllegalStateException("the JSON body has been already read");
+        }
+        consumed = true;
+    }
+
+    /**
+     * Reads the value starting at the given (current) token
+     */
+    private Object read(final JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return mapper.readValue(parser, JSONObject.class);
+            case START_ARRAY:
+                return mapper.readValue(parser, JSONArray.class);
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            case VALUE_NULL:
+                return JSONObject.NULL;
+            default:
+                throw new IOException("unexpected " + token + " in the JSON body");
+        }
+    }
+}
@@ -20,10 +20,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import org.apache.commons.io.FilenameUtils;
 
 /**
@@ -39,6 +43,13 @@ public class MimeUtils {
 
     public static final String DEFAULT_MIME_MAP = "/content-types.properties";
 
+    private static final Set<String> COMPRESSIBLE_TYPES = new HashSet<>(Arrays.asList(
+        "application/javascript", "application/x-javascript", "application/ecmascript",
+        "application/json", "application/xml", "application/xml-dtd",
+        "application/xhtml+xml", "application/rtf", "application/x-sh",
+        "application/postscript", "application/wasm"
+    ));
+
     private static final MimeUtils instance;
 
     //
@@ -68,6 +79,39 @@ public class MimeUtils {
         return ((type != null) && (type.startsWith("image/")));
     }
 
+    /**
+     * Tells if content of the given mime type is worth compressing: text,
+     * scripts, json and xml documents are, while images (but svg), audio,
+     * video and archives are already compressed or do not shrink much.
+     *
+     * @param mimeType the mime type - MAY BE NULL
+     *
+     * @return true if the content of the given type shall be compressed
+     */
+    public boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.split(";")[0].trim().toLowerCase(Locale.ENGLISH);
+
+        return type.startsWith("text/")
+            || type.endsWith("+xml")
+            || type.endsWith("+json")
+            || COMPRESSIBLE_TYPES.contains(type);
+    }
+
+    /**
+     * Tells if the content of the given file is worth compressing, based on
+     * the mime type of its extension (see isCompressible(String)).
+     *
+     * @param f the file - MAY BE NULL
+     *
+     * @return true if the content of the given file shall be compressed
+     */
+    public boolean isCompressible(File f) {
+        return isCompressible(getMimeType(f));
+    }
+
     /**
      * Loads the mime map from the given file name. Note that the mime types
      * defined in the file table will replace or be added to the default table.
@@ -124,7 +168,7 @@ public class MimeUtils {
         }
 
         String mimeTypeFull =
-            mimeMap.get(FilenameUtils.getExtension(f.getName()).toLowerCase());
+            mimeMap.get(FilenameUtils.getExtension(f.getName()).toLowerCase(Locale.ENGLISH));
 
         if (mimeTypeFull == null) {
             return MIME_UNKNOWN;
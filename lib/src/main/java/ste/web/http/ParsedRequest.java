@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.MessageConstraintException;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
+
+/**
+ * The parts of a request that handlers look into - path, query parameters and
+ * url-encoded form body - parsed once per request. Handlers get it from
+ * HttpSessionContext.getParsedRequest(), so that when more handlers serve the
+ * same request (e.g. BeanShellHandler and VelocityHandler) the request URI is
+ * parsed only once.
+ *
+ * The form body is read and decoded as a stream (see FormDecoder) the first
+ * time it is asked for, after which the request entity is consumed.
+ *
+ * @author ste
+ */
+public class ParsedRequest {
+
+    private final HttpRequest request;
+    private final String path;
+    private final QueryString query;
+    private QueryString form;
+
+    /**
+     * Parses the URI of the given request; if the URI is malformed, path is
+     * null and there are no query parameters.
+     *
+     * @param request the request - NOT NULL
+     */
+    public ParsedRequest(final HttpRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("request can not be null");
+        }
+        this.request = request;
+
+        String p = null;
+        QueryString q = null;
+        try {
+            URI uri = new URI(request.getRequestLine().getUri());
+            p = uri.getPath();
+            q = QueryString.parse(uri);
+        } catch (URISyntaxException x) {
+            q = QueryString.create();
+        }
+        this.path = p;
+        this.query = q;
+    }
+
+    /**
+     * @return the request this object was parsed from
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return the decoded path of the request URI; null if the URI is malformed
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the parameters in the query of the request URI - NOT NULL
+     */
+    public QueryString getQuery() {
+        return query;
+    }
+
+    /**
+     * @return true if the request has an application/x-www-form-urlencoded body
+     */
+    public boolean hasForm() {
+        return getFormContentType() != null;
+    }
+
+    /**
+     * Returns the parameters in the url-encoded body of the request; the body
+     * is decoded with the given decoder the first time this method is called,
+     * in the charset given in the content type or UTF-8.
+     *
+     * @param decoder the decoder - NOT NULL
+     *
+     * @return the form parameters; empty if the request has not a url-encoded
+     *         body - NOT NULL
+     *
+     * @throws MessageConstraintException if the body exceeds the decoder limits
+     * @throws IOException if the body can not be read
+     */
+    public QueryString getForm(final FormDecoder decoder) throws IOException {
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder can not be null");
+        }
+        if (form == null) {
+            String contentType = getFormContentType();
+            HttpEntity e = (contentType == null)
+                         ? null
+                         : ((HttpEntityEnclosingRequest)request).getEntity()
+                         ;
+            if (e == null) {
+                form = QueryString.create();
+            } else {
+                try (InputStream in = e.getContent()) {
+                    form = decoder.decode(in, getCharset(contentType), e.getContentLength());
+                }
+            }
+        }
+
+        return form;
+    }
+
+    /**
+     * Shortcut for getForm(new FormDecoder())
+     *
+     * @return the form parameters - NOT NULL
+     *
+     * @throws IOException if the body can not be read or exceeds the default
+     *         limits
+     */
+    public QueryString getForm() throws IOException {
+        return (form == null) ? getForm(new FormDecoder()) : form;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * @return the content type if the request has an url-encoded body, null
+     *         otherwise
+     */
+    private String getFormContentType() {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return null;
+        }
+
+        Header[] headers = request.getHeaders(HttpHeaders.CONTENT_TYPE);
+        if (headers.length == 0) {
+            return null;
+        }
+
+        String contentType = headers[0].getValue();
+        return contentType.matches(
+            ContentType.APPLICATION_FORM_URLENCODED.getMimeType() + "( *;.*)?"
+        ) ? contentType : null;
+    }
+
+    private Charset getCharset(final String contentType) {
+        try {
+            return ContentType.parse(contentType).getCharset();
+        } catch (ParseException | UnsupportedCharsetException x) {
+            return null;
+        }
+    }
+}
@@ -27,15 +27,15 @@ package ste.web.http;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -59,11 +59,12 @@ import org.apache.commons.lang3.StringUtils;
  * <p>
  * <h4>Encoding and decoding</h4> QueryString automatically encodes and decodes
  * parameter names and values to and from <code>www-form-urlencoded</code>
- * encoding by using <code>java.net.URLEncoder</code> and
- * <code>java.net.URLDecoder</code>, which follow the <a
+ * UTF-8 encoding, following the <a
  * href="http://www.w3.org/TR/html40/appendix/notes.html#non-ascii-chars"> HTML
  * 4.01 Specification: Non-ASCII characters in URI attribute values</a>
- * recommendation.
+ * recommendation. Parsing does not copy the values of the parameters: they
+ * are kept as offsets in the parsed string and decoded only when read.
+ * Malformed escape sequences (e.g. "100%") are taken literally.
  * <h4>Multivalued parameters</h4> Often, parameter names are unique across the
  * name/value pairs of a <code>www-form-urlencoded</code> query string. However,
  * it is permitted for the same parameter name to appear in multiple name/value
@@ -220,7 +221,11 @@ public class QueryString {
 
 		// Defensively copy the List<String>'s
         for (Map.Entry<String, List<String>> entry : parameterMap.entrySet()) {
-            queryString.queryMap.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+            List<String> values = entry.getValue();
+            queryString.queryMap.put(
+                entry.getKey(),
+                (values.size() == 1) ? values.get(0) : new Values(values)
+            );
         }
 
         return queryString;
@@ -282,17 +287,19 @@ public class QueryString {
      * regardless of what the user later nominates as their
      * <code>toString</code> output parameter.
      */
-    private static final String PARSE_PARAMETER_SEPARATORS = String.valueOf(Separator.AMPERSAND) + Separator.SEMICOLON;
+    private static final char[] PARSE_PARAMETER_SEPARATORS = {'&', ';'};
 
 	//
     // Private members
     //
     /**
-     * Map of query parameters.
+     * Map of query parameters. A single valued parameter is mapped to its
+     * value: a String, an Encoded value not decoded yet or null; a multivalued
+     * parameter is mapped to a Values list of the above.
      */
 	// Note: we initialize this Map upon object creation because, realistically, it
     // is always going to be needed (eg. there is little point lazy-initializing it)
-    private final Map<String, List<String>> queryMap = new LinkedHashMap<String, List<String>>();
+    private final Map<String, Object> queryMap = new LinkedHashMap<String, Object>();
 
 	//
     // Public methods
@@ -318,13 +325,14 @@ public class QueryString {
      */
     public String get(final String name) {
 
-        List<String> parameters = getValues(name);
+        Object value = this.queryMap.get(name);
 
-        if (parameters == null || parameters.isEmpty()) {
-            return null;
+        if (value instanceof Values) {
+            Values values = (Values) value;
+            return values.isEmpty() ? null : decode(values.get(0));
         }
 
-        return parameters.get(0);
+        return decode(value);
     }
 
     /**
@@ -359,7 +367,9 @@ public class QueryString {
      * values the named parameter has, or <code>null</code> if the parameter
      * does not exist.
      * <p>
-     * If the parameter has a single value, the List has a size of 1.
+     * If the parameter has a single value, the List has a size of 1. The
+     * returned List is read-only; use the set, append and remove methods to
+     * change the parameter.
      *
      * @param name name of the parameter to retrieve
      * @return a List of String objects containing the parameter's values, or
@@ -367,7 +377,11 @@ public class QueryString {
      */
     public List<String> getValues(final String name) {
 
-        return this.queryMap.get(name);
+        if (!this.queryMap.containsKey(name)) {
+            return null;
+        }
+
+        return Collections.unmodifiableList(decodeAll(this.queryMap.get(name)));
     }
 
     /**
@@ -384,9 +398,8 @@ public class QueryString {
         LinkedHashMap<String, List<String>> map = new LinkedHashMap<String, List<String>>();
 
 		// Defensively copy the List<String>'s
-        for (Map.Entry<String, List<String>> entry : this.queryMap.entrySet()) {
-            List<String> listValues = entry.getValue();
-            map.put(entry.getKey(), new ArrayList<String>(listValues));
+        for (Map.Entry<String, Object> entry : this.queryMap.entrySet()) {
+            map.put(entry.getKey(), decodeAll(entry.getValue()));
         }
 
         return map;
@@ -733,8 +746,9 @@ public class QueryString {
 
         StringBuilder builder = new StringBuilder();
 
-        for (String name : this.queryMap.keySet()) {
-            for (String value : this.queryMap.get(name)) {
+        for (Map.Entry<String, Object> entry : this.queryMap.entrySet()) {
+            String name = entry.getKey();
+            for (String value : decodeAll(entry.getValue())) {
                 if (builder.length() != 0) {
                     builder.append(separator);
                 }
@@ -777,76 +791,86 @@ public class QueryString {
      * Helper method for append and set
      *
      * @param name the parameter's name
-     * @param value the parameter's value
+     * @param value the parameter's value: a String, an Encoded value or null
      * @param append whether to append (or set)
      */
-    private void appendOrSet(final String name, final String value, final boolean append) {
+    private void appendOrSet(final String name, final Object value, final boolean append) {
 
         if (name == null) {
             throw new NullPointerException("name");
         }
 
             // If we're appending, and there's an existing parameter...
-        if (append) {
-            List<String> listValues = this.queryMap.get(name);
-
-                    // ...add to it
-            if (listValues != null) {
-                listValues.add(value);
-                return;
+        if (append && this.queryMap.containsKey(name)) {
+            Object existing = this.queryMap.get(name);
+
+                    // ...add to it, turning it into a multivalued parameter
+                    // the first time
+            if (existing instanceof Values) {
+                ((Values) existing).add(value);
+            } else {
+                Values values = new Values();
+                values.add(existing);
+                values.add(value);
+                this.queryMap.put(name, values);
             }
+            return;
         } // ...otherwise, if we're setting and the value is null...
-        else if (value == null) {
+        else if (!append && (value == null)) {
             // ...remove it
 
             this.queryMap.remove(name);
             return;
         }
 
-            // ...otherwise, create a new one
-        List<String> listValues = new ArrayList<String>();
-        listValues.add(value);
-
-        this.queryMap.put(name, listValues);
+            // ...otherwise, create a new one (or replace the existing one
+            // in place)
+        this.queryMap.put(name, value);
     }
 
     /**
      * Helper method for append and set
+     * <p>
+     * The query is scanned in place: names are decoded straight away because
+     * they are the keys of the map, values are stored as offsets into the
+     * query and decoded when read.
      *
      * @param query <code>www-form-urlencoded</code> string
      * @param append whether to append (or set)
      */
     private void appendOrSet(final CharSequence parameters, final boolean append) {
-        if ((parameters == null) || StringUtils.isBlank(parameters.toString())) {
+        if ((parameters == null) || StringUtils.isBlank(parameters)) {
             return;
         }
 
-        // Note we always parse using PARSE_PARAMETER_SEPARATORS, regardless
-        // of what the user later nominates as their output parameter
-        // separator using toString()
-        StringTokenizer tokenizer = new StringTokenizer(parameters.toString(), PARSE_PARAMETER_SEPARATORS);
+        //
+        // Values keep a reference to the query, which therefore must not
+        // change afterwards; toString() is a no-op for strings
+        //
+        final String query = parameters.toString();
+        final int length = query.length();
 
         Set<String> setAlreadyParsed = null;
 
-        while (tokenizer.hasMoreTokens()) {
-            String parameter = tokenizer.nextToken();
-
-            int indexOf = parameter.indexOf('=');
-
-            String name;
-            String value;
-
-            try {
-                if (indexOf == -1) {
-                    name = parameter;
-                    value = null;
-                } else {
-                    name = parameter.substring(0, indexOf);
-                    value = parameter.substring(indexOf + 1);
+        int start = 0;
+        while (start < length) {
+            // Note we always parse using PARSE_PARAMETER_SEPARATORS, regardless
+            // of what the user later nominates as their output parameter
+            // separator using toString()
+            int end = start, equals = -1;
+            for (; end < length; ++end) {
+                char c = query.charAt(end);
+                if ((c == PARSE_PARAMETER_SEPARATORS[0]) || (c == PARSE_PARAMETER_SEPARATORS[1])) {
+                    break;
+                }
+                if ((c == '=') && (equals < 0)) {
+                    equals = end;
                 }
+            }
 
+            if (end > start) {
                 // Decode the name if necessary (i.e. %70age=1 becomes page=1)
-                name = URLDecoder.decode(name, "UTF-8");
+                String name = decode(query, start, (equals < 0) ? end : equals);
 
                 // When not appending, the first time we see a given
                 // name it is important to remove it from the existing
@@ -856,24 +880,151 @@ public class QueryString {
                         setAlreadyParsed = new HashSet<String>();
                     }
 
-                    if (!setAlreadyParsed.contains(name)) {
+                    if (setAlreadyParsed.add(name)) {
                         remove(name);
                     }
-
-                    setAlreadyParsed.add(name);
                 }
 
-                if (value != null) {
-                    value = URLDecoder.decode(value, "UTF-8");
+                appendOrSet(
+                    name,
+                    (equals < 0) ? null : new Encoded(query, equals + 1, end),
+                    true
+                );
+            }
+
+            start = end + 1;
+        }
+    }
+
+    /**
+     * @param value a stored single value: a String, an Encoded value or null
+     *
+     * @return the decoded value
+     */
+    private static String decode(final Object value) {
+        return (value instanceof Encoded) ? ((Encoded) value).toString() : (String) value;
+    }
+
+    /**
+     * @param value a stored value: a single value or Values
+     *
+     * @return a new list with the decoded value(s)
+     */
+    private static List<String> decodeAll(final Object value) {
+        if (value instanceof Values) {
+            Values values = (Values) value;
+            List<String> ret = new ArrayList<String>(values.size());
+            for (Object v : values) {
+                ret.add(decode(v));
+            }
+            return ret;
+        }
+
+        List<String> ret = new ArrayList<String>(1);
+        ret.add(decode(value));
+
+        return ret;
+    }
+
+    /**
+     * Decodes the www-form-urlencoded UTF-8 text between start (inclusive) and
+     * end (exclusive). If there is nothing to decode, the text is returned as
+     * is. Malformed escape sequences are taken literally.
+     *
+     * @param s the text - NOT NULL
+     * @param start the index of the first character
+     * @param end the index after the last character
+     *
+     * @return the decoded text
+     */
+    static String decode(final String s, final int start, final int end) {
+        int i = start;
+        while ((i < end) && (s.charAt(i) != '%') && (s.charAt(i) != '+')) {
+            ++i;
+        }
+        if (i == end) {
+            return s.substring(start, end);
+        }
+
+        StringBuilder decoded = new StringBuilder(end - start);
+        decoded.append(s, start, i);
+
+        byte[] bytes = null;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                decoded.append(' '); ++i;
+            } else if ((c == '%') && (i + 2 < end) && (hex(s, i + 1) >= 0)) {
+                //
+                // a run of escaped bytes is decoded as a whole, so that
+                // multibyte characters come out right
+                //
+                if (bytes == null) {
+                    bytes = new byte[(end - i) / 3];
                 }
+                int n = 0;
+                while ((i + 2 < end) && (s.charAt(i) == '%') && (hex(s, i + 1) >= 0)) {
+                    bytes[n++] = (byte) hex(s, i + 1);
+                    i += 3;
+                }
+                decoded.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+            } else {
+                decoded.append(c); ++i;
+            }
+        }
+
+        return decoded.toString();
+    }
 
-                appendOrSet(name, value, true);
-            } catch (UnsupportedEncodingException e) {
-                // Should never happen. UTF-8 should always be available
-                // according to Java spec
+    /**
+     * @return the value of the two hex digits at the given index or -1 if
+     *         they are not hex digits
+     */
+    private static int hex(final String s, final int index) {
+        int h = Character.digit(s.charAt(index), 16), l = Character.digit(s.charAt(index + 1), 16);
 
-                throw new RuntimeException(e);
+        return ((h < 0) || (l < 0)) ? -1 : ((h << 4) | l);
+    }
+
+    // ---------------------------------------------------------------- Encoded
+
+    /**
+     * A value as found in the parsed query, decoded the first time it is read
+     */
+    private static final class Encoded {
+        private final String query;
+        private final int start, end;
+        private String decoded;
+
+        Encoded(final String query, final int start, final int end) {
+            this.query = query;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            if (decoded == null) {
+                decoded = decode(query, start, end);
             }
+            return decoded;
+        }
+    }
+
+    // ----------------------------------------------------------------- Values
+
+    /**
+     * The values of a multivalued parameter
+     */
+    private static final class Values extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        Values() {
+            super(4);
+        }
+
+        Values(final List<String> values) {
+            super(values);
         }
     }
 }
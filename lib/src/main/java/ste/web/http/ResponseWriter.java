@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * The writer scripts get as <code>out</code> (see BasicHttpConnection.getWriter()):
+ * what is written becomes the content of the response, encoded in UTF-8.
+ *
+ * Content is kept in a buffer of bufferSize bytes. If the whole content fits in
+ * the buffer, it replaces the response entity and is sent with a
+ * Content-Length when the response is sent. Otherwise, as soon as the buffer
+ * is full, the response is committed: status line and headers are sent as they
+ * are at that moment, followed by the content in chunks through the
+ * connection's session buffer. Responses that can not be streamed (HEAD
+ * requests, HTTP/1.0 clients, statuses without body) are always kept in
+ * memory.
+ *
+ * flush() sends the buffered content only with FlushPolicy.EXPLICIT; with
+ * FlushPolicy.WHEN_FULL (the default) it does nothing, so that scripts
+ * flushing after each print do not turn each print into a packet.
+ *
+ * Without a connection (e.g. with NioHttpServer, see HttpSessionContext) the
+ * content is always kept in memory and becomes the response entity.
+ *
+ * A writer belongs to a connection and is reused for all its requests. It is
+ * not thread safe.
+ *
+ * @author ste
+ */
+public class ResponseWriter extends Writer {
+
+    public static enum FlushPolicy {
+        /**
+         * flush() commits the response and sends the buffered content
+         */
+        EXPLICIT,
+        /**
+         * content is sent only when the buffer is full or the response is sent
+         */
+        WHEN_FULL
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 8*1024;
+    public static final FlushPolicy DEFAULT_FLUSH_POLICY = FlushPolicy.WHEN_FULL;
+
+    private static final int CHAR_BUFFER_SIZE = 1024;
+
+    private final BasicHttpConnection connection;
+    private final FlushPolicy policy;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+
+    private HttpResponse response;
+    private ByteArrayOutputStream pending;
+    private OutputStream out;
+    private boolean used;
+
+    ResponseWriter(
+        final BasicHttpConnection connection, final int bufferSize, final FlushPolicy policy
+    ) {
+        this.connection = connection;
+        this.policy = policy;
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        this.bytes = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public void write(final char[] buf, int off, int len) throws IOException {
+        used = true;
+        while (len > 0) {
+            final int n = Math.min(len, chars.remaining());
+            chars.put(buf, off, n);
+            off += n; len -= n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(final String s, int off, int len) throws IOException {
+        used = true;
+        while (len > 0) {
+            final int n = Math.min(len, chars.remaining());
+            chars.put(s, off, off + n);
+            off += n; len -= n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        used = true;
+        chars.put((char)c);
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+    }
+
+    /**
+     * Sends the content written so far if the flush policy is EXPLICIT and the
+     * response can be streamed, does nothing otherwise.
+     */
+    @Override
+    public void flush() throws IOException {
+        if ((policy != FlushPolicy.EXPLICIT) || !used) {
+            return;
+        }
+        encode(false);
+        drain();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Same as flush(); the connection is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    public int getBufferSize() {
+        return bytes.capacity();
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return true if something was written for the current response
+     */
+    public boolean isUsed() {
+        return used;
+    }
+
+    /**
+     * @return true if the current response has already been sent
+     */
+    public boolean isCommitted() {
+        return out != null;
+    }
+
+    // ------------------------------------------------------- package methods
+
+    /**
+     * Sets the response the content is written for; without a response the
+     * content is kept in memory until the response is sent.
+     */
+    void bind(final HttpResponse response) {
+        this.response = response;
+    }
+
+    /**
+     * Gets ready for the next request, discarding anything not sent
+     */
+    void reset() {
+        chars.clear(); bytes.clear(); encoder.reset();
+        response = null; pending = null; out = null; used = false;
+    }
+
+    /**
+     * Completes the content of the given response: if the response was
+     * committed, the remaining content is sent and the chunked content
+     * terminated; otherwise the content becomes the response entity, unless
+     * the handler set one with content (e.g. a rendered view), which is then
+     * left as is. An empty BasicHttpEntity is just a placeholder and is
+     * replaced.
+     *
+     * @return true if the response was committed
+     *
+     * @throws IOException in case of IO errors
+     */
+    boolean finish(final HttpResponse response) throws IOException {
+        encode(true);
+
+        if (out != null) {
+            drain();
+            out.close();
+            return true;
+        }
+
+        if (hasContent(response)) {
+            return false;
+        }
+
+        final ContentType type = getContentType(response);
+        final ByteArrayEntity entity;
+        if (pending == null) {
+            //
+            // the buffer is reused by the next request
+            //
+            entity = new ByteArrayEntity(Arrays.copyOf(bytes.array(), bytes.position()), type);
+        } else {
+            pending.write(bytes.array(), 0, bytes.position());
+            entity = new ByteArrayEntity(pending.toByteArray(), type);
+        }
+        response.setEntity(entity);
+        response.removeHeaders(HTTP.TRANSFER_ENCODING);
+        response.setHeader(HTTP.CONTENT_LEN, String.valueOf(entity.getContentLength()));
+        response.setHeader(HTTP.CONTENT_TYPE, type.toString());
+
+        return false;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Encodes the buffered characters into the byte buffer, draining it when
+     * full; an incomplete surrogate pair is kept for the next write.
+     */
+    private void encode(final boolean endOfInput) throws IOException {
+        chars.flip();
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            drain();
+        }
+        chars.compact();
+
+        if (endOfInput) {
+            while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Sends the byte buffer, committing the response if not done yet, or
+     * keeps it in memory if the response can not be streamed.
+     */
+    private void drain() throws IOException {
+        if (bytes.position() == 0) {
+            return;
+        }
+
+        if ((out == null) && (response != null)
+            && (connection != null) && connection.canStream(response)) {
+            out = connection.commit(response, getContentType(response));
+            if (pending != null) {
+                pending.writeTo(out);
+                pending = null;
+            }
+        }
+
+        if (out != null) {
+            out.write(bytes.array(), 0, bytes.position());
+        } else {
+            if (pending == null) {
+                pending = new ByteArrayOutputStream();
+            }
+            pending.write(bytes.array(), 0, bytes.position());
+        }
+        bytes.clear();
+    }
+
+    /**
+     * @return true if the response has an entity other than an empty
+     *         BasicHttpEntity placeholder
+     */
+    private boolean hasContent(final HttpResponse response) {
+        final HttpEntity entity = response.getEntity();
+
+        return (entity != null)
+            && !((entity instanceof BasicHttpEntity) && !entity.isStreaming());
+    }
+
+    /**
+     * @return the content type of the response entity or text/html, with
+     *         charset UTF-8
+     */
+    private ContentType getContentType(final HttpResponse response) {
+        final HttpEntity entity = response.getEntity();
+        Header header = (entity == null) ? null : entity.getContentType();
+        if (header == null) {
+            header = response.getFirstHeader(HTTP.CONTENT_TYPE);
+        }
+
+        ContentType type = ContentType.create(ContentType.TEXT_HTML.getMimeType());
+        if ((header != null) && StringUtils.isNotBlank(header.getValue())) {
+            try {
+                type = ContentType.parse(header.getValue());
+            } catch (ParseException | UnsupportedCharsetException x) {
+                //
+                // keep text/html
+                //
+            }
+        }
+
+        return type.withCharset(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * Holds the live sessions by id. Sessions time out when they are not accessed
+ * for longer than the idle timeout or when they are older than the maximum
+ * lifetime; timed out sessions are removed and expired when looked up or by a
+ * background sweeper (see start()).
+ *
+ * The number of live sessions is bounded: when a new session exceeds the
+ * limit, the least recently used sessions are evicted. To keep creation cheap
+ * when the manager is full, eviction removes a small batch of sessions at once
+ * (1% of the maximum number of sessions).
+ *
+ * Lookups do not lock: sessions are stored in a ConcurrentHashMap and the
+ * access time is kept by each session.
+ *
+ * Optionally, sessions can be backed by a SessionStore, so that they survive a
+ * restart: sessions are saved with save() and when the manager is closed, and
+ * are restored lazily when looked up by id. Evicted sessions are saved too, so
+ * they can come back when requested again; timed out and invalidated sessions
+ * are removed from the store.
+ *
+ * @author ste
+ */
+public class SessionManager implements Closeable {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 30*60*1000; // 30 minutes
+    public static final long DEFAULT_MAX_LIFETIME = 0; // no limit
+    public static final int  DEFAULT_MAX_SESSIONS = 100000;
+    public static final long DEFAULT_SWEEP_INTERVAL = 60*1000; // 1 minute
+
+    private static final String HEADER_COOKIE = "Cookie";
+
+    private final String sessionIdName;
+    private final long idleTimeout, maxLifetime;
+    private final int maxSessions, evictionBatch;
+    private final ConcurrentMap<String, HttpSession> sessions;
+    private final Object evictionLock;
+    private final SessionStore store;
+    private final Logger log;
+
+    private final AtomicLong timeouts, evictions;
+
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a new SessionManager.
+     *
+     * @param sessionIdName the name of the session id cookie - NOT NULL
+     * @param idleTimeout milliseconds after the last access a session times out;
+     *                    0 means no idle timeout - NOT NEGATIVE
+     * @param maxLifetime milliseconds after the creation a session times out
+     *                    regardless of its use; 0 means no limit - NOT NEGATIVE
+     * @param maxSessions maximum number of live sessions - GREATER THAN 0
+     * @param store the persistent backend of the sessions - MAY BE NULL
+     *
+     * @throws IllegalArgumentException if any of the parameters is not valid
+     */
+    public SessionManager(
+        final String sessionIdName, final long idleTimeout,
+        final long maxLifetime, final int maxSessions,
+        final SessionStore store
+    ) {
+        if (sessionIdName == null) {
+            throw new IllegalArgumentException("sessionIdName can not be null");
+        }
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("idleTimeout can not be negative");
+        }
+        if (maxLifetime < 0) {
+            throw new IllegalArgumentException("maxLifetime can not be negative");
+        }
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be greater than 0");
+        }
+        this.sessionIdName = sessionIdName;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.maxSessions = maxSessions;
+        this.evictionBatch = Math.max(1, maxSessions / 100);
+        this.sessions = new ConcurrentHashMap<>();
+        this.evictionLock = new Object();
+        this.store = store;
+        this.log = Logger.getLogger(LOG_NAME);
+        this.timeouts = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.sweeper = null;
+    }
+
+    /**
+     * Creates a new SessionManager without a persistent backend.
+     *
+     * @see SessionManager(String, long, long, int, SessionStore)
+     */
+    public SessionManager(
+        final String sessionIdName, final long idleTimeout,
+        final long maxLifetime, final int maxSessions
+    ) {
+        this(sessionIdName, idleTimeout, maxLifetime, maxSessions, null);
+    }
+
+    /**
+     * Shortcut for new SessionManager(SessionHeader.DEFAULT_SESSION_HEADER,
+     * DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIFETIME, DEFAULT_MAX_SESSIONS)
+     */
+    public SessionManager() {
+        this(
+            SessionHeader.DEFAULT_SESSION_HEADER, DEFAULT_IDLE_TIMEOUT,
+            DEFAULT_MAX_LIFETIME, DEFAULT_MAX_SESSIONS
+        );
+    }
+
+    /**
+     * Creates and registers a new session, evicting the least recently used
+     * sessions if the maximum number of sessions is exceeded.
+     *
+     * @return the new session
+     */
+    public HttpSession create() {
+        HttpSession session = new HttpSession(sessionIdName);
+        sessions.put(session.getId(), session);
+
+        if (sessions.size() > maxSessions) {
+            evict(session);
+        }
+
+        return session;
+    }
+
+    /**
+     * Returns the live session with the given id marking it as accessed; if
+     * not live, the session is restored from the store, if any.
+     *
+     * @param id the session id - MAY BE NULL
+     *
+     * @return the session or null if there is no such session or it timed out
+     */
+    public HttpSession get(final String id) {
+        if (id == null) {
+            return null;
+        }
+
+        HttpSession session = sessions.get(id);
+        if (session == null) {
+            session = restore(id);
+            if (session == null) {
+                return null;
+            }
+        }
+
+        if (isTimedOut(session, System.currentTimeMillis())) {
+            if (remove(session)) {
+                timeouts.incrementAndGet();
+            }
+            return null;
+        }
+        session.access();
+
+        return session;
+    }
+
+    /**
+     * Returns the live session whose id is given in the request's cookies (see
+     * HttpUtils.extractSessionId()); if there is no such session and create is
+     * true, a new session is created.
+     *
+     * @param request the request - NOT NULL
+     * @param create true if a new session shall be created if none is found
+     *
+     * @return the session or null if not found and create is false
+     */
+    public HttpSession get(final HttpRequest request, final boolean create) {
+        if (request == null) {
+            throw new IllegalArgumentException("request can not be null");
+        }
+
+        for (Header cookies: request.getHeaders(HEADER_COOKIE)) {
+            HttpSession session = get(
+                HttpUtils.extractSessionId(sessionIdName, cookies.getValue())
+            );
+            if (session != null) {
+                return session;
+            }
+        }
+
+        return (create) ? create() : null;
+    }
+
+    /**
+     * Removes and expires the session with the given id, if any.
+     *
+     * @param id the session id - MAY BE NULL
+     */
+    public void invalidate(final String id) {
+        if (id == null) {
+            return;
+        }
+        HttpSession session = sessions.get(id);
+        if (session != null) {
+            remove(session);
+        }
+    }
+
+    /**
+     * Saves the current state of the given session in the store, if any.
+     * Errors are logged, but do not affect the session.
+     *
+     * @param session the session - NOT NULL
+     */
+    public void save(final HttpSession session) {
+        if (session == null) {
+            throw new IllegalArgumentException("session can not be null");
+        }
+        if (store == null) {
+            return;
+        }
+        try {
+            store.save(session);
+        } catch (IOException x) {
+            log.severe(String.format("unable to save session %s: %s", session.getId(), x));
+        }
+    }
+
+    /**
+     * Removes and expires all sessions that timed out.
+     *
+     * @return the number of sessions removed
+     */
+    public int sweep() {
+        final long now = System.currentTimeMillis();
+
+        int n = 0;
+        for (HttpSession session: sessions.values()) {
+            if (isTimedOut(session, now) && remove(session)) {
+                ++n;
+            }
+        }
+        timeouts.addAndGet(n);
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("sessions swept: %d, live sessions: %d", n, sessions.size()));
+        }
+
+        return n;
+    }
+
+    /**
+     * Starts the background sweeper, which calls sweep() every interval
+     * milliseconds. Calling start() on a started manager has no effect.
+     *
+     * @param interval the sweep interval in milliseconds - GREATER THAN 0
+     */
+    public synchronized void start(final long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be greater than 0");
+        }
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "session-sweeper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException x) {
+                    //
+                    // a failure must not stop next sweeps
+                    //
+                    log.severe(String.format("error sweeping sessions: %s", x));
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shortcut for start(DEFAULT_SWEEP_INTERVAL)
+     */
+    public void start() {
+        start(DEFAULT_SWEEP_INTERVAL);
+    }
+
+    /**
+     * Stops the background sweeper; sessions are kept. If there is a store,
+     * all live sessions are saved and the store is closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        if (store != null) {
+            for (HttpSession session: sessions.values()) {
+                if (!session.isExpired()) {
+                    save(session);
+                }
+            }
+            try {
+                store.close();
+            } catch (IOException x) {
+                log.severe(String.format("unable to close the session store: %s", x));
+            }
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return sweeper != null;
+    }
+
+    /**
+     * @return the number of live sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    public String getSessionIdName() {
+        return sessionIdName;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * @return the persistent backend of the sessions or null if none
+     */
+    public SessionStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return how many sessions were removed because timed out
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return how many sessions were evicted to stay within maxSessions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private boolean isTimedOut(final HttpSession session, final long now) {
+        return session.isExpired()
+            || ((idleTimeout > 0) && (now - session.getLastAccessedTime() > idleTimeout))
+            || ((maxLifetime > 0) && (now - session.getCreationTime() > maxLifetime));
+    }
+
+    private boolean remove(final HttpSession session) {
+        if (sessions.remove(session.getId(), session)) {
+            session.expire();
+            unstore(session.getId());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restores the session with the given id from the store and registers it;
+     * if a concurrent request restored the same session, its copy wins.
+     */
+    private HttpSession restore(final String id) {
+        if (store == null) {
+            return null;
+        }
+
+        HttpSession session = null;
+        try {
+            session = store.load(id);
+        } catch (IOException x) {
+            log.severe(String.format("unable to restore session %s: %s", id, x));
+        }
+        if (session == null) {
+            return null;
+        }
+
+        if (isTimedOut(session, System.currentTimeMillis())) {
+            unstore(id);
+            timeouts.incrementAndGet();
+            return null;
+        }
+
+        HttpSession current = sessions.putIfAbsent(id, session);
+        if (current != null) {
+            return current;
+        }
+        if (sessions.size() > maxSessions) {
+            evict(session);
+        }
+
+        return session;
+    }
+
+    private void unstore(final String id) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.remove(id);
+        } catch (IOException x) {
+            log.severe(String.format("unable to remove session %s from the store: %s", id, x));
+        }
+    }
+
+    /**
+     * Evicts the least recently used sessions but the given one, which has
+     * just been created; only one thread at a time scans the sessions, the
+     * others find the job done.
+     */
+    private void evict(final HttpSession created) {
+        synchronized (evictionLock) {
+            final int excess = sessions.size() - maxSessions;
+            if (excess <= 0) {
+                return;
+            }
+            final int n = Math.max(excess, evictionBatch);
+
+            //
+            // keep the n least recently used sessions in a heap whose head is
+            // the most recently used of them
+            //
+            PriorityQueue<HttpSession> eldest = new PriorityQueue<>(n, new Comparator<HttpSession>() {
+                @Override
+                public int compare(HttpSession s1, HttpSession s2) {
+                    return Long.compare(s2.getLastAccessedTime(), s1.getLastAccessedTime());
+                }
+            });
+            for (HttpSession session: sessions.values()) {
+                if (session == created) {
+                    continue;
+                }
+                if (eldest.size() < n) {
+                    eldest.add(session);
+                } else if (session.getLastAccessedTime() < eldest.peek().getLastAccessedTime()) {
+                    eldest.poll(); eldest.add(session);
+                }
+            }
+
+            //
+            // evicted sessions are saved, so that they can come back
+            //
+            int evicted = 0;
+            for (HttpSession session: eldest) {
+                if (sessions.remove(session.getId(), session)) {
+                    save(session);
+                    session.expire();
+                    ++evicted;
+                }
+            }
+            evictions.addAndGet(evicted);
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("sessions evicted: %d", evicted));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A persistent backend for sessions, so that they survive a restart (see
+ * SessionManager). Implementations must be thread safe.
+ *
+ * @author ste
+ */
+public interface SessionStore extends Closeable {
+
+    /**
+     * Stores the current state of the given session: its times, its principal
+     * and its attributes. Principal and attributes that are not serializable
+     * are not stored. The store may write the session asynchronously, but a
+     * subsequent load() must return the saved state.
+     *
+     * @param session the session - NOT NULL
+     *
+     * @throws IOException if the session can not be serialized or stored
+     */
+    void save(HttpSession session) throws IOException;
+
+    /**
+     * Restores the session with the given id.
+     *
+     * @param id the session id - NOT NULL
+     *
+     * @return a new session object with the stored state or null if no session
+     *         with the given id is stored
+     *
+     * @throws IOException if the session can not be read or deserialized
+     */
+    HttpSession load(String id) throws IOException;
+
+    /**
+     * Removes the session with the given id, if stored.
+     *
+     * @param id the session id - NOT NULL
+     *
+     * @throws IOException in case of errors
+     */
+    void remove(String id) throws IOException;
+}
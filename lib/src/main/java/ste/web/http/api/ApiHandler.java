@@ -28,23 +28,31 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.MessageConstraintException;
 import org.apache.http.RequestLine;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
+import ste.web.beanshell.InterpreterPool;
+import ste.web.beanshell.ScriptCache;
+import ste.web.http.FormDecoder;
 import ste.web.http.HttpSessionContext;
+import ste.web.http.JsonDecoder;
 import ste.web.http.MimeUtils;
+import ste.web.http.entity.JsonEntity;
 import static ste.web.http.api.Constants.*;
 import ste.web.http.beanshell.BeanShellUtils;
 
@@ -55,6 +63,10 @@ import ste.web.http.beanshell.BeanShellUtils;
 public class ApiHandler  implements HttpRequestHandler {
     
     private final String apiroot, webcontext;
+    private final ScriptCache scripts;
+    private final InterpreterPool interpreters;
+    private FormDecoder forms = new FormDecoder();
+    private JsonDecoder json = new JsonDecoder();
     private final Logger log;
 
     /**
@@ -64,19 +76,80 @@ public class ApiHandler  implements HttpRequestHandler {
      * @param webcontext optional webcontext that identifies a web call; id must
      *                   not contain a tailing slah (e.g. /my/webcontext) - NOT NULL
      * 
-     * @throws IllegalArgumentException if webroot is null
+     * @param scripts the cache of parsed scripts - NOT NULL
+     * @param interpreters the pool of interpreters executing the scripts; it
+     *        can not hold more interpreters than the ones scripts keeps
+     *        parses for (see ScriptCache.getMaxInterpreters()) - NOT NULL
+     * 
+     * @throws IllegalArgumentException if webroot, scripts or interpreters
+     *         are null or if interpreters is bigger than scripts can serve
      * 
      */
-    public ApiHandler(final String apiroot, final String webcontext) {
+    public ApiHandler(
+        final String apiroot, final String webcontext, 
+        final ScriptCache scripts, final InterpreterPool interpreters
+    ) {
         if (apiroot == null) {
             throw new IllegalArgumentException("apiroot can not be null");
         }
+        if (scripts == null) {
+            throw new IllegalArgumentException("scripts can not be null");
+        }
+        if (interpreters == null) {
+            throw new IllegalArgumentException("interpreters can not be null");
+        }
+        if (interpreters.getSize() > scripts.getMaxInterpreters()) {
+            //
+            // the parses of the exceeding interpreters would not be cached
+            //
+            throw new IllegalArgumentException(String.format(
+                "interpreters can not be more than the interpreters scripts are parsed for (%d > %d)",
+                interpreters.getSize(), scripts.getMaxInterpreters()
+            ));
+        }
         
         this.webcontext = webcontext;
         this.apiroot = apiroot;
+        this.scripts = scripts;
+        this.interpreters = interpreters;
         this.log = Logger.getLogger(LOG_NAME);
     }
     
+    /**
+     * Shortcut for new ApiHandler(apiroot, webcontext, scripts, 
+     * new InterpreterPool(scripts.getMaxInterpreters())).
+     * 
+     * @param apiroot parent directory of the API tree structure (usually 
+     *                the web root) - NOT NULL
+     * @param webcontext optional webcontext that identifies a web call; id must
+     *                   not contain a tailing slah (e.g. /my/webcontext) - NOT NULL
+     * @param scripts the cache of parsed scripts - NOT NULL
+     * 
+     * @throws IllegalArgumentException if webroot or scripts are null
+     * 
+     */
+    public ApiHandler(final String apiroot, final String webcontext, final ScriptCache scripts) {
+        this(
+            apiroot, webcontext, scripts, 
+            new InterpreterPool((scripts != null) ? scripts.getMaxInterpreters() : 1)
+        );
+    }
+    
+    /**
+     * Shortcut for new ApiHandler(apiroot, webcontext, new ScriptCache()).
+     * 
+     * @param apiroot parent directory of the API tree structure (usually 
+     *                the web root) - NOT NULL
+     * @param webcontext optional webcontext that identifies a web call; id must
+     *                   not contain a tailing slah (e.g. /my/webcontext) - NOT NULL
+     * 
+     * @throws IllegalArgumentException if webroot is null
+     * 
+     */
+    public ApiHandler(final String apiroot, final String webcontext) {
+        this(apiroot, webcontext, new ScriptCache());
+    }
+    
     /**
      * Shortcut for new ApiHandler(apiroot, "/api").
      * 
@@ -86,6 +159,54 @@ public class ApiHandler  implements HttpRequestHandler {
     public ApiHandler(final String apiroot) {
         this(apiroot, "/api");
     }
+    
+    /**
+     * @return the cache of the parsed application and action scripts
+     */
+    public ScriptCache getScriptCache() {
+        return scripts;
+    }
+
+    /**
+     * @return the pool of interpreters used to execute the scripts
+     */
+    public InterpreterPool getInterpreterPool() {
+        return interpreters;
+    }
+
+    /**
+     * @return the decoder of url-encoded request bodies and its limits
+     */
+    public FormDecoder getFormDecoder() {
+        return forms;
+    }
+
+    /**
+     * @param forms the decoder of url-encoded request bodies - NOT NULL
+     */
+    public void setFormDecoder(final FormDecoder forms) {
+        if (forms == null) {
+            throw new IllegalArgumentException("forms can not be null");
+        }
+        this.forms = forms;
+    }
+
+    /**
+     * @return the decoder of JSON request bodies, its limit and mode
+     */
+    public JsonDecoder getJsonDecoder() {
+        return json;
+    }
+
+    /**
+     * @param json the decoder of JSON request bodies - NOT NULL
+     */
+    public void setJsonDecoder(final JsonDecoder json) {
+        if (json == null) {
+            throw new IllegalArgumentException("json can not be null");
+        }
+        this.json = json;
+    }
 
     /**
      * Note that we expect response to have a body entity set (@see HttpEntiry)
@@ -101,6 +222,7 @@ public class ApiHandler  implements HttpRequestHandler {
     public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
         RRequest rr = null;
         File actionScript = null, applicationScript = null;
+        Interpreter bsh = null;
         
         try {
             rr = new RRequest(reduce(request.getRequestLine()));
@@ -117,20 +239,29 @@ public class ApiHandler  implements HttpRequestHandler {
                 log.fine(String.format("action script path: %s", actionScript.getAbsolutePath()));
             }
         
-            Interpreter bsh = new Interpreter();
-            BeanShellUtils.setup(bsh, request, response, (HttpSessionContext)context);
+            //
+            // interpreters are reused so that they reuse their parsed scripts
+            // too (see ScriptCache)
+            //
+            bsh = interpreters.checkout();
+            BeanShellUtils.setup(bsh, request, response, (HttpSessionContext)context, forms, json);
             bsh.set(VAR_SOURCE, actionScript.getAbsolutePath());
             bsh.set(VAR_RREQUEST, rr);
             if (applicationScript.exists()) {
-                bsh.eval(BeanShellUtils.getScript(applicationScript));
+                scripts.get(applicationScript, bsh).eval(bsh);
             }
-            bsh.eval(BeanShellUtils.getScript(actionScript));
+            scripts.get(actionScript, bsh).eval(bsh);
             
             Object body = bsh.get(rr.getHandler());
             
+            //
+            // a content type given by the caller or set by the script is kept,
+            // otherwise the body is JSON encoded in UTF-8
+            //
             AbstractHttpEntity e = (AbstractHttpEntity)response.getEntity();
-            if (e.getContentType() == null) {
-                e.setContentType("application/json");
+            final Header contentType = e.getContentType();
+            if (contentType == null) {
+                e.setContentType(JsonEntity.CONTENT_TYPE);
             }
             
             if (body != null) {
@@ -144,24 +275,46 @@ public class ApiHandler  implements HttpRequestHandler {
                         MimeUtils.MIME_UNKNOWN.equals(mimeType)?
                             "application/octet-stream" : mimeType
                     );
+                } else if (JsonEntity.isStreamable(body)) {
+                    //
+                    // serialized while sent, never as a whole in memory
+                    //
+                    JsonEntity jsonEntity = new JsonEntity(body);
+                    if (contentType != null) {
+                        jsonEntity.setContentType(contentType);
+                    }
+                    response.setEntity(jsonEntity);
                 } else {
                     String bodyString = String.valueOf(body);
-                    byte[] buf = bodyString.getBytes();
+                    byte[] buf = bodyString.getBytes(StandardCharsets.UTF_8);
                     ByteArrayInputStream is = new ByteArrayInputStream(buf);
                     BasicHttpEntity basicEntity = (BasicHttpEntity)e;
                     basicEntity.setContent(is);
                     basicEntity.setContentLength(buf.length);
-                    if (e.getContentType() == null) {
-                        e.setContentType("application/json");
-                    }
                 }
             }
             
-            BeanShellUtils.cleanup(bsh, request);
+            BeanShellUtils.cleanup(bsh, request, (HttpSessionContext)context);
             BeanShellUtils.setVariablesAttributes(bsh, context);
+        } catch (MessageConstraintException x) {
+            response.setStatusLine(
+                HttpVersion.HTTP_1_1,
+                HttpStatus.SC_REQUEST_TOO_LONG,
+                StringEscapeUtils.escapeHtml4(x.getMessage())
+            );
         } catch (FileNotFoundException e) {
             response.setStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Script " + actionScript + " not found.");
         } catch (EvalError x) {
+            MessageConstraintException tooLarge = BeanShellUtils.getConstraintViolation(x);
+            if (tooLarge != null) {
+                response.setStatusLine(
+                    HttpVersion.HTTP_1_1,
+                    HttpStatus.SC_REQUEST_TOO_LONG,
+                    StringEscapeUtils.escapeHtml4(tooLarge.getMessage())
+                );
+                return;
+            }
+            
             String msg = x.getMessage();
 
             if (log.isLoggable(Level.SEVERE)) {
@@ -186,6 +339,11 @@ public class ApiHandler  implements HttpRequestHandler {
                 HttpStatus.SC_INTERNAL_SERVER_ERROR, 
                 StringEscapeUtils.escapeHtml4(x.getMessage())
             );
+        } finally {
+            if (bsh != null) {
+                BeanShellUtils.closeBody(bsh);
+                interpreters.checkin(bsh);
+            }
         }
     }
     
@@ -28,17 +28,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.MessageConstraintException;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import ste.web.beanshell.BeanShellError;
+import ste.web.beanshell.InterpreterPool;
 
 import static ste.web.beanshell.Constants.*;
+import ste.web.http.FormDecoder;
 import ste.web.http.HttpSessionContext;
+import ste.web.http.JsonDecoder;
 
 /**
  * Executes the bsh script specified by the URL. The script is the controller
@@ -73,28 +78,46 @@ public class BeanShellHandler implements HttpRequestHandler {
     private String controllersFolder;
     private String appsRoot;
 
+    private final InterpreterPool interpreters;
+    private FormDecoder forms = new FormDecoder();
+    private JsonDecoder json = new JsonDecoder();
     private final Logger log;
 
     // ------------------------------------------------------------ Constructors
 
     /**
      * Creates a new BeanShellHandler looking for scripts from the given webroot
-     * and using the default controller folder.
+     * and executing them with interpreters taken from the given pool.
      * 
      * @param webroot - NOT NULL
+     * @param controllerFolder - MAY BE NULL
+     * @param interpreters - NOT NULL
      */
-    public BeanShellHandler(final String webroot) {
+    public BeanShellHandler(final String webroot, final String controllerFolder, final InterpreterPool interpreters) {
         if (webroot == null) {
             throw new IllegalArgumentException("webroot can not be null");
         }
-        this.controllersFolder = null;
+        if (interpreters == null) {
+            throw new IllegalArgumentException("interpreters can not be null");
+        }
+        this.controllersFolder = controllerFolder;
         this.appsRoot = webroot;
+        this.interpreters = interpreters;
         this.log = Logger.getLogger(LOG_NAME);
     }
     
     public BeanShellHandler(final String webroot, final String controllerFolder) {
-        this(webroot);
-        setControllersFolder(controllerFolder);
+        this(webroot, controllerFolder, new InterpreterPool());
+    }
+    
+    /**
+     * Creates a new BeanShellHandler looking for scripts from the given webroot
+     * and using the default controller folder.
+     * 
+     * @param webroot - NOT NULL
+     */
+    public BeanShellHandler(final String webroot) {
+        this(webroot, null);
     }
 
     // ---------------------------------------------------------- Public methods
@@ -113,6 +136,47 @@ public class BeanShellHandler implements HttpRequestHandler {
     public void setControllersFolder(String controllersFolder) {
         this.controllersFolder = controllersFolder;
     }
+    
+    /**
+     * @return the pool of interpreters used to execute the scripts
+     */
+    public InterpreterPool getInterpreterPool() {
+        return interpreters;
+    }
+
+    /**
+     * @return the decoder of url-encoded request bodies and its limits
+     */
+    public FormDecoder getFormDecoder() {
+        return forms;
+    }
+
+    /**
+     * @param forms the decoder of url-encoded request bodies - NOT NULL
+     */
+    public void setFormDecoder(final FormDecoder forms) {
+        if (forms == null) {
+            throw new IllegalArgumentException("forms can not be null");
+        }
+        this.forms = forms;
+    }
+
+    /**
+     * @return the decoder of JSON request bodies, its limit and mode
+     */
+    public JsonDecoder getJsonDecoder() {
+        return json;
+    }
+
+    /**
+     * @param json the decoder of JSON request bodies - NOT NULL
+     */
+    public void setJsonDecoder(final JsonDecoder json) {
+        if (json == null) {
+            throw new IllegalArgumentException("json can not be null");
+        }
+        this.json = json;
+    }
 
     @Override
     public void handle(HttpRequest  request,
@@ -147,9 +211,9 @@ public class BeanShellHandler implements HttpRequestHandler {
             log.fine(String.format("script path: %s", scriptFile.getAbsolutePath()));
         }
 
+        Interpreter bsh = interpreters.checkout();
         try {
-            Interpreter bsh = new Interpreter();
-            BeanShellUtils.setup(bsh, request, response, (HttpSessionContext)context);
+            BeanShellUtils.setup(bsh, request, response, (HttpSessionContext)context, forms, json);
             bsh.set(VAR_SOURCE, scriptFile.getAbsolutePath());
             bsh.eval(BeanShellUtils.getScript(scriptFile));
 
@@ -162,11 +226,27 @@ public class BeanShellHandler implements HttpRequestHandler {
                 log.fine("view: " + view);
             }
 
-            BeanShellUtils.cleanup(bsh, request);
+            BeanShellUtils.cleanup(bsh, request, (HttpSessionContext)context);
             BeanShellUtils.setVariablesAttributes(bsh, context);
+        } catch (MessageConstraintException x) {
+            response.setStatusLine(
+                HttpVersion.HTTP_1_1,
+                HttpStatus.SC_REQUEST_TOO_LONG,
+                StringEscapeUtils.escapeHtml4(x.getMessage())
+            );
         } catch (FileNotFoundException e) {
             response.setStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Script " + scriptFile + " not found.");
         } catch (EvalError x) {
+            MessageConstraintException tooLarge = BeanShellUtils.getConstraintViolation(x);
+            if (tooLarge != null) {
+                response.setStatusLine(
+                    HttpVersion.HTTP_1_1,
+                    HttpStatus.SC_REQUEST_TOO_LONG,
+                    StringEscapeUtils.escapeHtml4(tooLarge.getMessage())
+                );
+                return;
+            }
+            
             String msg = x.getMessage();
             
             if (log.isLoggable(Level.SEVERE)) {
@@ -180,6 +260,9 @@ public class BeanShellHandler implements HttpRequestHandler {
                 "server erorr processing the resource - see server log for details",
                 new BeanShellError(x)
             );
+        } finally {
+            BeanShellUtils.closeBody(bsh);
+            interpreters.checkin(bsh);
         }
     }
 
@@ -23,25 +23,25 @@ package ste.web.http.beanshell;
 
 import bsh.EvalError;
 import bsh.Interpreter;
+import bsh.TargetError;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.Header;
+import java.io.Writer;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
-import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.entity.ContentType;
+import org.apache.http.MessageConstraintException;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 
 import static ste.web.beanshell.Constants.*;
 import ste.web.http.BasicHttpConnection;
+import ste.web.http.FormDecoder;
 import ste.web.http.HttpSessionContext;
 import ste.web.http.HttpUtils;
+import ste.web.http.JsonDecoder;
+import ste.web.http.ParsedRequest;
 import ste.web.http.QueryString;
 
 /**
@@ -56,6 +56,55 @@ public class BeanShellUtils extends ste.web.beanshell.BeanShellUtils {
                              final HttpRequest        request     ,
                              final HttpResponse       response    ,
                              final HttpSessionContext context     )
+    throws EvalError, IOException {
+        setup(interpreter, request, response, context, new FormDecoder());
+    }
+
+    /**
+     * Same as setup(interpreter, request, response, context), but decoding an
+     * url-encoded body with the given decoder and its limits.
+     *
+     * @param interpreter the beanshell interpreter - NOT NULL
+     * @param request the request - NOT NULL
+     * @param response the response - NOT NULL
+     * @param context the request context - NOT NULL
+     * @param forms the decoder of url-encoded bodies - NOT NULL
+     *
+     * @throws EvalError in case of interpreter errors
+     * @throws MessageConstraintException if the form body exceeds the limits
+     * @throws IOException if the body can not be read
+     */
+    public static void setup(final Interpreter        interpreter ,
+                             final HttpRequest        request     ,
+                             final HttpResponse       response    ,
+                             final HttpSessionContext context     ,
+                             final FormDecoder        forms       )
+    throws EvalError, IOException {
+        setup(interpreter, request, response, context, forms, new JsonDecoder());
+    }
+
+    /**
+     * Same as setup(interpreter, request, response, context, forms), but
+     * decoding a JSON body with the given decoder, which may give the script
+     * a JsonStream instead of the whole JSON tree.
+     *
+     * @param interpreter the beanshell interpreter - NOT NULL
+     * @param request the request - NOT NULL
+     * @param response the response - NOT NULL
+     * @param context the request context - NOT NULL
+     * @param forms the decoder of url-encoded bodies - NOT NULL
+     * @param json the decoder of JSON bodies - NOT NULL
+     *
+     * @throws EvalError in case of interpreter errors
+     * @throws MessageConstraintException if the body exceeds the limits
+     * @throws IOException if the body can not be read
+     */
+    public static void setup(final Interpreter        interpreter ,
+                             final HttpRequest        request     ,
+                             final HttpResponse       response    ,
+                             final HttpSessionContext context     ,
+                             final FormDecoder        forms       ,
+                             final JsonDecoder        json        )
     throws EvalError, IOException {
         //
         // Set attributes as script variables
@@ -68,47 +117,41 @@ public class BeanShellUtils extends ste.web.beanshell.BeanShellUtils {
         //
         // If the request contains url-encoded body, set the given parameters
         //
-        Header[] headers = request.getHeaders(HttpHeaders.CONTENT_TYPE);
-        if (headers.length > 0) {
-            String contentType = headers[0].getValue();
-            if (contentType.matches(ContentType.APPLICATION_FORM_URLENCODED.getMimeType() + "( *;.*)?")) {
-                HttpEntityEnclosingRequest r = (HttpEntityEnclosingRequest)request;
-                HttpEntity e = r.getEntity();
-
-                QueryString qs = QueryString.parse(IOUtils.toString(e.getContent()));
-                for (String n: qs.getNames()) {
-                    String name = normalizeVariableName(n);
-                    interpreter.set(name, qs.getValues(n).get(0));
-                }
-            }
+        ParsedRequest parsed = context.getParsedRequest(request);
+        QueryString qs = parsed.getForm(forms);
+        for (String n: qs.getNames()) {
+            String name = normalizeVariableName(n);
+            interpreter.set(name, qs.get(n));
         }
         
         //
         // Set request parameters as script variables. Note that parameters
         // override attributes (note that these override form content
         //
-        try {
-            QueryString qs = QueryString.parse(new URI(request.getRequestLine().getUri()));
-            for (String n: qs.getNames()) {
-                String name = normalizeVariableName(n);
-                interpreter.set(name, qs.getValues(n).get(0));
-            }
-        } catch (URISyntaxException x) {
-            //
-            // nothing to do
-            //
+        qs = parsed.getQuery();
+        for (String n: qs.getNames()) {
+            String name = normalizeVariableName(n);
+            interpreter.set(name, qs.get(n));
         }
         
-        BasicHttpConnection connection = 
-            (BasicHttpConnection)context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+        //
+        // without a blocking connection (e.g. with NioHttpServer) out is
+        // buffered in the context
+        //
+        Object c = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+        Writer out = (c instanceof BasicHttpConnection) 
+                   ? ((BasicHttpConnection)c).getWriter(response) 
+                   : context.getWriter(response)
+                   ;
 
         interpreter.set(VAR_REQUEST,  request                             );
         interpreter.set(VAR_RESPONSE, response                            );
         interpreter.set(VAR_SESSION,  context                             );
-        interpreter.set(VAR_OUT,      connection.getWriter()              );
+        interpreter.set(VAR_OUT,      out                                 );
         interpreter.set(VAR_LOG,      log                                 );
         if (HttpUtils.hasJSONBody(request) && (request instanceof HttpEntityEnclosingRequest)) {
-            interpreter.set(VAR_BODY, getJSONBody(getEntityInputStream(request)));
+            HttpEntity e = ((HttpEntityEnclosingRequest)request).getEntity();
+            interpreter.set(VAR_BODY, json.decode(e.getContent(), e.getContentLength()));
         }
     }
     
@@ -125,16 +168,25 @@ public class BeanShellUtils extends ste.web.beanshell.BeanShellUtils {
         final Interpreter interpreter,
         final HttpRequest request    
     ) throws EvalError {
-        try {
-            URI uri = new URI(request.getRequestLine().getUri());
-            for(String name: QueryString.parse(uri).getNames()) {
-                interpreter.unset(name);
-            }
-        } catch (URISyntaxException x) {
-            //
-            // nothing to do
-            //
-        }
+        cleanup(interpreter, new ParsedRequest(request));
+    }
+
+    /**
+     * Same as cleanup(interpreter, request), but reusing the request already
+     * parsed in the given context.
+     *
+     * @param interpreter the beanshell interpreter
+     * @param request the request
+     * @param context the request context - NOT NULL
+     *
+     * @throws bsh.EvalError in case of syntax errors
+     */
+    public static void cleanup(
+        final Interpreter interpreter,
+        final HttpRequest request,
+        final HttpSessionContext context
+    ) throws EvalError {
+        cleanup(interpreter, context.getParsedRequest(request));
     }
     
     /**
@@ -161,9 +213,54 @@ public class BeanShellUtils extends ste.web.beanshell.BeanShellUtils {
         }
     }
 
+    /**
+     * Releases what the body given to the script holds (i.e. the parser of a
+     * JsonStream); errors are ignored as the request has been served anyway.
+     *
+     * @param interpreter the beanshell interpreter - NOT NULL
+     */
+    public static void closeBody(final Interpreter interpreter) {
+        try {
+            Object body = interpreter.get(VAR_BODY);
+            if (body instanceof Closeable) {
+                ((Closeable)body).close();
+            }
+        } catch (EvalError | IOException x) {
+            //
+            // nothing to do
+            //
+        }
+    }
+
+    /**
+     * Scripts get request bodies read on demand (e.g. a JsonStream), so that
+     * a body exceeding its limits can fail inside the script, wrapped in a
+     * TargetError and possibly in an UncheckedIOException.
+     *
+     * @param x the script error - NOT NULL
+     *
+     * @return the MessageConstraintException that caused the given error or
+     *         null if not caused by a body exceeding its limits
+     */
+    public static MessageConstraintException getConstraintViolation(final EvalError x) {
+        Throwable cause = (x instanceof TargetError) ? ((TargetError)x).getTarget() : x.getCause();
+        while (cause != null) {
+            if (cause instanceof MessageConstraintException) {
+                return (MessageConstraintException)cause;
+            }
+            cause = (cause.getCause() == cause) ? null : cause.getCause();
+        }
+
+        return null;
+    }
+
     // --------------------------------------------------------- private methods
-    
-    private static InputStream getEntityInputStream(HttpRequest r) throws IOException {
-        return ((HttpEntityEnclosingRequest)r).getEntity().getContent();
+
+    private static void cleanup(final Interpreter interpreter, final ParsedRequest request)
+    throws EvalError {
+        for(String name: request.getQuery().getNames()) {
+            interpreter.unset(name);
+        }
     }
+    
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * An entity with the remaining content of a (possibly direct) ByteBuffer. The
+ * buffer is never modified: each write works on a duplicate, so the same
+ * buffer can back any number of concurrent responses.
+ *
+ * @author ste
+ */
+public class ByteBufferEntity extends AbstractHttpEntity implements ZeroCopyEntity {
+
+    protected final ByteBuffer buffer;
+
+    /**
+     * @param buffer the content - NOT NULL
+     * @param type the content type - MAY BE NULL
+     */
+    public ByteBufferEntity(final ByteBuffer buffer, final ContentType type) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer can not be null");
+        }
+        this.buffer = buffer.asReadOnlyBuffer();
+        if (type != null) {
+            setContentType(type.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        final ByteBuffer content = buffer.duplicate();
+
+        return new InputStream() {
+            @Override
+            public int read() {
+                return content.hasRemaining() ? (content.get() & 0xff) : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!content.hasRemaining()) {
+                    return -1;
+                }
+                final int n = Math.min(len, content.remaining());
+                content.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return content.remaining();
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        //
+        // the wrapping channel is not closed, the stream belongs to the caller
+        //
+        writeTo(Channels.newChannel(out));
+        out.flush();
+    }
+
+    @Override
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel can not be null");
+        }
+        final ByteBuffer content = buffer.duplicate();
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a representation, as in Range and Content-Range
+ * headers (RFC 7233); first and last are inclusive.
+ *
+ * @author ste
+ */
+public final class ByteRange {
+
+    public static final String UNIT = "bytes";
+
+    public final long first, last;
+
+    /**
+     * @param first the first byte position - NOT NEGATIVE
+     * @param last the last byte position - NOT LESS THAN first
+     */
+    public ByteRange(final long first, final long last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException(
+                String.format("invalid range %d-%d", first, last)
+            );
+        }
+        this.first = first;
+        this.last = last;
+    }
+
+    public long length() {
+        return last - first + 1;
+    }
+
+    /**
+     * @param total the length of the whole representation
+     *
+     * @return the value of the Content-Range header for this range
+     */
+    public String toContentRange(final long total) {
+        return UNIT + ' ' + first + '-' + last + '/' + total;
+    }
+
+    /**
+     * Parses the value of a Range header against a representation of the
+     * given length. Ranges not satisfiable are dropped, overlapping or
+     * adjacent ranges are merged and the result is sorted.
+     *
+     * @param value the Range header value - MAY BE NULL
+     * @param length the length of the representation
+     *
+     * @return the satisfiable ranges, empty if none is satisfiable or null if
+     *         value is not a valid byte range set (in which case the header
+     *         shall be ignored)
+     */
+    public static List<ByteRange> parse(final String value, final long length) {
+        if (value == null) {
+            return null;
+        }
+        String spec = value.trim();
+        if (!spec.startsWith(UNIT + '=')) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String range: spec.substring(UNIT.length() + 1).split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int dash = range.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                final String a = range.substring(0, dash).trim(),
+                             b = range.substring(dash+1).trim();
+                if (a.isEmpty()) {
+                    //
+                    // suffix range: the last b bytes
+                    //
+                    final long suffix = Long.parseLong(b);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if ((suffix > 0) && (length > 0)) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    }
+                } else {
+                    final long first = Long.parseLong(a);
+                    final long last = b.isEmpty() ? Long.MAX_VALUE : Long.parseLong(b);
+                    if ((first < 0) || (last < first)) {
+                        return null;
+                    }
+                    if (first < length) {
+                        ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException x) {
+                return null;
+            }
+        }
+
+        return merge(ranges);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof ByteRange)) {
+            return false;
+        }
+        ByteRange r = (ByteRange)o;
+
+        return (first == r.first) && (last == r.last);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(first ^ (first >>> 32)) * 31 + (int)(last ^ (last >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return first + "-" + last;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static List<ByteRange> merge(final List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        Collections.sort(ranges, new Comparator<ByteRange>() {
+            @Override
+            public int compare(ByteRange r1, ByteRange r2) {
+                return Long.compare(r1.first, r2.first);
+            }
+        });
+
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (int i=1; i<ranges.size(); ++i) {
+            ByteRange next = ranges.get(i);
+            if (next.first <= current.last + 1) {
+                current = new ByteRange(current.first, Math.max(current.last, next.last));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+
+        return merged;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.http.HttpEntity;
+
+/**
+ * An entity produced while it is sent, whose first bytes are produced before
+ * the response is committed (i.e. before the status line and the headers are
+ * sent). If producing the content fails before the commit, the response can
+ * still be replaced by an error response; if the whole content fits in the
+ * first chunk, it can be sent with a Content-Length instead of being chunked
+ * (see BasicHttpConnection).
+ *
+ * @author ste
+ */
+public interface CommittableEntity extends HttpEntity {
+
+    /**
+     * Produces the content, calling commit.commit() once, when the first
+     * chunk is full or the content is complete, and writing the rest of the
+     * content to the stream it returns.
+     *
+     * @param commit the commit callback - NOT NULL
+     *
+     * @throws IOException in case of IO errors
+     */
+    void writeTo(Commit commit) throws IOException;
+
+    // ------------------------------------------------------------------ Commit
+
+    interface Commit {
+        /**
+         * Sends status line and headers of the response.
+         *
+         * @param length the length of the whole content if known (i.e. the
+         *               content is complete), -1 otherwise
+         *
+         * @return the stream to write the content to - NOT NULL
+         *
+         * @throws IOException in case of IO errors
+         */
+        OutputStream commit(long length) throws IOException;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * An entity with the content of a region of a file (possibly the whole file).
+ * The content is written with FileChannel.transferTo(), which sends the file
+ * straight to the socket when the target is a socket channel; if transferTo()
+ * makes no progress, the rest is copied through a buffer.
+ *
+ * @author ste
+ */
+public class FileRangeEntity extends AbstractHttpEntity implements ZeroCopyEntity {
+
+    private static final int BUFFER_SIZE = 8*1024;
+
+    protected final File file;
+    protected final long offset, length;
+
+    /**
+     * @param file the file - NOT NULL
+     * @param offset the position of the first byte - NOT NEGATIVE
+     * @param length the number of bytes - NOT NEGATIVE
+     * @param type the content type - MAY BE NULL
+     */
+    public FileRangeEntity(
+        final File file, final long offset, final long length, final ContentType type
+    ) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length can not be negative");
+        }
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        if (type != null) {
+            setContentType(type.toString());
+        }
+    }
+
+    /**
+     * Creates an entity with the whole content of the given file
+     *
+     * @param file the file - NOT NULL
+     * @param type the content type - MAY BE NULL
+     */
+    public FileRangeEntity(final File file, final ContentType type) {
+        this(file, 0, (file != null) ? file.length() : 0, type);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException x) {
+            in.close();
+            throw x;
+        }
+        return new BoundedInputStream(in, length);
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        //
+        // the wrapping channel is not closed, the stream belongs to the caller
+        //
+        writeTo(Channels.newChannel(out));
+        out.flush();
+    }
+
+    @Override
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel can not be null");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            transfer(in, offset, length, channel);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    // ------------------------------------------------------- protected methods
+
+    protected static void transfer(
+        final FileChannel in, final long offset, final long length,
+        final WritableByteChannel out
+    ) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(offset + done, length - done, out);
+            if (n <= 0) {
+                if (offset + done >= in.size()) {
+                    throw new IOException("unexpected end of file (file truncated?)");
+                }
+                //
+                // no progress although the file is not over (e.g. the target
+                // did not accept any data): retrying could loop forever
+                //
+                copy(in, offset + done, length - done, out);
+                return;
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Copies the given region of the file through a buffer; fails if the
+     * target does not accept any data (e.g. a non-blocking channel whose
+     * buffer is full) instead of spinning on it.
+     */
+    protected static void copy(
+        final FileChannel in, final long offset, final long length,
+        final WritableByteChannel out
+    ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, length));
+        long done = 0;
+        while (done < length) {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), length - done));
+            int n = in.read(buffer, offset + done);
+            if (n < 0) {
+                throw new IOException("unexpected end of file (file truncated?)");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (out.write(buffer) == 0) {
+                    throw new IOException("unable to write to " + out + " (no progress)");
+                }
+            }
+            done += n;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * An entity that serializes a JSONObject, a JSONArray, a Map, an Iterable, an
+ * Iterator or an array as UTF-8 JSON straight into the output stream while it
+ * is written, with chunked transfer encoding. The serialized content is never
+ * held in memory as a whole, so that a large result set can be sent one
+ * element at a time (e.g. from an Iterator over a database cursor).
+ *
+ * Nested values are serialized the same way; numbers, booleans, null and
+ * JSONObject.NULL as such; anything else as the string given by
+ * String.valueOf().
+ *
+ * An entity of an Iterator can be written only once.
+ *
+ * @author ste
+ */
+public class JsonEntity extends AbstractHttpEntity {
+
+    public static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private static final JsonFactory FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Object value;
+
+    /**
+     * @param value the value to serialize - MAY BE NULL
+     */
+    public JsonEntity(final Object value) {
+        this.value = value;
+        setContentType(CONTENT_TYPE);
+        setChunked(true);
+    }
+
+    /**
+     * @param value the value to serialize
+     *
+     * @return true if the given value is better sent as a JsonEntity
+     */
+    public static boolean isStreamable(final Object value) {
+        return (value instanceof JSONObject) || (value instanceof JSONArray)
+            || (value instanceof Map) || (value instanceof Iterable)
+            || (value instanceof Iterator) || (value instanceof Object[]);
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return !(value instanceof Iterator);
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Serializes the value in memory; prefer writeTo().
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        try (JsonGenerator g = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            write(g, value);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void write(final JsonGenerator g, final Object o) throws IOException {
+        if ((o == null) || JSONObject.NULL.equals(o)) {
+            g.writeNull();
+        } else if (o instanceof JSONObject) {
+            JSONObject json = (JSONObject)o;
+            g.writeStartObject();
+            Iterator<?> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = String.valueOf(keys.next());
+                g.writeFieldName(key);
+                write(g, json.opt(key));
+            }
+            g.writeEndObject();
+        } else if (o instanceof JSONArray) {
+            JSONArray json = (JSONArray)o;
+            g.writeStartArray();
+            for (int i=0; i<json.length(); ++i) {
+                write(g, json.opt(i));
+            }
+            g.writeEndArray();
+        } else if (o instanceof Map) {
+            g.writeStartObject();
+            for (Map.Entry<?, ?> e: ((Map<?, ?>)o).entrySet()) {
+                g.writeFieldName(String.valueOf(e.getKey()));
+                write(g, e.getValue());
+            }
+            g.writeEndObject();
+        } else if (o instanceof Iterable) {
+            writeArray(g, ((Iterable<?>)o).iterator());
+        } else if (o instanceof Iterator) {
+            writeArray(g, (Iterator<?>)o);
+        } else if (o instanceof Object[]) {
+            g.writeStartArray();
+            for (Object e: (Object[])o) {
+                write(g, e);
+            }
+            g.writeEndArray();
+        } else if (o instanceof Boolean) {
+            g.writeBoolean((Boolean)o);
+        } else if ((o instanceof Integer) || (o instanceof Short) || (o instanceof Byte)) {
+            g.writeNumber(((Number)o).intValue());
+        } else if (o instanceof Long) {
+            g.writeNumber((Long)o);
+        } else if ((o instanceof Double) || (o instanceof Float)) {
+            g.writeNumber(((Number)o).doubleValue());
+        } else if (o instanceof BigInteger) {
+            g.writeNumber((BigInteger)o);
+        } else if (o instanceof BigDecimal) {
+            g.writeNumber((BigDecimal)o);
+        } else if (o instanceof Number) {
+            g.writeNumber(o.toString());
+        } else {
+            g.writeString(String.valueOf(o));
+        }
+    }
+
+    private void writeArray(final JsonGenerator g, final Iterator<?> i) throws IOException {
+        g.writeStartArray();
+        while (i.hasNext()) {
+            write(g, i.next());
+        }
+        g.writeEndArray();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.Vector;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * A multipart/byteranges entity (RFC 7233, appendix A) with the given ranges
+ * of a file. Part headers are rendered upfront, so the content length is
+ * known; file content is written with FileChannel.transferTo().
+ *
+ * @author ste
+ */
+public class MultipartByteRangesEntity extends AbstractHttpEntity implements ZeroCopyEntity {
+
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final File file;
+    private final List<ByteRange> ranges;
+    private final byte[][] headers;
+    private final byte[] trailer;
+    private final String boundary;
+    private final long length;
+
+    /**
+     * @param file the file - NOT NULL
+     * @param ranges the ranges of the file to send, valid for the file length -
+     *               NOT EMPTY
+     * @param type the content type of the file - MAY BE NULL
+     */
+    public MultipartByteRangesEntity(
+        final File file, final List<ByteRange> ranges, final ContentType type
+    ) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (ranges == null || ranges.isEmpty()) {
+            throw new IllegalArgumentException("ranges can not be empty");
+        }
+        this.file = file;
+        this.ranges = Collections.unmodifiableList(ranges);
+        this.boundary = UUID.randomUUID().toString().replace("-", "");
+
+        final long total = file.length();
+        this.headers = new byte[ranges.size()][];
+        long size = 0;
+        for (int i=0; i<headers.length; ++i) {
+            ByteRange range = ranges.get(i);
+            StringBuilder sb = new StringBuilder();
+            sb.append("\r\n--").append(boundary).append("\r\n");
+            if (type != null) {
+                sb.append("Content-Type: ").append(type).append("\r\n");
+            }
+            sb.append("Content-Range: ").append(range.toContentRange(total)).append("\r\n\r\n");
+            headers[i] = sb.toString().getBytes(ASCII);
+            size += headers[i].length + range.length();
+        }
+        this.trailer = ("\r\n--" + boundary + "--\r\n").getBytes(ASCII);
+        this.length = size + trailer.length;
+
+        setContentType(MULTIPART_BYTERANGES + "; boundary=" + boundary);
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public List<ByteRange> getRanges() {
+        return ranges;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        Vector<InputStream> parts = new Vector<>();
+        for (int i=0; i<headers.length; ++i) {
+            ByteRange range = ranges.get(i);
+            parts.add(new ByteArrayInputStream(headers[i]));
+            parts.add(new FileRangeEntity(file, range.first, range.length(), null).getContent());
+        }
+        parts.add(new ByteArrayInputStream(trailer));
+
+        return new SequenceInputStream(parts.elements());
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        writeTo(Channels.newChannel(out));
+        out.flush();
+    }
+
+    @Override
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel can not be null");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i=0; i<headers.length; ++i) {
+                ByteRange range = ranges.get(i);
+                write(headers[i], channel);
+                FileRangeEntity.transfer(in, range.first, range.length(), channel);
+            }
+        }
+        write(trailer, channel);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void write(final byte[] bytes, final WritableByteChannel channel)
+    throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+}
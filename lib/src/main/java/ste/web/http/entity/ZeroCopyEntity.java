@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import org.apache.http.HttpEntity;
+
+/**
+ * An entity whose content can be written straight to a channel, so that file
+ * content can be sent with FileChannel.transferTo() instead of being copied
+ * through the entity's input stream (see BasicHttpConnection).
+ *
+ * @author ste
+ */
+public interface ZeroCopyEntity extends HttpEntity {
+
+    /**
+     * Writes the whole content of this entity, getContentLength() bytes, to
+     * the given channel.
+     *
+     * @param channel the target channel - NOT NULL
+     *
+     * @throws IOException in case of IO errors
+     */
+    void writeTo(WritableByteChannel channel) throws IOException;
+}
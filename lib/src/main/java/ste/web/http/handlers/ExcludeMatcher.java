@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches strings against a set of regular expressions compiled once: plain
+ * literals are looked up in a hash set, all the other expressions are joined
+ * into a single alternation so that a string is scanned by one matcher
+ * instead of one per expression. Each expression is compiled on its own
+ * first; the ones that would not behave the same once joined are kept on
+ * their own: back references (group numbers would change), named groups
+ * (names could be duplicated), quotations (an unterminated \Q would swallow
+ * the following alternatives) and comments mode (a comment would do the
+ * same). If the alternation does not compile anyway, all expressions are
+ * kept on their own.
+ *
+ * The results for recently matched strings are remembered in a bounded cache
+ * (when full, arbitrary entries are evicted).
+ *
+ * This class is thread safe.
+ *
+ * @author ste
+ */
+public final class ExcludeMatcher {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static final Pattern NOT_JOINABLE = Pattern.compile(
+        "\\\\(\\d|k<|Q)|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]*x"
+    );
+    private static final String META_CHARACTERS = "\\.[]{}()<>*+-=!?^$|";
+
+    private final List<String> patterns;
+    private final Set<String> literals;
+    private final Pattern combined;
+    private final List<Pattern> others;
+
+    private final int maxSize;
+    private final ConcurrentMap<String, Boolean> results;
+    private final AtomicLong hits, misses;
+
+    /**
+     * @param patterns the regular expressions - MAY BE NULL
+     * @param maxSize the maximum number of cached results - GREATER THAN 0
+     *
+     * @throws java.util.regex.PatternSyntaxException if an expression is invalid
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public ExcludeMatcher(final String[] patterns, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+
+        List<String> all = new ArrayList<>();
+        Set<String> literals = new HashSet<>();
+        List<Pattern> others = new ArrayList<>(), joined = new ArrayList<>();
+        StringBuilder alternation = new StringBuilder();
+        if (patterns != null) {
+            for (String pattern: patterns) {
+                if (pattern == null) {
+                    continue;
+                }
+                all.add(pattern);
+                if (isLiteral(pattern)) {
+                    literals.add(pattern);
+                    continue;
+                }
+                Pattern compiled = Pattern.compile(pattern); // reports the right expression if invalid
+                if (NOT_JOINABLE.matcher(pattern).find()) {
+                    others.add(compiled);
+                } else {
+                    joined.add(compiled);
+                    if (alternation.length() > 0) {
+                        alternation.append('|');
+                    }
+                    alternation.append("(?:").append(pattern).append(')');
+                }
+            }
+        }
+
+        Pattern combined = null;
+        if (joined.size() == 1) {
+            others.addAll(joined);
+        } else if (!joined.isEmpty()) {
+            try {
+                combined = Pattern.compile(alternation.toString());
+            } catch (PatternSyntaxException x) {
+                others.addAll(joined);
+            }
+        }
+
+        this.patterns = Collections.unmodifiableList(all);
+        this.literals = literals;
+        this.combined = combined;
+        this.others = others;
+
+        this.maxSize = maxSize;
+        this.results = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Shortcut for new ExcludeMatcher(patterns, DEFAULT_MAX_SIZE)
+     */
+    public ExcludeMatcher(final String... patterns) {
+        this(patterns, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Tells if the whole given string matches any of the expressions (as
+     * String.matches() would do).
+     *
+     * @param s the string to match - NOT NULL
+     *
+     * @return true if s matches at least one expression
+     */
+    public boolean matches(final String s) {
+        if (s == null) {
+            throw new IllegalArgumentException("s can not be null");
+        }
+        if (patterns.isEmpty()) {
+            return false;
+        }
+
+        Boolean result = results.get(s);
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+
+        result = match(s);
+        if (results.put(s, result) == null) {
+            Iterator<String> i = results.keySet().iterator();
+            while ((results.size() > maxSize) && i.hasNext()) {
+                if (!s.equals(i.next())) {
+                    i.remove();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the expressions in the given order
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return how many times a result was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times a string had to be matched
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private boolean match(final String s) {
+        if (literals.contains(s)) {
+            return true;
+        }
+        if ((combined != null) && combined.matcher(s).matches()) {
+            return true;
+        }
+        for (Pattern p: others) {
+            if (p.matcher(s).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isLiteral(final String pattern) {
+        for (int i=0; i<pattern.length(); ++i) {
+            if (META_CHARACTERS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
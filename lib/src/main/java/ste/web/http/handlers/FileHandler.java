@@ -20,29 +20,78 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.List;
 import java.util.Locale;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.Header;
 import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.http.util.EntityUtils;
 import ste.web.http.MimeUtils;
+import ste.web.http.entity.ByteBufferEntity;
+import ste.web.http.entity.ByteRange;
+import ste.web.http.entity.FileRangeEntity;
+import ste.web.http.entity.MultipartByteRangesEntity;
 
+/**
+ * Serves static files located under a document root. File metadata is cached
+ * (see FileMetadataCache) and responses carry ETag and Last-Modified
+ * validators, so that conditional GET and HEAD requests (If-None-Match and
+ * If-Modified-Since) of unchanged files are answered with 304 Not Modified.
+ * 
+ * GET requests with a Range header (and a matching If-Range, if given) are
+ * answered with 206 Partial Content, with a multipart/byteranges body if more
+ * than one range is requested. File content is sent with entities that the
+ * connection can write with FileChannel.transferTo() (see ZeroCopyEntity).
+ * 
+ * Content of compressible types (see MimeUtils.isCompressible()) is encoded as
+ * negotiated with Accept-Encoding: precompressed siblings (file.br and file.gz)
+ * are served if not older than the file, otherwise the file is gzipped on the
+ * fly and the result kept in a GzipCache. Encoded representations have their
+ * own ETag and are never sent for Range requests, which are always served
+ * from the file itself.
+ * 
+ * Optionally, files can be served from a HotFileCache, which keeps small files
+ * in memory and answers lookups without accessing the file system.
+ */
 public class FileHandler implements HttpRequestHandler  {
+    
+    /**
+     * Requests asking for more ranges than this are served in full
+     */
+    public static final int MAX_RANGES = 32;
+    
+    /**
+     * Files smaller than this are not worth compressing on the fly
+     */
+    public static final int MIN_GZIP_SIZE = 256;
+    
+    public static final String ENCODING_GZIP = "gzip";
+    public static final String ENCODING_BROTLI = "br";
 
     protected final String docRoot;
     protected final String webContext;
+    protected final FileMetadataCache files;
+    protected final GzipCache gzipped;
     
     protected String[] excludePatterns;
+    protected ExcludeMatcher excludes;
+    protected HotFileCache hotFiles;
 
     /**
      * Creates a new FileHandler that reads files located under docRoot, which
@@ -50,17 +99,37 @@ public class FileHandler implements HttpRequestHandler  {
      * 
      * @param docRoot the root directory for files - NOT NULL
      * @param webContext the base uri for content uris - NOT BLANK
+     * @param files the cache of files metadata - NOT NULL
+     * @param gzipped the cache of content compressed on the fly; if null only
+     *                precompressed files are served encoded - MAY BE NULL
      *
      * @throws IllegalArgumentException if any of the parameter has an illegal
      *         value
      */
-    public FileHandler(final String docRoot, final String webContext) {
+    public FileHandler(
+        final String docRoot, final String webContext,
+        final FileMetadataCache files, final GzipCache gzipped
+    ) {
         if (docRoot == null) {
             throw new IllegalArgumentException("docRoot cannot be null");
         }
+        if (files == null) {
+            throw new IllegalArgumentException("files cannot be null");
+        }
         this.docRoot = docRoot;
         this.webContext = webContext;
+        this.files = files;
+        this.gzipped = gzipped;
         this.excludePatterns = new String[0];
+        this.excludes = new ExcludeMatcher(excludePatterns);
+    }
+    
+    public FileHandler(final String docRoot, final String webContext, final FileMetadataCache files) {
+        this(docRoot, webContext, files, new GzipCache());
+    }
+
+    public FileHandler(final String docRoot, final String webContext) {
+        this(docRoot, webContext, new FileMetadataCache());
     }
 
 
@@ -78,15 +147,28 @@ public class FileHandler implements HttpRequestHandler  {
         
         String target = request.getRequestLine().getUri();
         
-        for (String exclude: excludePatterns) {
-            if (target.matches(exclude)) {
-                notFound(target, response);
-                
-                return;
-            }
+        URI uri = null;
+        try {
+            uri = new URI(target);
+        } catch (URISyntaxException x) {
+            throw new HttpException("malformed URL '" + target + "'");
+        }
+        String path = uri.getPath();
+        if (path == null) {
+            throw new HttpException("malformed URL '" + target + "'");
         }
-        if (StringUtils.isNotBlank(webContext) && target.startsWith(webContext)) {
-            target = target.substring(webContext.length());
+        
+        //
+        // exclusions apply to the path only, so that a query string can not
+        // bypass them nor add a new entry to the matcher cache at each request
+        //
+        if (excludes.matches(path)) {
+            notFound(target, response);
+            
+            return;
+        }
+        if (StringUtils.isNotBlank(webContext) && path.startsWith(webContext)) {
+            path = path.substring(webContext.length());
         }
 
         if (request instanceof HttpEntityEnclosingRequest) {
@@ -94,39 +176,69 @@ public class FileHandler implements HttpRequestHandler  {
             byte[] entityContent = EntityUtils.toByteArray(entity);
         }
 
-        
-        URI uri = null;
-        try {
-            uri = new URI(target);
-        } catch (URISyntaxException x) {
-            throw new HttpException("malformed URL '" + target + "'");
-        }
-        final File file = new File(this.docRoot, uri.getPath());
-        if (!file.exists()) {
+        final File file = new File(this.docRoot, path);
+        final HotFileCache.Entry entry = lookup(file);
+        final FileMetadataCache.Metadata metadata = entry.metadata;
+        if (metadata == null) {
             notFound(target, response);
-        } else if (!file.canRead() || file.isDirectory()) {
+        } else if (!metadata.readable || metadata.directory) {
             response.setStatusCode(HttpStatus.SC_FORBIDDEN);
             StringEntity entity = new StringEntity(
                     "<html><body><h1>Access denied</h1></body></html>",
                     ContentType.TEXT_HTML);
             response.setEntity(entity);
         } else {
-            response.setStatusCode(HttpStatus.SC_OK);
+            final boolean compressible = MimeUtils.getInstance().isCompressible(metadata.mimeType);
+            final Encoding encoding = compressible ? negotiateEncoding(request, metadata) : null;
+            final String etag = (encoding != null) ? encoding.etag : metadata.etag;
+            
+            if (compressible) {
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.LAST_MODIFIED, metadata.lastModifiedDate);
             
-            String mimeType = MimeUtils.getInstance().getMimeType(file);
-            ContentType type = MimeUtils.MIME_UNKNOWN.equals(mimeType)
-                             ? ContentType.APPLICATION_OCTET_STREAM
-                             : ContentType.create(mimeType)
-                             ;
-            FileEntity body = new FileEntity(file, type);
-            response.setEntity(body);
+            if (isNotModified(request, etag, metadata)) {
+                response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+                response.setEntity(null);
+                
+                return;
+            }
+            
+            if (encoding != null) {
+                response.setStatusCode(HttpStatus.SC_OK);
+                response.setEntity(encodedEntity(encoding, metadata));
+                
+                return;
+            }
+            
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, ByteRange.UNIT);
+            if (handleRanges(request, response, entry)) {
+                return;
+            }
+            
+            response.setStatusCode(HttpStatus.SC_OK);
+            response.setEntity(entity(entry, 0, metadata.length));
         }
     }
     
+    /**
+     * Sets the regular expressions of the paths that shall not be served
+     * (query strings are not considered); they are compiled once here (see
+     * ExcludeMatcher).
+     * 
+     * @param excludePatterns the regular expressions - MAY BE NULL
+     * 
+     * @return this handler
+     * 
+     * @throws java.util.regex.PatternSyntaxException if an expression is invalid
+     */
     public FileHandler exclude(String... excludePatterns) {
-        this.excludePatterns = (excludePatterns == null) 
-                             ? new String[0]
-                             : excludePatterns;
+        String[] patterns = (excludePatterns == null) 
+                          ? new String[0]
+                          : excludePatterns;
+        this.excludes = new ExcludeMatcher(patterns);
+        this.excludePatterns = patterns;
         
         return this;
     }
@@ -134,6 +246,41 @@ public class FileHandler implements HttpRequestHandler  {
     public String[] getExcludes() {
         return excludePatterns;
     }
+    
+    /**
+     * Serves files from the given cache of hot files (or directly from the
+     * file system if null)
+     * 
+     * @param hotFiles the cache of hot files - MAY BE NULL
+     * 
+     * @return this handler
+     */
+    public FileHandler cacheHotFiles(final HotFileCache hotFiles) {
+        this.hotFiles = hotFiles;
+        
+        return this;
+    }
+    
+    /**
+     * @return the cache of hot files, null if not used
+     */
+    public HotFileCache getHotFileCache() {
+        return hotFiles;
+    }
+    
+    /**
+     * @return the cache of files metadata
+     */
+    public FileMetadataCache getFileMetadataCache() {
+        return files;
+    }
+    
+    /**
+     * @return the cache of content compressed on the fly, null if disabled
+     */
+    public GzipCache getGzipCache() {
+        return gzipped;
+    }
 
     // --------------------------------------------------------- private methods
     
@@ -144,6 +291,224 @@ public class FileHandler implements HttpRequestHandler  {
         }
     }
     
+    /**
+     * Evaluates If-None-Match and, if not given, If-Modified-Since as per 
+     * RFC 7232; only GET and HEAD requests can be not modified.
+     */
+    private boolean isNotModified(
+        final HttpRequest request, final String etag,
+        final FileMetadataCache.Metadata metadata
+    ) {
+        String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return false;
+        }
+        
+        Header header = request.getFirstHeader(HttpHeaders.IF_NONE_MATCH);
+        if (header != null) {
+            for (String tag: header.getValue().split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2); // weak comparison
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        header = request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (header != null) {
+            try {
+                long since = Instant.from(
+                    FileMetadataCache.HTTP_DATE.parse(header.getValue().trim())
+                ).getEpochSecond();
+                
+                return (metadata.lastModified / 1000) <= since;
+            } catch (DateTimeException x) {
+                //
+                // invalid dates are ignored
+                //
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Serves the requested ranges, if any (RFC 7233).
+     * 
+     * @return true if the response has been set up, false if the request
+     *         shall be served in full
+     */
+    private boolean handleRanges(
+        final HttpRequest request, final HttpResponse response,
+        final HotFileCache.Entry entry
+    ) {
+        final FileMetadataCache.Metadata metadata = entry.metadata;
+        String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
+        Header range = request.getFirstHeader(HttpHeaders.RANGE);
+        if (!method.equals("GET") || (range == null)) {
+            return false;
+        }
+        
+        //
+        // If-Range uses the strong comparison, our validators are both strong
+        //
+        Header ifRange = request.getFirstHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            String validator = ifRange.getValue().trim();
+            if (!validator.equals(metadata.etag) && !validator.equals(metadata.lastModifiedDate)) {
+                return false;
+            }
+        }
+        
+        List<ByteRange> ranges = ByteRange.parse(range.getValue(), metadata.length);
+        if ((ranges == null) || (ranges.size() > MAX_RANGES)) {
+            return false;
+        }
+        
+        if (ranges.isEmpty()) {
+            response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, ByteRange.UNIT + " */" + metadata.length);
+            response.setEntity(null);
+            
+            return true;
+        }
+        
+        response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            ByteRange r = ranges.get(0);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, r.toContentRange(metadata.length));
+            response.setEntity(entity(entry, r.first, r.length()));
+        } else {
+            response.setEntity(
+                new MultipartByteRangesEntity(metadata.file, ranges, metadata.contentType)
+            );
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Picks the best content coding accepted by the client that can be served
+     * for the given file: a precompressed sibling or, for gzip, content
+     * compressed on the fly. Between equally preferred codings br wins.
+     * 
+     * @return the encoding to use or null if the file shall be sent as is
+     */
+    private Encoding negotiateEncoding(
+        final HttpRequest request, final FileMetadataCache.Metadata metadata
+    ) throws IOException {
+        Header accept = request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING);
+        if ((accept == null) || request.containsHeader(HttpHeaders.RANGE)) {
+            return null;
+        }
+        
+        final float br = quality(accept.getValue(), ENCODING_BROTLI),
+                    gzip = quality(accept.getValue(), ENCODING_GZIP);
+        final String[] codings = (br >= gzip)
+                               ? new String[] {ENCODING_BROTLI, ENCODING_GZIP}
+                               : new String[] {ENCODING_GZIP, ENCODING_BROTLI};
+        
+        for (String coding: codings) {
+            if (quality(accept.getValue(), coding) <= 0) {
+                continue;
+            }
+            final String extension = ENCODING_BROTLI.equals(coding) ? ".br" : ".gz";
+            HotFileCache.Entry sibling = lookup(new File(metadata.file.getPath() + extension));
+            if ((sibling.metadata != null) && sibling.metadata.readable && !sibling.metadata.directory
+            && (sibling.metadata.lastModified >= metadata.lastModified)) {
+                return new Encoding(coding, sibling, sibling.metadata.etag);
+            }
+            if (ENCODING_GZIP.equals(coding) && (gzipped != null)
+            && (metadata.length >= MIN_GZIP_SIZE) && gzipped.accepts(metadata)) {
+                return new Encoding(coding, null, metadata.etag);
+            }
+        }
+        
+        return null;
+    }
+    
+    private HttpEntity encodedEntity(
+        final Encoding encoding, final FileMetadataCache.Metadata metadata
+    ) throws IOException {
+        AbstractHttpEntity entity = (encoding.sibling != null)
+            ? entity(encoding.sibling, 0, encoding.sibling.metadata.length, metadata.contentType)
+            : new ByteArrayEntity(gzipped.get(metadata), metadata.contentType);
+        entity.setContentEncoding(encoding.coding);
+        
+        return entity;
+    }
+    
+    /**
+     * Looks up the given file in the hot files cache, if any, otherwise in the
+     * metadata cache
+     * 
+     * @return the file entry; its metadata is null if the file does not exist
+     */
+    private HotFileCache.Entry lookup(final File file) throws IOException {
+        HotFileCache.Entry entry = (hotFiles != null) ? hotFiles.get(file, files) : null;
+        
+        return (entry != null) ? entry : new HotFileCache.Entry(files.get(file), null);
+    }
+    
+    private AbstractHttpEntity entity(
+        final HotFileCache.Entry entry, final long offset, final long length
+    ) {
+        return entity(entry, offset, length, entry.metadata.contentType);
+    }
+    
+    /**
+     * @return an entity with the given region of the file, taken from memory
+     *         if the content is cached
+     */
+    private AbstractHttpEntity entity(
+        final HotFileCache.Entry entry, final long offset, final long length,
+        final ContentType type
+    ) {
+        ByteBuffer content = entry.getContent();
+        if (content == null) {
+            return new FileRangeEntity(entry.metadata.file, offset, length, type);
+        }
+        content.position((int)offset);
+        content.limit((int)(offset + length));
+        
+        return new ByteBufferEntity(content, type);
+    }
+    
+    /**
+     * @return the quality value given to coding in an Accept-Encoding header,
+     *         0 if the coding is not acceptable
+     */
+    private static float quality(final String accept, final String coding) {
+        float any = 0;
+        for (String element: accept.split(",")) {
+            String[] params = element.split(";");
+            String name = params[0].trim();
+            float q = 1;
+            for (int i=1; i<params.length; ++i) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException x) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) {
+                return q;
+            }
+            if (name.equals("*")) {
+                any = q;
+            }
+        }
+        
+        return any;
+    }
+    
     private void notFound(String target, final HttpResponse response) {
         response.setStatusCode(HttpStatus.SC_NOT_FOUND);
         StringEntity entity = new StringEntity(
@@ -152,4 +517,21 @@ public class FileHandler implements HttpRequestHandler  {
                 ContentType.TEXT_HTML);
         response.setEntity(entity);
     }
+    
+    // --------------------------------------------------------- Encoding
+    
+    private static final class Encoding {
+        final String coding;
+        final HotFileCache.Entry sibling;
+        final String etag;
+        
+        Encoding(
+            final String coding, final HotFileCache.Entry sibling,
+            final String etag
+        ) {
+            this.coding = coding;
+            this.sibling = sibling;
+            this.etag = etag.substring(0, etag.length()-1) + '-' + coding + '"';
+        }
+    }
 }
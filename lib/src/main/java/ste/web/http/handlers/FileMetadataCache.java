@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.entity.ContentType;
+import ste.web.http.MimeUtils;
+
+/**
+ * A bounded cache of the metadata of static files: mime type, validators
+ * (ETag and Last-Modified) and access flags. Each lookup costs a stat of the
+ * file, whose modification time and size tell if the cached metadata is still
+ * valid, and an access check: a change of permissions touches neither of
+ * them, therefore the readable flag is checked at each lookup too.
+ *
+ * Lookups do not lock. When the cache is full an arbitrary entry is evicted,
+ * which is good enough for a cache whose misses cost a few stat calls.
+ *
+ * @author ste
+ */
+public class FileMetadataCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * The HTTP date format (IMF-fixdate, RFC 7231)
+     */
+    public static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+        .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+        .withZone(ZoneOffset.UTC);
+
+    private final int maxSize;
+    private final ConcurrentMap<String, Metadata> entries;
+
+    private final AtomicLong hits, misses;
+
+    /**
+     * Creates a new cache holding at most maxSize entries
+     *
+     * @param maxSize the maximum number of cached entries - GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public FileMetadataCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        this.maxSize = maxSize;
+        this.entries = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Shortcut for new FileMetadataCache(DEFAULT_MAX_SIZE)
+     */
+    public FileMetadataCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Returns the metadata of the given file.
+     *
+     * @param file the file - NOT NULL
+     *
+     * @return the file metadata or null if the file does not exist (or its
+     *         path is not valid, e.g. it contains a NUL character)
+     */
+    public Metadata get(final File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+
+        final String key = file.getPath();
+        final Path path;
+        try {
+            path = file.toPath();
+        } catch (InvalidPathException x) {
+            //
+            // such a file can not exist, same as File.exists()
+            //
+            return null;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException x) {
+            //
+            // not existing or not accessible, same as File.exists()
+            //
+            entries.remove(key);
+            return null;
+        }
+
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final long length = attributes.size();
+        final boolean readable = Files.isReadable(path);
+
+        Metadata metadata = entries.get(key);
+        if ((metadata != null)
+        && (metadata.lastModified == lastModified) && (metadata.length == length)
+        && (metadata.readable == readable)) {
+            hits.incrementAndGet();
+            return metadata;
+        }
+        misses.incrementAndGet();
+
+        metadata = new Metadata(
+            file, lastModified, length, attributes.isDirectory(), readable
+        );
+        if (entries.put(key, metadata) == null) {
+            Iterator<String> i = entries.keySet().iterator();
+            while ((entries.size() > maxSize) && i.hasNext()) {
+                if (!key.equals(i.next())) {
+                    i.remove();
+                }
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Removes all cached entries; counters are not reset.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return how many times metadata was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times metadata had to be read because not cached or
+     *         because the file changed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // --------------------------------------------------------- Metadata
+
+    /**
+     * The metadata of a file at a given modification time
+     */
+    public static final class Metadata {
+        public final File file;
+        public final long lastModified;
+        public final long length;
+        public final boolean directory;
+        public final boolean readable;
+        public final String mimeType;
+        public final ContentType contentType;
+        public final String etag;
+        public final String lastModifiedDate;
+
+        Metadata(
+            final File file, final long lastModified, final long length,
+            final boolean directory, final boolean readable
+        ) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.directory = directory;
+            this.readable = readable;
+            this.mimeType = directory
+                          ? MimeUtils.MIME_DIRECTORY
+                          : MimeUtils.getInstance().getMimeType(file);
+            this.contentType = MimeUtils.MIME_UNKNOWN.equals(mimeType)
+                             ? ContentType.APPLICATION_OCTET_STREAM
+                             : ContentType.create(mimeType)
+                             ;
+            this.etag = '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+            this.lastModifiedDate = HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+        }
+    }
+}
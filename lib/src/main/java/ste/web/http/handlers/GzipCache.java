@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A bounded cache of gzip compressed file bodies keyed by the file path. A
+ * cached body is reused until the file's last modification time or size
+ * changes; when the total size of the cached bodies exceeds the given budget
+ * the least recently used bodies are evicted. Files bigger than a given size
+ * are not compressed at all.
+ *
+ * This class is thread safe.
+ *
+ * @author ste
+ */
+public class GzipCache {
+
+    public static final long DEFAULT_MAX_BYTES = 16*1024*1024;
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024*1024;
+
+    private final long maxBytes, maxFileSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private long bytes;
+
+    private final AtomicLong hits, misses;
+
+    /**
+     * Creates a new cache holding at most maxBytes of compressed content
+     *
+     * @param maxBytes the maximum size of all cached bodies - GREATER THAN 0
+     * @param maxFileSize the size of the biggest file to compress - GREATER THAN 0
+     *
+     * @throws IllegalArgumentException if maxBytes or maxFileSize are not positive
+     */
+    public GzipCache(final long maxBytes, final long maxFileSize) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be greater than 0");
+        }
+        if (maxFileSize <= 0) {
+            throw new IllegalArgumentException("maxFileSize must be greater than 0");
+        }
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.bytes = 0;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Shortcut for new GzipCache(DEFAULT_MAX_BYTES, DEFAULT_MAX_FILE_SIZE)
+     */
+    public GzipCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Tells if the given file can be compressed by this cache, which is true
+     * if it is not bigger than maxFileSize.
+     *
+     * @param metadata the file metadata - NOT NULL
+     *
+     * @return true if get() would return the compressed content
+     */
+    public boolean accepts(final FileMetadataCache.Metadata metadata) {
+        if (metadata == null) {
+            throw new IllegalArgumentException("metadata can not be null");
+        }
+        return !metadata.directory && (metadata.length <= maxFileSize);
+    }
+
+    /**
+     * Returns the gzip compressed content of the given file, compressing it if
+     * not yet cached or if the file changed since it was compressed.
+     *
+     * @param metadata the file metadata - NOT NULL
+     *
+     * @return the compressed content or null if the file is too big
+     *
+     * @throws IOException in case of IO errors
+     */
+    public byte[] get(final FileMetadataCache.Metadata metadata) throws IOException {
+        if (!accepts(metadata)) {
+            return null;
+        }
+
+        final String key = metadata.file.getPath();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if ((entry != null)
+        && (entry.lastModified == metadata.lastModified) && (entry.length == metadata.length)) {
+            hits.incrementAndGet();
+            return entry.content;
+        }
+        misses.incrementAndGet();
+
+        //
+        // compression is done outside the lock; in the worst case two threads
+        // compress the same file
+        //
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int)(metadata.length / 3) + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            Files.copy(metadata.file.toPath(), gz);
+        }
+        entry = new Entry(out.toByteArray(), metadata.lastModified, metadata.length);
+
+        synchronized (entries) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                bytes -= old.content.length;
+            }
+            bytes += entry.content.length;
+
+            Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+            while ((bytes > maxBytes) && i.hasNext()) {
+                Map.Entry<String, Entry> eldest = i.next();
+                if (!key.equals(eldest.getKey())) {
+                    bytes -= eldest.getValue().content.length;
+                    i.remove();
+                }
+            }
+        }
+
+        return entry.content;
+    }
+
+    /**
+     * Removes all cached bodies; counters are not reset.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return the number of cached bodies
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the total size of the cached bodies
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * @return how many times a body was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times a file had to be compressed because not cached
+     *         or because it changed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // --------------------------------------------------------- Entry
+
+    private static final class Entry {
+        final byte[] content;
+        final long lastModified;
+        final long length;
+
+        Entry(final byte[] content, final long lastModified, final long length) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
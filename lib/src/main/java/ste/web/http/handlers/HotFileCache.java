@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * An in-memory cache of the files under a root directory: small files are
+ * kept with their content in direct ByteBuffers, any other existing path
+ * (bigger files and directories) just with its metadata. Missing files are
+ * not cached, so that requests for random paths can not fill the cache.
+ * Cached entries are served without touching the file system: instead of
+ * checking the files at each request, a WatchService on the root directory
+ * (and its subdirectories) invalidates the entries of the files that change.
+ *
+ * The total size of the cached content is bounded by a memory budget; when it
+ * is exceeded the least recently used entries are evicted.
+ *
+ * Changes are notified asynchronously, therefore a changed file may be served
+ * from the cache for a short time (usually a few milliseconds). Changes to
+ * the targets of symbolic links pointing outside the root directory are not
+ * detected.
+ *
+ * This class is thread safe.
+ *
+ * @author ste
+ */
+public class HotFileCache implements Closeable {
+
+    public static final long DEFAULT_MAX_BYTES = 32*1024*1024;
+    public static final long DEFAULT_MAX_FILE_SIZE = 64*1024;
+
+    /**
+     * The memory accounted for each entry besides its content
+     */
+    public static final int ENTRY_OVERHEAD = 256;
+
+    private final Logger log = Logger.getLogger(LOG_NAME);
+
+    private final Path root;
+    private final long maxBytes, maxFileSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private final NavigableSet<String> paths; // the sorted keys of entries
+    private long bytes;
+
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> directories;
+    private final Thread watch;
+    private volatile boolean closed;
+
+    //
+    // incremented at each change notification, so that a file loaded while
+    // changing is not cached (see get())
+    //
+    private final AtomicLong changes;
+    private final AtomicLong hits, misses, invalidations;
+
+    /**
+     * Creates a new cache for the files under root and starts watching them
+     *
+     * @param root the root directory - NOT NULL
+     * @param maxBytes the memory budget - GREATER THAN 0
+     * @param maxFileSize the size of the biggest file whose content is cached -
+     *                    NOT NEGATIVE
+     *
+     * @throws IOException if root can not be watched
+     * @throws IllegalArgumentException if any of the parameter has an illegal
+     *         value
+     */
+    public HotFileCache(final File root, final long maxBytes, final long maxFileSize)
+    throws IOException {
+        if (root == null) {
+            throw new IllegalArgumentException("root can not be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be greater than 0");
+        }
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("maxFileSize can not be negative");
+        }
+        this.root = root.getAbsoluteFile().toPath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.paths = new TreeSet<>();
+        this.bytes = 0;
+        this.changes = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.invalidations = new AtomicLong();
+
+        this.directories = new LinkedHashMap<>();
+        this.watcher = this.root.getFileSystem().newWatchService();
+        try {
+            register(this.root);
+        } catch (IOException x) {
+            watcher.close();
+            throw x;
+        }
+
+        this.watch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "hot-file-watcher");
+        this.watch.setDaemon(true);
+        this.watch.start();
+    }
+
+    /**
+     * Shortcut for new HotFileCache(root, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILE_SIZE)
+     */
+    public HotFileCache(final File root) throws IOException {
+        this(root, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Returns the cached entry of the given file, looking the file up with
+     * the given metadata cache (and reading its content if small enough) if
+     * not cached yet. Files outside the root directory are not cached and
+     * once the cache is closed nothing is cached anymore: in both cases null
+     * is returned and the caller shall access the file system directly. The
+     * entry of a missing file or of an invalid path (with null metadata) is
+     * returned but not cached.
+     *
+     * @param file the file - NOT NULL
+     * @param files the metadata cache used to look up files - NOT NULL
+     *
+     * @return the cached entry or null if the file can not be cached
+     *
+     * @throws IOException if the content of the file can not be read
+     */
+    public Entry get(final File file, final FileMetadataCache files) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (files == null) {
+            throw new IllegalArgumentException("files can not be null");
+        }
+        if (closed) {
+            return null;
+        }
+
+        final Path path;
+        try {
+            path = file.getAbsoluteFile().toPath().normalize();
+        } catch (InvalidPathException x) {
+            //
+            // such a file can not exist (e.g. its path contains a NUL)
+            //
+            return new Entry(null, null);
+        }
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        final String key = path.toString();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+
+        final long before = changes.get();
+        final FileMetadataCache.Metadata metadata = files.get(file);
+        ByteBuffer content = null;
+        if ((metadata != null) && metadata.readable && !metadata.directory
+        && (metadata.length <= maxFileSize)) {
+            content = read(path, metadata.length);
+        }
+        entry = new Entry(metadata, content);
+        if (metadata == null) {
+            return entry;
+        }
+
+        synchronized (entries) {
+            //
+            // if anything changed in the meantime we can not tell if the file
+            // was read before or after the change: serve it, but do not cache it
+            //
+            if (!closed && (changes.get() == before)) {
+                Entry old = entries.put(key, entry);
+                paths.add(key);
+                if (old != null) {
+                    bytes -= old.size();
+                }
+                bytes += entry.size();
+
+                Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+                while ((bytes > maxBytes) && i.hasNext()) {
+                    Map.Entry<String, Entry> eldest = i.next();
+                    if (!key.equals(eldest.getKey())) {
+                        bytes -= eldest.getValue().size();
+                        paths.remove(eldest.getKey());
+                        i.remove();
+                    }
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Removes all cached entries; counters are not reset.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            paths.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Stops watching the root directory and removes all entries
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        watch.interrupt();
+        clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public File getRoot() {
+        return root.toFile();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the memory accounted for the cached entries
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * @return how many times an entry was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times a file had to be looked up because not cached
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many change notifications have been received
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ByteBuffer read(final Path path, final long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int)length);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer) < 0) {
+                    throw new IOException("unexpected end of file (file truncated?)");
+                }
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Registers the given directory and all its subdirectories
+     */
+    private void register(final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+            throws IOException {
+                WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                synchronized (directories) {
+                    directories.put(key, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * The watcher thread loop
+     */
+    private void watch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException x) {
+                break;
+            }
+
+            Path directory;
+            synchronized (directories) {
+                directory = directories.get(key);
+            }
+            for (WatchEvent<?> event: key.pollEvents()) {
+                changes.incrementAndGet();
+                invalidations.incrementAndGet();
+                if ((event.kind() == OVERFLOW) || (directory == null)) {
+                    //
+                    // some notifications got lost, nothing can be trusted
+                    //
+                    clear();
+                    continue;
+                }
+                Path path = directory.resolve((Path)event.context());
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(String.format("%s %s", event.kind().name(), path));
+                }
+                invalidate(path);
+                if ((event.kind() == ENTRY_CREATE) && Files.isDirectory(path)) {
+                    try {
+                        register(path);
+                    } catch (IOException x) {
+                        log.severe(String.format("unable to watch %s: %s", path, x));
+                    }
+                }
+            }
+            if (!key.reset()) {
+                synchronized (directories) {
+                    directories.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of the given path and, if it is (or was) a directory,
+     * of all files under it
+     */
+    private void invalidate(final Path path) {
+        final String key = path.toString(), prefix = key + File.separator;
+        synchronized (entries) {
+            remove(key);
+            //
+            // the files under a directory are the keys sorted right after its
+            // prefix: only those are visited
+            //
+            Iterator<String> i = paths.tailSet(prefix, true).iterator();
+            while (i.hasNext()) {
+                String next = i.next();
+                if (!next.startsWith(prefix)) {
+                    break;
+                }
+                Entry e = entries.remove(next);
+                if (e != null) {
+                    bytes -= e.size();
+                }
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of the given key; to be called holding the lock on
+     * entries
+     */
+    private void remove(final String key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            bytes -= e.size();
+            paths.remove(key);
+        }
+    }
+
+    // --------------------------------------------------------- Entry
+
+    /**
+     * A cached file: its metadata (null if the file does not exist) and, if
+     * small enough, its content
+     */
+    public static final class Entry {
+        public final FileMetadataCache.Metadata metadata;
+        private final ByteBuffer content;
+
+        Entry(final FileMetadataCache.Metadata metadata, final ByteBuffer content) {
+            this.metadata = metadata;
+            this.content = content;
+        }
+
+        /**
+         * @return a read only view of the file content or null if the content
+         *         is not cached
+         */
+        public ByteBuffer getContent() {
+            return (content != null) ? content.asReadOnlyBuffer() : null;
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD + ((content != null) ? content.capacity() : 0);
+        }
+    }
+}
@@ -16,7 +16,14 @@
 package ste.web.http.handlers;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.security.AccessControlException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.ws.rs.core.HttpHeaders;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -27,6 +34,7 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import ste.web.http.HttpSessionContext;
 import ste.web.acl.AccessControlList;
+import ste.web.acl.AsyncAuthenticator;
 import ste.web.acl.MissingCredentialsException;
 import ste.web.acl.Authenticator;
 import ste.web.acl.InvalidCredentialsException;
@@ -34,14 +42,33 @@ import ste.web.acl.User;
 import ste.web.http.HttpSession;
 
 /**
+ * Authenticates and authorizes the requests to the wrapped handler.
+ * 
+ * Users can be authenticated with a blocking Authenticator or with an
+ * AsyncAuthenticator. The whole access check is available as a stage (see
+ * checkAccess()) so that non blocking servers (see NioHttpServer) can suspend
+ * the request until the check completes and serve it only then: such servers
+ * set ATTR_ACCESS_GRANTED in the context to the user the check succeeded for
+ * and turn a failed check into the response with deny(). Otherwise handle(),
+ * being blocking, waits for the check at most the given timeout, after which
+ * the request is answered with 503 Service Unavailable.
  *
  * @author ste
  */
 public class RestrictedResourceHandler implements HttpRequestHandler {
     
+    public static final long DEFAULT_TIMEOUT = 30*1000;
+    
+    /**
+     * Context attribute with the user checkAccess() already succeeded for
+     */
+    public static final String ATTR_ACCESS_GRANTED = "ste.web.acl.access.granted";
+    
     private final HttpRequestHandler handler;
     private final  AccessControlList acl;
     private final      Authenticator authenticator;
+    private final AsyncAuthenticator asyncAuthenticator;
+    private final               long timeout;
     
     /**
      * Creates a new RestrictedResourceHandler that wraps the given handler and
@@ -66,6 +93,37 @@ public class RestrictedResourceHandler implements HttpRequestHandler {
               this.handler = handler;
                   this.acl = acl;
         this.authenticator = authenticator;
+   this.asyncAuthenticator = null;
+              this.timeout = DEFAULT_TIMEOUT;
+    }
+    
+    /**
+     * Creates a new RestrictedResourceHandler like above, but authenticating
+     * users with the given asynchronous authenticator.
+     * 
+     * @param       handler the handler to wrap - NOT NULL
+     * @param           acl the access control list if not null - MAY BE NULL
+     * @param authenticator the authenticator to use for authentication (if null
+     *                      no authentication is performed) - MY BE NULL
+     * @param       timeout how long handle() waits for the access check in
+     *                      milliseconds - GREATER THAN 0
+     */
+    public RestrictedResourceHandler(final HttpRequestHandler handler,
+                                     final  AccessControlList acl,
+                                     final AsyncAuthenticator authenticator,
+                                     final               long timeout) {
+        if (handler == null) {
+            throw new IllegalArgumentException("handler can not be null");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be greater than 0");
+        }
+        
+              this.handler = handler;
+                  this.acl = acl;
+        this.authenticator = null;
+   this.asyncAuthenticator = authenticator;
+              this.timeout = timeout;
     }
     
     public HttpRequestHandler getHandler() {
@@ -79,6 +137,33 @@ public class RestrictedResourceHandler implements HttpRequestHandler {
     public Authenticator getAuthenticator() {
         return authenticator;
     }
+    
+    public AsyncAuthenticator getAsyncAuthenticator() {
+        return asyncAuthenticator;
+    }
+    
+    public long getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Authenticates and authorizes the given user without blocking (unless
+     * the authenticator is a blocking one).
+     * 
+     * @param user the user - MAY BE NULL
+     * 
+     * @return a stage completed normally if the user can access the resource
+     *         or exceptionally with MissingCredentialsException,
+     *         InvalidCredentialsException or AccessControlException
+     */
+    public CompletionStage<Void> checkAccess(final User user) {
+        return authenticate(user).thenRun(new Runnable() {
+            @Override
+            public void run() {
+                authorize(user);
+            }
+        });
+    }
 
     @Override
     public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
@@ -88,46 +173,129 @@ public class RestrictedResourceHandler implements HttpRequestHandler {
             HttpSession session = sessionContext.getSession();
             User user = (User)sessionContext.getPrincipal();
             
-            if ((user != null) || (session.getPrincipal() == null)) {
-                authenticate(user);
-                authorize(user);
+            if ((user != null) && (context.getAttribute(ATTR_ACCESS_GRANTED) == user)) {
+                session.setPrincipal(user);
+            } else if ((user != null) || (session.getPrincipal() == null)) {
+                await(checkAccess(user));
                 session.setPrincipal(user);
             }
             
             handler.handle(request, response, context);
-        } catch (MissingCredentialsException x) {
+        } catch (MissingCredentialsException | InvalidCredentialsException 
+                 | AccessControlException | TimeoutException x) {
+            deny(request, response, x);
+        }
+    }
+    
+    /**
+     * Answers the given request according to the given failure of an access
+     * check: 401 Unauthorized for missing or invalid credentials, 403
+     * Forbidden if the user is not authorized and 503 Service Unavailable if
+     * the check timed out.
+     * 
+     * @param request the request - NOT NULL
+     * @param response the response - NOT NULL
+     * @param failure the failure, possibly wrapped in a CompletionException - NOT NULL
+     * 
+     * @throws HttpException if failure is not an access check failure
+     */
+    public void deny(final HttpRequest request, final HttpResponse response, final Throwable failure)
+    throws HttpException {
+        final Throwable x = unwrap(failure);
+        
+        if (x instanceof MissingCredentialsException) {
             response.setStatusLine(
                 HttpVersion.HTTP_1_1, 
                 HttpStatus.SC_UNAUTHORIZED, 
                 "resource " + request.getRequestLine().getUri() + " requires authentication"
             );
-            response.addHeader(HttpHeaders.WWW_AUTHENTICATE, authenticator.getMessage());
-            return;
-        } catch (InvalidCredentialsException x) {
+            response.addHeader(HttpHeaders.WWW_AUTHENTICATE, getMessage());
+        } else if (x instanceof InvalidCredentialsException) {
             response.setStatusLine(
                 HttpVersion.HTTP_1_1, 
                 HttpStatus.SC_UNAUTHORIZED, 
                 "invalid credentials"
             );
-            response.addHeader(HttpHeaders.WWW_AUTHENTICATE, authenticator.getMessage());
-            return;
-        } catch (AccessControlException x) {
+            response.addHeader(HttpHeaders.WWW_AUTHENTICATE, getMessage());
+        } else if (x instanceof AccessControlException) {
             response.setStatusLine(
                 HttpVersion.HTTP_1_1, 
                 HttpStatus.SC_FORBIDDEN, 
                 "resource " + request.getRequestLine().getUri() + " requires authorization"
             );
-            return;
+        } else if (x instanceof TimeoutException) {
+            response.setStatusLine(
+                HttpVersion.HTTP_1_1, 
+                HttpStatus.SC_SERVICE_UNAVAILABLE, 
+                "authentication timed out"
+            );
+        } else if (x instanceof RuntimeException) {
+            throw (RuntimeException)x;
+        } else if (x instanceof Error) {
+            throw (Error)x;
+        } else {
+            throw new HttpException("access check failed", x);
         }
-        
     }
     
     // --------------------------------------------------------- private methods
     
-    private void authenticate(final User user) throws SecurityException {
-        if (authenticator != null) {
-            authenticator.check(user);
+    private CompletionStage<Void> authenticate(final User user) {
+        if (asyncAuthenticator != null) {
+            return asyncAuthenticator.checkAsync(user);
+        }
+        
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            if (authenticator != null) {
+                authenticator.check(user);
+            }
+            result.complete(null);
+        } catch (RuntimeException x) {
+            result.completeExceptionally(x);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Waits for the given access check and rethrows its failure as is
+     */
+    private void await(final CompletionStage<Void> check)
+    throws HttpException, IOException, TimeoutException {
+        try {
+            check.toCompletableFuture().get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while checking access");
+        } catch (ExecutionException x) {
+            Throwable cause = unwrap(x);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new HttpException("access check failed", cause);
+        }
+    }
+    
+    /**
+     * @return the failure wrapped by the given ExecutionException or
+     *         CompletionException, if any
+     */
+    private Throwable unwrap(Throwable x) {
+        while ((x instanceof ExecutionException || x instanceof CompletionException)
+               && (x.getCause() != null)) {
+            x = x.getCause();
         }
+        return x;
+    }
+    
+    private String getMessage() {
+        return (asyncAuthenticator != null)
+             ? asyncAuthenticator.getMessage()
+             : authenticator.getMessage();
     }
     
     private void authorize(final User user) throws AccessControlException {
@@ -0,0 +1,799 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.ExceptionLogger;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.DefaultHttpResponseFactory;
+import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
+import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncRequestConsumer;
+import org.apache.http.nio.protocol.BasicAsyncResponseProducer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandlerMapper;
+import org.apache.http.nio.protocol.HttpAsyncService;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.apache.http.nio.reactor.ListenerEndpoint;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.HttpRequestHandlerMapper;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+import ste.web.acl.User;
+import ste.web.http.HttpSessionContext;
+import ste.web.http.HttpUtils;
+import ste.web.http.SessionManager;
+import ste.web.http.entity.CommittableEntity;
+import ste.web.http.handlers.RestrictedResourceHandler;
+
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * An embeddable HTTP server built on the httpcore NIO reactor, so that many
+ * concurrent keep-alive connections are served by a few I/O dispatcher
+ * threads instead of one thread each.
+ *
+ * Requests are read by the dispatchers (bodies up to maxBodySize are kept in
+ * memory, larger ones are discarded and answered with 413) and then served by
+ * the usual blocking handlers (FileHandler, BeanShellHandler, ApiHandler,
+ * VelocityHandler, ...) in a bounded pool of worker threads; when all workers
+ * are busy and the queue is full, requests are answered with 503. Handlers get
+ * a HttpSessionContext with the session of the request (looked up, or created
+ * and its cookie set, only when a handler asks for it) and the principal given
+ * with basic authentication, if any.
+ *
+ * Requests with credentials for a RestrictedResourceHandler with an
+ * AsyncAuthenticator are not handed over to the workers until the access
+ * check completes, so that no thread waits for slow authentication backends
+ * (see RestrictedResourceHandler.checkAccess()).
+ *
+ * Alternatively (see setExecution()), each request can run on its own virtual
+ * thread (Java 21 or later): scripts blocked on JDBC or HTTP calls then do not
+ * hold a platform thread and the number of threads stops being the limit to
+ * concurrency. In this mode workers is just the maximum number of requests
+ * served concurrently and queueSize how many more requests can wait for one of
+ * them to complete. Note that until Java 24 a virtual thread blocked inside a
+ * synchronized block keeps its carrier thread.
+ *
+ * Content of unknown length (e.g. streamed views or JSON results) is produced
+ * by the worker into memory before the response is sent, so that dispatchers
+ * never run handler code. For the same reason, what scripts write to
+ * <code>out</code> is kept in memory and sent as the response entity (see
+ * HttpSessionContext.getWriter()).
+ *
+ * @author ste
+ */
+public class NioHttpServer implements Closeable {
+
+    /**
+     * How requests are executed once read
+     */
+    public static enum Execution {
+        /**
+         * in a fixed pool of platform threads
+         */
+        PLATFORM_POOL,
+        /**
+         * each in a new virtual thread
+         */
+        VIRTUAL_THREADS
+    }
+
+    public static final int  DEFAULT_IO_DISPATCHERS = Runtime.getRuntime().availableProcessors();
+    public static final int  DEFAULT_WORKERS = 64;
+    public static final int  DEFAULT_QUEUE_SIZE = 1024;
+    public static final long DEFAULT_MAX_BODY_SIZE = 8*1024*1024;
+    public static final int  DEFAULT_IDLE_TIMEOUT = 30*1000; // 30 seconds
+
+    public static final String SERVER_NAME = "webtoolkit";
+
+    private static final String HEADER_AUTHORIZATION = HttpHeaders.AUTHORIZATION;
+    private static final int BUFFER_SIZE = 8*1024;
+    private static final long SHUTDOWN_GRACE_PERIOD = 1000; // milliseconds
+    private static final int BACKLOG_SIZE = 1024; // the JVM default (50) is too small for bursts of connections
+
+    private final InetSocketAddress address;
+    private final HttpRequestHandlerMapper handlers;
+    private final SessionManager sessions;
+    private final int ioDispatchers, workers, queueSize;
+    private long maxBodySize;
+    private int idleTimeout;
+    private Execution execution;
+
+    private final Logger log = Logger.getLogger(LOG_NAME);
+
+    private DefaultListeningIOReactor reactor;
+    private ListenerEndpoint endpoint;
+    private ExecutorService executor;
+    private Semaphore admitted, running;
+    private Thread reactorThread;
+
+    /**
+     * Creates a new server; the server does not listen until start() is called.
+     *
+     * @param address the address to bind to; use port 0 for any free port - NOT NULL
+     * @param handlers the handlers to serve the requests with - NOT NULL
+     * @param sessions the manager of the sessions - NOT NULL
+     * @param ioDispatchers the number of I/O dispatcher threads - GREATER THAN 0
+     * @param workers the number of threads serving requests - GREATER THAN 0
+     * @param queueSize the maximum number of requests waiting for a worker - GREATER THAN 0
+     */
+    public NioHttpServer(
+        final InetSocketAddress address, final HttpRequestHandlerMapper handlers,
+        final SessionManager sessions,
+        final int ioDispatchers, final int workers, final int queueSize
+    ) {
+        if (address == null) {
+            throw new IllegalArgumentException("address can not be null");
+        }
+        if (handlers == null) {
+            throw new IllegalArgumentException("handlers can not be null");
+        }
+        if (sessions == null) {
+            throw new IllegalArgumentException("sessions can not be null");
+        }
+        if (ioDispatchers <= 0) {
+            throw new IllegalArgumentException("ioDispatchers must be greater than 0");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be greater than 0");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be greater than 0");
+        }
+        this.address = address;
+        this.handlers = handlers;
+        this.sessions = sessions;
+        this.ioDispatchers = ioDispatchers;
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.maxBodySize = DEFAULT_MAX_BODY_SIZE;
+        this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        this.execution = Execution.PLATFORM_POOL;
+    }
+
+    /**
+     * Shortcut for new NioHttpServer(address, handlers, new SessionManager(),
+     * DEFAULT_IO_DISPATCHERS, DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE)
+     */
+    public NioHttpServer(
+        final InetSocketAddress address, final HttpRequestHandlerMapper handlers
+    ) {
+        this(
+            address, handlers, new SessionManager(),
+            DEFAULT_IO_DISPATCHERS, DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE
+        );
+    }
+
+    /**
+     * Starts listening and serving requests.
+     *
+     * @throws IOException if the server can not listen on the given address
+     * @throws IllegalStateException if the server is already started or if
+     *         virtual threads are requested but not supported by the JVM
+     */
+    public synchronized void start() throws IOException {
+        if (reactor != null) {
+            throw new IllegalStateException("server already started");
+        }
+
+        if (execution == Execution.VIRTUAL_THREADS) {
+            executor = newVirtualThreadPerTaskExecutor();
+            if (executor == null) {
+                throw new IllegalStateException("virtual threads are not supported by this JVM");
+            }
+            admitted = new Semaphore(workers + queueSize);
+            running = new Semaphore(workers);
+        } else {
+            executor = new ThreadPoolExecutor(
+                workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory("http-worker")
+            );
+            admitted = running = null;
+        }
+
+        final HttpProcessor processor = HttpProcessorBuilder.create()
+            .add(new ResponseDate())
+            .add(new ResponseServer(SERVER_NAME))
+            .add(new ResponseContent(true))
+            .add(new ResponseConnControl())
+            .build();
+
+        final HttpAsyncService service = new HttpAsyncService(
+            processor,
+            DefaultConnectionReuseStrategy.INSTANCE,
+            DefaultHttpResponseFactory.INSTANCE,
+            new HttpAsyncRequestHandlerMapper() {
+                private final Dispatcher dispatcher = new Dispatcher();
+
+                @Override
+                public HttpAsyncRequestHandler<?> lookup(final HttpRequest request) {
+                    return dispatcher;
+                }
+            },
+            null,
+            new ExceptionLogger() {
+                @Override
+                public void log(final Exception x) {
+                    //
+                    // mostly clients going away
+                    //
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine(String.format("connection error: %s", x));
+                    }
+                }
+            }
+        );
+
+        reactor = new DefaultListeningIOReactor(
+            IOReactorConfig.custom()
+                .setIoThreadCount(ioDispatchers)
+                .setSoTimeout(idleTimeout)
+                .setSoReuseAddress(true)
+                .setTcpNoDelay(true)
+                .setBacklogSize(BACKLOG_SIZE)
+                .build(),
+            new NamedThreadFactory("http-dispatcher")
+        );
+        endpoint = reactor.listen(address);
+
+        final DefaultHttpServerIODispatch<HttpAsyncService> dispatch =
+            new DefaultHttpServerIODispatch<>(service, ConnectionConfig.DEFAULT);
+        final DefaultListeningIOReactor r = reactor;
+        reactorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.execute(dispatch);
+                } catch (InterruptedIOException x) {
+                    //
+                    // shutting down
+                    //
+                } catch (IOException x) {
+                    if (log.isLoggable(Level.SEVERE)) {
+                        log.severe(String.format("http reactor error: %s", x));
+                    }
+                }
+            }
+        }, "http-reactor");
+        reactorThread.start();
+
+        try {
+            endpoint.waitFor();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        if (endpoint.getException() != null) {
+            final Exception x = endpoint.getException();
+            close();
+            throw new IOException("unable to listen on " + address + ": " + x.getMessage(), x);
+        }
+
+        if (log.isLoggable(Level.INFO)) {
+            log.info(String.format(
+                "http server listening on %s (%d dispatchers, %d workers, %s)",
+                endpoint.getAddress(), ioDispatchers, workers, execution
+            ));
+        }
+    }
+
+    /**
+     * Stops accepting connections, gives in-flight requests a short grace
+     * period and releases all threads. It does nothing if the server is not
+     * started.
+     */
+    @Override
+    public synchronized void close() {
+        if (reactor == null) {
+            return;
+        }
+
+        try {
+            reactor.shutdown(SHUTDOWN_GRACE_PERIOD);
+        } catch (IOException x) {
+            if (log.isLoggable(Level.SEVERE)) {
+                log.severe(String.format("error shutting down the http reactor: %s", x));
+            }
+        }
+        executor.shutdownNow();
+        try {
+            reactorThread.join(SHUTDOWN_GRACE_PERIOD);
+            executor.awaitTermination(SHUTDOWN_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+
+        reactor = null; endpoint = null; executor = null; reactorThread = null;
+        admitted = running = null;
+    }
+
+    public synchronized boolean isStarted() {
+        return (reactor != null) && (reactor.getStatus() == IOReactorStatus.ACTIVE);
+    }
+
+    /**
+     * @return the address the server is listening on (useful when bound to
+     *         port 0) or null if the server is not started
+     */
+    public synchronized InetSocketAddress getLocalAddress() {
+        return (endpoint == null) ? null : (InetSocketAddress)endpoint.getAddress();
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public HttpRequestHandlerMapper getHandlers() {
+        return handlers;
+    }
+
+    public SessionManager getSessionManager() {
+        return sessions;
+    }
+
+    public int getIoDispatchers() {
+        return ioDispatchers;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Sets the maximum size of request bodies; it takes effect at next start.
+     *
+     * @param maxBodySize the size in bytes - GREATER THAN 0
+     */
+    public void setMaxBodySize(final long maxBodySize) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("maxBodySize must be greater than 0");
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
+    public Execution getExecution() {
+        return execution;
+    }
+
+    /**
+     * Sets how requests are executed; it takes effect at next start.
+     *
+     * @param execution the execution mode - NOT NULL
+     */
+    public void setExecution(final Execution execution) {
+        if (execution == null) {
+            throw new IllegalArgumentException("execution can not be null");
+        }
+        this.execution = execution;
+    }
+
+    /**
+     * @return true if this JVM can run requests in virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets after how long an idle connection is closed; it takes effect at
+     * next start.
+     *
+     * @param idleTimeout the timeout in milliseconds, 0 for none - NOT NEGATIVE
+     */
+    public void setIdleTimeout(final int idleTimeout) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("idleTimeout can not be negative");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Runs the given request task with the current execution mode; with
+     * virtual threads the task waits (in its own virtual thread) until fewer
+     * than workers tasks are running.
+     *
+     * @throws RejectedExecutionException if workers and queue are full
+     */
+    private void execute(final Runnable task) {
+        if (admitted == null) {
+            executor.execute(task);
+            return;
+        }
+
+        if (!admitted.tryAcquire()) {
+            throw new RejectedExecutionException();
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    running.acquireUninterruptibly();
+                    try {
+                        task.run();
+                    } finally {
+                        running.release();
+                        admitted.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException x) {
+            admitted.release();
+            throw x;
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is looked up by reflection so
+     * that the library still runs on older JVMs.
+     *
+     * @return a new executor or null if virtual threads are not supported
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService)Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException x) {
+            //
+            // before Java 21 or preview feature not enabled
+            //
+            return null;
+        }
+    }
+
+    /**
+     * Serves the given request with the blocking handlers; runs in a worker.
+     * 
+     * @param user the user given with basic authentication - MAY BE NULL
+     * @param granted true if the access check already succeeded for user
+     */
+    private void serve(
+        final HttpRequest request, final HttpResponse response, 
+        final User user, final boolean granted
+    ) {
+        final HttpRequestHandler handler = handlers.lookup(request);
+        if (handler == null) {
+            error(response, HttpStatus.SC_NOT_IMPLEMENTED, "no handler for " + request.getRequestLine().getUri());
+            return;
+        }
+
+        final HttpSessionContext context = new HttpSessionContext();
+
+        context.setSessionManager(sessions, request, response);
+
+        context.setPrincipal(user);
+        if (granted) {
+            context.setAttribute(RestrictedResourceHandler.ATTR_ACCESS_GRANTED, user);
+        }
+
+        response.setEntity(new BasicHttpEntity());
+        try {
+            handler.handle(request, response, context);
+            context.finishWriter(response);
+            buffer(response);
+        } catch (HttpException | IOException | RuntimeException x) {
+            if (log.isLoggable(Level.SEVERE)) {
+                log.severe(String.format(
+                    "error serving %s: %s", request.getRequestLine().getUri(), x
+                ));
+            }
+            error(
+                response, HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                "server error producing the resource - see server log for details"
+            );
+        }
+    }
+
+    /**
+     * Makes the response entity something the dispatchers can send without
+     * running handler code: no entity if none was provided and the content
+     * produced in memory if its length is not known in advance.
+     */
+    private void buffer(final HttpResponse response) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+        if ((entity instanceof BasicHttpEntity) && !entity.isStreaming()) {
+            response.setEntity(null);
+            return;
+        }
+        if ((entity.getContentLength() < 0) || (entity instanceof CommittableEntity)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+
+            final ByteArrayEntity content = new ByteArrayEntity(out.toByteArray());
+            content.setContentType(entity.getContentType());
+            content.setContentEncoding(entity.getContentEncoding());
+            response.setEntity(content);
+        }
+    }
+
+    /**
+     * @return the user given with basic authentication or null
+     */
+    private User getUser(final HttpRequest request) {
+        final Pair<String, String> credentials =
+            HttpUtils.parseBasicAuth(request.getFirstHeader(HEADER_AUTHORIZATION));
+
+        return (credentials == null)
+             ? null
+             : new User(credentials.getLeft(), credentials.getRight());
+    }
+
+    private void error(final HttpResponse response, final int status, final String msg) {
+        response.setStatusLine(HttpVersion.HTTP_1_1, status);
+        response.setEntity(new StringEntity(msg, ContentType.TEXT_PLAIN));
+    }
+
+    // ------------------------------------------------------------ Dispatcher
+
+    /**
+     * Reads the request in the dispatcher and hands it over to the workers
+     */
+    private class Dispatcher implements HttpAsyncRequestHandler<Received> {
+
+        @Override
+        public HttpAsyncRequestConsumer<Received> processRequest(
+            final HttpRequest request, final HttpContext context
+        ) {
+            return new RequestConsumer(maxBodySize);
+        }
+
+        @Override
+        public void handle(
+            final Received received, final HttpAsyncExchange exchange, final HttpContext context
+        ) {
+            final HttpResponse response = exchange.getResponse();
+            if (received.tooLarge) {
+                error(
+                    response, HttpStatus.SC_REQUEST_TOO_LONG,
+                    "request body larger than " + maxBodySize + " bytes"
+                );
+                exchange.submitResponse(new BasicAsyncResponseProducer(response));
+                return;
+            }
+
+            final User user = getUser(received.request);
+            final HttpRequestHandler handler = handlers.lookup(received.request);
+            if ((user != null) && (handler instanceof RestrictedResourceHandler)
+                && (((RestrictedResourceHandler)handler).getAsyncAuthenticator() != null)) {
+                check((RestrictedResourceHandler)handler, user, received, exchange);
+                return;
+            }
+
+            dispatch(received, exchange, user, false);
+        }
+
+        /**
+         * Starts the access check of the given user and continues with the
+         * request only when the check completes, without holding any thread
+         */
+        private void check(
+            final RestrictedResourceHandler handler, final User user,
+            final Received received, final HttpAsyncExchange exchange
+        ) {
+            handler.checkAccess(user).whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(final Void result, final Throwable failure) {
+                    if (failure == null) {
+                        dispatch(received, exchange, user, true);
+                        return;
+                    }
+
+                    final HttpResponse response = exchange.getResponse();
+                    try {
+                        handler.deny(received.request, response, failure);
+                    } catch (HttpException | RuntimeException x) {
+                        if (log.isLoggable(Level.SEVERE)) {
+                            log.severe(String.format(
+                                "error checking access to %s: %s",
+                                received.request.getRequestLine().getUri(), x
+                            ));
+                        }
+                        error(
+                            response, HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                            "server error producing the resource - see server log for details"
+                        );
+                    }
+                    exchange.submitResponse(new BasicAsyncResponseProducer(response));
+                }
+            });
+        }
+
+        /**
+         * Hands the request over to the workers
+         */
+        private void dispatch(
+            final Received received, final HttpAsyncExchange exchange,
+            final User user, final boolean granted
+        ) {
+            final HttpResponse response = exchange.getResponse();
+            try {
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(received.request, response, user, granted);
+                        exchange.submitResponse(new BasicAsyncResponseProducer(response));
+                    }
+                });
+            } catch (RejectedExecutionException x) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(String.format("http workers saturated (workers: %d, queue: %d)", workers, queueSize));
+                }
+                error(response, HttpStatus.SC_SERVICE_UNAVAILABLE, "server busy, retry later");
+                exchange.submitResponse(new BasicAsyncResponseProducer(response));
+            }
+        }
+    }
+
+    // ---------------------------------------------------------- Received
+
+    private static final class Received {
+        final HttpRequest request;
+        final boolean tooLarge;
+
+        Received(final HttpRequest request, final boolean tooLarge) {
+            this.request = request;
+            this.tooLarge = tooLarge;
+        }
+    }
+
+    // --------------------------------------------------- RequestConsumer
+
+    /**
+     * Keeps the request body in memory up to maxBodySize bytes; content beyond
+     * that is read and discarded, so that the 413 response can still be sent.
+     */
+    private static final class RequestConsumer extends AbstractAsyncRequestConsumer<Received> {
+        private final long maxBodySize;
+
+        private HttpRequest request;
+        private HttpEntity entity;
+        private ByteArrayOutputStream body;
+        private ByteBuffer buffer;
+        private long size;
+
+        RequestConsumer(final long maxBodySize) {
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        protected void onRequestReceived(final HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        protected void onEntityEnclosed(final HttpEntity entity, final ContentType type) {
+            this.entity = entity;
+            this.body = new ByteArrayOutputStream();
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            if (entity.getContentLength() > maxBodySize) {
+                size = entity.getContentLength();
+            }
+        }
+
+        @Override
+        protected void onContentReceived(final ContentDecoder decoder, final IOControl control)
+        throws IOException {
+            int n;
+            while ((n = decoder.read(buffer)) > 0) {
+                size += n;
+                if (size <= maxBodySize) {
+                    body.write(buffer.array(), 0, n);
+                }
+                buffer.clear();
+            }
+        }
+
+        @Override
+        protected Received buildResult(final HttpContext context) {
+            if (size > maxBodySize) {
+                return new Received(request, true);
+            }
+            if ((entity != null) && (request instanceof HttpEntityEnclosingRequest)) {
+                final ByteArrayEntity content = new ByteArrayEntity(body.toByteArray());
+                content.setContentType(entity.getContentType());
+                content.setContentEncoding(entity.getContentEncoding());
+                ((HttpEntityEnclosingRequest)request).setEntity(content);
+            }
+            return new Received(request, false);
+        }
+
+        @Override
+        protected void releaseResources() {
+            body = null; buffer = null;
+        }
+    }
+
+    // ------------------------------------------------- NamedThreadFactory
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, name + '-' + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
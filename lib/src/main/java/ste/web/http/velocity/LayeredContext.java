@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.velocity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.velocity.context.AbstractContext;
+import ste.web.http.HttpSession;
+import ste.web.http.QueryString;
+
+/**
+ * A Velocity context that reads through the request scopes instead of copying
+ * them. A variable resolves, in order, to:
+ *
+ * <ol>
+ *   <li>a variable set by the template itself (e.g. with #set)</li>
+ *   <li>a request parameter (its first value)</li>
+ *   <li>a request attribute</li>
+ *   <li>a session attribute</li>
+ *   <li>an application-wide constant</li>
+ * </ol>
+ *
+ * Lookups are done lazily, so rendering a template costs only the variables it
+ * actually uses. Variables set by the template are kept in the context itself
+ * and never written to the underlying scopes; only they can be removed.
+ *
+ * A context is meant to render a single request and is not thread safe.
+ *
+ * @author ste
+ */
+public class LayeredContext extends AbstractContext {
+
+    private final QueryString parameters;
+    private final Map<String, Object> attributes;
+    private final HttpSession session;
+    private final Map<String, Object> constants;
+
+    private Map<String, Object> locals;
+
+    /**
+     * @param parameters the request parameters - MAY BE NULL
+     * @param attributes the request attributes - MAY BE NULL
+     * @param session the session - MAY BE NULL
+     * @param constants the application-wide constants - MAY BE NULL
+     */
+    public LayeredContext(
+        final QueryString parameters, final Map<String, Object> attributes,
+        final HttpSession session, final Map<String, Object> constants
+    ) {
+        this.parameters = parameters;
+        this.attributes = (attributes == null) ? Collections.<String, Object>emptyMap() : attributes;
+        this.session = session;
+        this.constants = (constants == null) ? Collections.<String, Object>emptyMap() : constants;
+        this.locals = null;
+    }
+
+    @Override
+    public Object internalGet(final String key) {
+        Object value;
+
+        if ((locals != null) && ((value = locals.get(key)) != null)) {
+            return value;
+        }
+        if ((parameters != null) && ((value = parameters.get(key)) != null)) {
+            return value;
+        }
+        if ((value = attributes.get(key)) != null) {
+            return value;
+        }
+        if ((value = getSessionAttribute(key)) != null) {
+            return value;
+        }
+        return constants.get(key);
+    }
+
+    @Override
+    public Object internalPut(final String key, final Object value) {
+        if (locals == null) {
+            locals = new HashMap<>();
+        }
+        return locals.put(key, value);
+    }
+
+    @Override
+    public boolean internalContainsKey(final String key) {
+        return internalGet(key) != null;
+    }
+
+    @Override
+    public String[] internalGetKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        if (locals != null) {
+            keys.addAll(locals.keySet());
+        }
+        if (parameters != null) {
+            keys.addAll(parameters.getNames());
+        }
+        keys.addAll(attributes.keySet());
+        if (session != null) {
+            try {
+                keys.addAll(session.getAttributeNames());
+            } catch (IllegalStateException x) {
+                //
+                // expired session, no attributes
+                //
+            }
+        }
+        keys.addAll(constants.keySet());
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    @Override
+    public Object internalRemove(final String key) {
+        return (locals == null) ? null : locals.remove(key);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Object getSessionAttribute(final String key) {
+        if ((session == null) || session.isExpired()) {
+            return null;
+        }
+        try {
+            return session.getAttribute(key);
+        } catch (IllegalStateException x) {
+            //
+            // expired in the meantime
+            //
+            return null;
+        }
+    }
+}
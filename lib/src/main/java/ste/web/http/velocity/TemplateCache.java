@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.velocity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.ResourceCacheImpl;
+
+import static ste.web.beanshell.Constants.LOG_NAME;
+
+/**
+ * The Velocity resource cache used by VelocityHandler: a bounded LRU cache of
+ * parsed templates (see resource.manager.defaultcache.size) that counts hits
+ * and misses. A miss means a template had to be read and parsed while serving
+ * a request; each miss is logged at FINE level.
+ *
+ * Velocity instantiates the cache by class name; the instance registers itself
+ * as the engine application attribute ATTRIBUTE, see get(VelocityEngine).
+ *
+ * @author ste
+ */
+public class TemplateCache extends ResourceCacheImpl {
+
+    public static final String ATTRIBUTE = TemplateCache.class.getName();
+
+    private final Logger log = Logger.getLogger(LOG_NAME);
+
+    private final AtomicLong hits, misses;
+
+    public TemplateCache() {
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * @param engine the engine - NOT NULL
+     *
+     * @return the template cache of the given engine or null if the engine
+     *         does not use a TemplateCache
+     */
+    public static TemplateCache get(final VelocityEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine can not be null");
+        }
+        return (TemplateCache)engine.getApplicationAttribute(ATTRIBUTE);
+    }
+
+    @Override
+    public void initialize(final RuntimeServices rsvc) {
+        super.initialize(rsvc);
+        rsvc.setApplicationAttribute(ATTRIBUTE, this);
+    }
+
+    @Override
+    public Resource get(final Object key) {
+        final Resource resource = super.get(key);
+        if (resource == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return resource;
+    }
+
+    @Override
+    public Resource put(final Object key, final Resource value) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("template cache miss: %s", value.getName()));
+        }
+        return super.put(key, value);
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return how many times a template was served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many times a template was not cached (either never loaded,
+     *         evicted or not existing)
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
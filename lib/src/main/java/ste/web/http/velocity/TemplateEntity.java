@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.velocity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
+import ste.web.http.entity.CommittableEntity;
+
+/**
+ * A chunked entity whose content is the merge of a template, done while the
+ * entity is sent. The first firstChunkSize bytes are kept in memory before
+ * the response is committed, so that an error in the first part of the page
+ * can still be turned into an error response and a small page can be sent
+ * with a Content-Length (see CommittableEntity).
+ *
+ * The template is merged each time the entity is written.
+ *
+ * @author ste
+ */
+public class TemplateEntity extends AbstractHttpEntity implements CommittableEntity {
+
+    private final Template template;
+    private final Context context;
+    private final Charset charset;
+    private final int firstChunkSize;
+
+    /**
+     * @param template the template - NOT NULL
+     * @param context the context to merge the template with - NOT NULL
+     * @param type the content type; its charset is the charset of the
+     *             content - NOT NULL
+     * @param firstChunkSize the maximum number of bytes produced before the
+     *                       commit - GREATER THAN 0
+     */
+    public TemplateEntity(
+        final Template template, final Context context,
+        final ContentType type, final int firstChunkSize
+    ) {
+        if (template == null) {
+            throw new IllegalArgumentException("template can not be null");
+        }
+        if (context == null) {
+            throw new IllegalArgumentException("context can not be null");
+        }
+        if ((type == null) || (type.getCharset() == null)) {
+            throw new IllegalArgumentException("type can not be null and must have a charset");
+        }
+        if (firstChunkSize <= 0) {
+            throw new IllegalArgumentException("firstChunkSize must be greater than 0");
+        }
+        this.template = template;
+        this.context = context;
+        this.charset = type.getCharset();
+        this.firstChunkSize = firstChunkSize;
+        setContentType(type.toString());
+        setChunked(true);
+    }
+
+    public int getFirstChunkSize() {
+        return firstChunkSize;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Merges the template in memory; prefer writeTo().
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        merge(out);
+    }
+
+    @Override
+    public void writeTo(final Commit commit) throws IOException {
+        if (commit == null) {
+            throw new IllegalArgumentException("commit can not be null");
+        }
+
+        FirstChunkOutputStream out = new FirstChunkOutputStream(commit);
+        merge(out);
+        out.commit(out.buffer.size());
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void merge(final OutputStream out) throws IOException {
+        Writer w = new OutputStreamWriter(out, charset);
+        template.merge(context, w);
+        w.flush();
+    }
+
+    // ------------------------------------------------- FirstChunkOutputStream
+
+    /**
+     * Keeps up to firstChunkSize bytes; then commits and writes through
+     */
+    private final class FirstChunkOutputStream extends OutputStream {
+        private final Commit commit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(firstChunkSize, 8192));
+        private OutputStream out = null;
+
+        FirstChunkOutputStream(final Commit commit) {
+            this.commit = commit;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if ((out == null) && (buffer.size() + len > firstChunkSize)) {
+                commit(-1);
+            }
+            if (out == null) {
+                buffer.write(b, off, len);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        void commit(final long length) throws IOException {
+            if (out == null) {
+                out = commit.commit(length);
+                buffer.writeTo(out);
+                buffer.reset();
+            }
+        }
+    }
+}
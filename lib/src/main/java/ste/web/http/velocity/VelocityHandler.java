@@ -28,27 +28,37 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.ParseException;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
 
 import static ste.web.beanshell.Constants.*;
 import ste.web.http.HttpSessionContext;
-import ste.web.http.QueryString;
 
 /**
  *
@@ -58,31 +68,83 @@ public class VelocityHandler implements HttpRequestHandler  {
 
     // --------------------------------------------------------------- Constants
     
+    public static final int DEFAULT_FIRST_CHUNK_SIZE = 8*1024;
+    public static final int DEFAULT_CACHE_SIZE = 256;
+    public static final int DEFAULT_MODIFICATION_CHECK_INTERVAL = 2; // seconds
+    
+    public static final String TEMPLATE_EXTENSION = ".v";
+    
     // ------------------------------------------------------------ Private data
     private VelocityEngine engine;
+    private final File webroot;
+    private final int cacheSize;
+    private final int modificationCheckInterval;
     private String viewsFolder;
+    private int firstChunkSize;
+    private Map<String, Object> constants;
+    
+    private final Logger log = Logger.getLogger(LOG_NAME);
 
     // ------------------------------------------------------------ Constructors
     
-    public VelocityHandler(final String webroot) {
+    /**
+     * Creates a new handler for the templates in webroot. Parsed templates are
+     * kept in a TemplateCache of at most cacheSize templates; a cached template
+     * is checked for changes on disk at most every modificationCheckInterval
+     * seconds (0 means cached templates are never reloaded).
+     *
+     * @param webroot the templates root - NOT NULL
+     * @param viewsFolder the views folder - MAY BE NULL (see setViewsFolder())
+     * @param cacheSize the maximum number of cached templates - GREATER THAN 0
+     * @param modificationCheckInterval the interval in seconds between checks
+     *                                  of template changes - NOT NEGATIVE
+     */
+    public VelocityHandler(
+        final String webroot, final String viewsFolder,
+        final int cacheSize, final int modificationCheckInterval
+    ) {
         if (webroot == null) {
             throw new IllegalArgumentException("webroot can not be null");
         }
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be greater than 0");
+        }
+        if (modificationCheckInterval < 0) {
+            throw new IllegalArgumentException("modificationCheckInterval can not be negative");
+        }
+        
+        this.webroot = new File(webroot);
+        this.cacheSize = cacheSize;
+        this.modificationCheckInterval = modificationCheckInterval;
         
         engine = new VelocityEngine();
         
         engine.setProperty("file.resource.loader.path", webroot);
         engine.setProperty("file.resource.loader.class", "org.apache.velocity.runtime.resource.loader.FileResourceLoader");
         engine.setProperty( "resource.loader", "file" );
+        engine.setProperty("file.resource.loader.cache", "true");
+        engine.setProperty("file.resource.loader.modificationCheckInterval", String.valueOf(modificationCheckInterval));
+        engine.setProperty(RuntimeConstants.RESOURCE_MANAGER_CACHE_CLASS, TemplateCache.class.getName());
+        engine.setProperty(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, String.valueOf(cacheSize));
 
         engine.init();
         
-        setViewsFolder(null);
+        setViewsFolder(viewsFolder);
+        setConstants(null);
     }
     
+    /**
+     * Shortcut for new VelocityHandler(webroot, viewsFolder, DEFAULT_CACHE_SIZE, DEFAULT_MODIFICATION_CHECK_INTERVAL)
+     */
     public VelocityHandler(final String webroot, final String viewsFolder) {
-        this(webroot);
-        setViewsFolder(viewsFolder);
+        this(webroot, viewsFolder, DEFAULT_CACHE_SIZE, DEFAULT_MODIFICATION_CHECK_INTERVAL);
+    }
+    
+    /**
+     * Shortcut for new VelocityHandler(webroot, null)
+     */
+    public VelocityHandler(final String webroot) {
+        this(webroot, null);
     }
 
     // ---------------------------------------------------------- Public methods
@@ -114,6 +176,59 @@ public class VelocityHandler implements HttpRequestHandler  {
         }
     }
 
+    /**
+     * @return the application-wide constants available to all views
+     */
+    public Map<String, Object> getConstants() {
+        return constants;
+    }
+    
+    /**
+     * Sets the application-wide constants available to all views unless
+     * shadowed by a session attribute, a request attribute or a request
+     * parameter with the same name. The given map is copied.
+     * 
+     * @param constants the constants - MAY BE NULL
+     */
+    public void setConstants(final Map<String, Object> constants) {
+        this.constants = (constants == null)
+                       ? Collections.<String, Object>emptyMap()
+                       : Collections.unmodifiableMap(new HashMap<>(constants))
+                       ;
+    }
+
+    /**
+     * @return true if views are merged while the response is sent
+     */
+    public boolean isStreaming() {
+        return firstChunkSize > 0;
+    }
+    
+    /**
+     * @return the number of bytes of a streamed view kept before the response
+     *         is committed, 0 if views are not streamed
+     */
+    public int getFirstChunkSize() {
+        return firstChunkSize;
+    }
+    
+    /**
+     * Sets if views are merged into memory before the response is sent (the
+     * default) or while the response is sent, as a chunked TemplateEntity.
+     * In the latter case the first firstChunkSize bytes are still kept in
+     * memory, so that an error in the first part of the view still turns
+     * into an error response.
+     * 
+     * @param firstChunkSize the size of the first chunk of a streamed view or 0
+     *                       not to stream views - NOT NEGATIVE
+     */
+    public void setStreaming(final int firstChunkSize) {
+        if (firstChunkSize < 0) {
+            throw new IllegalArgumentException("firstChunkSize can not be negative");
+        }
+        this.firstChunkSize = firstChunkSize;
+    }
+
     @Override
     public void handle(HttpRequest  request,
                        HttpResponse response,
@@ -125,10 +240,15 @@ public class VelocityHandler implements HttpRequestHandler  {
         
         view = getViewPath(request.getRequestLine().getUri(), view);
         
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Writer out = new OutputStreamWriter(baos);
+        ByteArrayOutputStream baos;
         try {
             Template t = engine.getTemplate(view);
+            if (isStreaming()) {
+                stream(t, request, response, (HttpSessionContext)context);
+                return;
+            }
+            baos = new ByteArrayOutputStream();
+            Writer out = new OutputStreamWriter(baos);
             t.merge(buildContext(request, (HttpSessionContext)context), out); out.flush();
         } catch (ResourceNotFoundException e) {
             response.setStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "View " + view + " not found.");
@@ -153,37 +273,121 @@ public class VelocityHandler implements HttpRequestHandler  {
     public VelocityEngine getEngine() {
         return engine;
     }
+    
+    /**
+     * @return the cache of parsed templates
+     */
+    public TemplateCache getTemplateCache() {
+        return TemplateCache.get(engine);
+    }
+    
+    public int getCacheSize() {
+        return cacheSize;
+    }
+    
+    public int getModificationCheckInterval() {
+        return modificationCheckInterval;
+    }
+    
+    /**
+     * Parses all templates (files ending with TEMPLATE_EXTENSION) under webroot
+     * and puts them in the template cache, so that the first request of a page
+     * does not pay the parsing cost. To be called at startup. Templates that
+     * do not parse are logged and skipped; they will give an error when
+     * requested. If there are more templates than cacheSize, only the last
+     * cacheSize ones are kept.
+     * 
+     * @return the number of templates successfully parsed
+     */
+    public int precompile() {
+        int n = 0;
+        for (String name: findTemplates(webroot, "/", new ArrayList<String>())) {
+            try {
+                engine.getTemplate(name);
+                ++n;
+            } catch (ResourceNotFoundException | ParseErrorException x) {
+                if (log.isLoggable(Level.SEVERE)) {
+                    log.severe(String.format("unable to precompile %s: %s", name, x.getMessage()));
+                }
+            }
+        }
+        
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("precompiled %d templates in %s", n, webroot));
+        }
+        
+        return n;
+    }
 
     // --------------------------------------------------------- Private methods
 
     /**
-     * Creates a velocity context filling it with all request parameters and
-     * attributes (the former overwrite the latter).
-     *
-     * @param request the request to create the context upon
-     *
-     * @return the newly created context
+     * Collects the names of the templates in dir and its subdirectories as
+     * resource names relative to webroot (e.g. /views/index.v), which is how
+     * handle() requests them.
      */
-    private VelocityContext buildContext(HttpRequest request, HttpSessionContext httpContext) {
-        VelocityContext context = new VelocityContext();
-
-        for (String name: httpContext.keySet()) {
-            context.put(name, httpContext.getAttribute(name));
+    private List<String> findTemplates(final File dir, final String prefix, final List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return names;
         }
+        for (File f: files) {
+            if (f.isDirectory()) {
+                findTemplates(f, prefix + f.getName() + '/', names);
+            } else if (f.getName().endsWith(TEMPLATE_EXTENSION)) {
+                names.add(prefix + f.getName());
+            }
+        }
+        return names;
+    }
 
-        try {
-            URI uri = new URI(request.getRequestLine().getUri());
-            QueryString qs = QueryString.parse(uri.getQuery());
-            for (String name: qs.getNames()) {
-                context.put(name, qs.get(name));
+    /**
+     * Sets a TemplateEntity as the response entity, keeping the content type
+     * of the current entity if any; the content is encoded in the charset of
+     * the content type or UTF-8.
+     */
+    private void stream(
+        final Template template, final HttpRequest request,
+        final HttpResponse response, final HttpSessionContext context
+    ) {
+        ContentType type = ContentType.create(ContentType.TEXT_HTML.getMimeType());
+        HttpEntity current = response.getEntity();
+        if ((current != null) && (current.getContentType() != null)
+        && StringUtils.isNotBlank(current.getContentType().getValue())) {
+            try {
+                type = ContentType.parse(current.getContentType().getValue());
+            } catch (ParseException | UnsupportedCharsetException x) {
+                //
+                // keep text/html
+                //
             }
-        } catch (URISyntaxException x) {
-            //
-            // if the URL is marformed, there is nothing to do here...
-            //
         }
+        if (type.getCharset() == null) {
+            type = type.withCharset(StandardCharsets.UTF_8);
+        }
+        
+        response.setEntity(
+            new TemplateEntity(template, buildContext(request, context), type, firstChunkSize)
+        );
+    }
 
-        return context;
+    /**
+     * Creates a velocity context that reads through request parameters, 
+     * request attributes, session attributes and constants (the former
+     * overwrite the latter), see LayeredContext.
+     *
+     * @param request the request to create the context upon
+     *
+     * @return the newly created context
+     */
+    private LayeredContext buildContext(HttpRequest request, HttpSessionContext httpContext) {
+        //
+        // if the URL is malformed, there are no parameters
+        //
+        return new LayeredContext(
+            httpContext.getParsedRequest(request).getQuery(),
+            httpContext, httpContext.getSession(false), constants
+        );
     }
 
     private String getViewPath(final String uri, final String view) 
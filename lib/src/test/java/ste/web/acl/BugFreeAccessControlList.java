@@ -16,10 +16,15 @@
 package ste.web.acl;
 
 import java.security.AccessControlException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.Before;
 import org.junit.Test;
+import static ste.xtest.reflect.PrivateAccess.getInstanceValue;
 
 /**
  *
@@ -114,4 +119,118 @@ public class BugFreeAccessControlList {
             .contains("ste.web.acl.permissions.star")
             .contains("ste.web.acl.permissions.dummy");
     }
+    
+    @Test
+    public void permissions_are_read_only() {
+        try {
+            ACL.getPermissions().add("ste.web.acl.permissions.dummy");
+            fail("permissions shall be added with add()");
+        } catch (UnsupportedOperationException x) {
+            //
+            // OK
+            //
+        }
+    }
+    
+    @Test
+    public void plain_names_are_still_regular_expressions() {
+        HashSet<String> permissions = new HashSet<>();
+        permissions.add("steXwebXaclXpermissionsXstar");
+        
+        ACL.check(permissions);
+        
+        AccessControlList acl = new AccessControlList().add("a+b");
+        permissions.add("a+b");
+        try {
+            acl.check(permissions);
+            fail("a+b does not match a+b");
+        } catch (AccessControlException x) {
+            //
+            // OK
+            //
+        }
+        permissions.add("aab");
+        acl.check(permissions);
+    }
+    
+    @Test
+    public void decisions_are_remembered_per_permission_set() throws Exception {
+        final Map decisions = (Map)getInstanceValue(ACL, "decisions");
+        
+        ACL.check(PERMISSION_SET_2); ACL.check(PERMISSION_SET_2);
+        then(decisions).hasSize(1);
+        try {
+            ACL.check(PERMISSION_SET_1);
+            fail("decision not remembered correctly");
+        } catch (AccessControlException x) {
+            //
+            // OK
+            //
+        }
+        then(decisions).hasSize(2);
+        
+        //
+        // a changed set is checked again
+        //
+        PERMISSION_SET_2.remove("ste.web.acl.permissions.star");
+        try {
+            ACL.check(PERMISSION_SET_2);
+            fail("changed permissions not checked again");
+        } catch (AccessControlException x) {
+            //
+            // OK
+            //
+        }
+        PERMISSION_SET_1.add("ste.web.acl.permissions.star");
+        ACL.check(PERMISSION_SET_1);
+        
+        //
+        // and a new permission drops all decisions
+        //
+        ACL.add("ste.web.acl.permissions.other");
+        then(decisions).isEmpty();
+        try {
+            ACL.check(PERMISSION_SET_1);
+            fail("decision not dropped");
+        } catch (AccessControlException x) {
+            //
+            // OK
+            //
+        }
+        ACL.check(PERMISSION_SET_3);
+    }
+    
+    @Test
+    public void changed_set_with_same_hash_is_checked_again() throws Exception {
+        AccessControlList acl = new AccessControlList().add("Aa");
+        
+        //
+        // "Aa" and "BB" have the same hash code and so have the sets
+        //
+        Set<String> permissions = new HashSet<>(Arrays.asList("Aa"));
+        acl.check(permissions);
+        
+        permissions.clear(); permissions.add("BB");
+        then(permissions.hashCode()).isEqualTo(new HashSet<>(Arrays.asList("Aa")).hashCode());
+        try {
+            acl.check(permissions);
+            fail("decision of a different set reused");
+        } catch (AccessControlException x) {
+            //
+            // OK
+            //
+        }
+    }
+    
+    @Test
+    public void decisions_are_bounded() throws Exception {
+        final Map decisions = (Map)getInstanceValue(ACL, "decisions");
+        
+        for (int i=0; i<AccessControlList.DEFAULT_MAX_DECISIONS*2; ++i) {
+            Set<String> permissions = new HashSet<>(PERMISSION_SET_2);
+            permissions.add("ste.web.acl.permissions.p" + i);
+            ACL.check(permissions);
+        }
+        then(decisions.size()).isLessThanOrEqualTo(AccessControlList.DEFAULT_MAX_DECISIONS);
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.acl;
+
+import java.util.HashSet;
+import java.util.Set;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeCachingAuthenticator {
+
+    private final CountingAuthenticator AUTH = new CountingAuthenticator();
+
+    @Test
+    public void constructors() {
+        try {
+            new CachingAuthenticator(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("authenticator can not be null");
+        }
+        try {
+            new CachingAuthenticator(AUTH, 0, 0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("ttl must be greater than 0");
+        }
+        try {
+            new CachingAuthenticator(AUTH, 1, -1, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("failureTtl can not be negative");
+        }
+        try {
+            new CachingAuthenticator(AUTH, 1, 0, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxSize must be greater than 0");
+        }
+
+        CachingAuthenticator a = new CachingAuthenticator(AUTH);
+        then(a.getAuthenticator()).isSameAs(AUTH);
+        then(a.getTtl()).isEqualTo(CachingAuthenticator.DEFAULT_TTL);
+        then(a.getFailureTtl()).isEqualTo(CachingAuthenticator.DEFAULT_FAILURE_TTL);
+        then(a.getMaxSize()).isEqualTo(CachingAuthenticator.DEFAULT_MAX_SIZE);
+        then(a.getMessage()).isEqualTo("Basic");
+    }
+
+    @Test
+    public void remember_successful_checks_with_permissions() {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH);
+
+        User u1 = new User("user1", "password1");
+        a.check(u1);
+        then(u1.getPermissions()).containsExactly("read");
+
+        User u2 = new User("user1", "password1");
+        a.check(u2);
+        then(u2.getPermissions()).isEqualTo(u1.getPermissions()).isNotSameAs(u1.getPermissions());
+        
+        //
+        // each user gets its own copy
+        //
+        u2.getPermissions().add("write");
+        User u3 = new User("user1", "password1");
+        a.check(u3);
+        then(u3.getPermissions()).containsExactly("read");
+        then(AUTH.checks).isEqualTo(1);
+        then(a.getHits()).isEqualTo(2);
+        then(a.getMisses()).isEqualTo(1);
+
+        //
+        // different credentials are checked
+        //
+        try {
+            a.check(new User("user1", "password2"));
+            fail("wrong password accepted");
+        } catch (InvalidCredentialsException x) {
+            //
+            // OK
+            //
+        }
+        a.check(new User("user2", null));
+        then(AUTH.checks).isEqualTo(3);
+    }
+
+    @Test
+    public void checks_expire() throws Exception {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH, 50, 0, 10);
+
+        a.check(new User("user1", "password1"));
+        a.check(new User("user1", "password1"));
+        then(AUTH.checks).isEqualTo(1);
+
+        Thread.sleep(100);
+        a.check(new User("user1", "password1"));
+        then(AUTH.checks).isEqualTo(2);
+    }
+
+    @Test
+    public void remember_failures_briefly() throws Exception {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH, 10000, 50, 10);
+
+        for (int i=0; i<3; ++i) {
+            try {
+                a.check(new User("user1", "wrong"));
+                fail("wrong password accepted");
+            } catch (InvalidCredentialsException x) {
+                //
+                // OK
+                //
+            }
+        }
+        then(AUTH.checks).isEqualTo(1);
+        then(a.getFailures()).isEqualTo(2);
+
+        Thread.sleep(100);
+        AUTH.put("user1", "wrong"); // password changed
+        a.check(new User("user1", "wrong"));
+        then(AUTH.checks).isEqualTo(2);
+
+        a = new CachingAuthenticator(AUTH, 10000, 0, 10);
+        for (int i=0; i<2; ++i) {
+            try {
+                a.check(new User("user2", "wrong"));
+                fail("wrong password accepted");
+            } catch (InvalidCredentialsException x) {
+                //
+                // OK
+                //
+            }
+        }
+        then(AUTH.checks).isEqualTo(4);
+    }
+
+    @Test
+    public void missing_credentials_are_not_cached() {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH);
+        for (int i=0; i<2; ++i) {
+            try {
+                a.check(null);
+                fail("missing credentials accepted");
+            } catch (MissingCredentialsException x) {
+                //
+                // OK
+                //
+            }
+        }
+        then(a.size()).isZero();
+    }
+
+    @Test
+    public void invalidate_and_clear() {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH);
+
+        a.check(new User("user1", "password1"));
+        a.check(new User("user2", null));
+        then(a.size()).isEqualTo(2);
+
+        a.invalidate("user1");
+        then(a.size()).isEqualTo(1);
+        a.check(new User("user1", "password1"));
+        then(AUTH.checks).isEqualTo(3);
+
+        a.clear();
+        then(a.size()).isZero();
+    }
+
+    @Test
+    public void bounded_size() {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH, 10000, 10000, 8);
+
+        a.check(new User("user1", "password1"));
+        a.check(new User("user2", null));
+        for (int i=0; i<10; ++i) {
+            try {
+                a.check(new User("user1", "wrong" + i));
+            } catch (InvalidCredentialsException x) {
+                //
+                // OK
+                //
+            }
+        }
+        
+        //
+        // failures have their own, smaller, room and do not evict successes
+        //
+        then(a.size()).isEqualTo(4);
+        a.check(new User("user1", "password1"));
+        a.check(new User("user2", null));
+        then(AUTH.checks).isEqualTo(12);
+        
+        //
+        // successes are evicted least recently used first
+        //
+        a = new CachingAuthenticator(AUTH, 10000, 10000, 1);
+        a.check(new User("user1", "password1"));
+        a.check(new User("user2", null));
+        then(a.size()).isEqualTo(1);
+        a.check(new User("user2", null));
+        then(AUTH.checks).isEqualTo(14);
+    }
+    
+    @Test
+    public void users_without_name_are_not_cached() {
+        CachingAuthenticator a = new CachingAuthenticator(AUTH);
+        User nameless = new User("nobody", "secret") {
+            @Override
+            public String getName() {
+                return null;
+            }
+        };
+        try {
+            a.check(nameless);
+            fail("user without name accepted");
+        } catch (RuntimeException x) {
+            then(x).isNotInstanceOf(NullPointerException.class);
+        }
+        then(a.size()).isZero();
+    }
+
+    // --------------------------------------------------------- private classes
+
+    private static class CountingAuthenticator extends HashMapAuthenticator {
+        int checks = 0;
+
+        CountingAuthenticator() {
+            super(new User[] {
+                new User("user1", "password1"), new User("user2", null)
+            });
+        }
+
+        @Override
+        public void check(User user) {
+            ++checks;
+            super.check(user);
+            Set<String> permissions = new HashSet<>();
+            permissions.add("read");
+            user.setPermissions(permissions);
+        }
+    }
+}
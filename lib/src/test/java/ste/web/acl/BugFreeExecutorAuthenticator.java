@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.acl;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeExecutorAuthenticator {
+
+    private final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private final HashMapAuthenticator AUTHENTICATOR = new HashMapAuthenticator(
+        new User[] { new User("one", "111") }
+    );
+
+    @After
+    public void after() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void constructors() {
+        try {
+            new ExecutorAuthenticator(null, EXECUTOR);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("authenticator can not be null");
+        }
+        try {
+            new ExecutorAuthenticator(AUTHENTICATOR, null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("executor can not be null");
+        }
+
+        ExecutorAuthenticator a = new ExecutorAuthenticator(AUTHENTICATOR, EXECUTOR);
+        then(a.getAuthenticator()).isSameAs(AUTHENTICATOR);
+        then(a.getExecutor()).isSameAs(EXECUTOR);
+        then(a.getMessage()).isEqualTo(AUTHENTICATOR.getMessage());
+    }
+
+    @Test
+    public void check_in_executor_thread() throws Exception {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        ExecutorAuthenticator a = new ExecutorAuthenticator(new Authenticator() {
+            @Override
+            public void check(User user) {
+                thread.set(Thread.currentThread());
+                AUTHENTICATOR.check(user);
+            }
+
+            @Override
+            public String getMessage() {
+                return "Basic";
+            }
+        }, EXECUTOR);
+
+        a.checkAsync(new User("one", "111")).toCompletableFuture().get();
+        then(thread.get()).isNotNull().isNotSameAs(Thread.currentThread());
+    }
+
+    @Test
+    public void failures_complete_exceptionally() throws Exception {
+        ExecutorAuthenticator a = new ExecutorAuthenticator(AUTHENTICATOR, EXECUTOR);
+
+        try {
+            a.checkAsync(new User("one", "222")).toCompletableFuture().get();
+            fail("invalid credentials accepted");
+        } catch (ExecutionException x) {
+            then(x.getCause()).isInstanceOf(InvalidCredentialsException.class);
+        }
+        try {
+            a.checkAsync(null).toCompletableFuture().get();
+            fail("missing credentials accepted");
+        } catch (ExecutionException x) {
+            then(x.getCause()).isInstanceOf(MissingCredentialsException.class);
+        }
+
+        EXECUTOR.shutdown();
+        try {
+            a.checkAsync(new User("one", "111")).toCompletableFuture().get();
+            fail("rejected execution not reported");
+        } catch (ExecutionException x) {
+            then(x.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+    }
+}
@@ -150,6 +150,29 @@ public class BugFreeBeanShellUtils {
         then(BeanShellUtils.normalizeVariableName(".abc.")).isEqualTo("_abc_");
         then(BeanShellUtils.normalizeVariableName(".a.b.c.")).isEqualTo("_a_b_c_");
     }
+
+    @Test
+    public void resetWithNullKO() throws Exception {
+        try {
+           BeanShellUtils.reset(null);
+           fail("missing not null parameters check");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("interpreter").contains("not be null");
+        }
+    }
+
+    @Test
+    public void reset() throws Exception {
+        Interpreter i = new Interpreter();
+        Object root = i.get("bsh");
+        i.eval("import java.util.concurrent.atomic.*; one = 1; void hello() {}");
+
+        BeanShellUtils.reset(i);
+        then(i.get("one")).isNull();
+        then(i.getNameSpace().getMethodNames()).isEmpty();
+        then(i.getNameSpace().getClass("AtomicLong")).isNull();
+        then(i.get("bsh")).isSameAs(root);
+    }
     
     // ---------------------------------------------------------- static methods
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.beanshell;
+
+import bsh.Interpreter;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeInterpreterPool {
+
+    @Test
+    public void constructors() {
+        for (int size: new int[] {0, -1}) {
+            try {
+                new InterpreterPool(size);
+                fail("missing check for invalid size");
+            } catch (IllegalArgumentException x) {
+                then(x).hasMessage("size must be greater than 0");
+            }
+        }
+
+        then(new InterpreterPool().getSize()).isEqualTo(InterpreterPool.DEFAULT_SIZE);
+    }
+
+    @Test
+    public void interpreters_are_created_upfront() {
+        InterpreterPool pool = new InterpreterPool(3);
+        then(pool.getSize()).isEqualTo(3);
+        then(pool.getAvailable()).isEqualTo(3);
+    }
+
+    @Test
+    public void checkout_and_checkin() {
+        InterpreterPool pool = new InterpreterPool(2);
+
+        Interpreter i1 = pool.checkout();
+        Interpreter i2 = pool.checkout();
+        then(i1).isNotNull().isNotSameAs(i2);
+        then(pool.getAvailable()).isZero();
+
+        pool.checkin(i1);
+        then(pool.getAvailable()).isEqualTo(1);
+        then(pool.checkout()).isSameAs(i1);
+
+        pool.checkin(i1); pool.checkin(i2);
+        then(pool.getAvailable()).isEqualTo(2);
+        then(pool.getCheckouts()).isEqualTo(3);
+        then(pool.getSaturations()).isZero();
+
+        pool.checkin(null); // nothing happens
+        then(pool.getAvailable()).isEqualTo(2);
+    }
+
+    @Test
+    public void most_recently_returned_first() {
+        InterpreterPool pool = new InterpreterPool(3);
+
+        Interpreter i1 = pool.checkout();
+        pool.checkin(i1);
+        then(pool.checkout()).isSameAs(i1);
+
+        Interpreter i2 = pool.checkout();
+        pool.checkin(i1); pool.checkin(i2);
+        then(pool.checkout()).isSameAs(i2);
+        then(pool.checkout()).isSameAs(i1);
+    }
+
+    @Test
+    public void new_interpreter_if_saturated() {
+        InterpreterPool pool = new InterpreterPool(1);
+
+        Interpreter i1 = pool.checkout();
+        Interpreter i2 = pool.checkout();
+        then(i2).isNotNull().isNotSameAs(i1);
+        then(pool.getSaturations()).isEqualTo(1);
+
+        //
+        // the extra interpreter is not kept
+        //
+        pool.checkin(i1); pool.checkin(i2);
+        then(pool.getAvailable()).isEqualTo(1);
+    }
+
+    @Test
+    public void clean_namespace_after_checkin() throws Exception {
+        InterpreterPool pool = new InterpreterPool(1);
+
+        Interpreter i = pool.checkout();
+        Object root = i.get("bsh");
+        i.eval("import java.util.concurrent.atomic.*; one = 1; String hello() { return \"hello\"; }");
+        then(i.get("one")).isEqualTo(1);
+        pool.checkin(i);
+
+        then(pool.checkout()).isSameAs(i);
+        then(i.get("one")).isNull();
+        then(i.getNameSpace().getMethodNames()).isEmpty();
+        then(i.getNameSpace().getClass("AtomicLong")).isNull();
+        then(i.getNameSpace().getClass("ArrayList")).isNotNull(); // default imports are back
+        then(i.get("bsh")).isSameAs(root);
+    }
+
+    @Test
+    public void checkout_time() {
+        InterpreterPool pool = new InterpreterPool(1);
+        then(pool.getAverageCheckoutTime()).isZero();
+
+        pool.checkin(pool.checkout());
+        pool.checkin(pool.checkout());
+
+        then(pool.getCheckoutTime()).isPositive();
+        then(pool.getAverageCheckoutTime()).isEqualTo(pool.getCheckoutTime() / 2);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.beanshell;
+
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.ParsedScript;
+import bsh.TargetError;
+import java.io.File;
+import java.io.FileNotFoundException;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeScriptCache {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    @Test
+    public void constructors() {
+        for (int size: new int[] {0, -1}) {
+            try {
+                new ScriptCache(size);
+                fail("missing check for invalid size");
+            } catch (IllegalArgumentException x) {
+                then(x).hasMessage("maxSize must be greater than 0");
+            }
+            try {
+                new ScriptCache(10, size);
+                fail("missing check for invalid interpreters");
+            } catch (IllegalArgumentException x) {
+                then(x).hasMessage("maxInterpreters must be greater than 0");
+            }
+        }
+
+        then(new ScriptCache().getMaxSize()).isEqualTo(ScriptCache.DEFAULT_MAX_SIZE);
+        then(new ScriptCache().getMaxInterpreters()).isEqualTo(ScriptCache.DEFAULT_MAX_INTERPRETERS);
+        then(new ScriptCache(10).getMaxSize()).isEqualTo(10);
+        then(new ScriptCache(10, 5).getMaxInterpreters()).isEqualTo(5);
+    }
+
+    @Test
+    public void parse_once_and_reuse() throws Exception {
+        File f = script("one.bsh", "a = 1; b = a + 1;");
+        Interpreter i = new Interpreter();
+
+        ScriptCache cache = new ScriptCache();
+        ParsedScript s = cache.get(f, i);
+        then(cache.getMisses()).isEqualTo(1);
+        then(cache.getHits()).isZero();
+
+        then(cache.get(f, i)).isSameAs(s);
+        then(cache.get(f, i)).isSameAs(s);
+        then(cache.getMisses()).isEqualTo(1);
+        then(cache.getHits()).isEqualTo(2);
+        then(cache.getReloads()).isZero();
+
+        s.eval(i);
+        then(i.get("b")).isEqualTo(2);
+    }
+
+    @Test
+    public void each_interpreter_gets_its_own_parse() throws Exception {
+        File f = script("own.bsh", "d = new java.util.Date(0); t = d.getTime();");
+        Interpreter i1 = new Interpreter(), i2 = new Interpreter();
+
+        ScriptCache cache = new ScriptCache();
+        ParsedScript s1 = cache.get(f, i1);
+        ParsedScript s2 = cache.get(f, i2);
+        then(s2).isNotSameAs(s1);
+        then(cache.size()).isEqualTo(1);
+        then(cache.getMisses()).isEqualTo(2);
+
+        then(cache.get(f, i1)).isSameAs(s1);
+        then(cache.get(f, i2)).isSameAs(s2);
+        then(cache.getHits()).isEqualTo(2);
+
+        s1.eval(i1); s2.eval(i2);
+        then(i1.get("t")).isEqualTo(0L);
+        then(i2.get("t")).isEqualTo(0L);
+
+        try {
+            cache.get(f, null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("interpreter can not be null");
+        }
+    }
+
+    @Test
+    public void parses_cached_for_at_most_max_interpreters() throws Exception {
+        File f = script("many.bsh", "a = 1;");
+        Interpreter i1 = new Interpreter(), i2 = new Interpreter(), i3 = new Interpreter();
+
+        ScriptCache cache = new ScriptCache(10, 2);
+        ParsedScript s1 = cache.get(f, i1), s2 = cache.get(f, i2);
+
+        //
+        // i3 gets its own parse, but it is not cached
+        //
+        ParsedScript s3 = cache.get(f, i3);
+        then(s3).isNotSameAs(s1).isNotSameAs(s2);
+        then(cache.get(f, i3)).isNotSameAs(s3);
+        then(cache.getMisses()).isEqualTo(4);
+
+        then(cache.get(f, i1)).isSameAs(s1);
+        then(cache.get(f, i2)).isSameAs(s2);
+        then(cache.getHits()).isEqualTo(2);
+        then(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void discarded_interpreters_are_not_held() throws Exception {
+        File f = script("weak.bsh", "a = 1;");
+
+        ScriptCache cache = new ScriptCache(10, 1);
+        cache.get(f, new Interpreter()); // discarded right away
+
+        //
+        // once the discarded interpreter is collected, its place is free
+        //
+        Interpreter i = new Interpreter();
+        boolean cached = false;
+        for (int n=0; (n<100) && !cached; ++n) {
+            System.gc(); Thread.sleep(10);
+            cached = (cache.get(f, i) == cache.get(f, i));
+        }
+        then(cached).isTrue();
+    }
+
+    @Test
+    public void reload_when_file_changes() throws Exception {
+        File f = script("two.bsh", "a = 1;");
+        Interpreter i1 = new Interpreter(), i2 = new Interpreter();
+
+        ScriptCache cache = new ScriptCache();
+        ParsedScript s1 = cache.get(f, i1);
+        cache.get(f, i2);
+
+        FileUtils.writeStringToFile(f, "a = 2;");
+        f.setLastModified(f.lastModified() - 10000);
+
+        ParsedScript s2 = cache.get(f, i1);
+        then(s2).isNotSameAs(s1);
+        then(cache.getReloads()).isEqualTo(1);
+        then(cache.get(f, i1)).isSameAs(s2);
+
+        //
+        // the parses of the old version are gone
+        //
+        final long misses = cache.getMisses();
+        cache.get(f, i2).eval(i2);
+        then(cache.getMisses()).isEqualTo(misses + 1);
+        then(i2.get("a")).isEqualTo(2);
+
+        s2.eval(i1);
+        then(i1.get("a")).isEqualTo(2);
+    }
+
+    @Test
+    public void evict_least_recently_used() throws Exception {
+        File f1 = script("f1.bsh", "a = 1;");
+        File f2 = script("f2.bsh", "a = 2;");
+        File f3 = script("f3.bsh", "a = 3;");
+        Interpreter i = new Interpreter();
+
+        ScriptCache cache = new ScriptCache(2);
+        ParsedScript s1 = cache.get(f1, i);
+        cache.get(f2, i);
+        cache.get(f1, i); // f2 is now the eldest
+        cache.get(f3, i);
+
+        then(cache.size()).isEqualTo(2);
+        then(cache.get(f1, i)).isSameAs(s1);
+        then(cache.getMisses()).isEqualTo(3);
+
+        cache.get(f2, i);
+        then(cache.getMisses()).isEqualTo(4);
+    }
+
+    @Test
+    public void script_not_found() throws Exception {
+        ScriptCache cache = new ScriptCache();
+        try {
+            cache.get(new File(ROOT.getRoot(), "none.bsh"), new Interpreter());
+            fail("missing FileNotFoundException");
+        } catch (FileNotFoundException x) {
+            then(x).hasMessageContaining("none.bsh");
+        }
+        then(cache.size()).isZero();
+
+        try {
+            cache.get(null, new Interpreter());
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("script can not be null");
+        }
+    }
+
+    @Test
+    public void syntax_and_evaluation_errors() throws Exception {
+        ScriptCache cache = new ScriptCache();
+        Interpreter i = new Interpreter();
+        try {
+            cache.get(script("syntax.bsh", "a = ;"), i);
+            fail("missing syntax error");
+        } catch (EvalError x) {
+            then(x.getMessage()).contains("syntax.bsh");
+        }
+        then(cache.size()).isZero();
+
+        ParsedScript s = cache.get(script("target.bsh", "throw new IllegalStateException(\"error!\");"), i);
+        try {
+            s.eval(i);
+            fail("missing evaluation error");
+        } catch (TargetError x) {
+            then(x.getTarget()).isInstanceOf(IllegalStateException.class).hasMessage("error!");
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private File script(final String name, final String content) throws Exception {
+        File f = new File(ROOT.getRoot(), name);
+        FileUtils.writeStringToFile(f, content);
+
+        return f;
+    }
+}
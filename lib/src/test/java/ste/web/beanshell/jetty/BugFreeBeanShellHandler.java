@@ -36,6 +36,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import ste.web.beanshell.BeanShellUtils;
+import ste.web.beanshell.ScriptCache;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_REQ_ATTR_NAME1;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_REQ_ATTR_NAME2;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_REQ_ATTR_NAME3;
@@ -95,18 +96,137 @@ public class BugFreeBeanShellHandler {
 
     @Test
     public void interpreterSetUp() throws Exception {
-        assertNotNull(handler.getInterpreter());
-        assertNull(new BeanShellHandler().getInterpreter());
+        assertNotNull(handler.getInterpreterPool());
+        assertEquals(
+            handler.getScriptCache().getMaxInterpreters(),
+            handler.getInterpreterPool().getSize()
+        );
+        assertNull(new BeanShellHandler().getInterpreterPool());
+
+        ScriptCache scripts = new ScriptCache(10, 50);
+        BeanShellHandler h = new BeanShellHandler(scripts);
+        simulateStart(h);
+        assertEquals(50, h.getInterpreterPool().getSize());
+    }
+
+    @Test
+    public void interpretersDroppedWhenStopped() throws Exception {
+        handler.handle(TEST_URI01, request, request, response);
+        assertNotNull(handler.getInterpreterPool());
+
+        simulateStop(handler);
+        assertNull(handler.getInterpreterPool());
+        assertEquals(0, handler.getScriptCache().size());
+        try {
+            handler.handle(TEST_URI01, request, request, response);
+            fail("handler stopped");
+        } catch (ServletException x) {
+            assertEquals("handler not started", x.getMessage());
+        }
+    }
+
+    @Test
+    public void constructors() throws Exception {
+        try {
+            new BeanShellHandler(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            assertEquals("scripts can not be null", x.getMessage());
+        }
+
+        ScriptCache scripts = new ScriptCache();
+        assertSame(scripts, new BeanShellHandler(scripts).getScriptCache());
+        assertNotNull(new BeanShellHandler().getScriptCache());
+    }
+
+    @Test
+    public void interpretersTakenFromThePool() throws Exception {
+        final TestRequest r = new TestRequest();
+        r.setUri(new HttpURI(TEST_URI_PARAMETERS));
+        final int available = handler.getInterpreterPool().getAvailable();
+
+        handler.handle(TEST_URI01, request, request, response);
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handler.handle(TEST_URI02, r, r, new TestResponse());
+                } catch (Exception x) {
+                    x.printStackTrace();
+                }
+            }
+        });
+        t.start(); t.join();
+
+        assertEquals(2, handler.getInterpreterPool().getCheckouts());
+        assertEquals(available, handler.getInterpreterPool().getAvailable());
+        assertEquals(0, handler.getInterpreterPool().getSaturations());
+
+        //
+        // variables of one thread are not visible in the other one
+        //
+        assertNotNull(request.getAttribute("first"));
+        assertNull(request.getAttribute("second"));
+        assertNotNull(r.getAttribute("second"));
+        assertNull(r.getAttribute("first"));
+    }
+
+    @Test
+    public void variablesDoNotLeakBetweenRequests() throws Exception {
+        handler.handle(TEST_URI01, request, request, response);
+        assertNotNull(request.getAttribute("first"));
+
+        //
+        // a new request, otherwise "first" would come back as request attribute
+        //
+        TestRequest r = new TestRequest();
+        r.setUri(new HttpURI(TEST_URI_PARAMETERS));
+        handler.handle(TEST_URI02, r, r, new TestResponse());
+        assertNotNull(r.getAttribute("second"));
+        assertNull(r.getAttribute("first"));
+    }
+
+    @Test
+    public void namespaceClearedAfterRequest() throws Exception {
+        request.setSession(new TestSession());
+        handler.handle(TEST_URI01, request, request, response);
+
+        //
+        // the most recently given back interpreter is the next one
+        //
+        Interpreter i = handler.getInterpreterPool().checkout();
+        handler.getInterpreterPool().checkin(i);
+        assertNull(i.get("first"));
+        assertNull(i.get(VAR_REQUEST));
+        assertNull(i.get(VAR_RESPONSE));
+        assertNull(i.get(VAR_SESSION));
+        assertNull(i.get(VAR_OUT));
+
+        //
+        // also when the script fails
+        //
+        try {
+            handler.handle(TEST_URI10, request, request, response);
+            fail("missing view not detected");
+        } catch (ServletException x) {
+            //
+            // OK
+            //
+        }
+        assertSame(i, handler.getInterpreterPool().checkout());
+        assertNull(i.get(VAR_REQUEST));
+        assertNull(i.get(VAR_SOURCE));
     }
 
     @Test
     public void execScriptDefaultDirs() throws Exception {
         handler.handle(TEST_URI01, request, request, response);
         assertFalse(request.isHandled());
-        assertNotNull(handler.getInterpreter().get("first"));
+        assertNotNull(request.getAttribute("first"));
 
         handler.handle(TEST_URI02, request, request, response);
-        assertNotNull(handler.getInterpreter().get("second"));
+        assertNotNull(request.getAttribute("second"));
         assertFalse(request.isHandled());
     }
 
@@ -115,10 +235,10 @@ public class BugFreeBeanShellHandler {
         handler.setControllersFolder("controllers");
 
         handler.handle(TEST_URI03, request, request, response);
-        assertNotNull(handler.getInterpreter().get("firstcontroller"));
+        assertNotNull(request.getAttribute("firstcontroller"));
 
         handler.handle(TEST_URI04, request, request, response);
-        assertNotNull(handler.getInterpreter().get("secondcontroller"));
+        assertNotNull(request.getAttribute("secondcontroller"));
     }
 
     @Test
@@ -169,23 +289,21 @@ public class BugFreeBeanShellHandler {
 
         handler.handle(TEST_URI01, request, request, response);
 
-        Interpreter i = handler.getInterpreter();
-        assertSame(i.get(VAR_REQUEST), request);
-        assertSame(i.get(VAR_RESPONSE), response);
-        assertSame(i.get(VAR_SESSION), session);
-        assertNotNull(i.get(VAR_LOG));
-        assertNotNull(i.get(VAR_OUT));
+        assertSame(request.getAttribute(VAR_REQUEST), request);
+        assertSame(request.getAttribute(VAR_RESPONSE), response);
+        assertSame(request.getAttribute(VAR_SESSION), session);
+        assertNotNull(request.getAttribute(VAR_LOG));
+        assertNotNull(request.getAttribute(VAR_OUT));
         assertEquals(
             new File((String)server.getAttribute(ATTR_APP_ROOT), TEST_URI01).getAbsolutePath(),
-            handler.getInterpreter().get(VAR_SOURCE)
+            request.getAttribute(VAR_SOURCE)
         );
     }
 
     @Test
     public void returnView() throws Exception {
         handler.handle(TEST_URI01, request, request, response);
-        Interpreter i = handler.getInterpreter();
-        assertEquals("main.v", i.get(ATTR_VIEW));
+        assertEquals("main.v", request.getAttribute(ATTR_VIEW));
     }
 
     @Test
@@ -201,11 +319,11 @@ public class BugFreeBeanShellHandler {
     @Test
     public void requestParameters() throws Exception {
         handler.handle(TEST_URI09, request, request, response);
-        Interpreter i = handler.getInterpreter();
+        Interpreter i = handler.getInterpreterPool().checkout();
 
         assertEquals(
             String.format("%s,%s,%s", TEST_VALUE1, TEST_VALUE2, TEST_VALUE3),
-            i.get("parameters")
+            request.getAttribute("parameters")
         );
 
         //
@@ -221,19 +339,22 @@ public class BugFreeBeanShellHandler {
 
     @Test
     public void requestAttributes() throws Exception {
+        //
+        // request attributes become variables, which in turn are given back
+        // as attributes once the script is executed
+        //
         handler.handle(TEST_URI01, request, request, response);
-        Interpreter i = handler.getInterpreter();
-        Enumeration<String> attrs = request.getAttributeNames();
-        while (attrs.hasMoreElements()) {
-            String attr = attrs.nextElement();
-            assertEquals(request.getAttribute(attr), i.get(BeanShellUtils.normalizeVariableName(attr)));
+        for (String attr: new String[] {TEST_REQ_ATTR_NAME1, TEST_REQ_ATTR_NAME2, TEST_REQ_ATTR_NAME3}) {
+            assertEquals(
+                request.getAttribute(attr),
+                request.getAttribute(BeanShellUtils.normalizeVariableName(attr))
+            );
         }
     }
 
     @Test
     public void variablesAttribute() throws Exception {
         handler.handle(TEST_URI01, request, request, response);
-        Interpreter i = handler.getInterpreter();
         assertTrue((Boolean)request.getAttribute("first"));
         assertNull(request.getAttribute("something")); // just to make sure it
                                                        // does not always return
@@ -247,4 +368,10 @@ public class BugFreeBeanShellHandler {
         m.setAccessible(true);
         m.invoke(h);
     }
+
+    private void simulateStop(AbstractHandler h) throws Exception {
+        Method m = BeanShellHandler.class.getDeclaredMethod("doStop");
+        m.setAccessible(true);
+        m.invoke(h);
+    }
 }
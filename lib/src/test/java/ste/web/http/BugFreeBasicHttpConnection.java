@@ -15,9 +15,31 @@
  */
 package ste.web.http;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
 import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.Assertions.fail;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.web.http.entity.CommittableEntity;
+import ste.web.http.entity.FileRangeEntity;
+import ste.web.http.nio.NioHttpServer;
 import ste.xtest.net.TestSocket;
 import static ste.xtest.reflect.PrivateAccess.getInstanceValue;
 
@@ -27,6 +49,9 @@ import static ste.xtest.reflect.PrivateAccess.getInstanceValue;
  */
 public class BugFreeBasicHttpConnection {
     
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+    
     @Test
     public void constructors() {
         BasicHttpConnection c = new BasicHttpConnection();
@@ -54,4 +79,263 @@ public class BugFreeBasicHttpConnection {
         then(w1).isNotNull().isEqualTo(w2);
         then(getInstanceValue(c, "writer")).isEqualTo(w2);
     }
+    
+    @Test
+    public void send_zero_copy_entity_through_socket_channel() throws Exception {
+        File file = ROOT.newFile("test.txt");
+        FileUtils.writeStringToFile(file, "0123456789");
+        
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            try (
+                SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                SocketChannel accepted = server.accept()
+            ) {
+                BasicHttpConnection c = new BasicHttpConnection();
+                c.bind(accepted.socket());
+                
+                BasicHttpResponse response = HttpUtils.getBasicResponse();
+                response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+                response.setEntity(new FileRangeEntity(file, 2, 5, ContentType.TEXT_PLAIN));
+                response.setHeader("Content-Length", "5");
+                c.sendResponseHeader(response);
+                c.sendResponseEntity(response);
+                c.flush();
+                c.shutdown();
+                
+                then(IOUtils.toString(client.socket().getInputStream()))
+                    .startsWith("HTTP/1.1 206").endsWith("\r\n\r\n23456");
+            }
+        }
+    }
+    
+    @Test
+    public void committable_entity_complete_in_first_chunk() throws Exception {
+        then(send(new TestCommittableEntity(5, false)))
+            .startsWith("HTTP/1.1 200").contains("Content-Length: 5\r\n")
+            .doesNotContain("Transfer-Encoding").endsWith("\r\n\r\nhello");
+    }
+    
+    @Test
+    public void committable_entity_committed_before_complete() throws Exception {
+        then(send(new TestCommittableEntity(-1, false)))
+            .startsWith("HTTP/1.1 200").contains("Transfer-Encoding: chunked\r\n")
+            .doesNotContain("Content-Length").endsWith("\r\n\r\n5\r\nhello\r\n0\r\n\r\n");
+    }
+    
+    @Test
+    public void committable_entity_error_before_commit() throws Exception {
+        then(send(new TestCommittableEntity(5, true)))
+            .startsWith("HTTP/1.1 500").doesNotContain("Transfer-Encoding")
+            .endsWith("see server log for details");
+    }
+    
+    @Test
+    public void writer_content_fitting_the_buffer_is_sent_with_length() throws Exception {
+        then(write("GET", "HTTP/1.1", 16, ResponseWriter.FlushPolicy.WHEN_FULL, "caf\u00e8"))
+            .startsWith("HTTP/1.1 200").contains("Content-Length: 5\r\n")
+            .contains("Content-Type: text/html; charset=UTF-8\r\n")
+            .doesNotContain("Transfer-Encoding").endsWith("\r\n\r\ncaf\u00c3\u00a8");
+    }
+    
+    @Test
+    public void writer_content_replaces_placeholder_entity() throws Exception {
+        then(write(true, "GET", "HTTP/1.1", 16, ResponseWriter.FlushPolicy.WHEN_FULL, "hello"))
+            .startsWith("HTTP/1.1 200").contains("Content-Length: 5\r\n")
+            .endsWith("\r\n\r\nhello");
+    }
+    
+    @Test
+    public void writer_content_exceeding_the_buffer_is_chunked() throws Exception {
+        then(write("GET", "HTTP/1.1", 4, ResponseWriter.FlushPolicy.WHEN_FULL, "0123456789"))
+            .startsWith("HTTP/1.1 200").contains("Transfer-Encoding: chunked\r\n")
+            .doesNotContain("Content-Length")
+            .endsWith("\r\n\r\na\r\n0123456789\r\n0\r\n\r\n");
+    }
+    
+    @Test
+    public void writer_commit_adds_the_headers_of_the_response_interceptors() throws Exception {
+        //
+        // the response is sent before HttpService processes it
+        //
+        then(write(
+            false, "GET", "HTTP/1.1", "Connection: close\r\n", 4,
+            ResponseWriter.FlushPolicy.WHEN_FULL, "0123456789"
+        )).contains("Transfer-Encoding: chunked\r\n").contains("\r\nDate: ")
+          .contains("\r\nServer: " + NioHttpServer.SERVER_NAME + "\r\n")
+          .contains("\r\nConnection: close\r\n");
+    }
+    
+    @Test
+    public void writer_flush_sends_content_only_with_explicit_policy() throws Exception {
+        then(write("GET", "HTTP/1.1", 16, ResponseWriter.FlushPolicy.WHEN_FULL, "hello", "world"))
+            .contains("Content-Length: 10\r\n").endsWith("\r\n\r\nhelloworld");
+        then(write("GET", "HTTP/1.1", 16, ResponseWriter.FlushPolicy.EXPLICIT, "hello", "world"))
+            .contains("Transfer-Encoding: chunked\r\n")
+            .endsWith("\r\n\r\n5\r\nhello\r\n5\r\nworld\r\n0\r\n\r\n");
+    }
+    
+    @Test
+    public void writer_does_not_stream_head_and_http_10() throws Exception {
+        then(write("GET", "HTTP/1.0", 4, ResponseWriter.FlushPolicy.EXPLICIT, "0123456789"))
+            .contains("Content-Length: 10\r\n").doesNotContain("Transfer-Encoding")
+            .endsWith("\r\n\r\n0123456789");
+        then(write("HEAD", "HTTP/1.1", 4, ResponseWriter.FlushPolicy.EXPLICIT, "0123456789"))
+            .contains("Content-Length: 10\r\n").doesNotContain("Transfer-Encoding");
+    }
+    
+    @Test
+    public void writer_settings() throws Exception {
+        BasicHttpConnection c = new BasicHttpConnection();
+        then(c.getWriterBufferSize()).isEqualTo(ResponseWriter.DEFAULT_BUFFER_SIZE);
+        then(c.getFlushPolicy()).isSameAs(ResponseWriter.DEFAULT_FLUSH_POLICY);
+        
+        c.setWriterBufferSize(100); c.setFlushPolicy(ResponseWriter.FlushPolicy.EXPLICIT);
+        ResponseWriter w = (ResponseWriter)c.getWriter();
+        then(w.getBufferSize()).isEqualTo(100);
+        then(w.getFlushPolicy()).isSameAs(ResponseWriter.FlushPolicy.EXPLICIT);
+        
+        then(c.getResponseProcessor()).isSameAs(BasicHttpConnection.DEFAULT_RESPONSE_PROCESSOR);
+        HttpProcessor processor = HttpProcessorBuilder.create().build();
+        c.setResponseProcessor(processor);
+        then(c.getResponseProcessor()).isSameAs(processor);
+        
+        try {
+            c.setWriterBufferSize(0);
+            fail("missing argument validation");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("size must be greater than 0");
+        }
+        try {
+            c.setFlushPolicy(null);
+            fail("missing argument validation");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("policy can not be null");
+        }
+        try {
+            c.setResponseProcessor(null);
+            fail("missing argument validation");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("processor can not be null");
+        }
+    }
+    
+    // --------------------------------------------------------- private methods
+    
+    private String write(
+        final String method, final String version, final int size, 
+        final ResponseWriter.FlushPolicy policy, final String... content
+    ) throws Exception {
+        return write(false, method, version, size, policy, content);
+    }
+    
+    private String write(
+        final boolean withEntity, final String method, final String version, 
+        final int size, final ResponseWriter.FlushPolicy policy, final String... content
+    ) throws Exception {
+        return write(withEntity, method, version, "", size, policy, content);
+    }
+    
+    private String write(
+        final boolean withEntity, final String method, final String version, 
+        final String headers, final int size, final ResponseWriter.FlushPolicy policy, 
+        final String... content
+    ) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            try (
+                SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                SocketChannel accepted = server.accept()
+            ) {
+                client.socket().getOutputStream().write(
+                    (method + " /index.bsh " + version + "\r\nHost: localhost\r\n" + headers + "\r\n").getBytes()
+                );
+                
+                BasicHttpConnection c = new BasicHttpConnection();
+                c.setWriterBufferSize(size); c.setFlushPolicy(policy);
+                c.bind(accepted.socket());
+                c.receiveRequestHeader();
+                
+                BasicHttpResponse response = HttpUtils.getBasicResponse(withEntity);
+                Writer out = c.getWriter(response);
+                for (String s: content) {
+                    out.write(s); out.flush();
+                }
+                c.sendResponseHeader(response);
+                c.sendResponseEntity(response);
+                c.flush();
+                c.shutdown();
+                
+                return IOUtils.toString(client.socket().getInputStream(), "ISO-8859-1");
+            }
+        }
+    }
+    
+    private String send(final HttpEntity entity) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            try (
+                SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                SocketChannel accepted = server.accept()
+            ) {
+                BasicHttpConnection c = new BasicHttpConnection();
+                c.bind(accepted.socket());
+                
+                BasicHttpResponse response = HttpUtils.getBasicResponse();
+                response.setEntity(entity);
+                response.setHeader("Transfer-Encoding", "chunked");
+                c.sendResponseHeader(response);
+                c.sendResponseEntity(response);
+                c.flush();
+                c.shutdown();
+                
+                return IOUtils.toString(client.socket().getInputStream());
+            }
+        }
+    }
+    
+    // --------------------------------------------------- TestCommittableEntity
+    
+    private static class TestCommittableEntity extends AbstractHttpEntity implements CommittableEntity {
+        private final long length;
+        private final boolean fail;
+        
+        TestCommittableEntity(final long length, final boolean fail) {
+            this.length = length; this.fail = fail;
+            setChunked(true);
+        }
+
+        @Override
+        public void writeTo(final Commit commit) throws IOException {
+            if (fail) {
+                throw new IllegalStateException("failed");
+            }
+            commit.commit(length).write("hello".getBytes());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
 }
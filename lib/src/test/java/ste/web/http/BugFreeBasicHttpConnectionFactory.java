@@ -17,8 +17,11 @@
 package ste.web.http;
 
 import org.apache.http.config.ConnectionConfig;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.Test;
+import ste.xtest.net.TestSocket;
 import static ste.xtest.reflect.PrivateAccess.getInstanceValue;
 
 /**
@@ -45,4 +48,20 @@ public class BugFreeBasicHttpConnectionFactory {
             getInstanceValue(new BasicHttpConnectionFactory(), "config")
         ).isEqualTo(ConnectionConfig.DEFAULT);
     }
+    
+    @Test
+    public void writer_settings_are_applied_to_connections() throws Exception {
+        BasicHttpConnectionFactory f = new BasicHttpConnectionFactory();
+        then(f.getWriterBufferSize()).isEqualTo(ResponseWriter.DEFAULT_BUFFER_SIZE);
+        then(f.getFlushPolicy()).isSameAs(ResponseWriter.DEFAULT_FLUSH_POLICY);
+        then(f.getResponseProcessor()).isSameAs(BasicHttpConnection.DEFAULT_RESPONSE_PROCESSOR);
+        
+        HttpProcessor processor = HttpProcessorBuilder.create().build();
+        f.setWriterBufferSize(512); f.setFlushPolicy(ResponseWriter.FlushPolicy.EXPLICIT);
+        f.setResponseProcessor(processor);
+        BasicHttpConnection c = f.createConnection(new TestSocket());
+        then(c.getWriterBufferSize()).isEqualTo(512);
+        then(c.getFlushPolicy()).isSameAs(ResponseWriter.FlushPolicy.EXPLICIT);
+        then(c.getResponseProcessor()).isSameAs(processor);
+    }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.web.acl.User;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeFileSessionStore {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    @Test
+    public void constructors() throws Exception {
+        try {
+            new FileSessionStore(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("file can not be null");
+        }
+        try {
+            new FileSessionStore(file(), -1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("compactionInterval can not be negative");
+        }
+
+        File f = file();
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            then(store.getFile()).isSameAs(f);
+            then(store.getCompactionInterval()).isEqualTo(FileSessionStore.DEFAULT_COMPACTION_INTERVAL);
+            then(store.size()).isZero();
+            then(f).exists();
+        }
+    }
+
+    @Test
+    public void not_a_session_store() throws Exception {
+        File f = file();
+        FileUtils.writeStringToFile(f, "hello world");
+        try {
+            new FileSessionStore(f);
+            fail("missing check for invalid file");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("is not a session store");
+        }
+    }
+
+    @Test
+    public void save_and_load() throws Exception {
+        HttpSession s = new HttpSession("sid");
+        User user = new User("aname", "asecret");
+        s.setPrincipal(user);
+        s.setAttribute("one", "uno");
+        s.setAttribute("two", 2);
+        s.setAttribute("not serializable", new Object());
+        s.setAttribute("not serializable content", new ArrayList<>(Arrays.asList(new Object())));
+
+        try (FileSessionStore store = new FileSessionStore(file())) {
+            store.save(s);
+
+            HttpSession l = store.load(s.getId()); // possibly not written yet
+            thenSame(l, s);
+
+            store.flush();
+            then(store.size()).isEqualTo(1);
+            thenSame(store.load(s.getId()), s);
+            then(store.load(s.getId())).isNotSameAs(l);
+            then(store.load("none")).isNull();
+
+            User u = (User)l.getPrincipal();
+            then(u.getName()).isEqualTo("aname");
+            then(u.getSecret()).isNull(); // secrets are not stored
+            then(l.getAttribute("not serializable")).isNull();
+
+            //
+            // a serializable value with not serializable content is skipped
+            // without losing the rest of the session
+            //
+            l = store.load(s.getId());
+            then(l.getPrincipal().getName()).isEqualTo("aname");
+            then(l.attributes()).containsOnlyKeys("one", "two");
+        }
+    }
+
+    @Test
+    public void last_save_wins_and_remove() throws Exception {
+        HttpSession s = new HttpSession();
+
+        try (FileSessionStore store = new FileSessionStore(file())) {
+            s.setAttribute("value", 1); store.save(s);
+            s.setAttribute("value", 2); store.save(s);
+            then(store.load(s.getId()).getAttribute("value")).isEqualTo(2);
+
+            store.flush();
+            then(store.load(s.getId()).getAttribute("value")).isEqualTo(2);
+
+            store.remove(s.getId());
+            then(store.load(s.getId())).isNull();
+            store.flush();
+            then(store.load(s.getId())).isNull();
+            then(store.size()).isZero();
+        }
+    }
+
+    @Test
+    public void restore_after_restart() throws Exception {
+        File f = file();
+        HttpSession[] sessions = new HttpSession[10];
+
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            for (int i=0; i<sessions.length; ++i) {
+                sessions[i] = new HttpSession();
+                sessions[i].setAttribute("index", i);
+                store.save(sessions[i]);
+            }
+            store.remove(sessions[0].getId());
+        }
+
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            then(store.size()).isEqualTo(sessions.length - 1);
+            then(store.load(sessions[0].getId())).isNull();
+            for (int i=1; i<sessions.length; ++i) {
+                thenSame(store.load(sessions[i].getId()), sessions[i]);
+            }
+        }
+    }
+
+    @Test
+    public void drop_truncated_records() throws Exception {
+        File f = file();
+        HttpSession s1 = new HttpSession(), s2 = new HttpSession();
+
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            store.save(s1); store.flush();
+            store.save(s2);
+        }
+
+        //
+        // simulate a crash while writing the last record
+        //
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        final long length = f.length();
+
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            then(store.size()).isEqualTo(1);
+            thenSame(store.load(s1.getId()), s1);
+            then(store.load(s2.getId())).isNull();
+            then(f.length()).isLessThan(length);
+
+            store.save(s2); store.flush();
+            thenSame(store.load(s2.getId()), s2);
+        }
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        File f = file();
+        HttpSession s1 = new HttpSession(), s2 = new HttpSession();
+
+        try (FileSessionStore store = new FileSessionStore(f, 0)) {
+            for (int i=0; i<100; ++i) {
+                s1.setAttribute("value", i); store.save(s1);
+            }
+            store.save(s2); store.remove(s2.getId());
+            store.flush();
+            final long length = f.length();
+
+            store.compact();
+            then(f.length()).isLessThan(length / 50);
+            then(store.size()).isEqualTo(1);
+            then(store.load(s1.getId()).getAttribute("value")).isEqualTo(99);
+            then(store.load(s2.getId())).isNull();
+
+            //
+            // and still usable
+            //
+            store.save(s2); store.flush();
+            thenSame(store.load(s2.getId()), s2);
+        }
+
+        try (FileSessionStore store = new FileSessionStore(f)) {
+            then(store.size()).isEqualTo(2);
+            then(store.load(s1.getId()).getAttribute("value")).isEqualTo(99);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void unusable_after_failed_compaction() throws Exception {
+        File f = file();
+        FileSessionStore store = new FileSessionStore(f, 0);
+        store.save(new HttpSession()); store.flush();
+
+        //
+        // the open channel still reads the old file, but the compacted file
+        // can not replace a directory and the store file can not be reopened
+        //
+        f.delete(); new File(f, "child").mkdirs();
+        store.compact();
+
+        try {
+            store.save(new HttpSession());
+            fail("store should not be accessible after a failed compaction");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("is closed");
+        }
+        try {
+            store.flush();
+            fail("store should not be accessible after a failed compaction");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("is closed");
+        }
+
+        store.close(); // does not hang
+    }
+
+    @Test
+    public void no_access_after_close() throws Exception {
+        FileSessionStore store = new FileSessionStore(file());
+        store.close(); store.close();
+
+        try {
+            store.save(new HttpSession());
+            fail("store should not be accessible after close");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("is closed");
+        }
+        try {
+            store.load("id");
+            fail("store should not be accessible after close");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("is closed");
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private File file() throws IOException {
+        return new File(ROOT.newFolder(), "sessions.db");
+    }
+
+    private void thenSame(final HttpSession actual, final HttpSession expected) {
+        then(actual).isNotNull();
+        then(actual.getId()).isEqualTo(expected.getId());
+        then(actual.getSessionIdName()).isEqualTo(expected.getSessionIdName());
+        then(actual.getCreationTime()).isEqualTo(expected.getCreationTime());
+        then(actual.getLastAccessedTime()).isEqualTo(expected.getLastAccessedTime());
+        for (String name: expected.attributes().keySet()) {
+            if (name.startsWith("not ")) {
+                continue;
+            }
+            then(actual.getAttribute(name)).isEqualTo(expected.getAttribute(name));
+        }
+        if (expected.getPrincipal() != null) {
+            then(actual.getPrincipal().getName()).isEqualTo(expected.getPrincipal().getName());
+        }
+    }
+}
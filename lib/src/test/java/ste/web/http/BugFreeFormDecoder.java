@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.MessageConstraintException;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeFormDecoder {
+
+    @Test
+    public void constructors() {
+        try {
+            new FormDecoder(0, 1, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxBodySize must be greater than 0");
+        }
+        try {
+            new FormDecoder(1, 0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxFields must be greater than 0");
+        }
+        try {
+            new FormDecoder(1, 1, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxFieldSize must be greater than 0");
+        }
+
+        FormDecoder d = new FormDecoder();
+        then(d.getMaxBodySize()).isEqualTo(FormDecoder.DEFAULT_MAX_BODY_SIZE);
+        then(d.getMaxFields()).isEqualTo(FormDecoder.DEFAULT_MAX_FIELDS);
+        then(d.getMaxFieldSize()).isEqualTo(FormDecoder.DEFAULT_MAX_FIELD_SIZE);
+    }
+
+    @Test
+    public void decode_same_as_query_string() throws Exception {
+        FormDecoder d = new FormDecoder();
+        for (String body: new String[] {
+            "", "a=1", "a=1&b=2;c=3", "bar=1&bar=2&bar&bar=&bar=3", "&&a=1&&",
+            "%70age=1&par%61=2", "a=x+y%20z&b=%3C%3E%26", "a=b=c", "=1",
+            "d=100%&e=%zz%4&f=%", "x=%C3%A8%E2%82%AC"
+        }) {
+            then(decode(d, body).getMap())
+                .as(body).isEqualTo(QueryString.parse(body).getMap());
+        }
+    }
+
+    @Test
+    public void decode_with_charset() throws Exception {
+        byte[] body = "x=%E8".getBytes(StandardCharsets.US_ASCII);
+
+        then(
+            new FormDecoder().decode(new ByteArrayInputStream(body), StandardCharsets.ISO_8859_1, -1).get("x")
+        ).isEqualTo("\u00e8");
+    }
+
+    @Test
+    public void decode_across_chunks() throws Exception {
+        String value = StringUtils.repeat("%C3%A8", 2000);
+        QueryString form = new FormDecoder().decode(
+            new TrickleInputStream(("v=" + value + "&w=1").getBytes(StandardCharsets.US_ASCII)), null, -1
+        );
+
+        then(form.get("v")).isEqualTo(StringUtils.repeat("\u00e8", 2000));
+        then(form.get("w")).isEqualTo("1");
+    }
+
+    @Test
+    public void reject_body_too_large() throws Exception {
+        FormDecoder d = new FormDecoder(10, 100, 100);
+
+        try {
+            d.decode(new ByteArrayInputStream(new byte[0]), null, 11);
+            fail("declared length not checked");
+        } catch (MessageConstraintException x) {
+            then(x).hasMessageContaining("10 bytes");
+        }
+
+        InfiniteInputStream in = new InfiniteInputStream();
+        try {
+            d.decode(in, null, -1);
+            fail("body size not checked");
+        } catch (MessageConstraintException x) {
+            then(x).hasMessageContaining("10 bytes");
+            then(in.read).isLessThan(10000); // rejected early
+        }
+    }
+
+    @Test
+    public void reject_too_many_fields() throws Exception {
+        FormDecoder d = new FormDecoder(1000, 3, 100);
+
+        then(decode(d, "a=1&b=2&c=3").getNames()).hasSize(3);
+        try {
+            decode(d, "a=1&b=2&c=3&d=4");
+            fail("number of fields not checked");
+        } catch (MessageConstraintException x) {
+            then(x).hasMessageContaining("3 fields");
+        }
+    }
+
+    @Test
+    public void reject_field_too_large() throws Exception {
+        FormDecoder d = new FormDecoder(1000, 100, 4);
+
+        then(decode(d, "abcd=%31%32%33%34").get("abcd")).isEqualTo("1234");
+        for (String body: new String[] {"abcde=1", "a=12345", "a=%31%32%33%34%35"}) {
+            try {
+                decode(d, body);
+                fail("field size not checked for " + body);
+            } catch (MessageConstraintException x) {
+                then(x).hasMessageContaining("4 bytes");
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private QueryString decode(final FormDecoder d, final String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return d.decode(new ByteArrayInputStream(b), StandardCharsets.UTF_8, b.length);
+    }
+
+    // ----------------------------------------------------------- test streams
+
+    /**
+     * Returns at most 3 bytes per read
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(final byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
+
+    private static class InfiniteInputStream extends InputStream {
+        long read = 0;
+
+        @Override
+        public int read() {
+            ++read; return 'a';
+        }
+    }
+}
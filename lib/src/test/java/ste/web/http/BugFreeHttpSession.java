@@ -16,6 +16,7 @@
 package ste.web.http;
 
 import java.net.HttpCookie;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.Test;
@@ -71,6 +72,103 @@ public class BugFreeHttpSession {
         then(s.getAttribute("string")).isNull();
     }
     
+    @Test
+    public void set_null_removes_attribute() {
+        HttpSession s = new HttpSession();
+        s.setAttribute("string", "hello world");
+        s.setAttribute("string", null);
+        then(s.getAttribute("string")).isNull();
+        then(s.removeAttribute("string")).isNull();
+    }
+    
+    @Test
+    public void set_attribute_if_absent() {
+        HttpSession s = new HttpSession();
+        
+        then(s.setAttributeIfAbsent("one", "uno")).isEqualTo("uno");
+        then(s.setAttributeIfAbsent("one", "eins")).isEqualTo("uno");
+        then(s.getAttribute("one")).isEqualTo("uno");
+        
+        try {
+           s.setAttributeIfAbsent("one", null);
+           fail("missing illegal parameter check");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("value can not be null");
+        }
+    }
+    
+    @Test
+    public void compute_attribute_if_absent() {
+        HttpSession s = new HttpSession();
+        final AtomicInteger calls = new AtomicInteger();
+        HttpSession.AttributeFactory factory = new HttpSession.AttributeFactory() {
+            @Override
+            public Object create(String name) {
+                calls.incrementAndGet();
+                return name.equals("none") ? null : "value of " + name;
+            }
+        };
+        
+        then(s.computeAttributeIfAbsent("one", factory)).isEqualTo("value of one");
+        then(s.computeAttributeIfAbsent("one", factory)).isEqualTo("value of one");
+        then(calls.get()).isEqualTo(1);
+        
+        s.setAttribute("two", "due");
+        then(s.computeAttributeIfAbsent("two", factory)).isEqualTo("due");
+        then(calls.get()).isEqualTo(1);
+        
+        then(s.computeAttributeIfAbsent("none", factory)).isNull();
+        then(s.getAttribute("none")).isNull();
+        
+        try {
+           s.computeAttributeIfAbsent("one", null);
+           fail("missing illegal parameter check");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("factory can not be null");
+        }
+    }
+    
+    @Test
+    public void compute_attribute_once_with_concurrent_requests() throws Exception {
+        final HttpSession s = new HttpSession();
+        final AtomicInteger calls = new AtomicInteger();
+        final HttpSession.AttributeFactory factory = new HttpSession.AttributeFactory() {
+            @Override
+            public Object create(String name) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Object();
+            }
+        };
+        
+        final Object[] values = new Object[8];
+        Thread[] threads = new Thread[values.length];
+        for (int i=0; i<threads.length; ++i) {
+            final int n = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    values[n] = s.computeAttributeIfAbsent("expensive", factory);
+                    s.setAttribute("thread" + n, n);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        
+        then(calls.get()).isEqualTo(1);
+        for (int i=0; i<values.length; ++i) {
+            then(values[i]).isNotNull().isSameAs(values[0]);
+            then(s.getAttribute("thread" + i)).isEqualTo(i);
+        }
+    }
+    
     @Test
     public void attribute_name_can_not_be_null_in_XXXRemoveAttribute() {
         HttpSession s = new HttpSession();
@@ -95,6 +193,20 @@ public class BugFreeHttpSession {
         } catch (IllegalArgumentException x) {
             then(x.getMessage()).contains("name can not be null");
         }
+        
+        try {
+           s.setAttributeIfAbsent(null, "hello world");
+           fail("missing illegal parameter check");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("name can not be null");
+        }
+        
+        try {
+           s.computeAttributeIfAbsent(null, null);
+           fail("missing illegal parameter check");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("name can not be null");
+        }
     }
     
     @Test
@@ -165,6 +277,21 @@ public class BugFreeHttpSession {
         }
     }
     
+    @Test
+    public void creation_and_access_time() throws Exception {
+        final long before = System.currentTimeMillis();
+        HttpSession s = new HttpSession();
+        
+        then(s.getCreationTime()).isBetween(before, System.currentTimeMillis());
+        then(s.getLastAccessedTime()).isEqualTo(s.getCreationTime());
+        
+        Thread.sleep(5); s.access();
+        then(s.getLastAccessedTime()).isGreaterThan(s.getCreationTime());
+        
+        then(s.isExpired()).isFalse();
+        s.expire(); then(s.isExpired()).isTrue();
+    }
+    
     @Test
     public void set_id() {
         HttpSession s = new HttpSession();
@@ -16,6 +16,11 @@
 
 package ste.web.http;
 
+import java.io.Writer;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.assertj.core.data.MapEntry;
 import org.junit.Test;
@@ -38,6 +43,49 @@ public class BugFreeHttpSessionContext {
         ctx.setSession(null); then(ctx.getSession()).isNull();
     }
     
+    @Test
+    public void session_looked_up_and_created_when_asked_for() {
+        SessionManager sessions = new SessionManager();
+        HttpSession existing = sessions.create();
+        
+        HttpSessionContext ctx = new HttpSessionContext();
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        ctx.setSessionManager(sessions, new BasicHttpRequest("GET", "/"), response);
+        then(sessions.size()).isEqualTo(1);
+        then(ctx.getSession(false)).isNull();
+        then(sessions.size()).isEqualTo(1);
+        
+        HttpSession session = ctx.getSession();
+        then(session).isNotNull().isNotSameAs(existing);
+        then(ctx.getSession()).isSameAs(session);
+        then(sessions.size()).isEqualTo(2);
+        then(response.getFirstHeader("Set-Cookie").getValue()).contains(session.getId());
+        
+        BasicHttpRequest request = new BasicHttpRequest("GET", "/");
+        request.addHeader("Cookie", "HTTPSID=" + existing.getId());
+        ctx.setSessionManager(sessions, request, response = HttpUtils.getBasicResponse());
+        then(ctx.getSession(false)).isSameAs(existing);
+        then(response.getFirstHeader("Set-Cookie")).isNull();
+    }
+    
+    @Test
+    public void writer_content_becomes_the_entity() throws Exception {
+        HttpSessionContext ctx = new HttpSessionContext();
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse(true);
+        ctx.finishWriter(response);
+        then(response.getEntity()).isInstanceOf(BasicHttpEntity.class);
+        
+        Writer out = ctx.getWriter(response);
+        then(ctx.getWriter(response)).isSameAs(out);
+        out.write("caf\u00e8"); out.flush();
+        ctx.finishWriter(response);
+        then(EntityUtils.toString(response.getEntity())).isEqualTo("caf\u00e8");
+        then(response.getFirstHeader("Content-Type").getValue())
+            .isEqualTo("text/html; charset=UTF-8");
+        then(response.getFirstHeader("Content-Length").getValue()).isEqualTo("5");
+    }
+    
     @Test
     public void attributeOperations() {
         HttpSessionContext ctx = new HttpSessionContext();
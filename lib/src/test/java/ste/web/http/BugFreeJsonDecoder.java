@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.http.MessageConstraintException;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeJsonDecoder {
+
+    @Test
+    public void constructors() {
+        try {
+            new JsonDecoder(0, false);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxBodySize must be greater than 0");
+        }
+
+        JsonDecoder d = new JsonDecoder();
+        then(d.getMaxBodySize()).isEqualTo(JsonDecoder.DEFAULT_MAX_BODY_SIZE);
+        then(d.isStreaming()).isFalse();
+
+        d = new JsonDecoder(100, true);
+        then(d.getMaxBodySize()).isEqualTo(100);
+        then(d.isStreaming()).isTrue();
+    }
+
+    @Test
+    public void decode_tree() throws Exception {
+        JsonDecoder d = new JsonDecoder();
+
+        Object o = d.decode(in("{\"one\": 1}"), -1);
+        then(o).isInstanceOf(JSONObject.class);
+        then(((JSONObject)o).getInt("one")).isEqualTo(1);
+
+        o = d.decode(in("[1, 2]"), -1);
+        then(o).isInstanceOf(JSONArray.class);
+        then(((JSONArray)o).length()).isEqualTo(2);
+    }
+
+    @Test
+    public void reject_body_too_large() throws Exception {
+        for (boolean streaming: new boolean[] {false, true}) {
+            JsonDecoder d = new JsonDecoder(10, streaming);
+            try {
+                d.decode(in("[]"), 11);
+                fail("declared length not checked");
+            } catch (MessageConstraintException x) {
+                then(x).hasMessageContaining("10 bytes");
+            }
+        }
+
+        try {
+            new JsonDecoder(10, false).decode(in("{\"one\": \"1234567890\"}"), -1);
+            fail("body size not checked");
+        } catch (MessageConstraintException x) {
+            then(x).hasMessageContaining("10 bytes");
+        }
+
+        //
+        // the parser reads the body in chunks of some KB
+        //
+        StringBuilder body = new StringBuilder("[0");
+        for (int i=1; i<10000; ++i) {
+            body.append(", ").append(i);
+        }
+        body.append(']');
+        JsonStream s = (JsonStream)new JsonDecoder(20000, true).decode(in(body.toString()), -1);
+        try {
+            for (Object o: s) {
+                // consume
+            }
+            fail("body size not checked");
+        } catch (UncheckedIOException x) {
+            then(x.getCause()).isInstanceOf(MessageConstraintException.class);
+        }
+    }
+
+    @Test
+    public void stream_array_elements() throws Exception {
+        JsonStream s = (JsonStream)new JsonDecoder(1000, true).decode(
+            in("[{\"one\": 1}, [2], \"three\", 4, 5.5, true, null]"), -1
+        );
+
+        List<Object> elements = new ArrayList<>();
+        Iterator<Object> i = s.iterator();
+        then(i.hasNext()).isTrue(); then(i.hasNext()).isTrue();
+        while (i.hasNext()) {
+            elements.add(i.next());
+        }
+
+        then(elements).hasSize(7);
+        then(((JSONObject)elements.get(0)).getInt("one")).isEqualTo(1);
+        then(((JSONArray)elements.get(1)).getInt(0)).isEqualTo(2);
+        then(elements.subList(2, 7)).containsExactly("three", 4, 5.5, true, JSONObject.NULL);
+
+        try {
+            s.iterator();
+            fail("body read twice");
+        } catch (IllegalStateException x) {
+            then(x).hasMessageContaining("already read");
+        }
+    }
+
+    @Test
+    public void stream_value_and_parser() throws Exception {
+        JsonDecoder d = new JsonDecoder(1000, true);
+
+        JsonStream s = (JsonStream)d.decode(in("{\"one\": [1, 2]}"), -1);
+        Object o = s.getValue();
+        then(o).isInstanceOf(JSONObject.class);
+        then(((JSONObject)o).getJSONArray("one").length()).isEqualTo(2);
+
+        then(((JsonStream)d.decode(in(""), -1)).getValue()).isNull();
+
+        s = (JsonStream)d.decode(in("{\"one\": 1}"), -1);
+        then(s.getParser().nextToken()).isEqualTo(JsonToken.START_OBJECT);
+        then(s.getParser().nextFieldName()).isEqualTo("one");
+
+        try {
+            ((JsonStream)d.decode(in("{}"), -1)).iterator();
+            fail("not an array not detected");
+        } catch (UncheckedIOException x) {
+            then(x.getCause()).hasMessageContaining("not an array");
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private InputStream in(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Locale;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import org.junit.After;
@@ -74,6 +75,46 @@ public class BugFreeMimeUtils {
         }
     }
     
+    @Test
+    public void isCompressible() {
+        MimeUtils m = MimeUtils.getInstance();
+        
+        for (String type: new String[] {
+            "text/html", "text/css", "text/plain; charset=UTF-8", "application/javascript",
+            "application/json", "application/xml", "image/svg+xml", "application/ld+json"
+        }) {
+            assertThat(m.isCompressible(type)).as(type).isTrue();
+        }
+        for (String type: new String[] {
+            "image/png", "image/jpeg", "application/zip", "application/gzip",
+            "video/mp4", "audio/mpeg", MimeUtils.MIME_UNKNOWN, null
+        }) {
+            assertThat(m.isCompressible(type)).as(String.valueOf(type)).isFalse();
+        }
+        
+        assertThat(m.isCompressible(new File("script.js"))).isTrue();
+        assertThat(m.isCompressible(new File("style.css"))).isTrue();
+        assertThat(m.isCompressible(new File("image.png"))).isFalse();
+        assertThat(m.isCompressible(new File("archive.zip"))).isFalse();
+    }
+    
+    @Test
+    public void case_insensitive_in_any_locale() {
+        final Locale locale = Locale.getDefault();
+        try {
+            //
+            // in Turkish "I".toLowerCase() is a dotless i
+            //
+            Locale.setDefault(new Locale("tr", "TR"));
+            MimeUtils m = MimeUtils.getInstance();
+            
+            assertThat(m.isCompressible("APPLICATION/JAVASCRIPT")).isTrue();
+            assertThat(m.getMimeType(new File("FAVICON.ICO"))).isEqualTo("image/x-icon");
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+    
     @Test
     public void singletone() throws Exception {
         MimeUtils m = MimeUtils.getInstance();
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeParsedRequest {
+
+    @Test
+    public void constructors() {
+        try {
+            new ParsedRequest(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("request can not be null");
+        }
+    }
+
+    @Test
+    public void path_and_query() throws Exception {
+        BasicHttpRequest request = new BasicHttpRequest("GET", "/a%20dir/index.bsh?one=1&two=x%26y");
+        ParsedRequest p = new ParsedRequest(request);
+
+        then(p.getRequest()).isSameAs(request);
+        then(p.getPath()).isEqualTo("/a dir/index.bsh");
+        then(p.getQuery().get("one")).isEqualTo("1");
+        then(p.getQuery().get("two")).isEqualTo("x&y");
+        then(p.hasForm()).isFalse();
+        then(p.getForm().isEmpty()).isTrue();
+
+        p = new ParsedRequest(new BasicHttpRequest("GET", "/index.bsh"));
+        then(p.getPath()).isEqualTo("/index.bsh");
+        then(p.getQuery().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void malformed_uri() {
+        ParsedRequest p = new ParsedRequest(new BasicHttpRequest("GET", "/a b?one=1"));
+
+        then(p.getPath()).isNull();
+        then(p.getQuery().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void form_is_read_once() throws Exception {
+        BasicHttpEntityEnclosingRequest request =
+            new BasicHttpEntityEnclosingRequest("POST", "/index.bsh?one=1");
+        request.setEntity(new StringEntity("two=2&three=3", ContentType.APPLICATION_FORM_URLENCODED));
+        request.addHeader("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+
+        ParsedRequest p = new ParsedRequest(request);
+        then(p.hasForm()).isTrue();
+
+        QueryString form = p.getForm();
+        then(form.getNames()).containsExactly("two", "three");
+        then(p.getForm()).isSameAs(form);
+        then(p.getQuery().getNames()).containsExactly("one");
+    }
+
+    @Test
+    public void parsed_once_per_request_in_context() {
+        HttpSessionContext context = new HttpSessionContext();
+        BasicHttpRequest r1 = new BasicHttpRequest("GET", "/one?a=1"),
+                         r2 = new BasicHttpRequest("GET", "/two?b=2");
+
+        ParsedRequest p1 = context.getParsedRequest(r1);
+        then(context.getParsedRequest(r1)).isSameAs(p1);
+        then(context).isEmpty(); // not an attribute
+
+        ParsedRequest p2 = context.getParsedRequest(r2);
+        then(p2).isNotSameAs(p1);
+        then(p2.getPath()).isEqualTo("/two");
+
+        try {
+            context.getParsedRequest(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("request can not be null");
+        }
+    }
+}
@@ -278,4 +278,39 @@ public class BugFreeQueryString {
             QueryString.parse("page=1&para=2").getNames()
         ).isNotNull().isNotEmpty().contains("page").contains("para");
     }
+
+    @Test
+    public void decode_values_when_read() throws Exception {
+        QueryString qs = QueryString.parse("a=x+y%20z&b=%C3%A8%E2%82%AC&c=plain&d=100%&e=%zz%4");
+
+        then(qs.get("a")).isEqualTo("x y z");
+        then(qs.get("a")).isSameAs(qs.get("a")); // decoded once
+        then(qs.get("b")).isEqualTo("\u00e8\u20ac");
+        then(qs.get("c")).isEqualTo("plain");
+        then(qs.get("d")).isEqualTo("100%"); // malformed escapes are literal
+        then(qs.get("e")).isEqualTo("%zz%4");
+        then(QueryString.parse(new StringBuilder("k=v")).get("k")).isEqualTo("v");
+    }
+
+    @Test
+    public void single_and_multi_values() throws Exception {
+        QueryString qs = QueryString.parse("one=1&many=1;many=2&&none&many=3");
+
+        then(qs.getNames()).containsExactly("one", "many", "none");
+        then(qs.getValues("one")).containsExactly("1");
+        then(qs.getValues("many")).containsExactly("1", "2", "3");
+        then(qs.get("many")).isEqualTo("1");
+        then(qs.getValues("none")).containsExactly((String)null);
+        then(qs.getValues("nothing")).isNull();
+
+        try {
+            qs.getValues("one").add("2");
+            fail("getValues() must be read-only");
+        } catch (UnsupportedOperationException x) {
+            // OK
+        }
+
+        qs.append("one", "2").set("many", "4");
+        then(qs.toString()).isEqualTo("one=1&one=2&many=4&none");
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http;
+
+import java.io.File;
+import org.apache.http.message.BasicHttpRequest;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeSessionManager {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    @Test
+    public void constructors() {
+        try {
+            new SessionManager(null, 0, 0, 1);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("sessionIdName can not be null");
+        }
+        try {
+            new SessionManager("id", -1, 0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("idleTimeout can not be negative");
+        }
+        try {
+            new SessionManager("id", 0, -1, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxLifetime can not be negative");
+        }
+        try {
+            new SessionManager("id", 0, 0, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxSessions must be greater than 0");
+        }
+
+        SessionManager m = new SessionManager();
+        then(m.getSessionIdName()).isEqualTo(SessionHeader.DEFAULT_SESSION_HEADER);
+        then(m.getIdleTimeout()).isEqualTo(SessionManager.DEFAULT_IDLE_TIMEOUT);
+        then(m.getMaxLifetime()).isEqualTo(SessionManager.DEFAULT_MAX_LIFETIME);
+        then(m.getMaxSessions()).isEqualTo(SessionManager.DEFAULT_MAX_SESSIONS);
+        then(m.size()).isZero();
+        then(m.isStarted()).isFalse();
+        then(m.getStore()).isNull();
+    }
+
+    @Test
+    public void create_and_get() {
+        SessionManager m = new SessionManager("id", 0, 0, 10);
+
+        HttpSession s1 = m.create(), s2 = m.create();
+        then(s1.getId()).isNotEqualTo(s2.getId());
+        then(s1.getHeader().toString()).startsWith("id=");
+        then(m.size()).isEqualTo(2);
+
+        then(m.get(s1.getId())).isSameAs(s1);
+        then(m.get(s2.getId())).isSameAs(s2);
+        then(m.get("none")).isNull();
+        then(m.get((String)null)).isNull();
+    }
+
+    @Test
+    public void get_from_request_cookies() {
+        SessionManager m = new SessionManager("sid", 0, 0, 10);
+        HttpSession s = m.create();
+
+        BasicHttpRequest request = new BasicHttpRequest("GET", "/index.html");
+        then(m.get(request, false)).isNull();
+
+        HttpSession s1 = m.get(request, true);
+        then(s1).isNotNull().isNotSameAs(s);
+        then(m.size()).isEqualTo(2);
+
+        request.addHeader("Cookie", "other=1; sid=" + s.getId() + "; more=2");
+        then(m.get(request, false)).isSameAs(s);
+        then(m.get(request, true)).isSameAs(s);
+
+        request = new BasicHttpRequest("GET", "/index.html");
+        request.addHeader("Cookie", "sid=unknown");
+        then(m.get(request, false)).isNull();
+
+        try {
+            m.get(null, true);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("request can not be null");
+        }
+    }
+
+    @Test
+    public void idle_timeout() throws Exception {
+        SessionManager m = new SessionManager("id", 100, 0, 10);
+        HttpSession s1 = m.create(), s2 = m.create();
+
+        Thread.sleep(60);
+        then(m.get(s1.getId())).isSameAs(s1); // access keeps s1 alive
+        Thread.sleep(60);
+
+        then(m.get(s1.getId())).isSameAs(s1);
+        then(m.get(s2.getId())).isNull();
+        then(s2.isExpired()).isTrue();
+        then(m.size()).isEqualTo(1);
+        then(m.getTimeouts()).isEqualTo(1);
+    }
+
+    @Test
+    public void absolute_timeout() throws Exception {
+        SessionManager m = new SessionManager("id", 0, 100, 10);
+        HttpSession s = m.create();
+
+        for (int i=0; i<3; ++i) {
+            Thread.sleep(40);
+            m.get(s.getId());
+        }
+        then(m.get(s.getId())).isNull();
+        then(s.isExpired()).isTrue();
+    }
+
+    @Test
+    public void evict_least_recently_used() throws Exception {
+        SessionManager m = new SessionManager("id", 0, 0, 2);
+
+        HttpSession s1 = m.create(); Thread.sleep(5);
+        HttpSession s2 = m.create(); Thread.sleep(5);
+        m.get(s1.getId()); Thread.sleep(5); // s2 is now the least recently used
+
+        HttpSession s3 = m.create();
+        then(m.size()).isEqualTo(2);
+        then(m.getEvictions()).isEqualTo(1);
+        then(s2.isExpired()).isTrue();
+        then(m.get(s2.getId())).isNull();
+        then(m.get(s1.getId())).isSameAs(s1);
+        then(m.get(s3.getId())).isSameAs(s3);
+    }
+
+    @Test
+    public void invalidate() {
+        SessionManager m = new SessionManager();
+        HttpSession s = m.create();
+
+        m.invalidate(s.getId());
+        then(s.isExpired()).isTrue();
+        then(m.get(s.getId())).isNull();
+        then(m.size()).isZero();
+
+        m.invalidate("none"); m.invalidate(null); // nothing happens
+    }
+
+    @Test
+    public void sweep_timed_out_and_expired_sessions() throws Exception {
+        SessionManager m = new SessionManager("id", 50, 0, 10);
+        HttpSession s1 = m.create(), s2 = m.create(), s3 = m.create();
+        s3.expire();
+
+        then(m.sweep()).isEqualTo(1);
+        then(m.size()).isEqualTo(2);
+
+        Thread.sleep(100);
+        then(m.sweep()).isEqualTo(2);
+        then(m.size()).isZero();
+        then(s1.isExpired()).isTrue();
+        then(s2.isExpired()).isTrue();
+    }
+
+    @Test
+    public void background_sweeper() throws Exception {
+        SessionManager m = new SessionManager("id", 50, 0, 10);
+        try {
+            m.start(25); m.start(25);
+            then(m.isStarted()).isTrue();
+
+            HttpSession s = m.create();
+            for (int i=0; (i<40) && (m.size() > 0); ++i) {
+                Thread.sleep(25);
+            }
+            then(m.size()).isZero();
+            then(s.isExpired()).isTrue();
+        } finally {
+            m.close();
+        }
+        then(m.isStarted()).isFalse();
+
+        try {
+            m.start(0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("interval must be greater than 0");
+        }
+    }
+
+    @Test
+    public void sessions_survive_restart_with_store() throws Exception {
+        File f = new File(ROOT.getRoot(), "sessions.db");
+
+        SessionManager m = new SessionManager("id", 0, 0, 10, new FileSessionStore(f));
+        HttpSession s1 = m.create(), s2 = m.create(), s3 = m.create();
+        s1.setAttribute("one", "uno");
+        m.save(s1);
+        s2.setAttribute("two", "due"); // saved when closed
+        m.invalidate(s3.getId());
+        m.close();
+
+        m = new SessionManager("id", 0, 0, 10, new FileSessionStore(f));
+        then(m.size()).isZero(); // sessions are restored lazily
+
+        HttpSession r1 = m.get(s1.getId());
+        then(r1).isNotNull().isNotSameAs(s1);
+        then(r1.getAttribute("one")).isEqualTo("uno");
+        then(m.get(s1.getId())).isSameAs(r1);
+        then(m.get(s2.getId()).getAttribute("two")).isEqualTo("due");
+        then(m.get(s3.getId())).isNull();
+        then(m.size()).isEqualTo(2);
+        m.close();
+    }
+
+    @Test
+    public void evicted_sessions_come_back_from_store() throws Exception {
+        FileSessionStore store = new FileSessionStore(new File(ROOT.getRoot(), "sessions.db"));
+        SessionManager m = new SessionManager("id", 0, 0, 1, store);
+
+        HttpSession s1 = m.create(); s1.setAttribute("one", "uno");
+        Thread.sleep(5);
+        m.create();
+        then(s1.isExpired()).isTrue();
+        then(m.size()).isEqualTo(1);
+
+        HttpSession r1 = m.get(s1.getId());
+        then(r1).isNotNull();
+        then(r1.getAttribute("one")).isEqualTo("uno");
+        then(m.size()).isEqualTo(1);
+        m.close();
+    }
+
+    @Test
+    public void timed_out_sessions_are_removed_from_store() throws Exception {
+        FileSessionStore store = new FileSessionStore(new File(ROOT.getRoot(), "sessions.db"));
+        SessionManager m = new SessionManager("id", 50, 0, 10, store);
+
+        HttpSession s = m.create(); m.save(s);
+        Thread.sleep(100);
+        then(m.get(s.getId())).isNull();
+        then(store.load(s.getId())).isNull();
+        m.close();
+    }
+}
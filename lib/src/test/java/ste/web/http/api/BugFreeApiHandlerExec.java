@@ -22,14 +22,18 @@
 package ste.web.http.api;
 
 import bsh.EvalError;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import org.apache.http.HttpException;
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.FileEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.protocol.HttpCoreContext;
@@ -38,13 +42,17 @@ import static org.assertj.core.api.BDDAssertions.then;
 import org.json.JSONObject;
 import org.junit.Test;
 import ste.web.beanshell.BeanShellError;
+import ste.web.beanshell.InterpreterPool;
+import ste.web.beanshell.ScriptCache;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_QUERY_STRING;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_URI06;
 import static ste.web.beanshell.BugFreeBeanShellUtils.TEST_URI07;
 import static ste.web.beanshell.Constants.*;
 import ste.web.http.HttpSessionContext;
 import ste.web.http.HttpUtils;
+import ste.web.http.JsonDecoder;
 import ste.web.http.beanshell.BeanShellUtils;
+import ste.web.http.entity.JsonEntity;
 import ste.xtest.reflect.PrivateAccess;
 
 /**
@@ -61,7 +69,9 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
     public static final String TEST_URI_ITEMS3 = "/api/store/get/items3";
     public static final String TEST_URI_ITEMS4 = "/api/store/get/items4";
     public static final String TEST_URI_ITEMS5 = "/api/store/get/items5";
+    public static final String TEST_URI_ITEMS6 = "/api/store/get/items6";
     public static final String TEST_URI_PARAMETERS = "/api/app/get/parameters?" + TEST_QUERY_STRING;
+    public static final String TEST_URI_BULK = "/api/store/post/bulk";
     
     public BugFreeApiHandlerExec() {
         super("src/test/apiroot");
@@ -79,6 +89,38 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
         String root = new File("src/test/apiroot").getAbsolutePath();
         ApiHandler h = new ApiHandler(root);
         then(PrivateAccess.getInstanceValue(h, "apiroot")).isEqualTo(root);
+        then(h.getScriptCache()).isNotNull();
+        
+        try {
+            new ApiHandler(root, "/api", null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("scripts").contains("not be null");
+        }
+        
+        ScriptCache cache = new ScriptCache(10);
+        then(new ApiHandler(root, "/api", cache).getScriptCache()).isSameAs(cache);
+        then(h.getInterpreterPool()).isNotNull();
+
+        try {
+            new ApiHandler(root, "/api", cache, null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("interpreters").contains("not be null");
+        }
+
+        InterpreterPool pool = new InterpreterPool(1);
+        then(new ApiHandler(root, "/api", cache, pool).getInterpreterPool()).isSameAs(pool);
+
+        try {
+            new ApiHandler(root, "/api", new ScriptCache(10, 4), new InterpreterPool(5));
+            fail("missing check for pool bigger than the script cache");
+        } catch (IllegalArgumentException x) {
+            then(x.getMessage()).contains("interpreters").contains("5 > 4");
+        }
+
+        cache = new ScriptCache(10, 3);
+        then(new ApiHandler(root, "/api", cache).getInterpreterPool().getSize()).isEqualTo(3);
     }
 
     @Test
@@ -106,6 +148,26 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
         }
     }
 
+    @Test
+    public void streamed_json_body_too_large() throws Exception {
+        handler.setJsonDecoder(new JsonDecoder(20000, true));
+
+        TestJsonBody body = new TestJsonBody(3);
+        handler.handle(post(TEST_URI_BULK, body), response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(context.get("count")).isEqualTo(3);
+        then(body.closed).isTrue();
+
+        //
+        // the limit is exceeded while the script iterates over the body
+        //
+        body = new TestJsonBody(10000);
+        handler.handle(post(TEST_URI_BULK, body), response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_REQUEST_TOO_LONG);
+        then(response.getStatusLine().getReasonPhrase()).contains("20000 bytes");
+        then(body.closed).isTrue();
+    }
+
     @Test
     public void set_main_variables() throws Exception {
         BasicHttpRequest request = request(TEST_URI_ITEMS1);
@@ -184,7 +246,7 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
     public void content_type_is_json_if_not_already_set() throws Exception {
         response.setEntity(new BasicHttpEntity());
         handler.handle(request(TEST_URI_ITEMS1), response, context);
-        then(response.getEntity().getContentType().getValue()).isEqualTo("application/json");
+        then(response.getEntity().getContentType().getValue()).isEqualTo(JsonEntity.CONTENT_TYPE);
     }
     
     @Test
@@ -219,7 +281,35 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
         JSONObject o = new JSONObject(baos.toString());
         then(o.getString("one")).isEqualTo("111");
         then(o.getString("two")).isEqualTo("222");
-        then(response.getEntity().getContentLength()).isEqualTo(25);
+        then(response.getEntity()).isInstanceOf(JsonEntity.class);
+        then(response.getEntity().isChunked()).isTrue();
+        then(response.getEntity().getContentLength()).isEqualTo(-1);
+    }
+
+    @Test
+    public void json_stream_keeps_content_type_if_already_set() throws Exception {
+        BasicHttpEntity e = new BasicHttpEntity();
+        e.setContentType("text/plain");
+        response.setEntity(e);
+        handler.handle(request(TEST_URI_ITEMS6), response, context);
+
+        then(response.getEntity()).isInstanceOf(JsonEntity.class);
+        then(response.getEntity().getContentType().getValue()).isEqualTo("text/plain");
+    }
+
+    @Test
+    public void return_content_in_the_body_as_json_stream() throws Exception {
+        handler.handle(request(TEST_URI_ITEMS6), response, context);
+
+        then(response.getEntity()).isInstanceOf(JsonEntity.class);
+        then(response.getEntity().getContentType().getValue()).isEqualTo(JsonEntity.CONTENT_TYPE);
+        then(response.getEntity().isRepeatable()).isFalse();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        response.getEntity().writeTo(baos);
+        then(baos.toString("UTF-8")).isEqualTo(
+            "[{\"id\":0,\"name\":\"item0\"},{\"id\":1,\"name\":\"item1\"},{\"id\":2,\"name\":\"item2\"}]"
+        );
     }
     
     @Test
@@ -283,5 +373,69 @@ public class BugFreeApiHandlerExec extends BugFreeApiHandlerBase {
         then(context.get("withappscript")).isEqualTo("app.bsh get.bsh");
     }
 
+    @Test
+    public void scripts_are_parsed_once() throws Exception {
+        handler.handle(request(TEST_URI_APP_AND_ACTION), response, context);
+        then(handler.getScriptCache().getMisses()).isEqualTo(2);
+        then(handler.getScriptCache().getHits()).isZero();
+        
+        handler.handle(request(TEST_URI_APP_AND_ACTION), response, context);
+        then(handler.getScriptCache().getMisses()).isEqualTo(2);
+        then(handler.getScriptCache().getHits()).isEqualTo(2);
+        then(context.get("withappscript")).isEqualTo("app.bsh get.bsh");
+    }
+
+    @Test
+    public void interpreters_are_reused() throws Exception {
+        final int available = handler.getInterpreterPool().getAvailable();
+        final long checkouts = handler.getInterpreterPool().getCheckouts();
+
+        handler.handle(request(TEST_URI_APP_AND_ACTION), response, context);
+        handler.handle(request(TEST_URI_APP_AND_ACTION), response, context);
+
+        then(handler.getInterpreterPool().getCheckouts()).isEqualTo(checkouts + 2);
+        then(handler.getInterpreterPool().getAvailable()).isEqualTo(available);
+        then(handler.getInterpreterPool().getSaturations()).isZero();
+    }
+
     // --------------------------------------------------------- Private methods
+    
+    // --------------------------------------------------------- private methods
+    
+    private BasicHttpEntityEnclosingRequest post(final String uri, final InputStream body) {
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", uri);
+        request.setHeader("Content-Type", "application/json");
+        BasicHttpEntity e = new BasicHttpEntity();
+        e.setContent(body);
+        e.setContentLength(-1);
+        request.setEntity(e);
+        
+        return request;
+    }
+    
+    // ------------------------------------------------------------ TestJsonBody
+    
+    /**
+     * A JSON array of the given number of elements that knows if it was closed
+     */
+    private static class TestJsonBody extends ByteArrayInputStream {
+        boolean closed = false;
+        
+        TestJsonBody(final int size) {
+            super(array(size));
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true; super.close();
+        }
+        
+        private static byte[] array(final int size) {
+            StringBuilder sb = new StringBuilder("[0");
+            for (int i=1; i<size; ++i) {
+                sb.append(", ").append(i);
+            }
+            return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -21,11 +21,15 @@
  */
 package ste.web.http.beanshell;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.apache.http.HttpException;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
@@ -34,10 +38,12 @@ import org.junit.Test;
 import org.junit.Before;
 import ste.web.beanshell.BeanShellError;
 import ste.web.beanshell.BeanShellUtils;
+import ste.web.beanshell.InterpreterPool;
 import static ste.web.beanshell.BugFreeBeanShellUtils.*;
 import static ste.web.beanshell.Constants.*;
 import ste.web.http.BasicHttpConnection;
 import ste.web.http.HttpSessionContext;
+import ste.web.http.JsonDecoder;
 import ste.xtest.net.TestSocket;
 import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.BDDAssertions.then;
@@ -85,6 +91,13 @@ public class BugFreeBeanShellHandler {
             then(x.getMessage()).contains("webroot").contains("not be null");
         }
 
+        try {
+            new BeanShellHandler(new File(ROOT).getAbsolutePath(), null, null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("interpreters can not be null");
+        }
+
         BeanShellHandler h = new BeanShellHandler(new File(ROOT).getAbsolutePath());
         then(h.getControllersFolder()).isNull();
 
@@ -96,6 +109,34 @@ public class BugFreeBeanShellHandler {
 
         h = new BeanShellHandler(new File(ROOT).getAbsolutePath(), "/a");
         then(h.getControllersFolder()).isEqualTo("/a");
+        then(h.getInterpreterPool()).isNotNull();
+
+        InterpreterPool pool = new InterpreterPool(1);
+        h = new BeanShellHandler(new File(ROOT).getAbsolutePath(), "/c", pool);
+        then(h.getControllersFolder()).isEqualTo("/c");
+        then(h.getInterpreterPool()).isSameAs(pool);
+    }
+
+    @Test
+    public void interpreters_are_given_back_to_the_pool() throws Exception {
+        InterpreterPool pool = new InterpreterPool(1);
+        handler = new BeanShellHandler(new File(ROOT).getAbsolutePath(), null, pool);
+
+        handler.handle(get(TEST_URI01), response, context);
+        handler.handle(get(TEST_URI02), response, context);
+        then(pool.getCheckouts()).isEqualTo(2);
+        then(pool.getSaturations()).isZero();
+        then(pool.getAvailable()).isEqualTo(1);
+
+        try {
+            handler.handle(get(TEST_URI06), response, context);
+            fail(TEST_URI06 + " error shall throw a HttpException");
+        } catch (HttpException x) {
+            //
+            // the interpreter is given back also in case of errors
+            //
+            then(pool.getAvailable()).isEqualTo(1);
+        }
     }
 
     @Test
@@ -164,6 +205,27 @@ public class BugFreeBeanShellHandler {
                 .isEqualTo(context.get(VAR_SOURCE));
     }
 
+    @Test
+    public void streamed_json_body_too_large() throws Exception {
+        handler.setJsonDecoder(new JsonDecoder(20000, true));
+
+        StringBuilder body = new StringBuilder("[0");
+        for (int i=1; i<10000; ++i) {
+            body.append(", ").append(i);
+        }
+        body.append(']');
+        
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/bulk.bsh");
+        request.setHeader("Content-Type", "application/json");
+        BasicHttpEntity e = new BasicHttpEntity();
+        e.setContent(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+        e.setContentLength(-1);
+        request.setEntity(e);
+        
+        handler.handle(request, response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_REQUEST_TOO_LONG);
+    }
+
     @Test
     public void return_view() throws Exception {
         handler.handle(get(TEST_URI01), response, context);
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.MessageConstraintException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
@@ -46,7 +47,10 @@ import static ste.web.beanshell.BeanShellUtils.CONTENT_TYPE_JSON;
 
 import static ste.web.beanshell.BugFreeBeanShellUtils.*;
 import ste.web.http.BasicHttpConnection;
+import ste.web.http.FormDecoder;
 import ste.web.http.HttpSessionContext;
+import ste.web.http.JsonDecoder;
+import ste.web.http.JsonStream;
 import ste.web.http.QueryString;
 
 import ste.xtest.net.TestSocket;
@@ -203,6 +207,23 @@ public class BugFreeBeanShellUtils {
         );
     }
     
+    @Test
+    public void bodyAsJSONStream() throws Exception {
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("post", TEST_URI_PARAMETERS);
+        HttpSessionContext context = new HttpSessionContext();
+        context.setAttribute(HttpCoreContext.HTTP_CONNECTION, getConnection());
+        request.addHeader(HTTP.CONTENT_TYPE, CONTENT_TYPE_JSON);
+        request.setEntity(new StringEntity("[{\"n\": 1}, {\"n\": 2}, {\"n\": 3}]"));
+
+        Interpreter i = new Interpreter();
+        BeanShellUtils.setup(
+            i, request, RESPONSE_OK, context, new FormDecoder(), new JsonDecoder(1000, true)
+        );
+
+        then(i.get("body")).isInstanceOf(JsonStream.class);
+        then(i.eval("sum = 0; for (item: body.iterator()) { sum += item.getInt(\"n\"); }; return sum;")).isEqualTo(6);
+    }
+
     @Test
     public void bodyAsJSONObjectWithCharset() throws Exception {
         final String TEST_LABEL1 = "label1";
@@ -274,6 +295,25 @@ public class BugFreeBeanShellUtils {
         
     }
     
+    @Test
+    public void formUrlEncodedParametersWithLimits() throws Exception {
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("post", TEST_URI09);
+        StringEntity e = new StringEntity(TEST_QUERY_STRING);
+        e.setContentType(ContentType.APPLICATION_FORM_URLENCODED.getMimeType());
+        request.setEntity(e);
+        request.addHeader(HTTP.CONTENT_TYPE, e.getContentType().getValue());
+
+        HttpSessionContext context = new HttpSessionContext();
+        context.setAttribute(HttpCoreContext.HTTP_CONNECTION, getConnection());
+
+        try {
+            BeanShellUtils.setup(new Interpreter(), request, RESPONSE_OK, context, new FormDecoder(1, 1, 1));
+            fail("form limits not checked");
+        } catch (MessageConstraintException x) {
+            then(x).hasMessageContaining("exceeds the limit");
+        }
+    }
+
     // --------------------------------------------------------- private methods
     
     private BasicHttpConnection getConnection() throws IOException {
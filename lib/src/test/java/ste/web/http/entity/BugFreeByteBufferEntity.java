@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ContentType;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeByteBufferEntity {
+
+    @Test
+    public void constructors() {
+        try {
+            new ByteBufferEntity(null, ContentType.TEXT_PLAIN);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("buffer can not be null");
+        }
+
+        ByteBufferEntity e = new ByteBufferEntity(ByteBuffer.allocate(10), ContentType.TEXT_PLAIN);
+        then(e.getContentLength()).isEqualTo(10);
+        then(e.isRepeatable()).isTrue();
+        then(e.isStreaming()).isFalse();
+        then(e.getContentType().getValue()).startsWith("text/plain");
+    }
+
+    @Test
+    public void content_of_direct_buffer_is_not_consumed() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(10);
+        buffer.put("0123456789".getBytes()).flip();
+        buffer.position(2); buffer.limit(6);
+
+        ByteBufferEntity e = new ByteBufferEntity(buffer, null);
+        then(e.getContentLength()).isEqualTo(4);
+        then(IOUtils.toString(e.getContent())).isEqualTo("2345");
+        then(IOUtils.toString(e.getContent())).isEqualTo("2345");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.writeTo(out);
+        then(out.toString()).isEqualTo("2345");
+
+        out.reset();
+        e.writeTo(Channels.newChannel(out));
+        then(out.toString()).isEqualTo("2345");
+
+        then(buffer.position()).isEqualTo(2);
+        then(buffer.remaining()).isEqualTo(4);
+    }
+}
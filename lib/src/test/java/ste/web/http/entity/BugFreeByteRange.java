@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeByteRange {
+
+    @Test
+    public void constructor() {
+        try {
+            new ByteRange(-1, 10);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("invalid range -1-10");
+        }
+        try {
+            new ByteRange(10, 9);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("invalid range 10-9");
+        }
+
+        ByteRange r = new ByteRange(10, 19);
+        then(r.length()).isEqualTo(10);
+        then(r.toContentRange(100)).isEqualTo("bytes 10-19/100");
+        then(r).isEqualTo(new ByteRange(10, 19)).isNotEqualTo(new ByteRange(10, 20));
+        then(r.hashCode()).isEqualTo(new ByteRange(10, 19).hashCode());
+    }
+
+    @Test
+    public void parse_single_ranges() {
+        then(ByteRange.parse("bytes=0-9", 100)).containsExactly(new ByteRange(0, 9));
+        then(ByteRange.parse("bytes=90-", 100)).containsExactly(new ByteRange(90, 99));
+        then(ByteRange.parse("bytes=90-200", 100)).containsExactly(new ByteRange(90, 99));
+        then(ByteRange.parse("bytes=-10", 100)).containsExactly(new ByteRange(90, 99));
+        then(ByteRange.parse("bytes=-200", 100)).containsExactly(new ByteRange(0, 99));
+        then(ByteRange.parse(" bytes= 5 - 6 ", 100)).containsExactly(new ByteRange(5, 6));
+    }
+
+    @Test
+    public void parse_multiple_ranges_merged_and_sorted() {
+        then(ByteRange.parse("bytes=50-59,0-9", 100))
+            .containsExactly(new ByteRange(0, 9), new ByteRange(50, 59));
+        then(ByteRange.parse("bytes=0-9,5-19,20-29", 100))
+            .containsExactly(new ByteRange(0, 29));
+        then(ByteRange.parse("bytes=0-0,-1,,", 100))
+            .containsExactly(new ByteRange(0, 0), new ByteRange(99, 99));
+    }
+
+    @Test
+    public void parse_not_satisfiable() {
+        then(ByteRange.parse("bytes=100-", 100)).isEmpty();
+        then(ByteRange.parse("bytes=200-300,-0", 100)).isEmpty();
+        then(ByteRange.parse("bytes=-10", 0)).isEmpty();
+        then(ByteRange.parse("bytes=200-300,0-9", 100)).containsExactly(new ByteRange(0, 9));
+    }
+
+    @Test
+    public void parse_invalid() {
+        for (String value: new String[] {
+            null, "", "items=0-9", "bytes", "bytes=9-0", "bytes=a-b", "bytes=10", "bytes=--5", "bytes=0-9,x"
+        }) {
+            then(ByteRange.parse(value, 100)).as(String.valueOf(value)).isNull();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ContentType;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeFileRangeEntities {
+
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void before() throws Exception {
+        file = ROOT.newFile("test.txt");
+        FileUtils.writeStringToFile(file, CONTENT);
+    }
+
+    @Test
+    public void file_range_constructors() {
+        try {
+            new FileRangeEntity(null, ContentType.TEXT_PLAIN);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("file can not be null");
+        }
+
+        FileRangeEntity e = new FileRangeEntity(file, ContentType.TEXT_PLAIN);
+        then(e.getFile()).isSameAs(file);
+        then(e.getOffset()).isZero();
+        then(e.getContentLength()).isEqualTo(CONTENT.length());
+        then(e.isRepeatable()).isTrue();
+        then(e.isStreaming()).isFalse();
+        then(e.getContentType().getValue()).startsWith("text/plain");
+    }
+
+    @Test
+    public void file_range_content() throws Exception {
+        FileRangeEntity e = new FileRangeEntity(file, 10, 6, ContentType.TEXT_PLAIN);
+
+        then(e.getContentLength()).isEqualTo(6);
+        then(IOUtils.toString(e.getContent())).isEqualTo("abcdef");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.writeTo(out);
+        then(out.toString()).isEqualTo("abcdef");
+
+        out.reset();
+        e.writeTo(Channels.newChannel(out));
+        then(out.toString()).isEqualTo("abcdef");
+    }
+
+    @Test
+    public void file_range_shorter_than_expected() throws Exception {
+        FileRangeEntity e = new FileRangeEntity(file, 30, 10, ContentType.TEXT_PLAIN);
+        try {
+            e.writeTo(Channels.newChannel(new ByteArrayOutputStream()));
+            fail("truncated file not detected");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("unexpected end of file");
+        }
+    }
+
+    @Test
+    public void file_range_to_channel_not_accepting_data() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(out);
+        final int[] refused = new int[] {1};
+
+        //
+        // accepts nothing the first time: the rest is copied
+        //
+        WritableByteChannel lazy = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (refused[0] > 0) {
+                    --refused[0];
+                    return 0;
+                }
+                return channel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        FileRangeEntity e = new FileRangeEntity(file, 10, 6, ContentType.TEXT_PLAIN);
+        e.writeTo(lazy);
+        then(out.toString()).isEqualTo("abcdef");
+
+        //
+        // never accepts anything: fails instead of spinning
+        //
+        refused[0] = Integer.MAX_VALUE; out.reset();
+        try {
+            e.writeTo(lazy);
+            fail("no progress not detected");
+        } catch (IOException x) {
+            then(x).hasMessageContaining("no progress");
+        }
+    }
+
+    @Test
+    public void multipart_constructors() {
+        try {
+            new MultipartByteRangesEntity(null, Arrays.asList(new ByteRange(0, 1)), null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("file can not be null");
+        }
+        try {
+            new MultipartByteRangesEntity(file, Arrays.<ByteRange>asList(), null);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("ranges can not be empty");
+        }
+    }
+
+    @Test
+    public void multipart_content() throws Exception {
+        MultipartByteRangesEntity e = new MultipartByteRangesEntity(
+            file, Arrays.asList(new ByteRange(0, 3), new ByteRange(10, 12)), ContentType.TEXT_PLAIN
+        );
+        final String B = e.getBoundary();
+        final String TYPE = ContentType.TEXT_PLAIN.toString();
+        final String EXPECTED =
+            "\r\n--" + B + "\r\nContent-Type: " + TYPE + "\r\nContent-Range: bytes 0-3/36\r\n\r\n0123" +
+            "\r\n--" + B + "\r\nContent-Type: " + TYPE + "\r\nContent-Range: bytes 10-12/36\r\n\r\nabc" +
+            "\r\n--" + B + "--\r\n";
+
+        then(e.getContentType().getValue()).isEqualTo("multipart/byteranges; boundary=" + B);
+        then(e.getRanges()).hasSize(2);
+        then(e.getContentLength()).isEqualTo(EXPECTED.length());
+        then(IOUtils.toString(e.getContent())).isEqualTo(EXPECTED);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.writeTo(out);
+        then(out.toString()).isEqualTo(EXPECTED);
+
+        out.reset();
+        e.writeTo(Channels.newChannel(out));
+        then(out.toString()).isEqualTo(EXPECTED);
+    }
+}
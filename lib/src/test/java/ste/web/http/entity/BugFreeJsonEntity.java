@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeJsonEntity {
+
+    @Test
+    public void entity_properties() throws Exception {
+        JsonEntity e = new JsonEntity(Collections.emptyList());
+
+        then(e.getContentType().getValue()).isEqualTo(JsonEntity.CONTENT_TYPE);
+        then(e.isChunked()).isTrue();
+        then(e.getContentLength()).isEqualTo(-1);
+        then(e.isRepeatable()).isTrue();
+        then(e.isStreaming()).isFalse();
+        then(new JsonEntity(Collections.emptyIterator()).isRepeatable()).isFalse();
+    }
+
+    @Test
+    public void streamable_values() {
+        then(JsonEntity.isStreamable(new JSONObject())).isTrue();
+        then(JsonEntity.isStreamable(new JSONArray())).isTrue();
+        then(JsonEntity.isStreamable(new LinkedHashMap())).isTrue();
+        then(JsonEntity.isStreamable(Arrays.asList(1))).isTrue();
+        then(JsonEntity.isStreamable(Arrays.asList(1).iterator())).isTrue();
+        then(JsonEntity.isStreamable(new String[0])).isTrue();
+        then(JsonEntity.isStreamable("{}")).isFalse();
+        then(JsonEntity.isStreamable(null)).isFalse();
+        then(JsonEntity.isStreamable(1)).isFalse();
+    }
+
+    @Test
+    public void serialize_values() throws Exception {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("s", "papà \"quoted\"");
+        map.put("i", 1);
+        map.put("l", 10000000000L);
+        map.put("d", 1.5);
+        map.put("b", true);
+        map.put("n", null);
+        map.put("N", JSONObject.NULL);
+        map.put("big", new BigDecimal("1.25"));
+        map.put(3, new StringBuilder("other"));
+        map.put("list", Arrays.asList(1, "two", new String[] {"three"}));
+        map.put("json", new JSONObject("{a: [1, {b: null}]}"));
+
+        then(write(new JsonEntity(map))).isEqualTo(
+            "{\"s\":\"papà \\\"quoted\\\"\",\"i\":1,\"l\":10000000000,\"d\":1.5,"
+            + "\"b\":true,\"n\":null,\"N\":null,\"big\":1.25,\"3\":\"other\","
+            + "\"list\":[1,\"two\",[\"three\"]],\"json\":{\"a\":[1,{\"b\":null}]}}"
+        );
+        then(write(new JsonEntity(null))).isEqualTo("null");
+    }
+
+    @Test
+    public void content_is_utf8() throws Exception {
+        JsonEntity e = new JsonEntity(Arrays.asList("papà"));
+
+        then(IOUtils.toString(e.getContent(), "UTF-8")).isEqualTo("[\"papà\"]");
+        then(IOUtils.toString(e.getContent(), "UTF-8")).isEqualTo("[\"papà\"]");
+    }
+
+    @Test
+    public void stream_iterator_elements_as_written() throws Exception {
+        final int[] produced = new int[1];
+        Iterator<Integer> i = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return produced[0] < 100000;
+            }
+
+            @Override
+            public Integer next() {
+                return produced[0]++;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        //
+        // the first bytes reach the stream long before the last element is
+        // produced
+        //
+        final int[] producedAtFirstWrite = {-1};
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (producedAtFirstWrite[0] < 0) {
+                    producedAtFirstWrite[0] = produced[0];
+                }
+            }
+        };
+        new JsonEntity(i).writeTo(out);
+
+        then(produced[0]).isEqualTo(100000);
+        then(producedAtFirstWrite[0]).isGreaterThan(0).isLessThan(10000);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String write(final JsonEntity e) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.writeTo(out);
+
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.util.regex.PatternSyntaxException;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeExcludeMatcher {
+
+    @Test
+    public void constructors() {
+        try {
+            new ExcludeMatcher(new String[0], 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxSize must be greater than 0");
+        }
+        try {
+            new ExcludeMatcher("(.*)\\.bsh", "[a-z");
+            fail("missing check for invalid patterns");
+        } catch (PatternSyntaxException x) {
+            then(x.getPattern()).isEqualTo("[a-z");
+        }
+
+        ExcludeMatcher m = new ExcludeMatcher((String[])null);
+        then(m.getPatterns()).isEmpty();
+        then(m.getMaxSize()).isEqualTo(ExcludeMatcher.DEFAULT_MAX_SIZE);
+        then(m.matches("/anything")).isFalse();
+
+        m = new ExcludeMatcher("/one", null, "/two");
+        then(m.getPatterns()).containsExactly("/one", "/two");
+
+        try {
+            m.matches(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("s can not be null");
+        }
+    }
+
+    @Test
+    public void same_as_string_matches() {
+        final String[] PATTERNS = {
+            "/favicon.ico", "/private/secret", "(.*)\\.bsh", "/tmp/.*", "(?i)/upper/.*",
+            "/(a|b)\\1/x", "/[0-9]+", "/one|/two", "/x\\?y"
+        };
+        final String[] URIS = {
+            "/favicon.ico", "/favicon.icox", "/private/secret", "/private/secret/more",
+            "/index.html", "/script.bsh", "/dir/script.bsh?p=1", "/tmp/", "/tmpfile",
+            "/UPPER/file", "/aa/x", "/ab/x", "/123", "/12a", "/one", "/two", "/onetwo",
+            "/x?y", "/xy", "/y", ""
+        };
+
+        ExcludeMatcher m = new ExcludeMatcher(PATTERNS);
+        for (int round=0; round<2; ++round) { // second round from cache
+            for (String uri: URIS) {
+                boolean expected = false;
+                for (String pattern: PATTERNS) {
+                    expected |= uri.matches(pattern);
+                }
+                then(m.matches(uri)).as(uri).isEqualTo(expected);
+            }
+        }
+        then(m.getMisses()).isEqualTo(URIS.length);
+        then(m.getHits()).isEqualTo(URIS.length);
+    }
+
+    @Test
+    public void patterns_that_can_not_be_joined() {
+        final String[] PATTERNS = {
+            "/(?<n>[0-9]+)/a", "/(?<n>[a-z]+)/b", "\\Q/lit.eral", "(?x) /spaced  # comment",
+            "/q/\\Q*\\E/.*", "/(?<m>a)\\k<m>", "/tmp/.*"
+        };
+        final String[] URIS = {
+            "/12/a", "/ab/b", "/12/b", "/lit.eral", "/litxeral", "/spaced", "/ spaced",
+            "/q/*/x", "/q/a/x", "/aa", "/aa", "/tmp/x", "/other"
+        };
+
+        ExcludeMatcher m = new ExcludeMatcher(PATTERNS);
+        for (String uri: URIS) {
+            boolean expected = false;
+            for (String pattern: PATTERNS) {
+                expected |= uri.matches(pattern);
+            }
+            then(m.matches(uri)).as(uri).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void bounded_results_cache() {
+        ExcludeMatcher m = new ExcludeMatcher(new String[] {"/tmp/.*"}, 2);
+
+        m.matches("/tmp/1"); m.matches("/tmp/2"); m.matches("/tmp/3");
+        then(m.getMisses()).isEqualTo(3);
+        m.matches("/tmp/3");
+        then(m.getHits()).isEqualTo(1);
+
+        int hits = 0;
+        for (String uri: new String[] {"/tmp/1", "/tmp/2"}) {
+            long before = m.getHits();
+            m.matches(uri);
+            hits += m.getHits() - before;
+        }
+        then(hits).isLessThanOrEqualTo(1);
+    }
+}
@@ -21,15 +21,25 @@
  */
 package ste.web.http.handlers;
 
+import java.io.File;
+import java.time.Instant;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.message.BasicHttpResponse;
+import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import ste.web.http.HttpSessionContext;
 import ste.web.http.HttpUtils;
+import ste.web.http.entity.ByteBufferEntity;
 
 
 /**
@@ -39,6 +49,9 @@ import ste.web.http.HttpUtils;
  */
 public class BugFreeFileHandler {
     
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+    
     @Test
     public void mime_type_based_on_file_extension() throws Exception {
         FileHandler h = new FileHandler("src/test/mime");
@@ -119,6 +132,21 @@ public class BugFreeFileHandler {
         then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_FOUND);
     }
     
+    @Test
+    public void exclude_patterns_ignore_query_string() throws Exception {
+        FileHandler h = new FileHandler("src/test/webroot", "null");
+        
+        h.exclude("(.*)\\.bsh");
+        
+        for (String q: new String[] {"p=1", "p=2", "p=3"}) {
+            BasicHttpResponse response = HttpUtils.getBasicResponse();
+            h.handle(HttpUtils.getSimpleGet("/firstlevelscript.bsh?" + q), response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_FOUND);
+        }
+        then(h.excludes.getMisses()).isEqualTo(1);
+        then(h.excludes.getHits()).isEqualTo(2);
+    }
+    
     @Test
     public void set_exclude_pattern() {
         final String TEST_PATTERN1 = "(.*)\\.bsh";
@@ -135,6 +163,427 @@ public class BugFreeFileHandler {
         
         h.exclude(null);
         then(h.getExcludes()).isEmpty();
+        
+        try {
+            h.exclude("[a-z");
+            fail("missing check for invalid patterns");
+        } catch (PatternSyntaxException x) {
+            then(x.getPattern()).isEqualTo("[a-z");
+        }
+        then(h.getExcludes()).isEmpty();
+    }
+    
+    @Test
+    public void constructors() {
+        try {
+            new FileHandler("src/test/mime", null, null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("files cannot be null");
+        }
+        
+        FileMetadataCache files = new FileMetadataCache();
+        then(new FileHandler("src/test/mime", null, files).getFileMetadataCache()).isSameAs(files);
+        then(new FileHandler("src/test/mime").getFileMetadataCache()).isNotNull();
+    }
+    
+    @Test
+    public void etag_and_last_modified() throws Exception {
+        File file = new File("src/test/mime/test.txt");
+        FileHandler h = new FileHandler("src/test/mime");
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+        
+        then(response.getFirstHeader("ETag").getValue())
+            .isEqualTo('"' + Long.toHexString(file.length()) + '-' + Long.toHexString(file.lastModified()) + '"');
+        then(response.getFirstHeader("Last-Modified").getValue())
+            .isEqualTo(FileMetadataCache.HTTP_DATE.format(Instant.ofEpochMilli(file.lastModified())));
+    }
+    
+    @Test
+    public void not_modified_if_none_match() throws Exception {
+        FileHandler h = new FileHandler("src/test/mime");
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+        final String ETAG = response.getFirstHeader("ETag").getValue();
+        
+        for (String value: new String[] {ETAG, "W/" + ETAG, "\"other\", " + ETAG, "*"}) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+            request.setHeader("If-None-Match", value);
+            response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_MODIFIED);
+            then(response.getEntity()).isNull();
+            then(response.getFirstHeader("ETag").getValue()).isEqualTo(ETAG);
+        }
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("If-None-Match", "\"other\"");
+        //
+        // If-Modified-Since is ignored if If-None-Match is given
+        //
+        request.setHeader("If-Modified-Since", response.getFirstHeader("Last-Modified").getValue());
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(response.getEntity()).isNotNull();
+        
+        request = new BasicHttpRequest("POST", "/test.txt");
+        request.setHeader("If-None-Match", ETAG);
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+    }
+    
+    @Test
+    public void not_modified_since() throws Exception {
+        FileHandler h = new FileHandler("src/test/mime");
+        final long lastModified = new File("src/test/mime/test.txt").lastModified();
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("If-Modified-Since", FileMetadataCache.HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_MODIFIED);
+        
+        request.setHeader("If-Modified-Since", FileMetadataCache.HTTP_DATE.format(Instant.ofEpochMilli(lastModified - 10000)));
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        
+        request.setHeader("If-Modified-Since", "not a date");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
     }
     
+    @Test
+    public void modified_file_is_served_again() throws Exception {
+        File file = new File(ROOT.getRoot(), "test.txt");
+        FileUtils.writeStringToFile(file, "version 1");
+        file.setLastModified(file.lastModified() - 10000);
+        
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+        final String ETAG = response.getFirstHeader("ETag").getValue();
+        
+        FileUtils.writeStringToFile(file, "version 2");
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("If-None-Match", ETAG);
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(response.getFirstHeader("ETag").getValue()).isNotEqualTo(ETAG);
+        then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("version 2");
+    }
+    
+    @Test
+    public void forbidden_directory() throws Exception {
+        FileHandler h = new FileHandler("src/test");
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/mime"), response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_FORBIDDEN);
+    }
+    
+    @Test
+    public void single_range() throws Exception {
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "test.txt"), "0123456789");
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(response.getFirstHeader("Accept-Ranges").getValue()).isEqualTo("bytes");
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("Range", "bytes=2-4");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_PARTIAL_CONTENT);
+        then(response.getFirstHeader("Content-Range").getValue()).isEqualTo("bytes 2-4/10");
+        then(response.getEntity().getContentLength()).isEqualTo(3);
+        then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("234");
+        
+        request.setHeader("Range", "bytes=-3");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getFirstHeader("Content-Range").getValue()).isEqualTo("bytes 7-9/10");
+        then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("789");
+    }
+    
+    @Test
+    public void multiple_ranges() throws Exception {
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "test.txt"), "0123456789");
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("Range", "bytes=0-1,8-");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_PARTIAL_CONTENT);
+        then(response.getFirstHeader("Content-Range")).isNull();
+        then(response.getEntity().getContentType().getValue()).startsWith("multipart/byteranges; boundary=");
+        then(IOUtils.toString(response.getEntity().getContent()))
+            .contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n")
+            .contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n");
+    }
+    
+    @Test
+    public void range_not_satisfiable() throws Exception {
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "test.txt"), "0123456789");
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+        request.setHeader("Range", "bytes=10-20");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        then(response.getFirstHeader("Content-Range").getValue()).isEqualTo("bytes */10");
+        then(response.getEntity()).isNull();
+    }
+    
+    @Test
+    public void invalid_or_ignored_range() throws Exception {
+        final String CONTENT = StringUtils.repeat("0123456789", 10);
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "test.txt"), CONTENT);
+        
+        StringBuilder tooMany = new StringBuilder("bytes=");
+        for (int i=0; i<=FileHandler.MAX_RANGES; ++i) {
+            tooMany.append(i*2).append('-').append(i*2).append(',');
+        }
+        for (String value: new String[] {"items=0-1", "bytes=5-1", tooMany.toString()}) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+            request.setHeader("Range", value);
+            BasicHttpResponse response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+            then(IOUtils.toString(response.getEntity().getContent())).isEqualTo(CONTENT);
+        }
+        
+        BasicHttpRequest request = new BasicHttpRequest("POST", "/test.txt");
+        request.setHeader("Range", "bytes=0-1");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+    }
+    
+    @Test
+    public void if_range() throws Exception {
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "test.txt"), "0123456789");
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+        final String ETAG = response.getFirstHeader("ETag").getValue();
+        final String LAST_MODIFIED = response.getFirstHeader("Last-Modified").getValue();
+        
+        for (String value: new String[] {ETAG, LAST_MODIFIED}) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+            request.setHeader("Range", "bytes=0-1");
+            request.setHeader("If-Range", value);
+            response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_PARTIAL_CONTENT);
+        }
+        
+        for (String value: new String[] {"\"other\"", "W/" + ETAG, "Thu, 01 Jan 1970 00:00:00 GMT"}) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+            request.setHeader("Range", "bytes=0-1");
+            request.setHeader("If-Range", value);
+            response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+            then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("0123456789");
+        }
+    }
+    
+    @Test
+    public void gzip_on_the_fly() throws Exception {
+        final String CONTENT = StringUtils.repeat("body { color: red; }\n", 50);
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "style.css"), CONTENT);
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/style.css");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        final String ETAG = response.getFirstHeader("ETag").getValue();
+        then(response.getEntity().getContentEncoding()).isNull();
+        then(response.getFirstHeader("Vary").getValue()).isEqualTo("Accept-Encoding");
+        
+        request.setHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(response.getEntity().getContentEncoding().getValue()).isEqualTo("gzip");
+        then(response.getEntity().getContentType().getValue()).isEqualTo("text/css");
+        then(response.getEntity().getContentLength()).isLessThan(CONTENT.length());
+        then(response.getFirstHeader("Vary").getValue()).isEqualTo("Accept-Encoding");
+        then(response.getFirstHeader("ETag").getValue())
+            .isEqualTo(ETAG.substring(0, ETAG.length()-1) + "-gzip\"");
+        then(IOUtils.toString(new GZIPInputStream(response.getEntity().getContent()))).isEqualTo(CONTENT);
+        then(h.getGzipCache().size()).isEqualTo(1);
+        
+        //
+        // conditional requests refer to the encoded representation
+        //
+        request.setHeader("If-None-Match", response.getFirstHeader("ETag").getValue());
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_MODIFIED);
+        
+        request.setHeader("If-None-Match", ETAG);
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(h.getGzipCache().getHits()).isEqualTo(1);
+    }
+    
+    @Test
+    public void not_encoded() throws Exception {
+        final String CONTENT = StringUtils.repeat("body { color: red; }\n", 50);
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "style.css"), CONTENT);
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "small.css"), "body {}");
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "image.png"), CONTENT);
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        
+        for (String[] test: new String[][] {
+            {"/style.css", "gzip;q=0, identity"}, {"/style.css", "deflate"},
+            {"/style.css", "br;q=0, *;q=0"}, {"/small.css", "gzip"}, {"/image.png", "gzip"}
+        }) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet(test[0]);
+            request.setHeader("Accept-Encoding", test[1]);
+            BasicHttpResponse response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+            then(response.getEntity().getContentEncoding()).as(test[0] + " " + test[1]).isNull();
+        }
+        
+        //
+        // images are not compressible, no need to vary
+        //
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/image.png");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getFirstHeader("Vary")).isNull();
+        
+        //
+        // ranges are served from the file
+        //
+        request = HttpUtils.getSimpleGet("/style.css");
+        request.setHeader("Accept-Encoding", "gzip");
+        request.setHeader("Range", "bytes=0-3");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_PARTIAL_CONTENT);
+        then(response.getEntity().getContentEncoding()).isNull();
+        then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("body");
+        
+        //
+        // on the fly compression disabled
+        //
+        h = new FileHandler(ROOT.getRoot().getAbsolutePath(), null, new FileMetadataCache(), null);
+        then(h.getGzipCache()).isNull();
+        request = HttpUtils.getSimpleGet("/style.css");
+        request.setHeader("Accept-Encoding", "gzip");
+        response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getEntity().getContentEncoding()).isNull();
+    }
+    
+    @Test
+    public void precompressed_siblings() throws Exception {
+        File file = new File(ROOT.getRoot(), "script.js");
+        FileUtils.writeStringToFile(file, StringUtils.repeat("var a = 1;\n", 50));
+        file.setLastModified(file.lastModified() - 10000);
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "script.js.gz"), "gzipped");
+        FileUtils.writeStringToFile(new File(ROOT.getRoot(), "script.js.br"), "brotli");
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        
+        for (String[] test: new String[][] {
+            {"gzip, br", "br", "brotli"}, {"gzip, br;q=0.5", "gzip", "gzipped"},
+            {"*", "br", "brotli"}, {"br;q=0, gzip", "gzip", "gzipped"}
+        }) {
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/script.js");
+            request.setHeader("Accept-Encoding", test[0]);
+            BasicHttpResponse response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getEntity().getContentEncoding().getValue()).as(test[0]).isEqualTo(test[1]);
+            then(response.getEntity().getContentType().getValue()).isEqualTo("application/javascript");
+            then(response.getFirstHeader("ETag").getValue()).endsWith("-" + test[1] + "\"");
+            then(IOUtils.toString(response.getEntity().getContent())).isEqualTo(test[2]);
+        }
+        then(h.getGzipCache().size()).isZero();
+        
+        //
+        // stale siblings are ignored
+        //
+        FileUtils.writeStringToFile(file, "var a = 2;");
+        new File(ROOT.getRoot(), "script.js.gz").setLastModified(file.lastModified() - 10000);
+        new File(ROOT.getRoot(), "script.js.br").setLastModified(file.lastModified() - 10000);
+        BasicHttpRequest request = HttpUtils.getSimpleGet("/script.js");
+        request.setHeader("Accept-Encoding", "gzip, br");
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(request, response, new HttpSessionContext());
+        then(response.getEntity().getContentEncoding()).isNull(); // too small to compress
+        then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("var a = 2;");
+    }
+    
+    @Test
+    public void serve_hot_files_from_memory() throws Exception {
+        File file = new File(ROOT.getRoot(), "test.txt");
+        FileUtils.writeStringToFile(file, "0123456789");
+        
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        then(h.getHotFileCache()).isNull();
+        try (HotFileCache hot = new HotFileCache(ROOT.getRoot())) {
+            then(h.cacheHotFiles(hot)).isSameAs(h);
+            then(h.getHotFileCache()).isSameAs(hot);
+            
+            BasicHttpResponse response = HttpUtils.getBasicResponse();
+            h.handle(HttpUtils.getSimpleGet("/test.txt"), response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+            then(response.getEntity()).isInstanceOf(ByteBufferEntity.class);
+            then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("0123456789");
+            then(response.getFirstHeader("ETag")).isNotNull();
+            
+            BasicHttpRequest request = HttpUtils.getSimpleGet("/test.txt");
+            request.setHeader("Range", "bytes=2-4");
+            response = HttpUtils.getBasicResponse();
+            h.handle(request, response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_PARTIAL_CONTENT);
+            then(response.getEntity()).isInstanceOf(ByteBufferEntity.class);
+            then(IOUtils.toString(response.getEntity().getContent())).isEqualTo("234");
+            
+            response = HttpUtils.getBasicResponse();
+            h.handle(HttpUtils.getSimpleGet("/none.txt"), response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_FOUND);
+            
+            then(hot.getHits()).isEqualTo(1);
+        }
+    }
+    
+    @Test
+    public void nul_in_path_is_not_found() throws Exception {
+        FileHandler h = new FileHandler(ROOT.getRoot().getAbsolutePath());
+        
+        BasicHttpResponse response = HttpUtils.getBasicResponse();
+        h.handle(HttpUtils.getSimpleGet("/x%00y"), response, new HttpSessionContext());
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_FOUND);
+        
+        try (HotFileCache hot = new HotFileCache(ROOT.getRoot())) {
+            h.cacheHotFiles(hot);
+            response = HttpUtils.getBasicResponse();
+            h.handle(HttpUtils.getSimpleGet("/x%00y"), response, new HttpSessionContext());
+            then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_NOT_FOUND);
+            then(hot.size()).isZero();
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.entity.ContentType;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.Assume.assumeFalse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.web.http.MimeUtils;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeFileMetadataCache {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    @Test
+    public void constructors() {
+        for (int size: new int[] {0, -1}) {
+            try {
+                new FileMetadataCache(size);
+                fail("missing check for invalid size");
+            } catch (IllegalArgumentException x) {
+                then(x).hasMessage("maxSize must be greater than 0");
+            }
+        }
+
+        then(new FileMetadataCache().getMaxSize()).isEqualTo(FileMetadataCache.DEFAULT_MAX_SIZE);
+        then(new FileMetadataCache(10).getMaxSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void metadata_of_files_and_directories() throws Exception {
+        FileMetadataCache cache = new FileMetadataCache();
+
+        FileMetadataCache.Metadata m = cache.get(new File("src/test/mime/test.html"));
+        then(m.mimeType).isEqualTo("text/html");
+        then(m.contentType.getMimeType()).isEqualTo("text/html");
+        then(m.readable).isTrue();
+        then(m.directory).isFalse();
+
+        m = cache.get(new File("src/test/mime/test.bin"));
+        then(m.contentType.getMimeType()).isEqualTo(ContentType.APPLICATION_OCTET_STREAM.getMimeType());
+
+        m = cache.get(new File("src/test/mime"));
+        then(m.directory).isTrue();
+        then(m.mimeType).isEqualTo(MimeUtils.MIME_DIRECTORY);
+
+        then(cache.get(new File("src/test/mime/none.txt"))).isNull();
+
+        try {
+            cache.get(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("file can not be null");
+        }
+    }
+
+    @Test
+    public void cached_until_file_changes() throws Exception {
+        File f = new File(ROOT.getRoot(), "file.txt");
+        FileUtils.writeStringToFile(f, "hello");
+        f.setLastModified(f.lastModified() - 10000);
+
+        FileMetadataCache cache = new FileMetadataCache();
+        FileMetadataCache.Metadata m = cache.get(f);
+        then(cache.get(f)).isSameAs(m);
+        then(cache.getHits()).isEqualTo(1);
+        then(cache.getMisses()).isEqualTo(1);
+
+        FileUtils.writeStringToFile(f, "hello world");
+        FileMetadataCache.Metadata m2 = cache.get(f);
+        then(m2).isNotSameAs(m);
+        then(m2.length).isEqualTo(11);
+        then(m2.etag).isNotEqualTo(m.etag);
+
+        f.delete();
+        then(cache.get(f)).isNull();
+        then(cache.size()).isZero();
+    }
+
+    @Test
+    public void permission_changes_are_detected() throws Exception {
+        File f = new File(ROOT.getRoot(), "file.txt");
+        FileUtils.writeStringToFile(f, "hello");
+
+        FileMetadataCache cache = new FileMetadataCache();
+        then(cache.get(f).readable).isTrue();
+
+        f.setReadable(false);
+        assumeFalse("permissions are not enforced (running as root?)", f.canRead());
+        then(cache.get(f).readable).isFalse();
+
+        f.setReadable(true);
+        then(cache.get(f).readable).isTrue();
+        then(cache.getMisses()).isEqualTo(3);
+    }
+
+    @Test
+    public void invalid_path_does_not_exist() throws Exception {
+        FileMetadataCache cache = new FileMetadataCache();
+
+        then(cache.get(new File(ROOT.getRoot(), "x\u0000y"))).isNull();
+        then(cache.size()).isZero();
+    }
+
+    @Test
+    public void bounded_size() throws Exception {
+        FileMetadataCache cache = new FileMetadataCache(2);
+        for (int i=0; i<5; ++i) {
+            File f = new File(ROOT.getRoot(), "file" + i);
+            f.createNewFile();
+            then(cache.get(f)).isNotNull();
+            then(cache.size()).isLessThanOrEqualTo(2);
+        }
+        cache.clear();
+        then(cache.size()).isZero();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeGzipCache {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    private final FileMetadataCache files = new FileMetadataCache();
+
+    @Test
+    public void constructors() throws Exception {
+        try {
+            new GzipCache(0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxBytes must be greater than 0");
+        }
+        try {
+            new GzipCache(1, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxFileSize must be greater than 0");
+        }
+
+        GzipCache c = new GzipCache();
+        then(c.getMaxBytes()).isEqualTo(GzipCache.DEFAULT_MAX_BYTES);
+        then(c.getMaxFileSize()).isEqualTo(GzipCache.DEFAULT_MAX_FILE_SIZE);
+        then(c.size()).isZero();
+        then(c.getBytes()).isZero();
+
+        try {
+            c.get(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("metadata can not be null");
+        }
+    }
+
+    @Test
+    public void compress_and_cache() throws Exception {
+        final String CONTENT = StringUtils.repeat("hello world ", 100);
+        File f = file("test.txt", CONTENT);
+        GzipCache c = new GzipCache();
+
+        byte[] gz = c.get(files.get(f));
+        then(gunzip(gz)).isEqualTo(CONTENT);
+        then(gz.length).isLessThan(CONTENT.length());
+        then(c.get(files.get(f))).isSameAs(gz);
+        then(c.size()).isEqualTo(1);
+        then(c.getBytes()).isEqualTo(gz.length);
+        then(c.getHits()).isEqualTo(1);
+        then(c.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void changed_file_is_compressed_again() throws Exception {
+        File f = file("test.txt", "version 1");
+        f.setLastModified(f.lastModified() - 10000);
+        GzipCache c = new GzipCache();
+
+        then(gunzip(c.get(files.get(f)))).isEqualTo("version 1");
+        FileUtils.writeStringToFile(f, "version 2");
+        then(gunzip(c.get(files.get(f)))).isEqualTo("version 2");
+        then(c.size()).isEqualTo(1);
+        then(c.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void do_not_compress_big_files() throws Exception {
+        File f = file("test.txt", "0123456789");
+        GzipCache c = new GzipCache(1024, 9);
+
+        then(c.accepts(files.get(f))).isFalse();
+        then(c.get(files.get(f))).isNull();
+        then(c.size()).isZero();
+    }
+
+    @Test
+    public void evict_least_recently_used_within_budget() throws Exception {
+        File f1 = file("f1.txt", "one"), f2 = file("f2.txt", "two"), f3 = file("f3.txt", "three");
+        GzipCache c = new GzipCache(1, 1024); // a single entry at a time
+
+        c.get(files.get(f1));
+        c.get(files.get(f2));
+        then(c.size()).isEqualTo(1);
+        c.get(files.get(f2));
+        then(c.getHits()).isEqualTo(1);
+
+        c = new GzipCache(c.get(files.get(f1)).length * 3, 1024); // room for two entries
+        c.get(files.get(f1)); c.get(files.get(f2));
+        c.get(files.get(f1)); // f2 is now the least recently used
+        c.get(files.get(f3));
+        then(c.size()).isEqualTo(2);
+        c.get(files.get(f1));
+        then(c.getHits()).isEqualTo(2);
+        c.get(files.get(f2));
+        then(c.getMisses()).isEqualTo(4);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private File file(final String name, final String content) throws Exception {
+        File f = new File(ROOT.getRoot(), name);
+        FileUtils.writeStringToFile(f, content);
+        return f;
+    }
+
+    private String gunzip(final byte[] content) throws Exception {
+        return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(content)));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.handlers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeHotFileCache {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    private final FileMetadataCache files = new FileMetadataCache();
+    private HotFileCache cache = null;
+
+    @After
+    public void after() throws Exception {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void constructors() throws Exception {
+        try {
+            new HotFileCache(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("root can not be null");
+        }
+        try {
+            new HotFileCache(ROOT.getRoot(), 0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxBytes must be greater than 0");
+        }
+        try {
+            new HotFileCache(ROOT.getRoot(), 1, -1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxFileSize can not be negative");
+        }
+
+        cache = new HotFileCache(ROOT.getRoot());
+        then(cache.getRoot()).isEqualTo(ROOT.getRoot().getAbsoluteFile());
+        then(cache.getMaxBytes()).isEqualTo(HotFileCache.DEFAULT_MAX_BYTES);
+        then(cache.getMaxFileSize()).isEqualTo(HotFileCache.DEFAULT_MAX_FILE_SIZE);
+        then(cache.size()).isZero();
+        then(cache.isClosed()).isFalse();
+    }
+
+    @Test
+    public void cache_small_files_in_memory() throws Exception {
+        File small = file("small.txt", "hello"), big = file("big.txt", "hello world");
+        cache = new HotFileCache(ROOT.getRoot(), 1024, 10);
+
+        HotFileCache.Entry e = cache.get(small, files);
+        then(e.metadata.file).isEqualTo(small);
+        then(e.getContent().isDirect()).isTrue();
+        then(content(e)).isEqualTo("hello");
+        then(cache.get(small, files)).isSameAs(e);
+
+        e = cache.get(big, files);
+        then(e.metadata.length).isEqualTo(11);
+        then(e.getContent()).isNull();
+
+        then(cache.size()).isEqualTo(2);
+        then(cache.getBytes()).isEqualTo(2*HotFileCache.ENTRY_OVERHEAD + 5);
+        then(cache.getHits()).isEqualTo(1);
+        then(cache.getMisses()).isEqualTo(2);
+
+        //
+        // files are not accessed anymore
+        //
+        final long misses = files.getMisses() + files.getHits();
+        cache.get(small, files); cache.get(big, files);
+        then(files.getMisses() + files.getHits()).isEqualTo(misses);
+    }
+
+    @Test
+    public void do_not_cache_missing_files() throws Exception {
+        cache = new HotFileCache(ROOT.getRoot());
+
+        for (int i=0; i<10; ++i) {
+            then(cache.get(new File(ROOT.getRoot(), "none" + i + ".txt"), files).metadata).isNull();
+        }
+        then(cache.get(new File(ROOT.getRoot(), "none0.txt"), files).metadata).isNull();
+        then(cache.size()).isZero();
+        then(cache.getBytes()).isZero();
+        then(cache.getHits()).isZero();
+    }
+
+    @Test
+    public void invalidate_files_under_changed_directory() throws Exception {
+        File dir = ROOT.newFolder("dir"), other = ROOT.newFolder("dir2");
+        File f1 = file("dir/f1.txt", "one"), f2 = file("dir/f2.txt", "two"),
+             f3 = file("dir2/f3.txt", "three");
+        cache = new HotFileCache(ROOT.getRoot());
+
+        cache.get(dir, files); cache.get(f1, files); cache.get(f2, files);
+        cache.get(other, files); cache.get(f3, files);
+        then(cache.size()).isEqualTo(5);
+
+        FileUtils.deleteDirectory(dir);
+        for (int i=0; (i<100) && (cache.size() > 2); ++i) {
+            Thread.sleep(50);
+        }
+        then(cache.size()).isEqualTo(2);
+        then(cache.getBytes()).isEqualTo(2*HotFileCache.ENTRY_OVERHEAD + 5);
+    }
+
+    @Test
+    public void do_not_cache_files_outside_root() throws Exception {
+        cache = new HotFileCache(ROOT.newFolder("root"));
+
+        then(cache.get(file("outside.txt", "hello"), files)).isNull();
+        then(cache.get(new File(ROOT.getRoot(), "root/../outside.txt"), files)).isNull();
+        then(cache.size()).isZero();
+    }
+
+    @Test
+    public void invalidate_changed_files() throws Exception {
+        File f = file("test.txt", "version 1");
+        File missing = new File(ROOT.newFolder("sub"), "missing.txt");
+        cache = new HotFileCache(ROOT.getRoot());
+
+        then(content(cache.get(f, files))).isEqualTo("version 1");
+        then(cache.get(missing, files).metadata).isNull();
+
+        FileUtils.writeStringToFile(f, "version 2");
+        FileUtils.writeStringToFile(missing, "found");
+        waitFor(f, "version 2");
+        waitFor(missing, "found");
+        then(cache.getInvalidations()).isGreaterThan(0);
+
+        f.delete();
+        for (int i=0; (i<100) && (cache.get(f, files).metadata != null); ++i) {
+            Thread.sleep(50);
+        }
+        then(cache.get(f, files).metadata).isNull();
+    }
+
+    @Test
+    public void watch_new_directories() throws Exception {
+        cache = new HotFileCache(ROOT.getRoot());
+
+        File dir = ROOT.newFolder("new");
+        File f = new File(dir, "test.txt");
+        for (int i=0; (i<100) && (cache.getInvalidations() == 0); ++i) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(100); // give the watcher time to register the directory
+        FileUtils.writeStringToFile(f, "version 1");
+        waitFor(f, "version 1");
+        FileUtils.writeStringToFile(f, "version 2");
+        waitFor(f, "version 2");
+    }
+
+    @Test
+    public void evict_least_recently_used_within_budget() throws Exception {
+        File f1 = file("f1.txt", "one"), f2 = file("f2.txt", "two"), f3 = file("f3.txt", "three");
+        cache = new HotFileCache(ROOT.getRoot(), 2*HotFileCache.ENTRY_OVERHEAD + 10, 10);
+
+        cache.get(f1, files); cache.get(f2, files);
+        cache.get(f1, files); // f2 is now the least recently used
+        cache.get(f3, files);
+        then(cache.size()).isEqualTo(2);
+        then(cache.getBytes()).isEqualTo(2*HotFileCache.ENTRY_OVERHEAD + 8);
+
+        cache.get(f1, files); cache.get(f3, files);
+        then(cache.getHits()).isEqualTo(3);
+        cache.get(f2, files);
+        then(cache.getMisses()).isEqualTo(4);
+    }
+
+    @Test
+    public void nothing_cached_after_close() throws Exception {
+        File f = file("test.txt", "hello");
+        cache = new HotFileCache(ROOT.getRoot());
+        cache.get(f, files);
+
+        cache.close();
+        then(cache.isClosed()).isTrue();
+        then(cache.size()).isZero();
+        then(cache.get(f, files)).isNull();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private File file(final String name, final String content) throws Exception {
+        File f = new File(ROOT.getRoot(), name);
+        FileUtils.writeStringToFile(f, content);
+        return f;
+    }
+
+    private String content(final HotFileCache.Entry entry) {
+        ByteBuffer buffer = entry.getContent();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void waitFor(final File f, final String expected) throws Exception {
+        //
+        // changes are notified asynchronously
+        //
+        for (int i=0; i<100; ++i) {
+            HotFileCache.Entry e = cache.get(f, files);
+            if ((e.metadata != null) && (e.getContent() != null) && expected.equals(content(e))) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail(f + " has not been reloaded");
+    }
+}
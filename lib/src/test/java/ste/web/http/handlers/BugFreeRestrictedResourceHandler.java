@@ -16,10 +16,16 @@
 package ste.web.http.handlers;
 
 import java.io.IOException;
+import java.security.AccessControlException;
 import java.security.Principal;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.ws.rs.core.HttpHeaders;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -30,6 +36,7 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,6 +44,8 @@ import org.junit.rules.TemporaryFolder;
 import ste.web.http.HttpSessionContext;
 import ste.web.http.HttpUtils;
 import ste.web.acl.AccessControlList;
+import ste.web.acl.AsyncAuthenticator;
+import ste.web.acl.ExecutorAuthenticator;
 import ste.web.acl.HashMapAuthenticator;
 import ste.web.acl.User;
 import ste.web.http.HttpSession;
@@ -70,11 +79,18 @@ public class BugFreeRestrictedResourceHandler {
     
     private final HashMapAuthenticator AUTHENTICATOR = new HashMapAuthenticator(USERS);
     
+    private final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+    
     @Before
     public void before() {
         ACL.add("ste.web.acl.permissions.star");
     }
     
+    @After
+    public void after() {
+        EXECUTOR.shutdownNow();
+    }
+    
     @Test
     public void constructors() {
         try {
@@ -296,4 +312,122 @@ public class BugFreeRestrictedResourceHandler {
         then(rs.getFirstHeader(HttpHeaders.CONTENT_LOCATION).getValue())
             .isEqualTo(rq.getRequestLine().getUri());
     }
+    
+    @Test
+    public void async_constructor() {
+        ExecutorAuthenticator a = new ExecutorAuthenticator(AUTHENTICATOR, EXECUTOR);
+        try {
+            new RestrictedResourceHandler(null, ACL, a, 1000);
+            fail("missing arguments check");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("handler can not be null");
+        }
+        try {
+            new RestrictedResourceHandler(DUMMY_HANDLER, ACL, a, 0);
+            fail("missing arguments check");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("timeout must be greater than 0");
+        }
+        
+        RestrictedResourceHandler h = new RestrictedResourceHandler(DUMMY_HANDLER, ACL, a, 1000);
+        then(h.getAsyncAuthenticator()).isSameAs(a);
+        then(h.getAuthenticator()).isNull();
+        then(h.getTimeout()).isEqualTo(1000);
+        
+        h = new RestrictedResourceHandler(DUMMY_HANDLER, ACL, AUTHENTICATOR);
+        then(h.getAsyncAuthenticator()).isNull();
+        then(h.getTimeout()).isEqualTo(RestrictedResourceHandler.DEFAULT_TIMEOUT);
+    }
+    
+    @Test
+    public void authenticate_with_async_authenticator() throws Exception {
+        HashMapAuthenticator auth = new HashMapAuthenticator(USERS);
+        auth.message = UUID.randomUUID().toString();
+        RestrictedResourceHandler h = new RestrictedResourceHandler(
+            DUMMY_HANDLER, null, new ExecutorAuthenticator(auth, EXECUTOR), 1000
+        );
+        
+        HttpSessionContext context = new HttpSessionContext();
+        HttpRequest rq = HttpUtils.getSimpleGet(RESTRICTED_URIS[0]);
+        HttpResponse rs = HttpUtils.getBasicResponse();
+        context.setSession(new HttpSession());
+        context.setPrincipal(new User("one", "111"));
+        h.handle(rq, rs, context);
+        then(rs.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(context.getSession().getPrincipal()).isSameAs(context.getPrincipal());
+        
+        context = new HttpSessionContext();
+        rs = HttpUtils.getBasicResponse();
+        context.setSession(new HttpSession());
+        context.setPrincipal(new User("one", "222"));
+        h.handle(rq, rs, context);
+        then(rs.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_UNAUTHORIZED);
+        then(rs.getStatusLine().getReasonPhrase()).isEqualTo("invalid credentials");
+        then(rs.getFirstHeader(HttpHeaders.WWW_AUTHENTICATE).getValue()).isEqualTo(auth.message);
+    }
+    
+    @Test
+    public void check_access_without_blocking() throws Exception {
+        final CompletableFuture<Void> pending = new CompletableFuture<>();
+        RestrictedResourceHandler h = new RestrictedResourceHandler(
+            DUMMY_HANDLER, ACL, 
+            new AsyncAuthenticator() {
+                @Override
+                public CompletionStage<Void> checkAsync(User user) {
+                    return pending;
+                }
+                
+                @Override
+                public String getMessage() {
+                    return "Basic";
+                }
+            }, 
+            1000
+        );
+        
+        User user = new User("one", "111");
+        user.setPermissions(new HashSet<String>());
+        CompletableFuture<Void> check = h.checkAccess(user).toCompletableFuture();
+        then(check.isDone()).isFalse();
+        
+        pending.complete(null);
+        try {
+            check.get();
+            fail("authorization not checked");
+        } catch (ExecutionException x) {
+            then(x.getCause()).isInstanceOf(AccessControlException.class);
+        }
+        
+        user.getPermissions().add("ste.web.acl.permissions.star");
+        h.checkAccess(user).toCompletableFuture().get();
+    }
+    
+    @Test
+    public void returns_503_if_authentication_times_out() throws Exception {
+        RestrictedResourceHandler h = new RestrictedResourceHandler(
+            DUMMY_HANDLER, null, 
+            new AsyncAuthenticator() {
+                @Override
+                public CompletionStage<Void> checkAsync(User user) {
+                    return new CompletableFuture<>(); // never completes
+                }
+                
+                @Override
+                public String getMessage() {
+                    return "Basic";
+                }
+            }, 
+            50
+        );
+        
+        HttpSessionContext context = new HttpSessionContext();
+        HttpResponse rs = HttpUtils.getBasicResponse();
+        context.setSession(new HttpSession());
+        context.setPrincipal(new User("one", "111"));
+        h.handle(HttpUtils.getSimpleGet(RESTRICTED_URIS[0]), rs, context);
+        
+        then(rs.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        then(rs.getFirstHeader(HttpHeaders.CONTENT_LOCATION)).isNull();
+        then(context.getSession().getPrincipal()).isNull();
+    }
 }
@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.UriHttpRequestHandlerMapper;
+import org.apache.http.util.EntityUtils;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ste.web.acl.Authenticator;
+import ste.web.acl.ExecutorAuthenticator;
+import ste.web.acl.InvalidCredentialsException;
+import ste.web.acl.User;
+import ste.web.http.HttpSessionContext;
+import ste.web.http.SessionManager;
+import ste.web.http.beanshell.BeanShellHandler;
+import ste.web.http.entity.JsonEntity;
+import ste.web.http.handlers.RestrictedResourceHandler;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeNioHttpServer {
+
+    private static final InetSocketAddress ANY = new InetSocketAddress("127.0.0.1", 0);
+
+    private UriHttpRequestHandlerMapper handlers;
+    private NioHttpServer server;
+    private CountDownLatch block;
+
+    @Before
+    public void before() {
+        block = new CountDownLatch(0);
+        handlers = new UriHttpRequestHandlerMapper();
+        handlers.register("/hello", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                HttpSessionContext c = (HttpSessionContext)context;
+                ((BasicHttpEntity)response.getEntity()).setContent(
+                    new ByteArrayInputStream("hello".getBytes())
+                );
+                ((BasicHttpEntity)response.getEntity()).setContentLength(5);
+                response.setHeader(
+                    "X-Principal", 
+                    (c.getPrincipal() == null) ? "none" : c.getPrincipal().getName()
+                );
+            }
+        });
+        handlers.register("/echo", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) 
+            throws IOException {
+                response.setEntity(new JsonEntity(
+                    EntityUtils.toString(((HttpEntityEnclosingRequest)request).getEntity())
+                ));
+            }
+        });
+        handlers.register("/session", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                response.setHeader("X-Session", ((HttpSessionContext)context).getSession().getId());
+            }
+        });
+        handlers.register("/empty", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+            }
+        });
+        handlers.register("/error", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) 
+            throws HttpException {
+                throw new HttpException("failed");
+            }
+        });
+        handlers.register("/block", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void constructors() {
+        final SessionManager sessions = new SessionManager();
+        try {
+            new NioHttpServer(null, handlers, sessions, 1, 1, 1);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("address can not be null");
+        }
+        try {
+            new NioHttpServer(ANY, null, sessions, 1, 1, 1);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("handlers can not be null");
+        }
+        try {
+            new NioHttpServer(ANY, handlers, null, 1, 1, 1);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("sessions can not be null");
+        }
+        try {
+            new NioHttpServer(ANY, handlers, sessions, 0, 1, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("ioDispatchers must be greater than 0");
+        }
+        try {
+            new NioHttpServer(ANY, handlers, sessions, 1, 0, 1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("workers must be greater than 0");
+        }
+        try {
+            new NioHttpServer(ANY, handlers, sessions, 1, 1, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("queueSize must be greater than 0");
+        }
+
+        NioHttpServer s = new NioHttpServer(ANY, handlers);
+        then(s.getAddress()).isSameAs(ANY);
+        then(s.getHandlers()).isSameAs(handlers);
+        then(s.getSessionManager()).isNotNull();
+        then(s.getIoDispatchers()).isEqualTo(NioHttpServer.DEFAULT_IO_DISPATCHERS);
+        then(s.getWorkers()).isEqualTo(NioHttpServer.DEFAULT_WORKERS);
+        then(s.getQueueSize()).isEqualTo(NioHttpServer.DEFAULT_QUEUE_SIZE);
+        then(s.getMaxBodySize()).isEqualTo(NioHttpServer.DEFAULT_MAX_BODY_SIZE);
+        then(s.getIdleTimeout()).isEqualTo(NioHttpServer.DEFAULT_IDLE_TIMEOUT);
+        then(s.isStarted()).isFalse();
+        then(s.getLocalAddress()).isNull();
+
+        try {
+            s.setMaxBodySize(0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("maxBodySize must be greater than 0");
+        }
+        then(s.getExecution()).isEqualTo(NioHttpServer.Execution.PLATFORM_POOL);
+        try {
+            s.setExecution(null);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("execution can not be null");
+        }
+        try {
+            s.setIdleTimeout(-1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("idleTimeout can not be negative");
+        }
+    }
+
+    @Test
+    public void start_and_close() throws Exception {
+        server = new NioHttpServer(ANY, handlers, new SessionManager(), 1, 1, 1);
+        server.start();
+        then(server.isStarted()).isTrue();
+        then(server.getLocalAddress().getPort()).isGreaterThan(0);
+
+        try {
+            server.start();
+            fail("server started twice");
+        } catch (IllegalStateException x) {
+            then(x).hasMessage("server already started");
+        }
+
+        server.close(); server.close();
+        then(server.isStarted()).isFalse();
+        then(server.getLocalAddress()).isNull();
+    }
+
+    @Test
+    public void serve_keep_alive_requests() throws Exception {
+        start(2, 2, 10);
+
+        try (Socket s = connect()) {
+            for (int i=0; i<3; ++i) {
+                send(s, "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                final String response = receive(s);
+                then(response).startsWith("HTTP/1.1 200")
+                    .contains("Content-Length: 5\r\n").contains("X-Principal: none\r\n")
+                    .endsWith("\r\n\r\nhello");
+            }
+        }
+    }
+
+    @Test
+    public void many_connections_few_threads() throws Exception {
+        start(1, 2, 100);
+
+        final List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i=0; i<100; ++i) {
+                sockets.add(connect());
+            }
+            for (Socket s: sockets) {
+                send(s, "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            }
+            for (Socket s: sockets) {
+                then(receive(s)).startsWith("HTTP/1.1 200").endsWith("hello");
+            }
+        } finally {
+            for (Socket s: sockets) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    public void sessions_and_principal() throws Exception {
+        start(1, 1, 10);
+
+        String cookie;
+        try (Socket s = connect()) {
+            //
+            // no session unless a handler asks for it
+            //
+            send(s, "GET /hello HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic dXNlcjpwYXNz\r\n\r\n");
+            then(receive(s)).doesNotContain("Set-Cookie").contains("X-Principal: user\r\n");
+            then(server.getSessionManager().size()).isZero();
+
+            send(s, "GET /session HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            final String response = receive(s);
+            then(response).contains("Set-Cookie: HTTPSID=");
+            cookie = response.substring(response.indexOf("HTTPSID="));
+            cookie = cookie.substring(0, cookie.indexOf(';'));
+
+            send(s, "GET /session HTTP/1.1\r\nHost: localhost\r\nCookie: " + cookie + "\r\n\r\n");
+            then(receive(s)).doesNotContain("Set-Cookie")
+                .contains("X-Session: " + cookie.substring(8) + "\r\n");
+        }
+        then(server.getSessionManager().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void request_body_and_unknown_length_content() throws Exception {
+        start(1, 1, 10);
+
+        try (Socket s = connect()) {
+            send(s, "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nworld");
+            then(receive(s)).startsWith("HTTP/1.1 200")
+                .contains("Content-Type: application/json; charset=UTF-8\r\n")
+                .contains("Content-Length: 7\r\n").endsWith("\r\n\r\n\"world\"");
+        }
+    }
+
+    @Test
+    public void request_body_too_large() throws Exception {
+        server = new NioHttpServer(ANY, handlers, new SessionManager(), 1, 1, 10);
+        server.setMaxBodySize(4);
+        server.start();
+
+        try (Socket s = connect()) {
+            send(s, "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nworld");
+            then(receive(s)).startsWith("HTTP/1.1 413").contains("Connection: Close");
+        }
+        try (Socket s = connect()) {
+            send(s, "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4\r\n\r\nworl");
+            then(receive(s)).startsWith("HTTP/1.1 200").endsWith("\"worl\"");
+        }
+    }
+
+    @Test
+    public void scripts_write_to_out() throws Exception {
+        handlers.register("/out.bsh", new BeanShellHandler(new File("src/test/webroot").getAbsolutePath()));
+        start(1, 1, 10);
+
+        try (Socket s = connect()) {
+            send(s, "GET /out.bsh HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s)).startsWith("HTTP/1.1 200")
+                .contains("Content-Type: text/html; charset=UTF-8\r\n")
+                .endsWith("\r\n\r\nhello from out");
+        }
+    }
+
+    @Test
+    public void no_content_not_found_and_errors() throws Exception {
+        start(1, 1, 10);
+
+        try (Socket s = connect()) {
+            send(s, "GET /empty HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s)).startsWith("HTTP/1.1 200").contains("Content-Length: 0\r\n");
+
+            send(s, "GET /error HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s)).startsWith("HTTP/1.1 500").endsWith("see server log for details");
+        }
+        try (Socket s = connect()) {
+            send(s, "GET /none HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s)).startsWith("HTTP/1.1 501").contains("Connection: Close");
+        }
+    }
+
+    @Test
+    public void busy_workers() throws Exception {
+        block = new CountDownLatch(1);
+        start(1, 1, 1);
+
+        try (Socket s1 = connect(); Socket s2 = connect(); Socket s3 = connect()) {
+            send(s1, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Thread.sleep(100); // s1 is now being served
+            send(s2, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Thread.sleep(100); // s2 is now queued
+            send(s3, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s3)).startsWith("HTTP/1.1 503");
+
+            block.countDown();
+            then(receive(s1)).startsWith("HTTP/1.1 200");
+            then(receive(s2)).startsWith("HTTP/1.1 200");
+        }
+    }
+
+    @Test
+    public void virtual_threads() throws Exception {
+        server = new NioHttpServer(ANY, handlers, new SessionManager(), 1, 2, 10);
+        server.setExecution(NioHttpServer.Execution.VIRTUAL_THREADS);
+        then(server.getExecution()).isEqualTo(NioHttpServer.Execution.VIRTUAL_THREADS);
+
+        if (!NioHttpServer.isVirtualThreadSupported()) {
+            try {
+                server.start();
+                fail("virtual threads not supported");
+            } catch (IllegalStateException x) {
+                then(x).hasMessage("virtual threads are not supported by this JVM");
+            }
+            then(server.isStarted()).isFalse();
+            return;
+        }
+
+        server.start();
+        try (Socket s = connect()) {
+            send(s, "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s)).startsWith("HTTP/1.1 200").endsWith("hello");
+        }
+    }
+
+    @Test
+    public void busy_virtual_threads() throws Exception {
+        if (!NioHttpServer.isVirtualThreadSupported()) {
+            return;
+        }
+
+        block = new CountDownLatch(1);
+        server = new NioHttpServer(ANY, handlers, new SessionManager(), 1, 1, 1);
+        server.setExecution(NioHttpServer.Execution.VIRTUAL_THREADS);
+        server.start();
+
+        try (Socket s1 = connect(); Socket s2 = connect(); Socket s3 = connect()) {
+            send(s1, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Thread.sleep(100);
+            send(s2, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Thread.sleep(100);
+            send(s3, "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s3)).startsWith("HTTP/1.1 503");
+
+            block.countDown();
+            then(receive(s1)).startsWith("HTTP/1.1 200");
+            then(receive(s2)).startsWith("HTTP/1.1 200");
+        }
+    }
+
+    @Test
+    public void asynchronous_access_check_does_not_hold_workers() throws Exception {
+        final CountDownLatch authenticating = new CountDownLatch(1);
+        final ExecutorService authenticators = Executors.newSingleThreadExecutor();
+        handlers.register("/restricted", new RestrictedResourceHandler(
+            handlers.lookup(new BasicHttpRequest("GET", "/hello")), null,
+            new ExecutorAuthenticator(new Authenticator() {
+                @Override
+                public void check(User user) throws InvalidCredentialsException {
+                    try {
+                        authenticating.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException x) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (!"pass".equals(user.getSecret())) {
+                        throw new InvalidCredentialsException();
+                    }
+                }
+
+                @Override
+                public String getMessage() {
+                    return "Basic realm=\"test\"";
+                }
+            }, authenticators), 
+            RestrictedResourceHandler.DEFAULT_TIMEOUT
+        ));
+        start(1, 1, 1);
+
+        try (Socket s1 = connect(); Socket s2 = connect(); Socket s3 = connect()) {
+            send(s1, "GET /restricted HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic dXNlcjpwYXNz\r\n\r\n");
+            send(s2, "GET /restricted HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic dXNlcjpub3Bl\r\n\r\n");
+            Thread.sleep(100); // both are being authenticated
+            
+            //
+            // the only worker is free, even with the queue of size 1
+            //
+            send(s3, "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            then(receive(s3)).startsWith("HTTP/1.1 200").contains("X-Principal: none\r\n");
+
+            authenticating.countDown();
+            then(receive(s1)).startsWith("HTTP/1.1 200").contains("X-Principal: user\r\n");
+            then(receive(s2)).startsWith("HTTP/1.1 401")
+                .contains("WWW-Authenticate: Basic realm=\"test\"\r\n");
+        } finally {
+            authenticators.shutdownNow();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void start(final int ioDispatchers, final int workers, final int queueSize)
+    throws IOException {
+        server = new NioHttpServer(ANY, handlers, new SessionManager(), ioDispatchers, workers, queueSize);
+        server.start();
+    }
+
+    private Socket connect() throws IOException {
+        Socket s = new Socket();
+        s.connect(server.getLocalAddress());
+        s.setSoTimeout(5000);
+        return s;
+    }
+
+    private void send(final Socket s, final String request) throws IOException {
+        OutputStream out = s.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Reads a response with a Content-Length body
+     */
+    private String receive(final Socket s) throws IOException {
+        InputStream in = s.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int b, matched = 0;
+        while ((matched < 4) && ((b = in.read()) >= 0)) {
+            out.write(b);
+            matched = (b == "\r\n\r\n".charAt(matched)) ? matched+1 : ((b == '\r') ? 1 : 0);
+        }
+        String head = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        int p = head.indexOf("Content-Length: ");
+        if (p >= 0) {
+            int length = Integer.parseInt(head.substring(p+16, head.indexOf('\r', p)));
+            for (int i=0; i<length; ++i) {
+                out.write(in.read());
+            }
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
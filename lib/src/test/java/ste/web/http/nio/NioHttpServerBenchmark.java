@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.nio;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.UriHttpRequestHandlerMapper;
+import ste.web.http.SessionManager;
+
+/**
+ * Compares the execution modes of NioHttpServer with many concurrent
+ * keep-alive connections whose requests block for a while (as scripts waiting
+ * on JDBC or HTTP calls do). This is not a test; run it with:
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; \
+ *      [-Dblock=50] [-Drounds=5] [-Dpool=200] \
+ *      ste.web.http.nio.NioHttpServerBenchmark [connections...]
+ * </pre>
+ *
+ * Connections default to 1000, 10000 and 50000; each connection sends rounds
+ * requests one after the other, each request blocks block milliseconds. The
+ * platform pool has pool threads; with virtual threads, as many requests as
+ * connections run concurrently. Client and server run in the same process, so
+ * a run needs about twice as many file descriptors as connections (ulimit -n)
+ * and enough local ports; virtual threads need Java 21 or later.
+ *
+ * @author ste
+ */
+public class NioHttpServerBenchmark {
+
+    private static final byte[] REQUEST =
+        "GET /block HTTP/1.1\r\nHost: localhost\r\n\r\n"
+        .getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONTENT = "ok".getBytes(StandardCharsets.ISO_8859_1);
+
+    public static void main(final String[] args) throws Exception {
+        final int block = Integer.getInteger("block", 50);
+        final int rounds = Integer.getInteger("rounds", 5);
+        final int pool = Integer.getInteger("pool", 200);
+
+        int[] connections = new int[] {1000, 10000, 50000};
+        if (args.length > 0) {
+            connections = new int[args.length];
+            for (int i=0; i<args.length; ++i) {
+                connections[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        final UriHttpRequestHandlerMapper handlers = new UriHttpRequestHandlerMapper();
+        handlers.register("/block", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                try {
+                    Thread.sleep(block);
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setEntity(new ByteArrayEntity(CONTENT));
+            }
+        });
+
+        System.out.println(String.format(
+            "%-16s %12s %10s %10s %10s %10s %8s %8s",
+            "mode", "connections", "requests", "errors", "req/s", "p50 ms", "p99 ms", "threads"
+        ));
+        for (int n: connections) {
+            run(NioHttpServer.Execution.PLATFORM_POOL, pool, n, rounds, handlers);
+            if (NioHttpServer.isVirtualThreadSupported()) {
+                run(NioHttpServer.Execution.VIRTUAL_THREADS, n, n, rounds, handlers);
+            } else {
+                System.out.println(String.format(
+                    "%-16s %12d  not supported by this JVM", NioHttpServer.Execution.VIRTUAL_THREADS, n
+                ));
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static void run(
+        final NioHttpServer.Execution execution, final int workers,
+        final int connections, final int rounds, final UriHttpRequestHandlerMapper handlers
+    ) throws Exception {
+        final NioHttpServer server = new NioHttpServer(
+            new InetSocketAddress("127.0.0.1", 0), handlers, new SessionManager(),
+            NioHttpServer.DEFAULT_IO_DISPATCHERS, workers, connections
+        );
+        server.setExecution(execution);
+        server.setIdleTimeout(0);
+        server.start();
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        try {
+            final Client client = new Client(server.getLocalAddress(), connections, rounds);
+            final long start = System.nanoTime();
+            client.run();
+            final long elapsed = System.nanoTime() - start;
+
+            final long[] latencies = Arrays.copyOf(client.latencies, client.completed);
+            Arrays.sort(latencies);
+            System.out.println(String.format(
+                "%-16s %12d %10d %10d %10.0f %10.1f %8.1f %8d",
+                execution, connections, client.completed, client.errors,
+                client.completed / (elapsed / 1e9),
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                threads.getPeakThreadCount()
+            ));
+        } finally {
+            server.close();
+        }
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return (sorted.length == 0) ? 0 : sorted[(int)Math.min(sorted.length - 1, sorted.length * p)];
+    }
+
+    // ------------------------------------------------------------ Client
+
+    /**
+     * A single threaded load generator: it keeps all connections open and
+     * sends the next request on a connection as soon as the previous response
+     * is read.
+     */
+    private static final class Client {
+        final InetSocketAddress address;
+        final int connections, rounds;
+        final long[] latencies;
+        int completed, errors;
+
+        Client(final InetSocketAddress address, final int connections, final int rounds) {
+            this.address = address;
+            this.connections = connections;
+            this.rounds = rounds;
+            this.latencies = new long[connections * rounds];
+        }
+
+        void run() throws IOException {
+            try (Selector selector = Selector.open()) {
+                for (int i=0; i<connections; ++i) {
+                    final SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    channel.connect(address);
+                    channel.register(selector, SelectionKey.OP_CONNECT, new Connection());
+                }
+
+                int open = connections;
+                while (open > 0) {
+                    selector.select(1000);
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next(); keys.remove();
+                        final SocketChannel channel = (SocketChannel)key.channel();
+                        final Connection c = (Connection)key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                channel.finishConnect();
+                                c.send(channel);
+                                key.interestOps(SelectionKey.OP_READ);
+                            } else if (key.isReadable() && c.receive(channel)) {
+                                latencies[completed++] = System.nanoTime() - c.sent;
+                                if (++c.done < rounds) {
+                                    c.send(channel);
+                                } else {
+                                    channel.close(); --open;
+                                }
+                            }
+                        } catch (IOException x) {
+                            ++errors;
+                            channel.close(); --open;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // -------------------------------------------------------- Connection
+
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(1024);
+        long sent;
+        int done;
+
+        void send(final SocketChannel channel) throws IOException {
+            final ByteBuffer out = ByteBuffer.wrap(REQUEST);
+            sent = System.nanoTime();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+
+        /**
+         * @return true when a whole response has been read
+         */
+        boolean receive(final SocketChannel channel) throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("connection closed by the server");
+            }
+            final String s = new String(in.array(), 0, in.position(), StandardCharsets.ISO_8859_1);
+            final int end = s.indexOf("\r\n\r\n");
+            if (end < 0) {
+                return false;
+            }
+            if (!s.startsWith("HTTP/1.1 200")) {
+                throw new IOException("unexpected response: " + s.substring(0, s.indexOf('\r')));
+            }
+            final int p = s.indexOf("Content-Length: ");
+            final int length = Integer.parseInt(s.substring(p + 16, s.indexOf('\r', p)));
+            if (in.position() < end + 4 + length) {
+                return false;
+            }
+            in.clear();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.velocity;
+
+import java.util.HashMap;
+import java.util.Map;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+import ste.web.http.HttpSession;
+import ste.web.http.QueryString;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeLayeredContext {
+
+    @Test
+    public void empty_layers() {
+        LayeredContext c = new LayeredContext(null, null, null, null);
+        then(c.get("any")).isNull();
+        then(c.containsKey("any")).isFalse();
+        then(c.getKeys()).isEmpty();
+    }
+
+    @Test
+    public void upper_layers_shadow_lower_layers() {
+        QueryString parameters = QueryString.parse("one=p1");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("one", "a1"); attributes.put("two", "a2");
+        HttpSession session = new HttpSession();
+        session.setAttribute("two", "s2"); session.setAttribute("three", "s3");
+        Map<String, Object> constants = new HashMap<>();
+        constants.put("three", "c3"); constants.put("four", "c4");
+
+        LayeredContext c = new LayeredContext(parameters, attributes, session, constants);
+        then(c.get("one")).isEqualTo("p1");
+        then(c.get("two")).isEqualTo("a2");
+        then(c.get("three")).isEqualTo("s3");
+        then(c.get("four")).isEqualTo("c4");
+        then(c.get("five")).isNull();
+        then(c.containsKey("four")).isTrue();
+        then(c.containsKey("five")).isFalse();
+        then(c.getKeys()).containsOnly("one", "two", "three", "four");
+    }
+
+    @Test
+    public void lookups_read_through() {
+        Map<String, Object> attributes = new HashMap<>();
+        HttpSession session = new HttpSession();
+        LayeredContext c = new LayeredContext(null, attributes, session, null);
+
+        then(c.get("one")).isNull();
+        session.setAttribute("one", "s1");
+        then(c.get("one")).isEqualTo("s1");
+        attributes.put("one", "a1");
+        then(c.get("one")).isEqualTo("a1");
+    }
+
+    @Test
+    public void locals_do_not_leak_into_layers() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("one", "a1");
+        LayeredContext c = new LayeredContext(null, attributes, null, null);
+
+        c.put("one", "l1"); c.put("two", "l2");
+        then(c.get("one")).isEqualTo("l1");
+        then(c.get("two")).isEqualTo("l2");
+        then(attributes).containsOnlyKeys("one").containsValue("a1");
+        then(c.getKeys()).containsOnly("one", "two");
+
+        then(c.remove("one")).isEqualTo("l1");
+        then(c.get("one")).isEqualTo("a1");
+        then(c.remove("one")).isNull();
+        then(c.get("one")).isEqualTo("a1");
+    }
+
+    @Test
+    public void expired_session_has_no_attributes() {
+        HttpSession session = new HttpSession();
+        session.setAttribute("one", "s1");
+        LayeredContext c = new LayeredContext(null, null, session, null);
+
+        session.expire();
+        then(c.get("one")).isNull();
+        then(c.getKeys()).isEmpty();
+    }
+}
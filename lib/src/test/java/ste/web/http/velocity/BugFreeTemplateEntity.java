@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2026 Stefano Fornari.
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.web.http.velocity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.MethodInvocationException;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.web.http.entity.CommittableEntity;
+
+/**
+ *
+ * @author ste
+ */
+public class BugFreeTemplateEntity {
+
+    @Rule
+    public final TemporaryFolder ROOT = new TemporaryFolder();
+
+    private static final ContentType HTML = ContentType.TEXT_HTML.withCharset("UTF-8");
+
+    private VelocityEngine engine;
+    private VelocityContext context;
+
+    @Before
+    public void before() {
+        engine = new VelocityEngine();
+        engine.setProperty("file.resource.loader.path", ROOT.getRoot().getAbsolutePath());
+        engine.init();
+
+        context = new VelocityContext();
+        context.put("name", "papà");
+        context.put("failer", new Failer());
+    }
+
+    @Test
+    public void constructors() throws Exception {
+        Template t = template("hello");
+        try {
+            new TemplateEntity(null, context, HTML, 10);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("template can not be null");
+        }
+        try {
+            new TemplateEntity(t, null, HTML, 10);
+            fail("missing check for null parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("context can not be null");
+        }
+        try {
+            new TemplateEntity(t, context, ContentType.create("text/html"), 10);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("type can not be null and must have a charset");
+        }
+        try {
+            new TemplateEntity(t, context, HTML, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("firstChunkSize must be greater than 0");
+        }
+
+        TemplateEntity e = new TemplateEntity(t, context, HTML, 10);
+        then(e.getFirstChunkSize()).isEqualTo(10);
+        then(e.isChunked()).isTrue();
+        then(e.getContentLength()).isEqualTo(-1);
+        then(e.isRepeatable()).isTrue();
+        then(e.getContentType().getValue()).isEqualTo("text/html; charset=UTF-8");
+    }
+
+    @Test
+    public void write_to_stream() throws Exception {
+        TemplateEntity e = new TemplateEntity(template("hello $name"), context, HTML, 10);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.writeTo(out);
+        then(out.toString("UTF-8")).isEqualTo("hello papà");
+        then(IOUtils.toString(e.getContent(), "UTF-8")).isEqualTo("hello papà");
+    }
+
+    @Test
+    public void small_content_is_committed_with_length() throws Exception {
+        TestCommit commit = new TestCommit();
+        new TemplateEntity(template("hello $name"), context, HTML, 100).writeTo(commit);
+
+        then(commit.lengths).containsExactly(11L);
+        then(commit.out.toString("UTF-8")).isEqualTo("hello papà");
+    }
+
+    @Test
+    public void large_content_is_committed_after_first_chunk() throws Exception {
+        final String text = StringUtils.repeat("0123456789", 10000);
+        TestCommit commit = new TestCommit();
+        new TemplateEntity(template(text), context, HTML, 1000).writeTo(commit);
+
+        then(commit.lengths).containsExactly(-1L);
+        then(commit.committedAt).isLessThanOrEqualTo(1000);
+        then(commit.out.toString("UTF-8")).isEqualTo(text);
+    }
+
+    @Test
+    public void error_before_commit() throws Exception {
+        TestCommit commit = new TestCommit();
+        try {
+            new TemplateEntity(template("hello $failer.fail()"), context, HTML, 100).writeTo(commit);
+            fail("error not propagated");
+        } catch (MethodInvocationException x) {
+            then(commit.lengths).isEmpty();
+        }
+    }
+
+    @Test
+    public void error_after_commit() throws Exception {
+        TestCommit commit = new TestCommit();
+        try {
+            new TemplateEntity(
+                template(StringUtils.repeat("0123456789", 10000) + "$failer.fail()"),
+                context, HTML, 100
+            ).writeTo(commit);
+            fail("error not propagated");
+        } catch (MethodInvocationException x) {
+            then(commit.lengths).containsExactly(-1L);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Template template(final String content) throws IOException {
+        String name = "t" + ROOT.getRoot().list().length + ".v";
+        FileUtils.writeStringToFile(ROOT.newFile(name), content, "UTF-8");
+
+        return engine.getTemplate(name, "UTF-8");
+    }
+
+    // ------------------------------------------------------------ TestCommit
+
+    private static class TestCommit implements CommittableEntity.Commit {
+        final List<Long> lengths = new ArrayList<>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int committedAt = -1;
+
+        @Override
+        public OutputStream commit(final long length) {
+            lengths.add(length);
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] {(byte)b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    if (committedAt < 0) {
+                        committedAt = len;
+                    }
+                    out.write(b, off, len);
+                }
+            };
+        }
+    }
+
+    public static class Failer {
+        public String fail() {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
@@ -23,6 +23,8 @@ package ste.web.http.velocity;
 
 import java.io.File;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
@@ -38,6 +40,7 @@ import org.junit.Test;
 import org.junit.Before;
 
 import static ste.web.beanshell.Constants.*;
+import ste.web.http.HttpSession;
 import ste.web.http.HttpSessionContext;
 import ste.web.http.HttpUtils;
 import ste.web.http.QueryString;
@@ -121,6 +124,100 @@ public class BugFreeVelocityHandler {
         then(h.getViewsFolder()).isEqualTo("/a");
     }
     
+    @Test
+    public void cache_configuration() throws Exception {
+        then(handler.getCacheSize()).isEqualTo(VelocityHandler.DEFAULT_CACHE_SIZE);
+        then(handler.getModificationCheckInterval()).isEqualTo(VelocityHandler.DEFAULT_MODIFICATION_CHECK_INTERVAL);
+        then(handler.getTemplateCache()).isNotNull();
+        
+        VelocityHandler h = new VelocityHandler(ROOT, "/v", 10, 0);
+        then(h.getViewsFolder()).isEqualTo("/v");
+        then(h.getCacheSize()).isEqualTo(10);
+        then(h.getModificationCheckInterval()).isZero();
+        
+        try {
+            new VelocityHandler(ROOT, null, 0, 0);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("cacheSize must be greater than 0");
+        }
+        try {
+            new VelocityHandler(ROOT, null, 10, -1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("modificationCheckInterval can not be negative");
+        }
+    }
+    
+    @Test
+    public void templates_are_parsed_once() throws Exception {
+        TemplateCache cache = handler.getTemplateCache();
+        
+        context.setAttribute(ATTR_VIEW, TEST_VIEW1);
+        handler.handle(request, response, context);
+        then(cache.getMisses()).isEqualTo(1);
+        then(cache.getHits()).isZero();
+        
+        response = HttpUtils.getBasicResponse(true);
+        handler.handle(request, response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(cache.getMisses()).isEqualTo(1);
+        then(cache.getHits()).isEqualTo(1);
+        then(cache.size()).isEqualTo(1);
+    }
+    
+    @Test
+    public void precompile_templates() throws Exception {
+        TemplateCache cache = handler.getTemplateCache();
+        
+        then(handler.precompile()).isEqualTo(5); // witherror.v does not parse
+        then(cache.size()).isEqualTo(5);
+        final long misses = cache.getMisses();
+        
+        context.setAttribute(ATTR_VIEW, TEST_VIEW1);
+        handler.handle(request, response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(cache.getMisses()).isEqualTo(misses);
+        then(cache.getHits()).isEqualTo(1);
+    }
+    
+    @Test
+    public void precompile_bounded_by_cache_size() throws Exception {
+        VelocityHandler h = new VelocityHandler(ROOT, null, 2, 0);
+        then(h.precompile()).isEqualTo(5);
+        then(h.getTemplateCache().size()).isEqualTo(2);
+    }
+    
+    @Test
+    public void streaming() throws Exception {
+        then(handler.isStreaming()).isFalse();
+        then(handler.getFirstChunkSize()).isZero();
+
+        handler.setStreaming(VelocityHandler.DEFAULT_FIRST_CHUNK_SIZE);
+        then(handler.isStreaming()).isTrue();
+        then(handler.getFirstChunkSize()).isEqualTo(VelocityHandler.DEFAULT_FIRST_CHUNK_SIZE);
+
+        context.setAttribute(ATTR_VIEW, TEST_VIEW1);
+        handler.handle(request, response, context);
+        then(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SC_OK);
+        then(response.getEntity()).isInstanceOf(TemplateEntity.class);
+        then(response.getEntity().getContentType().getValue()).isEqualTo("text/html; charset=UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getEntity().writeTo(out);
+        then(out.size()).isGreaterThan(0);
+
+        handler.setStreaming(0);
+        then(handler.isStreaming()).isFalse();
+
+        try {
+            handler.setStreaming(-1);
+            fail("missing check for invalid parameters");
+        } catch (IllegalArgumentException x) {
+            then(x).hasMessage("firstChunkSize can not be negative");
+        }
+    }
+
     @Test
     public void viewDefaultDirs() throws Exception {
         context.setAttribute(ATTR_VIEW, TEST_VIEW1);
@@ -213,6 +310,33 @@ public class BugFreeVelocityHandler {
         );
     }
 
+    @Test
+    public void session_attributes_and_constants() throws Exception {
+        Map<String, Object> constants = new HashMap<>();
+        constants.put(TEST_REQ_ATTR_NAME1, TEST_VALUE1);
+        constants.put(TEST_REQ_ATTR_NAME2, "none");
+        handler.setConstants(constants);
+        constants.clear(); // the handler keeps a copy
+        then(handler.getConstants()).hasSize(2);
+        
+        HttpSession session = new HttpSession();
+        session.setAttribute(TEST_REQ_ATTR_NAME2, TEST_VALUE2);
+        session.setAttribute(TEST_REQ_ATTR_NAME3, "none");
+        context.setSession(session);
+        
+        context.setAttribute(ATTR_VIEW, TEST_VIEW1);
+        context.setAttribute(TEST_REQ_ATTR_NAME3, TEST_VALUE3);
+        handler.handle(request, response, context);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        response.getEntity().writeTo(baos);
+        then(baos.toString()).isEqualTo(
+            String.format("First (%s,%s,%s,%s)", TEST_VIEW1, TEST_VALUE1, TEST_VALUE2, TEST_VALUE3)
+        );
+        
+        handler.setConstants(null);
+        then(handler.getConstants()).isEmpty();
+    }
+
     @Test
     public void parameters() throws Exception {
         